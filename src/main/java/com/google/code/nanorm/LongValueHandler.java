@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Optional extension of the {@link TypeHandler} for <code>long</code> values.
+ * Type handlers implementing this interface are used to map result set columns
+ * onto <code>long</code> properties without boxing the values.
+ * 
+ * @author Ivan Dubrov
+ */
+public interface LongValueHandler {
+    /**
+     * Get column value as <code>long</code>. SQL <code>NULL</code> is
+     * mapped to <code>0</code>, like for primitive properties mapped through
+     * {@link TypeHandler#getValue(ResultSet, int)}.
+     * 
+     * @param rs {@link ResultSet} instance
+     * @param column column
+     * @return column value
+     * @throws SQLException any SQL error
+     */
+    long getLong(ResultSet rs, int column) throws SQLException;
+}
@@ -50,6 +50,10 @@ public interface NanormFactory {
      * Note that mappers created by separate factories are completely isolated
      * from each other.
      * 
+     * Mapper interface is instantiated once per factory, subsequent calls
+     * return the same instance. Abstract class mappers are instantiated on
+     * every call, since they could keep the state.
+     * 
      * @param <T> mapper type
      * @param iface iface with mapper configuration
      * @return mapper
@@ -74,6 +78,14 @@ public interface NanormFactory {
      */
     Session openSession(Connection conn);
 
+    /**
+     * Release the resources held by the factory. Stops the worker threads
+     * created by the factory for the pipelined queries (executor provided by
+     * the configuration is not shut down). Pipelined queries could not be
+     * executed after the factory is closed.
+     */
+    void close();
+
     /**
      * Get internal factory configuration. Internal method that should not be
      * used by clients.
@@ -23,6 +23,7 @@ import java.util.List;
 
 import com.google.code.nanorm.internal.BoundFragment;
 import com.google.code.nanorm.internal.TextFragment;
+import com.google.code.nanorm.internal.TextFragmentCache;
 import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
 import com.google.code.nanorm.internal.mapping.parameter.ParameterMapper;
 import com.google.code.nanorm.internal.util.ToStringBuilder;
@@ -52,6 +53,8 @@ public abstract class SQLSource implements BoundFragment {
 
     private IntrospectionFactory reflFactory;
 
+    private TextFragmentCache fragmentCache;
+
     /**
      * Helper class for generating different text fragment joins (not SQL
      * joins).
@@ -104,27 +107,38 @@ public abstract class SQLSource implements BoundFragment {
          * {@inheritDoc}
          */
         public void generate(StringBuilder builder, List<ParameterMapper> parameters) {
+            List<String> pieces = new ArrayList<String>();
+            collect(pieces, parameters);
+            for (String piece : pieces) {
+                builder.append(piece);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void collect(List<String> pieces, List<ParameterMapper> parameters) {
             if (clauses.isEmpty()) {
                 return;
             }
             if (open != null) {
-                builder.append(open);
+                pieces.add(open);
             }
 
             // Join elements in the clauses list
             boolean first = true;
             for (List<BoundFragment> items : clauses) {
                 if (!first && with != null) {
-                    builder.append(with);
+                    pieces.add(with);
                 }
                 for (BoundFragment item : items) {
-                    item.generate(builder, parameters);
+                    item.collect(pieces, parameters);
                 }
                 first = false;
             }
 
             if (close != null) {
-                builder.append(close);
+                pieces.add(close);
             }
         }
     }
@@ -150,6 +164,26 @@ public abstract class SQLSource implements BoundFragment {
         this.reflFactory = reflFactory;
     }
 
+    /** @param fragmentCache The fragmentCache to set. */
+    public void setFragmentCache(TextFragmentCache fragmentCache) {
+        this.fragmentCache = fragmentCache;
+    }
+
+    /**
+     * Bind given SQL fragment to the parameters, using the fragment cache if
+     * available.
+     * 
+     * @param fragment SQL fragment
+     * @param params fragment parameters
+     * @return bound fragment
+     */
+    private BoundFragment bind(String fragment, Object[] params) {
+        if (fragmentCache != null) {
+            return fragmentCache.bindParameters(fragment, params);
+        }
+        return new TextFragment(fragment, reflFactory).bindParameters(params);
+    }
+
     /**
      * Append given SQL fragment with parameters to the current dynamic
      * statement.
@@ -158,7 +192,7 @@ public abstract class SQLSource implements BoundFragment {
      * @param params clause parameters
      */
     public void append(String fragment, Object... params) {
-        BoundFragment f = new TextFragment(fragment, reflFactory).bindParameters(params);
+        BoundFragment f = bind(fragment, params);
         last().add(f);
     }
 
@@ -170,8 +204,7 @@ public abstract class SQLSource implements BoundFragment {
      */
     public void appendNotNull(String fragment, Object param) {
         if (param != null) {
-            BoundFragment f = new TextFragment(fragment, reflFactory)
-                    .bindParameters(new Object[] {param });
+            BoundFragment f = bind(fragment, new Object[] {param });
             last().add(f);
         }
     }
@@ -296,6 +329,21 @@ public abstract class SQLSource implements BoundFragment {
         }
     }
 
+    /**
+     * Collect the pieces of final SQL fragment with parameters.
+     * 
+     * @param pieces SQL pieces
+     * @param parameters parameters
+     */
+    public void collect(List<String> pieces, List<ParameterMapper> parameters) {
+        if (stack.size() != 1) {
+            throw new IllegalStateException("Stack must contain exactly one element!");
+        }
+        for (BoundFragment obj : last()) {
+            obj.collect(pieces, parameters);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
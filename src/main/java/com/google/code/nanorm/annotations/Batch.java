@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks {@link Insert} or {@link Update} query method as batch method. The
+ * first parameter of the batch method must be an array or a
+ * {@link java.util.Collection}. The statement is executed once for every
+ * element of this parameter using the JDBC batch, so the whole collection is
+ * sent to the database in few round trips.
+ * </p>
+ * <p>
+ * Parameter references in the SQL are resolved against the element instead of
+ * the collection itself, other parameters are passed as is. For example:
+ * </p>
+ * 
+ * <pre>
+ * &#064;Insert(&quot;INSERT INTO cars(id, model) VALUES(${1.id}, ${1.model})&quot;)
+ * &#064;Batch(size = 100)
+ * int[] insertCars(List&lt;Car&gt; cars);
+ * </pre>
+ * 
+ * <p>
+ * Return type of the batch method must be <code>int[]</code> (update counts
+ * for every element, as returned by
+ * {@link java.sql.Statement#executeBatch()}) or <code>void</code>. Batch
+ * methods could not have {@link SelectKey} configured.
+ * </p>
+ * 
+ * @author Ivan Dubrov
+ */
+@Target( {ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Batch {
+
+    /**
+     * Maximum amount of statements sent to the database in single batch. 0
+     * means all elements are sent in one batch.
+     */
+    int size() default 0;
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks {@link Select} query method as cached. Results of the method are
+ * cached by the values of the arguments and shared by all sessions of the
+ * factory, so the query is executed only when the result for the arguments is
+ * not in the cache. Every factory keeps its own cache, even factories built
+ * from the same configuration. Useful for reference data, which is read often
+ * and changes rarely.
+ * </p>
+ * <p>
+ * Arguments of the cached method are used as a cache key, so they must
+ * implement {@link Object#equals(Object)} and {@link Object#hashCode()} and
+ * must not be modified after the call. Collections and arrays are copied when
+ * they are put into the cache and when they are returned from it, but their
+ * elements are shared. Methods returning beans (or other mutable objects) must
+ * be marked as {@link #readOnly()}, confirming that callers never modify the
+ * results.
+ * </p>
+ * <p>
+ * When cache is full, rarely used results are evicted first. Results are
+ * removed from the cache when the tables they are read from (see
+ * {@link #tables()}) are modified by the methods of the same factory (see
+ * {@link Invalidates}) or by other factories sharing the
+ * {@link com.google.code.nanorm.config.InvalidationBus}.
+ * </p>
+ * 
+ * <pre>
+ * &#064;Select(&quot;SELECT id, name FROM countries WHERE code = ${1}&quot;)
+ * &#064;Cached(maxEntries = 500, ttl = 60000, tables = &quot;countries&quot;, readOnly = true)
+ * Country getCountry(String code);
+ * </pre>
+ * 
+ * @author Ivan Dubrov
+ */
+@Target( {ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+
+    /**
+     * Maximum amount of results kept in the cache.
+     */
+    int maxEntries() default 1000;
+
+    /**
+     * Time to live of the cached result, in milliseconds. 0 means results never
+     * expire.
+     */
+    long ttl() default 0;
+
+    /**
+     * Names of the tables the method reads. Required if results never expire
+     * (see {@link #ttl()}), otherwise they would never be removed from the
+     * cache.
+     */
+    String[] tables() default {};
+
+    /**
+     * Results are never modified by the callers, so the same result objects
+     * could be returned to all of them. Required if method returns mutable
+     * objects, like beans.
+     */
+    boolean readOnly() default false;
+}
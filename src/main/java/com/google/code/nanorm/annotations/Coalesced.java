@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks {@link Select} query method as coalesced. When several threads invoke
+ * the method with the same arguments at the same time, only the first one
+ * executes the query, the rest wait for it and receive its result. That
+ * prevents the bursts of identical queries, for example when cached result
+ * (see {@link Cached}) expires.
+ * </p>
+ * <p>
+ * Only the queries executed without the opened session (in auto-session
+ * mode) are coalesced, the queries executed in the session are always
+ * executed in its transaction. The waiting threads do not use the database
+ * at all, so the method should read the data which is not modified by the
+ * concurrent transactions (like reference data).
+ * </p>
+ * <p>
+ * Waiting threads receive the same beans (or other mutable objects) as the
+ * executing one, so methods returning them must be marked as
+ * {@link #readOnly()}, confirming that callers never modify the results.
+ * </p>
+ * 
+ * <pre>
+ * &#064;Select(&quot;SELECT id, name FROM countries WHERE code = ${1}&quot;)
+ * &#064;Cached(ttl = 60000, readOnly = true)
+ * &#064;Coalesced(readOnly = true)
+ * Country getCountry(String code);
+ * </pre>
+ * 
+ * @author Ivan Dubrov
+ */
+@Target( {ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Coalesced {
+
+    /**
+     * Whether collection and array results are copied for every waiting
+     * thread. Otherwise, all threads receive the same result instance, so
+     * method must be marked as {@link #readOnly()}. The elements of the
+     * collections and arrays are always shared.
+     */
+    boolean copy() default true;
+
+    /**
+     * Results are never modified by the callers, so the same result objects
+     * could be returned to all waiting threads. Required if method returns
+     * mutable objects, like beans.
+     */
+    boolean readOnly() default false;
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Declares the tables modified by the {@link Insert}, {@link Update} or
+ * {@link Call} query method. Once the modification is committed, results of
+ * the {@link Cached} methods reading these tables (see
+ * {@link Cached#tables()}) are removed from the cache.
+ * </p>
+ * <p>
+ * If annotation is not present, the table is taken from the static SQL of the
+ * method, if it starts with <code>INSERT INTO</code>, <code>UPDATE</code> or
+ * <code>DELETE FROM</code>.
+ * </p>
+ * 
+ * <pre>
+ * &#064;Call(&quot;{call renameCountry(${1}, ${2})}&quot;)
+ * &#064;Invalidates(&quot;countries&quot;)
+ * void renameCountry(String code, String name);
+ * </pre>
+ * 
+ * @author Ivan Dubrov
+ */
+@Target( {ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Invalidates {
+
+    /**
+     * Names of the tables modified by the method.
+     */
+    String[] value();
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks {@link Select} query method as pipelined. Rows of the pipelined query
+ * are fetched from the {@link java.sql.ResultSet} by the calling thread and
+ * mapped to the result objects by the worker threads, so fetching the rows
+ * over the network and mapping them are done in parallel. Worker threads are
+ * shared by all pipelined queries of the factory (see
+ * {@link com.google.code.nanorm.config.NanormConfiguration#setPipelineExecutor}). Useful for
+ * queries returning large amount of rows with mapping-heavy result maps.
+ * </p>
+ * <p>
+ * Fetching thread reads the values of the mapped columns with the type
+ * handlers of the result map, the workers only set them to the properties of
+ * the result objects. Values that depend on the result set position (like
+ * {@link java.sql.Blob} or {@link java.sql.Clob}) should be read by the type
+ * handlers as byte arrays or strings.
+ * </p>
+ * <p>
+ * Since rows are mapped independently, result map of the pipelined query
+ * could not have groupBy, nested result maps and subselects configured.
+ * </p>
+ * 
+ * <pre>
+ * &#064;Select(&quot;SELECT id, model, year FROM cars&quot;)
+ * &#064;Pipelined(threads = 4, ordered = false)
+ * void exportCars(DataSink&lt;Car&gt; sink);
+ * </pre>
+ * 
+ * @author Ivan Dubrov
+ */
+@Target( {ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Pipelined {
+
+    /**
+     * Maximum amount of worker threads mapping the rows of the query at the
+     * same time. 0 means amount of available processors.
+     */
+    int threads() default 0;
+
+    /**
+     * Maximum amount of rows fetched, but not yet passed to the result.
+     */
+    int bufferSize() default 1024;
+
+    /**
+     * Whether results are passed in the order of the rows. Otherwise, results
+     * are passed as soon as they are mapped.
+     */
+    boolean ordered() default true;
+}
@@ -83,4 +83,45 @@ public @interface Property {
      * </p>
      */
     Class<?> subselectMapper() default Object.class;
+
+    /**
+     * <p>
+     * Name of the mapper method to use for batch subselect query. Batch
+     * subselect is executed once the result set is processed, with column
+     * values of all the rows passed as a parameter, instead of executing the
+     * subselect for every row. The results are matched to the rows by the
+     * {@link #batchKey()} property.
+     * </p>
+     * <p>
+     * Mapper method is searched by the name, in the {@link #subselectMapper()}
+     * interface, if specified. It must have exactly one parameter, an array or
+     * a {@link java.util.Collection} of the column values, for example:
+     * </p>
+     * 
+     * <pre>
+     * &#064;Property(value = &quot;articles&quot;, column = &quot;id&quot;, 
+     *     batchSubselect = &quot;getArticlesByCategoryIds&quot;, batchKey = &quot;categoryId&quot;)
+     * ...
+     * &#064;Source(ArticlesByCategoryIds.class)
+     * List&lt;Article&gt; getArticlesByCategoryIds(int[] ids);
+     * </pre>
+     * 
+     * <p>
+     * The property could be a collection, an array or a single object.
+     * </p>
+     */
+    String batchSubselect() default "";
+
+    /**
+     * Property of the objects returned by the {@link #batchSubselect()} query
+     * which holds the column value the object belongs to.
+     */
+    String batchKey() default "";
+
+    /**
+     * Maximum amount of column values passed to single
+     * {@link #batchSubselect()} query. Column values of the larger result sets
+     * are split into several queries.
+     */
+    int batchSize() default 100;
 }
@@ -55,6 +55,15 @@ public @interface ResultMap {
      */
     String[] groupBy() default {};
 
+    /**
+     * Rows are ordered by the properties from the {@link #groupBy()} list, so
+     * rows of every group follow each other. Only the current group is kept
+     * while the result set is processed and the group object is pushed to the
+     * result as soon as the next group starts. Allows returning the grouped
+     * result as a cursor. Ignored when result map is used as a nested map.
+     */
+    boolean ordered() default false;
+
     /**
      * Automatically map all columns that were not mapped explicitly.
      */
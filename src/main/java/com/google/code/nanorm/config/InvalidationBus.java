@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.config;
+
+import java.util.Set;
+
+/**
+ * Bus that delivers the table modifications to the result caches. Factory
+ * publishes the tables once the modification is committed and subscribes its
+ * result caches to the bus when it is built. Implementations could deliver
+ * the modifications to the factories in other JVMs.
+ * 
+ * Implementations must be thread-safe.
+ * 
+ * @see com.google.code.nanorm.annotations.Cached
+ * @see com.google.code.nanorm.annotations.Invalidates
+ * @see LocalInvalidationBus
+ * @author Ivan Dubrov
+ */
+public interface InvalidationBus {
+
+    /**
+     * Publish the modification of the tables.
+     * 
+     * @param tables names of the modified tables, in lower case
+     */
+    void publish(Set<String> tables);
+
+    /**
+     * Subscribe the listener to the table modifications.
+     * 
+     * @param listener listener
+     */
+    void subscribe(InvalidationListener listener);
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.config;
+
+import java.util.Set;
+
+/**
+ * Listener of the table modifications published to the
+ * {@link InvalidationBus}.
+ * 
+ * @author Ivan Dubrov
+ */
+public interface InvalidationListener {
+
+    /**
+     * Invalidate the data read from the given tables.
+     * 
+     * @param tables names of the modified tables, in lower case
+     */
+    void invalidate(Set<String> tables);
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.config;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link InvalidationBus} implementation that delivers the table
+ * modifications to the listeners in the same JVM, synchronously.
+ * 
+ * @author Ivan Dubrov
+ */
+public class LocalInvalidationBus implements InvalidationBus {
+
+    private final CopyOnWriteArrayList<InvalidationListener> listeners =
+            new CopyOnWriteArrayList<InvalidationListener>();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void publish(Set<String> tables) {
+        for (InvalidationListener listener : listeners) {
+            listener.invalidate(tables);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void subscribe(InvalidationListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.code.nanorm.exceptions.ConfigurationException;
+import com.google.code.nanorm.internal.introspect.asm.ASMIntrospectionFactory;
+
+/**
+ * <p>
+ * Build-time compiler of the mapper classes. Generates the mapper
+ * implementations, the property accessors used by the mapper statements and
+ * the bean mappers of the explicit result maps into the class output
+ * directory, so the factory loads them instead of generating the classes at
+ * runtime (with ASM introspection only). Compiled classes are listed in the
+ * {@value ASMIntrospectionFactory#PRECOMPILED_INDEX} resource; without it,
+ * the factory does not look for the precompiled classes at all.
+ * </p>
+ * <p>
+ * Mapper configuration is validated during the compilation. The precompiled
+ * class is ignored at runtime if the mapper methods or the bean properties it
+ * was compiled for were changed. Mappers are still configured at runtime.
+ * Accessors of the dynamic SQL fragments and bean mappers of the automatic
+ * and nested result maps depend on the actual arguments or result sets, so
+ * these are still generated at runtime.
+ * </p>
+ * <p>
+ * Usage:
+ * </p>
+ * 
+ * <pre>
+ * java com.google.code.nanorm.config.MapperCompiler &lt;output dir&gt; &lt;mapper class&gt;...
+ * </pre>
+ * 
+ * <p>
+ * With Maven, the compiler is run after the classes are compiled by the
+ * exec-maven-plugin:
+ * </p>
+ * 
+ * <pre>
+ * &lt;plugin&gt;
+ *   &lt;groupId&gt;org.codehaus.mojo&lt;/groupId&gt;
+ *   &lt;artifactId&gt;exec-maven-plugin&lt;/artifactId&gt;
+ *   &lt;executions&gt;
+ *     &lt;execution&gt;
+ *       &lt;phase&gt;process-classes&lt;/phase&gt;
+ *       &lt;goals&gt;&lt;goal&gt;java&lt;/goal&gt;&lt;/goals&gt;
+ *       &lt;configuration&gt;
+ *         &lt;mainClass&gt;com.google.code.nanorm.config.MapperCompiler&lt;/mainClass&gt;
+ *         &lt;arguments&gt;
+ *           &lt;argument&gt;${project.build.outputDirectory}&lt;/argument&gt;
+ *           &lt;argument&gt;com.example.CarMapper&lt;/argument&gt;
+ *         &lt;/arguments&gt;
+ *       &lt;/configuration&gt;
+ *     &lt;/execution&gt;
+ *   &lt;/executions&gt;
+ * &lt;/plugin&gt;
+ * </pre>
+ * 
+ * @author Ivan Dubrov
+ */
+public final class MapperCompiler {
+
+    private MapperCompiler() {
+        // Nothing.
+    }
+
+    /**
+     * Compile the mappers given on the command line.
+     * 
+     * @param args output directory followed by the mapper class names
+     * @throws ClassNotFoundException mapper class is not found
+     * @throws IOException failed to write the mapper class
+     */
+    public static void main(String[] args) throws ClassNotFoundException, IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException(
+                    "Usage: MapperCompiler <output dir> <mapper class>...");
+        }
+
+        File dir = new File(args[0]);
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        for (int i = 1; i < args.length; ++i) {
+            compile(Class.forName(args[i], false, cl), dir);
+        }
+    }
+
+    /**
+     * Compile the mapper into the output directory and add the compiled
+     * classes to the index in the directory.
+     * 
+     * @param mapper mapper interface or abstract class
+     * @param dir output directory, root of the package hierarchy
+     * @return generated class files
+     * @throws ConfigurationException mapper configuration is invalid
+     * @throws IOException failed to write the classes
+     */
+    public static List<File> compile(Class<?> mapper, File dir) throws ConfigurationException,
+            IOException {
+        Map<String, byte[]> classes = ASMIntrospectionFactory.buildPrecompiledClasses(mapper);
+
+        List<File> files = new ArrayList<File>(classes.size());
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            File file = new File(dir, entry.getKey() + ".class");
+            mkdirs(file);
+            OutputStream os = new FileOutputStream(file);
+            try {
+                os.write(entry.getValue());
+            } finally {
+                os.close();
+            }
+            files.add(file);
+        }
+
+        // Merge with the classes of the mappers compiled before
+        File index = new File(dir, ASMIntrospectionFactory.PRECOMPILED_INDEX);
+        Set<String> names = new TreeSet<String>();
+        if (index.isFile()) {
+            ASMIntrospectionFactory.readIndex(new FileInputStream(index), names);
+        }
+        for (String name : classes.keySet()) {
+            names.add(name.replace('/', '.'));
+        }
+        mkdirs(index);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(index), "UTF-8");
+        try {
+            for (String name : names) {
+                writer.write(name);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        return files;
+    }
+
+    private static void mkdirs(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent);
+        }
+    }
+}
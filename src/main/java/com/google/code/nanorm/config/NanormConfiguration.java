@@ -17,6 +17,7 @@
 package com.google.code.nanorm.config;
 
 import java.lang.reflect.Type;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +56,18 @@ public class NanormConfiguration {
 
     private SessionConfig sessionConfig;
 
+    private int statementCacheSize = 0;
+
+    private int subselectMemoSize = 0;
+
+    private boolean subselectMemoSessionScoped = false;
+
+    private InvalidationBus invalidationBus;
+
+    private int configurationThreads = 1;
+
+    private Executor pipelineExecutor;
+
     /**
      * Constructor.
      */
@@ -79,15 +92,71 @@ public class NanormConfiguration {
      * 
      * @param mapperClasses mapper classes
      * @throws ConfigurationException configuration is invalid
+     * @see #setConfigurationThreads(int)
+     * @see #setLazyConfiguration(boolean)
      */
     public void configure(Class<?>... mapperClasses) throws ConfigurationException {
-        for (Class<?> mapperClass : mapperClasses) {
-            config.configure(mapperClass);
+        config.configure(mapperClasses, configurationThreads);
+    }
+
+    /**
+     * <p>
+     * Set the amount of threads that initialize the statements of the mappers
+     * configured by the single {@link #configure(Class...)} call (build the
+     * SQL fragments, select keys and row mappers). Mappers themselves are
+     * registered by the calling thread, since they could reference the result
+     * maps and statements of each other.
+     * </p>
+     * <p>
+     * Statements are initialized by the calling thread by default (1 thread).
+     * </p>
+     * 
+     * @param configurationThreads amount of threads initializing the
+     * statements
+     */
+    public void setConfigurationThreads(int configurationThreads) {
+        if (configurationThreads < 1) {
+            throw new IllegalArgumentException("Configuration threads must be positive!");
         }
+        this.configurationThreads = configurationThreads;
     }
 
     /**
-     * Register type handler.
+     * <p>
+     * Enable or disable lazy configuration. With lazy configuration, the
+     * statements of the configured mappers are initialized (SQL fragments,
+     * select keys and row mappers are built) on first use rather than by
+     * {@link #configure(Class...)}. Annotations are still validated when the
+     * mapper is configured, other errors are reported on first use or by
+     * {@link #validateAll()}.
+     * </p>
+     * <p>
+     * Lazy configuration is off by default. It should be enabled before the
+     * mappers are configured.
+     * </p>
+     * 
+     * @param lazyConfiguration true to initialize statements on first use
+     */
+    public void setLazyConfiguration(boolean lazyConfiguration) {
+        config.setLazy(lazyConfiguration);
+    }
+
+    /**
+     * Initialize all statements that were not initialized yet, reporting the
+     * configuration errors. Statements are initialized in the order mappers
+     * were configured, so the same error is reported every time.
+     * 
+     * @throws ConfigurationException configuration is invalid
+     * @see #setLazyConfiguration(boolean)
+     */
+    public void validateAll() throws ConfigurationException {
+        config.validateAll();
+    }
+
+    /**
+     * Register type handler. Type handlers should be registered before the
+     * mappers using them are configured, since result maps and static
+     * statements resolve their type handlers during the configuration.
      * 
      * @param type type for handler
      * @param handler type handler
@@ -123,6 +192,96 @@ public class NanormConfiguration {
         this.autoSessionEnabled = autoSessionEnabled;
     }
 
+    /**
+     * <p>
+     * Set the maximum amount of prepared statements cached per session. The
+     * statements are reused by the queries with the same SQL executed in the
+     * same session and closed when the session ends. When the limit is
+     * reached, least recently used statement is closed.
+     * </p>
+     * <p>
+     * Statements are cached only for sessions that use single connection for
+     * all queries (explicitly provided connection or {@link JDBCSessionConfig}).
+     * Caching is off by default (size 0).
+     * </p>
+     * 
+     * @param statementCacheSize maximum amount of statements cached per
+     * session, 0 to disable the cache
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Statement cache size must not be negative!");
+        }
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * <p>
+     * Set the maximum amount of subselect results memoized per query. Rows
+     * that pass the same value to the same subselect (for example, many
+     * articles of the same category) execute the subselect only once during
+     * the query, including the nested subselects, and share the result
+     * instance. When the limit is reached, least recently used result is
+     * evicted.
+     * </p>
+     * <p>
+     * Memo is off by default (size 0).
+     * </p>
+     * 
+     * @param subselectMemoSize maximum amount of subselect results memoized,
+     * 0 to disable the memo
+     * @see #setSubselectMemoSessionScoped(boolean)
+     */
+    public void setSubselectMemoSize(int subselectMemoSize) {
+        if (subselectMemoSize < 0) {
+            throw new IllegalArgumentException("Subselect memo size must not be negative!");
+        }
+        this.subselectMemoSize = subselectMemoSize;
+    }
+
+    /**
+     * Memoize the subselect results for the whole session rather than for the
+     * single query. The memo is cleared when session executes any statement
+     * other than select or rolls back the transaction.
+     * 
+     * @param subselectMemoSessionScoped true to memoize subselect results for
+     * the whole session
+     * @see #setSubselectMemoSize(int)
+     */
+    public void setSubselectMemoSessionScoped(boolean subselectMemoSessionScoped) {
+        this.subselectMemoSessionScoped = subselectMemoSessionScoped;
+    }
+
+    /**
+     * Set the bus that delivers the table modifications to the result caches.
+     * Every factory keeps its own result caches, even factories built from
+     * this configuration. Factories sharing the same bus invalidate results
+     * of each other. By default, every factory uses its own
+     * {@link LocalInvalidationBus}, so it does not see the modifications made
+     * through the other factories.
+     * 
+     * @param invalidationBus invalidation bus
+     * @see com.google.code.nanorm.annotations.Cached
+     * @see com.google.code.nanorm.annotations.Invalidates
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Set the executor mapping the rows of the pipelined queries. By default,
+     * every factory creates its own pool of worker threads, which is shared
+     * by all its pipelined queries and stopped when factory is closed. The
+     * executor provided here is never shut down by the factory.
+     * 
+     * @param pipelineExecutor executor for the pipelined queries
+     * @see com.google.code.nanorm.annotations.Pipelined
+     * @see NanormFactory#close()
+     */
+    public void setPipelineExecutor(Executor pipelineExecutor) {
+        this.pipelineExecutor = pipelineExecutor;
+    }
+
     /**
      * Build factory.
      * 
@@ -134,7 +293,10 @@ public class NanormConfiguration {
                     "Auto-session feature requires sessionConfig to be set");
         }
 
-        return new FactoryImpl(config, sessionConfig, autoSessionEnabled);
+        return new FactoryImpl(config, sessionConfig, autoSessionEnabled, statementCacheSize,
+                subselectMemoSize, subselectMemoSessionScoped,
+                invalidationBus != null ? invalidationBus : new LocalInvalidationBus(),
+                pipelineExecutor);
     }
 
     private IntrospectionFactory detectFactory() {
@@ -35,4 +35,16 @@ public interface BoundFragment {
      * @param parameters collection of parameters
      */
     void generate(StringBuilder builder, List<ParameterMapper> parameters);
+
+    /**
+     * Append the pieces of SQL fragment and parameters to given collections.
+     * Concatenated pieces give the same SQL as
+     * {@link #generate(StringBuilder, List)} does. Pieces do not depend on
+     * the parameter values, so they could be used as the SQL shape
+     * fingerprint (see {@link SQLShapeCache}).
+     * 
+     * @param pieces SQL pieces
+     * @param parameters collection of parameters
+     */
+    void collect(List<String> pieces, List<ParameterMapper> parameters);
 }
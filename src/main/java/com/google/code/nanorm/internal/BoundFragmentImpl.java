@@ -60,4 +60,14 @@ public class BoundFragmentImpl implements BoundFragment {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void collect(List<String> pieces, List<ParameterMapper> params) {
+        pieces.add(sql);
+        for (ParameterMappingConfig config : paramMappers) {
+            params.add(new ParameterMapper(config, params.size() + 1, parameters));
+        }
+    }
+
 }
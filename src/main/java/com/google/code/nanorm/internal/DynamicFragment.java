@@ -21,6 +21,7 @@ import java.lang.reflect.Method;
 import com.google.code.nanorm.SQLSource;
 import com.google.code.nanorm.exceptions.DynamicSQLException;
 import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
+import com.google.code.nanorm.internal.introspect.SQLSourceInvoker;
 import com.google.code.nanorm.internal.util.ToStringBuilder;
 
 /**
@@ -36,34 +37,36 @@ public class DynamicFragment implements Fragment {
 
     private final IntrospectionFactory introspectionFactory;
 
+    private final TextFragmentCache fragmentCache;
+
+    private final SQLSourceInvoker invoker;
+
     /**
      * Constructor.
      * 
      * @param sqlSource statement SQL builder class
      * @param introspectionFactory introspection factory
+     * @param fragmentCache cache of text fragments used by generated SQL
      */
     public DynamicFragment(Class<? extends SQLSource> sqlSource,
-            IntrospectionFactory introspectionFactory) {
+            IntrospectionFactory introspectionFactory, TextFragmentCache fragmentCache) {
         this.sqlSource = sqlSource;
         this.introspectionFactory = introspectionFactory;
+        this.fragmentCache = fragmentCache;
+        this.invoker = introspectionFactory.buildSQLSourceInvoker(sqlSource,
+                findGenerator(sqlSource));
     }
 
     /**
-     * @see com.google.code.nanorm.internal.Fragment#bindParameters(java.lang.Object[])
+     * Find the generator method of the SQL source.
+     * 
+     * @param sqlSource SQL source class
+     * @return generator method
      */
-    public BoundFragment bindParameters(Object[] parameters) {
+    private static Method findGenerator(Class<? extends SQLSource> sqlSource) {
         for (Method method : sqlSource.getMethods()) {
             if (method.getName().equals(SQLSource.GENERATOR_METHOD)) {
-                try {
-                    SQLSource source = sqlSource.newInstance();
-                    source.setReflFactory(introspectionFactory);
-                    // TODO: Test parameter types
-                    method.invoke(source, parameters);
-                    return source;
-                } catch (Exception e) {
-                    throw new DynamicSQLException(
-                            "Failed to create SQL source and invoke generator method", e);
-                }
+                return method;
             }
         }
         throw new DynamicSQLException("Dynamic SQL generator method "
@@ -72,6 +75,25 @@ public class DynamicFragment implements Fragment {
                 + "' in dynamic SQL source class)");
     }
 
+    /**
+     * @see com.google.code.nanorm.internal.Fragment#bindParameters(java.lang.Object[])
+     */
+    public BoundFragment bindParameters(Object[] parameters) {
+        try {
+            SQLSource source = invoker.newInstance();
+            source.setReflFactory(introspectionFactory);
+            source.setFragmentCache(fragmentCache);
+            // TODO: Test parameter types
+            invoker.generate(source, parameters);
+            return source;
+        } catch (DynamicSQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DynamicSQLException(
+                    "Failed to create SQL source and invoke generator method", e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
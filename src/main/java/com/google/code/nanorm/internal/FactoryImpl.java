@@ -16,6 +16,7 @@
 
 package com.google.code.nanorm.internal;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.Type;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -24,7 +25,16 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,22 +42,25 @@ import org.slf4j.LoggerFactory;
 import com.google.code.nanorm.DataSink;
 import com.google.code.nanorm.NanormFactory;
 import com.google.code.nanorm.Session;
+import com.google.code.nanorm.annotations.Cached;
+import com.google.code.nanorm.annotations.Coalesced;
 import com.google.code.nanorm.annotations.SelectKeyType;
+import com.google.code.nanorm.config.InvalidationBus;
 import com.google.code.nanorm.config.SessionConfig;
 import com.google.code.nanorm.exceptions.ConfigurationException;
 import com.google.code.nanorm.exceptions.DataException;
+import com.google.code.nanorm.internal.cache.CacheRegions;
+import com.google.code.nanorm.internal.cache.ResultCache;
+import com.google.code.nanorm.internal.cache.SingleFlight;
 import com.google.code.nanorm.internal.config.InternalConfiguration;
 import com.google.code.nanorm.internal.config.QueryKind;
 import com.google.code.nanorm.internal.config.StatementConfig;
 import com.google.code.nanorm.internal.config.StatementKey;
-import com.google.code.nanorm.internal.introspect.Getter;
-import com.google.code.nanorm.internal.introspect.Setter;
 import com.google.code.nanorm.internal.mapping.parameter.ParameterMapper;
-import com.google.code.nanorm.internal.mapping.result.DataSinkSource;
-import com.google.code.nanorm.internal.mapping.result.ResultCollectorUtil;
 import com.google.code.nanorm.internal.mapping.result.RowMapper;
 import com.google.code.nanorm.internal.session.SessionSpi;
 import com.google.code.nanorm.internal.session.SingleConnSessionSpi;
+import com.google.code.nanorm.internal.session.StatementCache;
 import com.google.code.nanorm.internal.util.Messages;
 
 /**
@@ -63,7 +76,7 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
     /**
      * Thread local that holds per-thread sessions.
      */
-    private final ThreadLocal<SessionSpi> sessions = new ThreadLocal<SessionSpi>();
+    private final ThreadLocal<TransactionImpl> sessions = new ThreadLocal<TransactionImpl>();
 
     private final InternalConfiguration config;
 
@@ -71,6 +84,66 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
 
     private final boolean autoSessionEnabled;
 
+    private final int statementCacheSize;
+
+    private final AtomicLong statementCacheHits = new AtomicLong();
+
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    private final int subselectMemoSize;
+
+    private final boolean subselectMemoSessionScoped;
+
+    private final InvalidationBus invalidationBus;
+
+    /**
+     * Result caches of the cached statements, by statement. Caches are kept
+     * by the factory, so factories built from the same configuration do not
+     * share the results.
+     */
+    private final ConcurrentMap<StatementConfig, ResultCache> resultCaches =
+            new ConcurrentHashMap<StatementConfig, ResultCache>();
+
+    /**
+     * Result caches of the factory by the tables they read.
+     */
+    private final CacheRegions cacheRegions = new CacheRegions();
+
+    /**
+     * Single flights of the coalesced statements, by statement.
+     */
+    private final ConcurrentMap<StatementConfig, SingleFlight> singleFlights =
+            new ConcurrentHashMap<StatementConfig, SingleFlight>();
+
+    /**
+     * Executor for the pipelined queries provided by the configuration, or
+     * <code>null</code> if factory creates its own.
+     */
+    private final Executor pipelineExecutor;
+
+    /**
+     * Executor for the pipelined queries created by the factory, on first
+     * pipelined query.
+     */
+    private ExecutorService ownPipelineExecutor;
+
+    private boolean closed;
+
+    private final AtomicLong subselectMemoHits = new AtomicLong();
+
+    private final AtomicLong subselectMemoMisses = new AtomicLong();
+
+    /**
+     * Cache of the dynamic SQL, by SQL shape.
+     */
+    private final SQLShapeCache sqlShapes = new SQLShapeCache(SQLShapeCache.DEFAULT_SIZE);
+
+    /**
+     * Mapper instances created for the mapper interfaces, by interface.
+     */
+    private final ConcurrentMap<Class<?>, Object> mappers =
+            new ConcurrentHashMap<Class<?>, Object>();
+
     /**
      * Logger for logging the SQL statements.
      */
@@ -91,12 +164,61 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
      * @param autoSessionEnabled true if autosession feature is enabled (session
      * is created automatically when query is executed). Otherwise, an exception
      * is thrown.
+     * @param statementCacheSize maximum amount of prepared statements cached
+     * per session, 0 disables the statement caching
+     * @param subselectMemoSize maximum amount of subselect results memoized per
+     * query (or per session), 0 disables the memo
+     * @param subselectMemoSessionScoped true if subselect results are memoized
+     * for the whole session rather than for the single query
+     * @param invalidationBus bus delivering the table modifications to the
+     * result caches
+     * @param pipelineExecutor executor mapping the rows of the pipelined
+     * queries or <code>null</code> to create the executor owned by the factory
      */
     public FactoryImpl(InternalConfiguration internalConfig, SessionConfig sessionConfig,
-            boolean autoSessionEnabled) {
+            boolean autoSessionEnabled, int statementCacheSize, int subselectMemoSize,
+            boolean subselectMemoSessionScoped, InvalidationBus invalidationBus,
+            Executor pipelineExecutor) {
         this.config = internalConfig;
         this.sessionSpiConfig = sessionConfig;
         this.autoSessionEnabled = autoSessionEnabled;
+        this.statementCacheSize = statementCacheSize;
+        this.subselectMemoSize = subselectMemoSize;
+        this.subselectMemoSessionScoped = subselectMemoSessionScoped;
+        this.invalidationBus = invalidationBus;
+        this.pipelineExecutor = pipelineExecutor;
+        invalidationBus.subscribe(cacheRegions);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void close() {
+        closed = true;
+        if (ownPipelineExecutor != null) {
+            ownPipelineExecutor.shutdown();
+            ownPipelineExecutor = null;
+        }
+    }
+
+    /**
+     * Get the executor mapping the rows of the pipelined queries. Executor
+     * owned by the factory is created on first request and shared by all the
+     * pipelined queries.
+     * 
+     * @return executor
+     */
+    private synchronized Executor getPipelineExecutor() {
+        if (closed) {
+            throw new IllegalStateException("Factory is closed!");
+        }
+        if (pipelineExecutor != null) {
+            return pipelineExecutor;
+        }
+        if (ownPipelineExecutor == null) {
+            ownPipelineExecutor = PipelinedResultProcessor.newExecutor();
+        }
+        return ownPipelineExecutor;
     }
 
     /**
@@ -110,9 +232,22 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
      * @see com.google.code.nanorm.NanormFactory#createMapper(java.lang.Class)
      */
     public <T> T createMapper(Class<T> mapperClass) throws ConfigurationException {
-        config.configure(mapperClass);
+        // Mapper interfaces are stateless, so single instance is shared
+        if (mapperClass.isInterface()) {
+            Object mapper = mappers.get(mapperClass);
+            if (mapper == null) {
+                config.configure(mapperClass);
+                mapper = config.getIntrospectionFactory().createMapper(mapperClass, config, this);
+                Object prev = mappers.putIfAbsent(mapperClass, mapper);
+                if (prev != null) {
+                    mapper = prev;
+                }
+            }
+            return mapperClass.cast(mapper);
+        }
 
-        // TODO: Check we mapped this class and return existing one!
+        // Abstract class mappers could have state, new instance every time
+        config.configure(mapperClass);
         return config.getIntrospectionFactory().createMapper(mapperClass, config, this);
     }
 
@@ -127,9 +262,7 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
             throw new IllegalStateException("Session was already started for this thread!");
         }
 
-        final SessionSpi spi = sessionSpiConfig.newSessionSpi();
-        sessions.set(spi);
-        return new TransactionImpl(spi);
+        return bindSession(sessionSpiConfig.newSessionSpi());
     }
 
     /**
@@ -143,22 +276,273 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
             throw new IllegalStateException("Session was already started for this thread!");
         }
 
-        final SessionSpi spi = new SingleConnSessionSpi(connection);
-        sessions.set(spi);
-        return new TransactionImpl(spi);
+        return bindSession(new SingleConnSessionSpi(connection));
+    }
+
+    /**
+     * Bind the session to the current thread.
+     * 
+     * @param spi session SPI
+     * @return session
+     */
+    private Session bindSession(SessionSpi spi) {
+        StatementCache cache = null;
+        if (statementCacheSize > 0 && spi.isSingleConnection()) {
+            cache = new StatementCache(statementCacheSize);
+        }
+        SubselectMemo memo = null;
+        if (subselectMemoSize > 0 && subselectMemoSessionScoped) {
+            memo = new SubselectMemo(subselectMemoSize);
+        }
+        TransactionImpl session = new TransactionImpl(spi, cache, memo);
+        sessions.set(session);
+        return session;
+    }
+
+    /**
+     * Get the amount of queries that reused the prepared statement from the
+     * statement cache. Counted for all sessions finished so far.
+     * 
+     * @return statement cache hits
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    /**
+     * Get the amount of queries that prepared new statement while statement
+     * cache was enabled. Counted for all sessions finished so far.
+     * 
+     * @return statement cache misses
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    /**
+     * Get the amount of subselects served from the subselect memo. Counted for
+     * all queries (or sessions, if memo is session-scoped) finished so far.
+     * 
+     * @return subselect memo hits
+     */
+    public long getSubselectMemoHits() {
+        return subselectMemoHits.get();
+    }
+
+    /**
+     * Get the amount of subselects executed while subselect memo was enabled.
+     * Counted for all queries (or sessions, if memo is session-scoped)
+     * finished so far.
+     * 
+     * @return subselect memo misses
+     */
+    public long getSubselectMemoMisses() {
+        return subselectMemoMisses.get();
     }
 
     /**
      * {@inheritDoc}
+     * 
+     * Static select-by-id query mapping a single bean in the opened session
+     * allocates at most 512 bytes besides the JDBC driver: the arguments
+     * array, the request, the result data sink and the result bean.
      */
     public Object query(StatementConfig stConfig, Object[] args) {
+        return queryCached(stConfig, args, null);
+    }
+
+    /**
+     * Execute the query through the result cache and the single flight, if
+     * enabled for the statement.
+     * 
+     * @param stConfig statement configuration
+     * @param args query arguments
+     * @param parentMemo subselect memo of the query the subselect is executed
+     * for or <code>null</code> for the top-level query
+     * @return query result
+     */
+    private Object queryCached(final StatementConfig stConfig, final Object[] args,
+            final SubselectMemo parentMemo) {
+        ResultCache resultCache = getResultCache(stConfig);
+        SingleFlight singleFlight = getSingleFlight(stConfig);
+        TransactionImpl session = sessions.get();
+        if (session != null) {
+            if (resultCache != null && session.isModified(stConfig.getCachedTables())) {
+                // Session reads its own uncommitted modifications, they must
+                // not be taken from or put into the shared cache
+                resultCache = null;
+            }
+            // Query is executed in the session transaction, its result must
+            // not be shared with the threads using other sessions (or no
+            // session at all)
+            singleFlight = null;
+        }
+        if (resultCache == null && singleFlight == null) {
+            Object result = queryMemoized(stConfig, args, parentMemo);
+            if (stConfig.getInvalidatedTables() != null) {
+                invalidate(stConfig.getInvalidatedTables());
+            }
+            return result;
+        }
+
+        Object key = ResultCache.key(args);
+        long generation = 0;
+        if (resultCache != null) {
+            Object result = resultCache.get(key);
+            if (result != ResultCache.MISSING) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Query result of " + stConfig.getId()
+                            + " is taken from the cache");
+                }
+                return result;
+            }
+            generation = resultCache.getGeneration();
+        }
+
+        Object result;
+        if (singleFlight != null) {
+            // Concurrent queries with the same arguments wait for this one
+            result = singleFlight.execute(key, new Callable<Object>() {
+                public Object call() {
+                    return queryMemoized(stConfig, args, parentMemo);
+                }
+            });
+        } else {
+            result = queryMemoized(stConfig, args, parentMemo);
+        }
+        if (resultCache != null) {
+            resultCache.put(key, result, generation);
+        }
+        return result;
+    }
+
+    /**
+     * Get the result cache of the statement, created on first use.
+     * 
+     * @param stConfig statement configuration
+     * @return result cache or <code>null</code> if statement results are not
+     * cached
+     */
+    public ResultCache getResultCache(StatementConfig stConfig) {
+        Cached cached = stConfig.getCached();
+        if (cached == null) {
+            return null;
+        }
+        ResultCache resultCache = resultCaches.get(stConfig);
+        if (resultCache == null) {
+            // Cache must be registered before any thread could put the result
+            // into it, otherwise the invalidation could be missed
+            synchronized (resultCaches) {
+                resultCache = resultCaches.get(stConfig);
+                if (resultCache == null) {
+                    resultCache = new ResultCache(cached.maxEntries(), cached.ttl());
+                    cacheRegions.register(resultCache, cached.tables());
+                    resultCaches.put(stConfig, resultCache);
+                }
+            }
+        }
+        return resultCache;
+    }
+
+    /**
+     * Get the single flight of the statement, created on first use.
+     * 
+     * @param stConfig statement configuration
+     * @return single flight or <code>null</code> if statement executions are
+     * not coalesced
+     */
+    public SingleFlight getSingleFlight(StatementConfig stConfig) {
+        Coalesced coalesced = stConfig.getCoalesced();
+        if (coalesced == null) {
+            return null;
+        }
+        SingleFlight singleFlight = singleFlights.get(stConfig);
+        if (singleFlight == null) {
+            singleFlight = new SingleFlight(coalesced.copy());
+            SingleFlight prev = singleFlights.putIfAbsent(stConfig, singleFlight);
+            if (prev != null) {
+                singleFlight = prev;
+            }
+        }
+        return singleFlight;
+    }
+
+    /**
+     * Invalidate the results read from the modified tables. If session is
+     * opened, invalidation is deferred until the session is committed.
+     * 
+     * @param tables names of the modified tables
+     */
+    private void invalidate(Set<String> tables) {
+        TransactionImpl session = sessions.get();
+        if (session != null) {
+            session.invalidatedTables.addAll(tables);
+        } else {
+            invalidationBus.publish(tables);
+        }
+    }
+
+    /**
+     * Execute the query with the subselect memo of the session or the
+     * top-level query. Memo of the top-level query is passed to its subselects
+     * through the request, so queries executed by the user code invoked while
+     * the result is mapped (data sinks, for example) get their own memo.
+     * 
+     * @param stConfig statement configuration
+     * @param args query arguments
+     * @param parentMemo subselect memo of the query the subselect is executed
+     * for or <code>null</code> for the top-level query
+     * @return query result
+     */
+    private Object queryMemoized(StatementConfig stConfig, Object[] args,
+            SubselectMemo parentMemo) {
+        TransactionImpl session = sessions.get();
+        if (session != null && session.subselectMemo != null) {
+            // Modified data could be memoized
+            if (stConfig.getKind() != QueryKind.SELECT) {
+                session.subselectMemo.clear();
+            }
+            return query(stConfig, args, session.subselectMemo);
+        }
+
+        if (parentMemo != null || subselectMemoSize == 0) {
+            return query(stConfig, args, parentMemo);
+        }
+
+        // Top-level query, memo is shared by all its subselects
+        SubselectMemo memo = new SubselectMemo(subselectMemoSize);
+        try {
+            return query(stConfig, args, memo);
+        } finally {
+            subselectMemoHits.addAndGet(memo.getHits());
+            subselectMemoMisses.addAndGet(memo.getMisses());
+        }
+    }
+
+    /**
+     * Execute the query.
+     * 
+     * Simple select of the static statement (no subselects, nested maps or
+     * groupBy) allocates only the request, the result data sink and the result
+     * objects, everything else is prepared once per statement. Keep it this
+     * way, see TestQueryAllocation.
+     * 
+     * @param stConfig statement configuration
+     * @param args query arguments
+     * @param memo subselect memo, could be <code>null</code>
+     * @return query result
+     */
+    private Object query(StatementConfig stConfig, Object[] args, SubselectMemo memo) {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Executing the query " + stConfig.getId());
         }
-        // Request-scoped data
-        Request request = new Request(this);
+        // Request-scoped data, subselects are executed with the memo of the
+        // request
+        Request request = new Request(memo != null ? new SubselectDelegate(memo) : this, memo);
 
-        SessionSpi spi = sessions.get();
+        TransactionImpl session = sessions.get();
+        SessionSpi spi = session != null ? session.spi : null;
+        StatementCache cache = session != null ? session.statementCache : null;
         boolean isAuto = false;
         if (spi == null) {
             if (!autoSessionEnabled) {
@@ -170,21 +554,36 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
             spi = sessionSpiConfig.newSessionSpi();
         }
 
+        // Cursor releases the connection and session itself, once it is closed
+        ResultCursor cursor = null;
+
         // Close session spi after this block if in auto mode
         try {
+            if (stConfig.isBatch()) {
+                // Batch statements are executed once for every element of
+                // the first argument, the result is the update counts
+                return executeBatch(spi, cache, stConfig, args);
+            }
+
             // Generate key prior to mapping the parameters, so we
             // have a chance to update arguments with generated key
             selectKey(request, stConfig, false, args);
 
-            // Bind fragment to arguments
-            BoundFragment fragment = stConfig.getStatementBuilder().bindParameters(args);
-
-            // SQL, parameters and their types
-            StringBuilder sql = new StringBuilder();
-            List<ParameterMapper> parameters = new ArrayList<ParameterMapper>();
-
-            // Fill SQL string builder and parameter mappers
-            fragment.generate(sql, parameters);
+            // Static statements are executed using the precompiled plan,
+            // others are bound to the arguments to generate SQL and parameters
+            StatementPlan plan = stConfig.getPlan();
+            String sql;
+            List<ParameterMapper> parameters = null;
+            if (plan != null) {
+                sql = plan.getSql();
+            } else {
+                // Bind fragment to arguments
+                BoundFragment fragment = stConfig.getStatementBuilder().bindParameters(args);
+
+                // SQL, parameters and their types
+                parameters = new ArrayList<ParameterMapper>();
+                sql = generate(fragment, parameters);
+            }
 
             // Close connection after this try
             Connection conn = spi.getConnection();
@@ -194,9 +593,11 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
                 }
 
                 if (LOGGER_SQL.isDebugEnabled()) {
-                    LOGGER_SQL.debug(sql.toString());
+                    LOGGER_SQL.debug(sql);
                     if (LOGGER_SQL.isTraceEnabled()) {
-                        LOGGER_SQL.trace("Parameters: " + parameters.toString());
+                        LOGGER_SQL.trace("Parameters: "
+                                + (plan != null ? plan.parametersToString(args) : parameters
+                                        .toString()));
                     }
                 }
 
@@ -204,25 +605,34 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
                 boolean hasJDBCKey = stConfig.getSelectKeyType() == SelectKeyType.AFTER
                         && stConfig.getSelectKey().getStatementBuilder() == null;
 
-                // Prepare the statement
-                PreparedStatement st;
-                if (stConfig.getKind() == QueryKind.CALL) {
-                    st = conn.prepareCall(sql.toString(), stConfig.getResultSetType(), stConfig
-                            .getResultSetConcurrency());
+                // Prepare the statement or take it from the session cache
+                // (cursor statements are never cached, they could stay open
+                // after the query)
+                StatementCache.Key cacheKey = null;
+                PreparedStatement st = null;
+                if (cache != null && !stConfig.isCursor()) {
+                    cacheKey = new StatementCache.Key(sql, stConfig.getKind() == QueryKind.CALL,
+                            hasJDBCKey, stConfig.getResultSetType(), stConfig
+                                    .getResultSetConcurrency());
+                    st = cache.acquire(cacheKey);
+                }
+                if (st == null) {
+                    st = prepareStatement(conn, stConfig, sql, hasJDBCKey);
+                }
 
+                if (stConfig.getKind() == QueryKind.CALL) {
                     // Register OUT parameters
                     CallableStatement cs = (CallableStatement) st;
-                    for (ParameterMapper mapper : parameters) {
-                        // TODO: Void.class handling (null parameters)
-                        mapper.registerOutParameter(config.getTypeHandlerFactory(), cs);
-                    }
-                } else {
-                    if (hasJDBCKey) {
-                        st = conn.prepareStatement(sql.toString(),
-                                Statement.RETURN_GENERATED_KEYS);
+                    if (plan != null) {
+                        // Call without OUT parameters needs no registration
+                        if (plan.hasOutParameters()) {
+                            plan.registerOutParameters(cs);
+                        }
                     } else {
-                        st = conn.prepareStatement(sql.toString(), stConfig.getResultSetType(),
-                                stConfig.getResultSetConcurrency());
+                        for (ParameterMapper mapper : parameters) {
+                            // TODO: Void.class handling (null parameters)
+                            mapper.registerOutParameter(config.getTypeHandlerFactory(), cs);
+                        }
                     }
                 }
 
@@ -230,12 +640,17 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
                 st.setFetchSize(stConfig.getFetchSize());
                 st.setFetchDirection(stConfig.getFetchDirection());
 
-                // Close statement after this try
+                // Close statement (or return it to the cache) after this try
+                boolean reusable = false;
                 try {
                     // Map parameters to the statement
-                    for (ParameterMapper mapper : parameters) {
-                        // TODO: Void.class handling (null parameters)
-                        mapper.mapParameterIn(config.getTypeHandlerFactory(), st);
+                    if (plan != null) {
+                        plan.mapParametersIn(st, args);
+                    } else {
+                        for (ParameterMapper mapper : parameters) {
+                            // TODO: Void.class handling (null parameters)
+                            mapper.mapParameterIn(config.getTypeHandlerFactory(), st);
+                        }
                     }
 
                     if (stConfig.getKind() == QueryKind.INSERT) {
@@ -260,6 +675,10 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
                     } else if (stConfig.getKind() == QueryKind.UPDATE) {
                         // The result is amount of rows updated
                         request.setResult(st.executeUpdate());
+                    } else if (stConfig.isCursor()) {
+                        // Rows are mapped while cursor is iterated
+                        cursor = new ResultCursor(stConfig.getRowMapper(), request, st, st
+                                .executeQuery(), spi, conn, isAuto);
                     } else {
                         processResultSet(stConfig, args, request, st.executeQuery());
                     }
@@ -267,31 +686,49 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
                     // Map OUT parameters
                     if (stConfig.getKind() == QueryKind.CALL) {
                         CallableStatement cs = (CallableStatement) st;
-                        for (ParameterMapper mapper : parameters) {
-                            // TODO: Void.class handling (null parameters)
-                            mapper.mapParameterOut(config.getTypeHandlerFactory(), cs);
+                        if (plan != null) {
+                            if (plan.hasOutParameters()) {
+                                plan.mapParametersOut(cs, args);
+                            }
+                        } else {
+                            for (ParameterMapper mapper : parameters) {
+                                // TODO: Void.class handling (null parameters)
+                                mapper.mapParameterOut(config.getTypeHandlerFactory(), cs);
+                            }
                         }
                     }
+                    reusable = cache != null && cursor == null;
                 } finally {
-                    st.close();
+                    // Statement that failed is never reused, its state is
+                    // unknown. Cursor closes the statement itself.
+                    if (reusable) {
+                        cache.release(cacheKey, st);
+                    } else if (cursor == null) {
+                        st.close();
+                    }
                 }
             } catch (SQLException e) {
                 throw new DataException("SQL exception occured while executing the query!", e);
             } finally {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Releasing the connection " + conn);
-                }
-                try {
-                    spi.releaseConnection(conn);
-                } catch (DataException e) {
-                    LOGGER.error("Failed to release the connection.", e);
+                if (cursor == null) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Releasing the connection " + conn);
+                    }
+                    try {
+                        spi.releaseConnection(conn);
+                    } catch (DataException e) {
+                        LOGGER.error("Failed to release the connection.", e);
+                    }
                 }
             }
         } finally {
-            if (isAuto) {
+            if (isAuto && cursor == null) {
                 spi.end();
             }
         }
+        if (cursor != null) {
+            return cursor;
+        }
         if (request.getResult() == null) {
             checkNotPrimitive(stConfig);
         }
@@ -301,6 +738,215 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
         return request.getResult();
     }
 
+    /**
+     * Execute the statement in batch, binding it to each element of the first
+     * argument in turn. Consecutive elements generating the same SQL share the
+     * prepared statement, the batch is sent to the database each time the
+     * batch size is reached, the SQL changes or the elements are exhausted.
+     * 
+     * @param spi session spi
+     * @param cache statement cache, could be null
+     * @param stConfig statement configuration
+     * @param args query arguments
+     * @return update counts, one for each element
+     */
+    private int[] executeBatch(SessionSpi spi, StatementCache cache, StatementConfig stConfig,
+            Object[] args) {
+        List<Object> elements = batchElements(args[0]);
+        int[] counts = new int[elements.size()];
+        if (elements.isEmpty()) {
+            return counts;
+        }
+
+        // Arguments for the single element
+        Object[] elementArgs = args.clone();
+        int batchSize = stConfig.getBatchSize();
+        StatementPlan plan = stConfig.getPlan();
+
+        // Close connection after this try
+        Connection conn = spi.getConnection();
+        try {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Using the connection " + conn);
+            }
+
+            String currentSql = null;
+            StatementCache.Key cacheKey = null;
+            PreparedStatement st = null;
+            int executed = 0;
+            int pending = 0;
+
+            // Close statement (or return it to the cache) after this try
+            boolean reusable = false;
+            try {
+                for (Object element : elements) {
+                    elementArgs[0] = element;
+
+                    String text;
+                    List<ParameterMapper> parameters = null;
+                    if (plan != null) {
+                        text = plan.getSql();
+                    } else {
+                        // Bind fragment to the element
+                        BoundFragment fragment = stConfig.getStatementBuilder().bindParameters(
+                                elementArgs);
+
+                        parameters = new ArrayList<ParameterMapper>();
+                        text = generate(fragment, parameters);
+                    }
+
+                    // Dynamic SQL could be different for different elements,
+                    // in that case the statement is executed and replaced
+                    if (!text.equals(currentSql)) {
+                        if (st != null) {
+                            executed = flushBatch(st, counts, executed);
+                            pending = 0;
+
+                            PreparedStatement prev = st;
+                            st = null;
+                            if (cache != null) {
+                                cache.release(cacheKey, prev);
+                            } else {
+                                prev.close();
+                            }
+                        }
+
+                        if (LOGGER_SQL.isDebugEnabled()) {
+                            LOGGER_SQL.debug(text);
+                        }
+
+                        if (cache != null) {
+                            cacheKey = new StatementCache.Key(text, false, false, stConfig
+                                    .getResultSetType(), stConfig.getResultSetConcurrency());
+                            st = cache.acquire(cacheKey);
+                        }
+                        if (st == null) {
+                            st = prepareStatement(conn, stConfig, text, false);
+                        }
+                        currentSql = text;
+                    }
+
+                    if (LOGGER_SQL.isTraceEnabled()) {
+                        LOGGER_SQL.trace("Parameters: "
+                                + (plan != null ? plan.parametersToString(elementArgs)
+                                        : parameters.toString()));
+                    }
+
+                    // Map parameters to the statement
+                    if (plan != null) {
+                        plan.mapParametersIn(st, elementArgs);
+                    } else {
+                        for (ParameterMapper mapper : parameters) {
+                            mapper.mapParameterIn(config.getTypeHandlerFactory(), st);
+                        }
+                    }
+                    st.addBatch();
+                    pending++;
+
+                    if (batchSize > 0 && pending == batchSize) {
+                        executed = flushBatch(st, counts, executed);
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    executed = flushBatch(st, counts, executed);
+                }
+                reusable = cache != null;
+            } finally {
+                if (st != null) {
+                    if (reusable) {
+                        cache.release(cacheKey, st);
+                    } else {
+                        st.close();
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataException("SQL exception occured while executing the batch!", e);
+        } finally {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Releasing the connection " + conn);
+            }
+            try {
+                spi.releaseConnection(conn);
+            } catch (DataException e) {
+                LOGGER.error("Failed to release the connection.", e);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Generate SQL and parameters for the bound fragment. SQL of the same
+     * shape is taken from the shape cache instead of being concatenated again.
+     * 
+     * @param fragment bound fragment
+     * @param parameters list to add parameters to
+     * @return SQL
+     */
+    private String generate(BoundFragment fragment, List<ParameterMapper> parameters) {
+        List<String> pieces = new ArrayList<String>();
+        fragment.collect(pieces, parameters);
+        return sqlShapes.toSQL(pieces);
+    }
+
+    /**
+     * Send the batch to the database and copy the update counts.
+     * 
+     * @param st statement
+     * @param counts update counts for the whole batch
+     * @param offset position of the first update count
+     * @return position after the last copied update count
+     * @throws SQLException
+     */
+    private int flushBatch(PreparedStatement st, int[] counts, int offset) throws SQLException {
+        int[] result = st.executeBatch();
+        int len = Math.min(result.length, counts.length - offset);
+        System.arraycopy(result, 0, counts, offset, len);
+        return offset + len;
+    }
+
+    /**
+     * Get the elements of the batch argument.
+     * 
+     * @param batch batch argument, array or collection
+     * @return list of the elements
+     */
+    private List<Object> batchElements(Object batch) {
+        List<Object> elements = new ArrayList<Object>();
+        if (batch instanceof Collection<?>) {
+            elements.addAll((Collection<?>) batch);
+        } else if (batch != null) {
+            int len = Array.getLength(batch);
+            for (int i = 0; i < len; ++i) {
+                elements.add(Array.get(batch, i));
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Prepare the statement for given statement configuration.
+     * 
+     * @param conn connection
+     * @param stConfig statement configuration
+     * @param sql final SQL text
+     * @param hasJDBCKey if statement should return generated keys
+     * @return prepared statement
+     * @throws SQLException any SQL error
+     */
+    private PreparedStatement prepareStatement(Connection conn, StatementConfig stConfig,
+            String sql, boolean hasJDBCKey) throws SQLException {
+        if (stConfig.getKind() == QueryKind.CALL) {
+            return conn.prepareCall(sql, stConfig.getResultSetType(), stConfig
+                    .getResultSetConcurrency());
+        } else if (hasJDBCKey) {
+            return conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        }
+        return conn.prepareStatement(sql, stConfig.getResultSetType(), stConfig
+                .getResultSetConcurrency());
+    }
+
     /**
      * Process the result set. Iterate through the rows and map the data to the
      * beans.
@@ -317,12 +963,27 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
         try {
             // Create callback that will receive the mapped objects
             DataSink<Object> callback = createResultSink(stConfig, args, request);
+            if (stConfig.getCallbackIndex() != StatementConfig.RETURN_VALUE) {
+                // User data sink receives the objects once their batch
+                // subselects are executed
+                callback = new DeferredDataSink(callback, request);
+            }
 
             // Iterate through the result set
             RowMapper rowMapper = stConfig.getRowMapper();
-            while (rs.next()) {
-                rowMapper.processResultSet(request, rs, callback);
+            if (stConfig.getPipelined() != null) {
+                // Rows are mapped by the worker threads
+                new PipelinedResultProcessor(rowMapper, request, stConfig.getPipelined(),
+                        getPipelineExecutor()).process(rs, callback);
+            } else {
+                while (rs.next()) {
+                    rowMapper.processResultSet(request, rs, callback);
+                }
+                rowMapper.finishResultSet(request, callback);
             }
+            // Batch subselects are executed for all the rows at once, then
+            // objects kept by the deferred data sink are pushed
+            request.processDeferred();
             callback.commitData();
 
             // Commit all callbacks used in the request
@@ -349,12 +1010,9 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
             DataSink<Object> temp = (DataSink<Object>) args[stConfig.getCallbackIndex()];
             sink = temp;
         } else {
-            // Prepare data sink and process results
-            ResultGetterSetter rgs = new ResultGetterSetter(stConfig.getResultType());
-            DataSinkSource sinkSource = ResultCollectorUtil.createDataSinkSource(rgs, rgs,
-                    stConfig);
-
-            sink = sinkSource.forInstance(request);
+            // Prepare data sink and process results. Data sink source is
+            // created by the statement initializer.
+            sink = stConfig.getResultSinkSource().forInstance(request);
         }
         return sink;
     }
@@ -406,40 +1064,67 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
         }
     }
 
-    private static class ResultGetterSetter implements Getter, Setter {
-
-        private final Type type;
+    /**
+     * Query delegate executing the subselects of the request with its memo.
+     * 
+     * @author Ivan Dubrov
+     */
+    private class SubselectDelegate implements QueryDelegate {
+        private final SubselectMemo memo;
 
-        /**
-         * Constructor.
-         * 
-         * @param type result map result type.
-         */
-        private ResultGetterSetter(Type type) {
-            this.type = type;
+        private SubselectDelegate(SubselectMemo memo) {
+            this.memo = memo;
         }
 
         /**
          * {@inheritDoc}
          */
-        public Type getType() {
-            return type;
+        public Object query(StatementConfig config, Object[] args) {
+            return queryCached(config, args, memo);
+        }
+    }
+
+    /**
+     * Data sink that keeps the objects while there are rows waiting for the
+     * batch subselects, so the target sink receives the objects with the batch
+     * subselect properties set. Objects are pushed in the order they are
+     * mapped in. Batch subselects must be executed before the sink is
+     * committed.
+     * 
+     * @author Ivan Dubrov
+     */
+    private static class DeferredDataSink implements DataSink<Object> {
+        private final DataSink<Object> target;
+
+        private final Request request;
+
+        private final List<Object> pending = new ArrayList<Object>();
+
+        private DeferredDataSink(DataSink<Object> target, Request request) {
+            this.target = target;
+            this.request = request;
         }
 
         /**
          * {@inheritDoc}
          */
-        public Object getValue(Object instance) {
-            Request request = (Request) instance;
-            return request.getResult();
+        public void pushData(Object obj) {
+            if (request.hasDeferred() || !pending.isEmpty()) {
+                pending.add(obj);
+            } else {
+                target.pushData(obj);
+            }
         }
 
         /**
          * {@inheritDoc}
          */
-        public void setValue(Object instance, Object value) {
-            Request request = (Request) instance;
-            request.setResult(value);
+        public void commitData() {
+            for (Object obj : pending) {
+                target.pushData(obj);
+            }
+            pending.clear();
+            target.commitData();
         }
     }
 
@@ -450,13 +1135,29 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
 
         private final SessionSpi spi;
 
+        private final StatementCache statementCache;
+
+        private final SubselectMemo subselectMemo;
+
+        /**
+         * Tables modified in the session, but not committed yet.
+         */
+        private final Set<String> invalidatedTables = new HashSet<String>();
+
         /**
          * Constructor.
          * 
          * @param spi {@link SessionSpi} implementation.
+         * @param statementCache prepared statements cache, could be
+         * {@literal null}
+         * @param subselectMemo session-scoped subselect memo, could be
+         * {@literal null}
          */
-        TransactionImpl(SessionSpi spi) {
+        TransactionImpl(SessionSpi spi, StatementCache statementCache,
+                SubselectMemo subselectMemo) {
             this.spi = spi;
+            this.statementCache = statementCache;
+            this.subselectMemo = subselectMemo;
         }
 
         /**
@@ -465,6 +1166,7 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
         public void commit() {
             checkThread();
             spi.commit();
+            publishInvalidations();
         }
 
         /**
@@ -475,7 +1177,20 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
 
             // Remove from active sessions thread local
             sessions.remove();
-            spi.end();
+            if (subselectMemo != null) {
+                subselectMemoHits.addAndGet(subselectMemo.getHits());
+                subselectMemoMisses.addAndGet(subselectMemo.getMisses());
+            }
+            try {
+                closeStatementCache();
+            } finally {
+                try {
+                    spi.end();
+                } finally {
+                    // Modifications could be committed externally
+                    publishInvalidations();
+                }
+            }
         }
 
         /**
@@ -483,11 +1198,65 @@ public class FactoryImpl implements NanormFactory, QueryDelegate {
          */
         public void rollback() {
             checkThread();
-            spi.rollback();
+            if (subselectMemo != null) {
+                // Memoized results could be rolled back
+                subselectMemo.clear();
+            }
+            try {
+                spi.rollback();
+            } finally {
+                // Results cached by other sessions could include the
+                // modifications that are rolled back (read uncommitted)
+                publishInvalidations();
+            }
+        }
+
+        /**
+         * Check if any of the given tables was modified in the session and
+         * not committed yet.
+         * 
+         * @param tables names of the tables in lower case
+         * @return if any of the tables was modified
+         */
+        private boolean isModified(Set<String> tables) {
+            if (invalidatedTables.isEmpty()) {
+                return false;
+            }
+            for (String table : tables) {
+                if (invalidatedTables.contains(table)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Close the cached statements (before the connection is released) and
+         * account the cache statistics.
+         */
+        private void closeStatementCache() {
+            if (statementCache != null) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Closing the statement cache " + statementCache);
+                }
+                statementCacheHits.addAndGet(statementCache.getHits());
+                statementCacheMisses.addAndGet(statementCache.getMisses());
+                statementCache.close();
+            }
+        }
+
+        /**
+         * Publish the tables modified in the session.
+         */
+        private void publishInvalidations() {
+            if (!invalidatedTables.isEmpty()) {
+                invalidationBus.publish(new HashSet<String>(invalidatedTables));
+                invalidatedTables.clear();
+            }
         }
 
         private void checkThread() {
-            if (sessions.get() != spi) {
+            if (sessions.get() != this) {
                 throw new IllegalStateException("This transaction is not bound to this thread!");
             }
         }
@@ -28,26 +28,61 @@ import com.google.code.nanorm.internal.util.ToStringBuilder;
 public final class Key {
     private final Object[] tuple;
 
+    private final int hashCode;
+
     /**
      * Constructor.
      * @param tuple tuple of values that identify given object.
      */
     public Key(Object[] tuple) {
         this.tuple = tuple;
+
+        // Hash code is computed once
+        this.hashCode = hashCode(tuple);
     }
 
     /**
-     * @see java.lang.Object#hashCode()
+     * Compute the hash code of the key with given values, without creating
+     * the key.
+     * 
+     * @param tuple tuple of values, could contain <code>null</code>
+     * @return hash code of the key
      */
-    @Override
-    public int hashCode() {
+    public static int hashCode(Object[] tuple) {
         int code = 0;
         for (int i = 0; i < tuple.length; ++i) {
-            code |= tuple[i].hashCode();
+            code = code * 31 + (tuple[i] != null ? tuple[i].hashCode() : 0);
         }
         return code;
     }
 
+    /**
+     * Check if key consists of given values, without creating the key for
+     * them.
+     * 
+     * @param other tuple of values, could contain <code>null</code>
+     * @return if key is equal to the key with given values
+     */
+    public boolean matches(Object[] other) {
+        if (tuple.length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < tuple.length; ++i) {
+            if (tuple[i] != null ? !tuple[i].equals(other[i]) : other[i] != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
     /**
      * @see java.lang.Object#equals(java.lang.Object)
      */
@@ -63,19 +98,7 @@ public final class Key {
             return false;
         }
         Key other = (Key) obj;
-        if (tuple.length != other.tuple.length) {
-            return false;
-        }
-        for (int i = 0; i < tuple.length; ++i) {
-            if (tuple[i] != null) {
-                if (!tuple[i].equals(other.tuple[i])) {
-                    return false;
-                }
-            } else if (other.tuple[i] != null) {
-                return false;
-            }
-        }
-        return true;
+        return hashCode == other.hashCode && matches(other.tuple);
     }
 
     /**
@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.annotations.Pipelined;
+import com.google.code.nanorm.exceptions.DataException;
+import com.google.code.nanorm.internal.mapping.result.RowMapper;
+import com.google.code.nanorm.internal.mapping.result.RowSnapshot;
+
+/**
+ * Processes the result set of the pipelined query. The calling thread fetches
+ * the rows and captures them as {@link RowSnapshot} instances, the rows are
+ * mapped by the worker threads and the results are passed to the data sink by
+ * the calling thread again, either in the order of the rows or in the order of
+ * completion. At most {@link Pipelined#bufferSize()} rows are in flight.
+ * 
+ * Worker threads are taken from the executor shared by all pipelined queries
+ * of the factory, at most {@link Pipelined#threads()} of them map the rows of
+ * the single query at the same time.
+ * 
+ * @author Ivan Dubrov
+ */
+public class PipelinedResultProcessor {
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private final RowMapper rowMapper;
+
+    private final Request request;
+
+    private final Pipelined config;
+
+    private final Executor executor;
+
+    /**
+     * Constructor.
+     * 
+     * @param rowMapper row mapper
+     * @param request request the rows are fetched in
+     * @param config pipelined fetch configuration
+     * @param executor executor running the worker threads
+     */
+    public PipelinedResultProcessor(RowMapper rowMapper, Request request, Pipelined config,
+            Executor executor) {
+        this.rowMapper = rowMapper;
+        this.request = request;
+        this.config = config;
+        this.executor = executor;
+    }
+
+    /**
+     * Create the default executor for the pipelined queries. Worker threads
+     * are daemon threads, created on demand and stopped after being idle for
+     * a minute.
+     * 
+     * @return executor
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newCachedThreadPool(new WorkerFactory());
+    }
+
+    /**
+     * Fetch all rows of the result set, map them and pass to the data sink.
+     * 
+     * @param rs result set
+     * @param sink data sink
+     * @throws SQLException propagated from result set and mapping operations
+     */
+    public void process(ResultSet rs, DataSink<Object> sink) throws SQLException {
+        int threads = config.threads() != 0 ? config.threads() : Runtime.getRuntime()
+                .availableProcessors();
+        WorkerQueue workers = new WorkerQueue(executor, threads);
+        try {
+            // Results in the order of the rows or in the order of completion
+            LinkedList<Future<Object>> ordered = new LinkedList<Future<Object>>();
+            CompletionService<Object> completion = new ExecutorCompletionService<Object>(
+                    workers);
+
+            int inFlight = 0;
+            while (rs.next()) {
+                final RowSnapshot row = rowMapper.captureRow(request, rs);
+                Callable<Object> task = new Callable<Object>() {
+                    public Object call() {
+                        return rowMapper.mapSnapshot(row);
+                    }
+                };
+                if (config.ordered()) {
+                    FutureTask<Object> future = new FutureTask<Object>(task);
+                    workers.execute(future);
+                    ordered.add(future);
+                } else {
+                    completion.submit(task);
+                }
+
+                // Buffer is full, wait for the result
+                if (++inFlight == config.bufferSize()) {
+                    sink.pushData(result(config.ordered() ? ordered.removeFirst() : completion
+                            .take()));
+                    inFlight--;
+                }
+            }
+            for (; inFlight > 0; inFlight--) {
+                sink.pushData(result(config.ordered() ? ordered.removeFirst() : completion
+                        .take()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException("Interrupted while waiting for the row to be mapped!", e);
+        } finally {
+            // Rows not mapped yet are dropped if processing failed
+            workers.cancel();
+        }
+    }
+
+    /**
+     * Get the result of the mapping, rethrowing the mapping failure in the
+     * calling thread.
+     * 
+     * @param future result of the mapping
+     * @return mapped result
+     * @throws SQLException mapping failed with SQL exception
+     * @throws InterruptedException calling thread was interrupted
+     */
+    private Object result(Future<Object> future) throws SQLException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DataException("Failed to map the row!", cause);
+        }
+    }
+
+    /**
+     * Queue of the rows of the single query. Runs at most given amount of
+     * workers on the shared executor, every worker maps the queued rows until
+     * the queue is empty.
+     * 
+     * @author Ivan Dubrov
+     */
+    private static class WorkerQueue implements Executor, Runnable {
+        private final Executor executor;
+
+        private final int threads;
+
+        private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+        private int active;
+
+        WorkerQueue(Executor executor, int threads) {
+            this.executor = executor;
+            this.threads = threads;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void execute(Runnable task) {
+            synchronized (tasks) {
+                tasks.add(task);
+                if (active == threads) {
+                    return;
+                }
+                active++;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (tasks) {
+                    tasks.remove(task);
+                    active--;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run() {
+            while (true) {
+                Runnable task;
+                synchronized (tasks) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        active--;
+                        return;
+                    }
+                }
+                task.run();
+            }
+        }
+
+        /**
+         * Drop the rows not taken by the workers yet.
+         */
+        void cancel() {
+            synchronized (tasks) {
+                tasks.clear();
+            }
+        }
+    }
+
+    /**
+     * Factory for the daemon worker threads.
+     * 
+     * @author Ivan Dubrov
+     */
+    private static class WorkerFactory implements ThreadFactory {
+        private final int pool = POOL_COUNTER.incrementAndGet();
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        /**
+         * {@inheritDoc}
+         */
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "nanorm-pipeline-" + pool + "-"
+                    + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -16,11 +16,19 @@
 
 package com.google.code.nanorm.internal;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.internal.config.StatementConfig;
+import com.google.code.nanorm.internal.mapping.result.BatchSubselect;
 import com.google.code.nanorm.internal.mapping.result.DataSinkSource;
+import com.google.code.nanorm.internal.mapping.result.GroupIndex;
 import com.google.code.nanorm.internal.util.ToStringBuilder;
 
 /**
@@ -33,11 +41,46 @@ public class Request {
 
     private final QueryDelegate queryDelegate;
 
-    private final Map<Object, Map<Key, Object>> key2Objects;
-
     private Object result;
 
-    private final Map<DataSinkKey, DataSink<Object>> callbacks;
+    private final SubselectMemo subselectMemo;
+
+    /**
+     * Group indexes of the row mappers, created lazily.
+     */
+    private Map<Object, GroupIndex> key2Objects;
+
+    /**
+     * Data sinks of the nested properties, created lazily.
+     */
+    private Map<DataSinkKey, DataSink<Object>> callbacks;
+
+    /**
+     * Row mapper the first result set layout belongs to. Layouts of the other
+     * row mappers (nested maps) are kept in the map.
+     */
+    private Object layoutOwner;
+
+    private Object layout;
+
+    private Map<Object, Object> resultLayouts;
+
+    /**
+     * Current groups of the row mappers grouping the ordered rows, created
+     * lazily.
+     */
+    private Map<Object, Object> groups;
+
+    /**
+     * Rows waiting for the batch subselects, created lazily.
+     */
+    private Map<BatchSubselect, DeferredRows> deferred;
+
+    /**
+     * If any batch subselect has collected enough distinct values for the
+     * full batch.
+     */
+    private boolean deferredBatchFull;
 
     /**
      * Constructor.
@@ -45,9 +88,19 @@ public class Request {
      * @param queryDelegate query delegate instance
      */
     public Request(QueryDelegate queryDelegate) {
+        this(queryDelegate, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param queryDelegate query delegate instance
+     * @param subselectMemo memo of the subselect results, could be
+     * <code>null</code>
+     */
+    public Request(QueryDelegate queryDelegate, SubselectMemo subselectMemo) {
         this.queryDelegate = queryDelegate;
-        this.callbacks = new HashMap<DataSinkKey, DataSink<Object>>();
-        this.key2Objects = new HashMap<Object, Map<Key, Object>>();
+        this.subselectMemo = subselectMemo;
     }
 
     /** @return Returns the result. */
@@ -60,16 +113,82 @@ public class Request {
         this.result = result;
     }
 
-    /** @return Returns the key. */
-    public Map<Object, Map<Key, Object>> getKey2Objects() {
+    /** @return Returns the group indexes of the row mappers. */
+    public Map<Object, GroupIndex> getKey2Objects() {
+        if (key2Objects == null) {
+            key2Objects = new HashMap<Object, GroupIndex>();
+        }
         return key2Objects;
     }
 
+    /**
+     * Get the result set layout resolved by the row mapper.
+     * 
+     * @param owner row mapper
+     * @return layout or <code>null</code> if not resolved yet
+     */
+    public Object getResultLayout(Object owner) {
+        if (layoutOwner == owner) {
+            return layout;
+        }
+        return resultLayouts != null ? resultLayouts.get(owner) : null;
+    }
+
+    /**
+     * Store the result set layout resolved by the row mapper.
+     * 
+     * @param owner row mapper
+     * @param resultLayout layout
+     */
+    public void putResultLayout(Object owner, Object resultLayout) {
+        if (layoutOwner == null || layoutOwner == owner) {
+            layoutOwner = owner;
+            layout = resultLayout;
+        } else {
+            if (resultLayouts == null) {
+                resultLayouts = new HashMap<Object, Object>();
+            }
+            resultLayouts.put(owner, resultLayout);
+        }
+    }
+
+    /** @return Returns the current groups of the ordered row mappers. */
+    public Map<Object, Object> getGroups() {
+        if (groups == null) {
+            groups = new HashMap<Object, Object>();
+        }
+        return groups;
+    }
+
+    /**
+     * Get if any row mapper has the group it is still collecting rows for.
+     * 
+     * @return if there are groups not completed yet
+     */
+    public boolean hasGroups() {
+        return groups != null && !groups.isEmpty();
+    }
+
     /** @return Returns the queryDelegate. */
     public QueryDelegate getQueryDelegate() {
         return queryDelegate;
     }
 
+    /**
+     * Execute the subselect for the row. If memo is enabled, subselect is
+     * executed only once for every distinct parameter value.
+     * 
+     * @param stConfig subselect statement configuration
+     * @param value subselect parameter
+     * @return subselect result
+     */
+    public Object querySubselect(StatementConfig stConfig, Object value) {
+        if (subselectMemo != null) {
+            return subselectMemo.query(queryDelegate, stConfig, value);
+        }
+        return queryDelegate.query(stConfig, new Object[] {value });
+    }
+
     /**
      * Search the data sink in the request cache. We cache {@link DataSink}
      * instances using the {@link DataSinkSource} and target object as a key.
@@ -80,6 +199,9 @@ public class Request {
      */
     public DataSink<Object> searchCallback(DataSinkSource source, Object target) {
 
+        if (callbacks == null) {
+            callbacks = new HashMap<DataSinkKey, DataSink<Object>>();
+        }
         DataSinkKey key = new DataSinkKey(source, target);
         DataSink<Object> callback = callbacks.get(key);
 
@@ -94,12 +216,73 @@ public class Request {
      * Commit all data sinks and clear the cache.
      */
     public void commitCallbacks() {
+        if (callbacks == null || callbacks.isEmpty()) {
+            return;
+        }
         for (DataSink<Object> c : callbacks.values()) {
             c.commitData();
         }
         callbacks.clear();
     }
 
+    /**
+     * Defer the batch subselect of the property until the result set is
+     * processed.
+     * 
+     * @param subselect batch subselect
+     * @param target object the row is mapped to
+     * @param value column value passed to the subselect
+     */
+    public void deferSubselect(BatchSubselect subselect, Object target, Object value) {
+        if (deferred == null) {
+            deferred = new LinkedHashMap<BatchSubselect, DeferredRows>();
+        }
+        DeferredRows rows = deferred.get(subselect);
+        if (rows == null) {
+            rows = new DeferredRows();
+            deferred.put(subselect, rows);
+        }
+        rows.targets.add(target);
+        rows.values.add(value);
+        if (value != null && rows.keys.add(value)
+                && rows.keys.size() >= subselect.getConfig().getBatchSize()) {
+            deferredBatchFull = true;
+        }
+    }
+
+    /**
+     * @return Returns if there are rows waiting for the batch subselects.
+     */
+    public boolean hasDeferred() {
+        return deferred != null && !deferred.isEmpty();
+    }
+
+    /**
+     * Get if any batch subselect has collected enough distinct column values
+     * for the full batch, so executing it now would not split the batch.
+     * 
+     * @return if any of the deferred batch subselects is full
+     */
+    public boolean isDeferredBatchFull() {
+        return deferredBatchFull;
+    }
+
+    /**
+     * Execute the deferred batch subselects. Subselects could defer other
+     * subselects, so this is repeated until no subselects are left.
+     */
+    public void processDeferred() {
+        while (deferred != null && !deferred.isEmpty()) {
+            Map<BatchSubselect, DeferredRows> current = deferred;
+            deferred = null;
+            deferredBatchFull = false;
+            for (Map.Entry<BatchSubselect, DeferredRows> entry : current.entrySet()) {
+                DeferredRows rows = entry.getValue();
+                entry.getKey().load(queryDelegate, rows.targets, rows.values);
+            }
+        }
+    }
+
     /**
      * @see java.lang.Object#toString()
      */
@@ -108,4 +291,16 @@ public class Request {
         return new ToStringBuilder(this).append("result", result).append("key2Objects",
                 key2Objects).append("queryDelegate", queryDelegate).toString();
     }
+
+    /**
+     * Rows waiting for the batch subselect: objects the rows are mapped to and
+     * the column values passed to the subselect.
+     */
+    private static class DeferredRows {
+        private final List<Object> targets = new ArrayList<Object>();
+
+        private final List<Object> values = new ArrayList<Object>();
+
+        private final Set<Object> keys = new HashSet<Object>();
+    }
 }
@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.exceptions.DataException;
+import com.google.code.nanorm.internal.mapping.result.RowMapper;
+import com.google.code.nanorm.internal.session.SessionSpi;
+
+/**
+ * Lazy cursor over the open result set, returned by the mapper methods with
+ * {@link Iterator} or {@link Iterable} return type. Rows are mapped on demand,
+ * one row for each {@link #next()} call.
+ * 
+ * Rows with batch subselect properties are mapped ahead, until any of the
+ * batch subselects collects {@link com.google.code.nanorm.annotations.Property#batchSize()}
+ * distinct column values (or rows are exhausted). Then the batch subselects
+ * are executed for the mapped rows and the objects are returned with the
+ * properties set. So the subselect is executed once per batch of rows rather
+ * than for every row, but values repeated in different batches are queried
+ * again.
+ * 
+ * The cursor owns the statement and the connection. Both are released once the
+ * cursor is exhausted or closed, so the cursor must be either iterated to the
+ * end or closed explicitly before the session is finished. The cursor could be
+ * iterated only once.
+ * 
+ * @author Ivan Dubrov
+ */
+public class ResultCursor implements Iterator<Object>, Iterable<Object>, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultCursor.class);
+
+    private final RowMapper rowMapper;
+
+    private final Request request;
+
+    private final Statement st;
+
+    private final ResultSet rs;
+
+    private final SessionSpi spi;
+
+    private final Connection conn;
+
+    private final boolean endSession;
+
+    private final DataSink<Object> sink = new DataSink<Object>() {
+        public void pushData(Object obj) {
+            results.add(obj);
+        }
+
+        public void commitData() {
+            // Nothing, result is taken by the cursor
+        }
+    };
+
+    /**
+     * Objects mapped, but not returned yet.
+     */
+    private final LinkedList<Object> results = new LinkedList<Object>();
+
+    private boolean iterated;
+
+    private boolean closed;
+
+    private boolean exhausted;
+
+    /**
+     * Constructor.
+     * 
+     * @param rowMapper row mapper
+     * @param request request
+     * @param st statement, closed with the cursor
+     * @param rs result set, closed with the cursor
+     * @param spi session the connection is taken from
+     * @param conn connection, released with the cursor
+     * @param endSession if session should be finished when cursor is closed
+     * (for auto-session)
+     */
+    public ResultCursor(RowMapper rowMapper, Request request, Statement st, ResultSet rs,
+            SessionSpi spi, Connection conn, boolean endSession) {
+        this.rowMapper = rowMapper;
+        this.request = request;
+        this.st = st;
+        this.rs = rs;
+        this.spi = spi;
+        this.conn = conn;
+        this.endSession = endSession;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Iterator<Object> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Cursor could be iterated only once!");
+        }
+        iterated = true;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasNext() {
+        if (results.isEmpty() && !closed) {
+            fetch();
+        }
+        return !results.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return results.removeFirst();
+    }
+
+    /**
+     * Not supported.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException("Cursor is read-only!");
+    }
+
+    /**
+     * Close the cursor, releasing the result set, statement and connection.
+     * Could be called several times.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            LOGGER.error("Failed to close ResultSet", e);
+        }
+        try {
+            st.close();
+        } catch (SQLException e) {
+            LOGGER.error("Failed to close Statement", e);
+        }
+        try {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Releasing the connection " + conn);
+            }
+            spi.releaseConnection(conn);
+        } catch (DataException e) {
+            LOGGER.error("Failed to release the connection.", e);
+        } finally {
+            if (endSession) {
+                spi.end();
+            }
+        }
+    }
+
+    /**
+     * Map the rows until the next object is pushed by the row mapper (rows
+     * could be grouped by the ordered result map) and its batch subselects are
+     * executed. Closes the cursor when rows are exhausted or mapping fails.
+     */
+    private void fetch() {
+        boolean done = false;
+        try {
+            while ((results.isEmpty() || request.hasDeferred()) && !exhausted) {
+                if (rs.next()) {
+                    rowMapper.processResultSet(request, rs, sink);
+                    if (request.hasDeferred() && !request.isDeferredBatchFull()) {
+                        // Map more rows for the batch subselects
+                        continue;
+                    }
+                } else {
+                    // The last group is completed
+                    exhausted = true;
+                    rowMapper.finishResultSet(request, sink);
+                }
+                request.processDeferred();
+
+                // Objects mapped from the previous rows are not referenced from
+                // the request anymore, unless the group is not completed yet
+                if (!request.hasGroups()) {
+                    request.commitCallbacks();
+                    request.getKey2Objects().clear();
+                }
+            }
+            done = true;
+        } catch (SQLException e) {
+            throw new DataException("SQL exception occured while fetching the row!", e);
+        } finally {
+            if (!done) {
+                // Objects mapped ahead could miss their batch subselects
+                results.clear();
+            }
+            if (results.isEmpty()) {
+                close();
+            }
+        }
+    }
+}
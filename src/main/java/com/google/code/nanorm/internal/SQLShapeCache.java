@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.code.nanorm.internal.util.ToStringBuilder;
+
+/**
+ * Cache of SQL generated by dynamic statements. Dynamic SQL usually has only
+ * few distinct "shapes", which differ in the optional clauses present. The
+ * shape is identified by the SQL pieces collected from the bound fragments
+ * (see {@link BoundFragment#collect(List, List)}), which do not depend on the
+ * parameter values. Pieces usually are the same string instances from call to
+ * call (SQL templates of cached text fragments and literals), so comparing the
+ * shapes is cheaper than concatenating the SQL. The same SQL string instance
+ * is returned for the same shape, which also makes statement cache lookups
+ * cheaper.
+ * 
+ * The cache is bounded: when it is full, new shapes are not cached anymore.
+ * 
+ * @author Ivan Dubrov
+ */
+public final class SQLShapeCache {
+
+    /**
+     * Default maximum amount of cached shapes.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<List<String>, String> shapes =
+            new ConcurrentHashMap<List<String>, String>();
+
+    /**
+     * Constructor.
+     * 
+     * @param maxSize maximum amount of cached shapes
+     */
+    public SQLShapeCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the SQL for given pieces. The list should not be modified after
+     * this call.
+     * 
+     * @param pieces SQL pieces
+     * @return SQL
+     */
+    public String toSQL(List<String> pieces) {
+        String sql = shapes.get(pieces);
+        if (sql == null) {
+            int length = 0;
+            for (String piece : pieces) {
+                length += piece.length();
+            }
+            StringBuilder builder = new StringBuilder(length);
+            for (String piece : pieces) {
+                builder.append(piece);
+            }
+            sql = builder.toString();
+
+            if (shapes.size() < maxSize) {
+                String prev = shapes.putIfAbsent(pieces, sql);
+                if (prev != null) {
+                    sql = prev;
+                }
+            }
+        }
+        return sql;
+    }
+
+    /**
+     * @return amount of cached shapes
+     */
+    public int size() {
+        return shapes.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("size", shapes.size()).append("maxSize",
+                maxSize).toString();
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import com.google.code.nanorm.TypeHandler;
+import com.google.code.nanorm.internal.config.ParameterMappingConfig;
+import com.google.code.nanorm.internal.util.ToStringBuilder;
+
+/**
+ * Precompiled execution plan of the static SQL statement. The plan consists of
+ * the SQL with parameter placeholders and parameter mapping configurations,
+ * which are applied directly to the query arguments, so executing the static
+ * statement does not require binding the fragment and generating the SQL on
+ * every invocation.
+ * 
+ * The plan is immutable. Type handlers of the parameters are resolved when the
+ * plan is compiled (that is, when the statement is configured), so the type
+ * handlers registered later are not used by the plan.
+ * 
+ * @author Ivan Dubrov
+ */
+public final class StatementPlan {
+
+    private final String sql;
+
+    private final ParameterMappingConfig[] params;
+
+    private final boolean hasOutParams;
+
+    private final TypeHandler<?>[] typeHandlers;
+
+    /**
+     * Constructor.
+     * 
+     * @param sql SQL with parameter placeholders
+     * @param params parameter mapping configurations, in order of
+     * placeholders
+     * @param typeHandlers type handlers of the parameters, in order of
+     * placeholders
+     */
+    public StatementPlan(String sql, List<ParameterMappingConfig> params,
+            List<TypeHandler<?>> typeHandlers) {
+        this.sql = sql;
+        this.params = params.toArray(new ParameterMappingConfig[params.size()]);
+        this.typeHandlers = typeHandlers.toArray(new TypeHandler<?>[typeHandlers.size()]);
+
+        boolean out = false;
+        for (ParameterMappingConfig param : this.params) {
+            out |= param.getSetter() != null;
+        }
+        this.hasOutParams = out;
+    }
+
+    /**
+     * @return SQL with parameter placeholders
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return if plan has OUT parameters
+     */
+    public boolean hasOutParameters() {
+        return hasOutParams;
+    }
+
+    /**
+     * Map IN parameters to {@link PreparedStatement}.
+     * 
+     * @param ps prepared statement to set parameters to
+     * @param args query arguments
+     * @throws SQLException exception while setting parameter
+     */
+    public void mapParametersIn(PreparedStatement ps, Object[] args) throws SQLException {
+        TypeHandler<?>[] handlers = typeHandlers;
+        for (int i = 0; i < params.length; ++i) {
+            if (params[i].getGetter() != null) {
+                handlers[i].setParameter(ps, i + 1, params[i].getGetter().getValue(args));
+            }
+        }
+    }
+
+    /**
+     * Register OUT parameters.
+     * 
+     * @param cs callable statement
+     * @throws SQLException exception while registering parameter
+     */
+    public void registerOutParameters(CallableStatement cs) throws SQLException {
+        TypeHandler<?>[] handlers = typeHandlers;
+        for (int i = 0; i < params.length; ++i) {
+            if (params[i].getSetter() != null) {
+                cs.registerOutParameter(i + 1, handlers[i].getSqlType());
+            }
+        }
+    }
+
+    /**
+     * Map OUT parameters from {@link CallableStatement}.
+     * 
+     * @param cs callable statement to get parameters from
+     * @param args query arguments
+     * @throws SQLException exception while getting value
+     */
+    public void mapParametersOut(CallableStatement cs, Object[] args) throws SQLException {
+        TypeHandler<?>[] handlers = typeHandlers;
+        for (int i = 0; i < params.length; ++i) {
+            if (params[i].getSetter() != null) {
+                params[i].getSetter().setValue(args, handlers[i].getValue(cs, i + 1));
+            }
+        }
+    }
+
+    /**
+     * Format the values of IN parameters, for logging.
+     * 
+     * @param args query arguments
+     * @return parameter values
+     */
+    public String parametersToString(Object[] args) {
+        StringBuilder builder = new StringBuilder();
+        builder.append('[');
+        for (int i = 0; i < params.length; ++i) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            if (params[i].getGetter() != null) {
+                builder.append(params[i].getGetter().getValue(args));
+            }
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("sql", sql).toString();
+    }
+}
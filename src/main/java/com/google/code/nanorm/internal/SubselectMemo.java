@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.code.nanorm.internal.config.StatementConfig;
+import com.google.code.nanorm.internal.util.ToStringBuilder;
+
+/**
+ * Memo of the subselect results. Rows that refer to the same key (for example,
+ * many articles of the same category) execute the subselect only once, the
+ * rest of the rows get the same result instance.
+ * 
+ * Memo is shared by the query and all its subselects (or by all queries of
+ * the session). Least recently used results are evicted when memo size
+ * exceeds the configured maximum.
+ * 
+ * The instances are not thread-safe, as well as sessions they are bound to.
+ * 
+ * @author Ivan Dubrov
+ */
+public class SubselectMemo {
+
+    private final int maxSize;
+
+    private final Map<Key, Object> results;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxSize maximum amount of subselect results to keep
+     */
+    public SubselectMemo(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Subselect memo size must be positive!");
+        }
+        this.maxSize = maxSize;
+        this.results = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > SubselectMemo.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the result of the subselect, executing it if result is not in the
+     * memo yet.
+     * 
+     * @param queryDelegate query delegate used for executing the subselect
+     * @param stConfig subselect statement configuration
+     * @param value subselect parameter
+     * @return subselect result
+     */
+    public Object query(QueryDelegate queryDelegate, StatementConfig stConfig, Object value) {
+        Key key = new Key(stConfig, value);
+        Object result = results.get(key);
+        if (result == null && !results.containsKey(key)) {
+            misses++;
+            result = queryDelegate.query(stConfig, new Object[] {value });
+            results.put(key, result);
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Remove all the results, for example when data could be modified.
+     */
+    public void clear() {
+        results.clear();
+    }
+
+    /**
+     * @return Returns the amount of subselects served from the memo.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Returns the amount of subselects executed.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("size", results.size()).append("maxSize",
+                maxSize).append("hits", hits).append("misses", misses).toString();
+    }
+
+    /**
+     * Memo key, the subselect and its parameter.
+     * 
+     * @author Ivan Dubrov
+     */
+    private static final class Key {
+        private final StatementConfig stConfig;
+
+        private final Object value;
+
+        private Key(StatementConfig stConfig, Object value) {
+            this.stConfig = stConfig;
+            this.value = value;
+        }
+
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return stConfig.hashCode() * 31 + (value != null ? value.hashCode() : 0);
+        }
+
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return stConfig == other.stConfig
+                    && (value != null ? value.equals(other.value) : other.value == null);
+        }
+    }
+}
@@ -20,6 +20,8 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.google.code.nanorm.TypeHandler;
+import com.google.code.nanorm.TypeHandlerFactory;
 import com.google.code.nanorm.internal.config.ParameterMappingConfig;
 import com.google.code.nanorm.internal.introspect.Getter;
 import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
@@ -41,7 +43,7 @@ public class TextFragment implements Fragment {
     /**
      * Output SQL.
      */
-    private final StringBuilder sqlBuilder;
+    private final String outputSql;
 
     /** List of parameter mappers configs */
     private final List<ParameterMappingConfig> paramMappers;
@@ -67,7 +69,7 @@ public class TextFragment implements Fragment {
      */
     public TextFragment(String sql, IntrospectionFactory introspectionFactory) {
         this.sql = sql;
-        this.sqlBuilder = null;
+        this.outputSql = null;
         this.paramMappers = null;
         this.introspectionFactory = introspectionFactory;
     }
@@ -82,10 +84,37 @@ public class TextFragment implements Fragment {
      * @param introspectionFactory introspection factory
      */
     public TextFragment(String sql, Type[] types, IntrospectionFactory introspectionFactory) {
-        this.sqlBuilder = new StringBuilder(sql.length());
+        StringBuilder sqlBuilder = new StringBuilder(sql.length());
         this.sql = sql;
         this.introspectionFactory = introspectionFactory;
         this.paramMappers = configureTypes(types, sqlBuilder);
+        this.outputSql = sqlBuilder.toString();
+    }
+
+    /**
+     * Compile the fragment into the execution plan. Only fragments configured
+     * for parameter types could be compiled. Type handlers of the parameters
+     * are resolved during the compilation, fragment with parameter types that
+     * have no type handler registered is not compiled (so the error is
+     * reported when statement is executed).
+     * 
+     * @param typeHandlerFactory type handler factory
+     * @return execution plan or <code>null</code> if fragment could not be
+     * compiled
+     */
+    public StatementPlan compile(TypeHandlerFactory typeHandlerFactory) {
+        if (paramMappers == null) {
+            return null;
+        }
+        List<TypeHandler<?>> typeHandlers = new ArrayList<TypeHandler<?>>(paramMappers.size());
+        for (ParameterMappingConfig param : paramMappers) {
+            try {
+                typeHandlers.add(typeHandlerFactory.getTypeHandler(param.getType()));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return new StatementPlan(outputSql, paramMappers, typeHandlers);
     }
 
     /**
@@ -99,7 +128,7 @@ public class TextFragment implements Fragment {
                     typesFromParameters(parameters), builder);
             return new BoundFragmentImpl(builder.toString(), mappers, parameters);
         }
-        return new BoundFragmentImpl(sqlBuilder.toString(), paramMappers, parameters);
+        return new BoundFragmentImpl(outputSql, paramMappers, parameters);
     }
 
     /**
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
+import com.google.code.nanorm.internal.util.ToStringBuilder;
+
+/**
+ * Cache of text fragments used by dynamic SQL. Fragments without declared
+ * parameter types derive the types from the actual parameters, which requires
+ * parsing the SQL template and introspecting the parameters on every binding.
+ * This cache keeps fragments configured for the SQL template and the classes of
+ * the actual parameters, so repeated bindings with the same parameter classes
+ * skip both the parsing and the introspection.
+ * 
+ * The cache is bounded: when it is full, new fragments are not cached anymore
+ * (the dynamic SQL usually uses only limited set of templates, so cache is not
+ * expected to be full unless SQL templates are generated on the fly).
+ * 
+ * @author Ivan Dubrov
+ */
+public final class TextFragmentCache {
+
+    /**
+     * Default maximum amount of cached fragments.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    private final IntrospectionFactory introspectionFactory;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<Key, TextFragment> fragments =
+            new ConcurrentHashMap<Key, TextFragment>();
+
+    /**
+     * Constructor.
+     * 
+     * @param introspectionFactory introspection factory
+     * @param maxSize maximum amount of cached fragments
+     */
+    public TextFragmentCache(IntrospectionFactory introspectionFactory, int maxSize) {
+        this.introspectionFactory = introspectionFactory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Bind given SQL template to the parameters.
+     * 
+     * @param sql SQL template
+     * @param parameters parameters
+     * @return SQL fragment, bound to the parameters
+     */
+    public BoundFragment bindParameters(String sql, Object[] parameters) {
+        Class<?>[] types = new Class<?>[parameters.length];
+        for (int i = 0; i < types.length; ++i) {
+            types[i] = parameters[i] == null ? Void.class : parameters[i].getClass();
+        }
+
+        Key key = new Key(sql, types);
+        TextFragment fragment = fragments.get(key);
+        if (fragment == null) {
+            fragment = new TextFragment(sql, types, introspectionFactory);
+            if (fragments.size() < maxSize) {
+                TextFragment prev = fragments.putIfAbsent(key, fragment);
+                if (prev != null) {
+                    fragment = prev;
+                }
+            }
+        }
+        return fragment.bindParameters(parameters);
+    }
+
+    /**
+     * @return amount of cached fragments
+     */
+    public int size() {
+        return fragments.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("size", fragments.size()).append("maxSize",
+                maxSize).toString();
+    }
+
+    /**
+     * Cache key, SQL template and parameter classes.
+     */
+    private static final class Key {
+        private final String sql;
+
+        private final Class<?>[] types;
+
+        private final int hashCode;
+
+        private Key(String sql, Class<?>[] types) {
+            this.sql = sql;
+            this.types = types;
+            this.hashCode = sql.hashCode() * 31 + Arrays.hashCode(types);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return sql.equals(other.sql) && Arrays.equals(types, other.types);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.internal.cache;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.code.nanorm.config.InvalidationListener;
+
+/**
+ * Result caches grouped by the tables they read. Clears the caches when the
+ * tables are modified.
+ * 
+ * The instances are thread-safe.
+ * 
+ * @author Ivan Dubrov
+ */
+public class CacheRegions implements InvalidationListener {
+
+    private static final Pattern MODIFIED_TABLE = Pattern.compile(
+            "^\\s*(?:INSERT\\s+INTO|UPDATE|DELETE\\s+FROM)\\s+\"?([\\w.$]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final ConcurrentMap<String, List<ResultCache>> regions =
+            new ConcurrentHashMap<String, List<ResultCache>>();
+
+    /**
+     * Register the result cache.
+     * 
+     * @param cache result cache
+     * @param tables names of the tables the cached query reads
+     */
+    public void register(ResultCache cache, String[] tables) {
+        for (String table : tables) {
+            String name = table.toLowerCase();
+            List<ResultCache> region = regions.get(name);
+            if (region == null) {
+                region = new CopyOnWriteArrayList<ResultCache>();
+                List<ResultCache> prev = regions.putIfAbsent(name, region);
+                if (prev != null) {
+                    region = prev;
+                }
+            }
+            region.add(cache);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void invalidate(Set<String> tables) {
+        for (String table : tables) {
+            List<ResultCache> region = regions.get(table);
+            if (region != null) {
+                for (ResultCache cache : region) {
+                    cache.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the table modified by the SQL statement.
+     * 
+     * @param sql SQL statement
+     * @return name of the table in lower case or <code>null</code> if SQL is
+     * not a single-table <code>INSERT</code>, <code>UPDATE</code> or
+     * <code>DELETE</code> statement
+     */
+    public static String modifiedTable(String sql) {
+        Matcher matcher = MODIFIED_TABLE.matcher(sql);
+        return matcher.find() ? matcher.group(1).toLowerCase() : null;
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.internal.cache;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.code.nanorm.internal.util.ToStringBuilder;
+
+/**
+ * Cache of the query method results, keyed by the method arguments.
+ * 
+ * The cache is split into segments, each guarded by its own lock, so the
+ * threads looking up different keys rarely contend. Every segment keeps the
+ * entries in the insertion order and counts the hits of every entry, up to
+ * {@link #MAX_FREQUENCY}. When segment is full, the entries are inspected
+ * from the oldest one: entry that was hit is moved to the end of the queue
+ * with its counter decremented, the first entry that was not hit since the
+ * last inspection is evicted. That way frequently used results survive the
+ * bursts of the one-time lookups.
+ * 
+ * Collections and arrays are copied when put into the cache and when returned
+ * from it, so the callers never share them.
+ * 
+ * The instances are thread-safe.
+ * 
+ * @author Ivan Dubrov
+ */
+public class ResultCache {
+
+    /**
+     * Value returned by {@link #get(Object)} when result is not cached.
+     */
+    public static final Object MISSING = new Object();
+
+    /**
+     * Maximum value of the entry hits counter.
+     */
+    private static final int MAX_FREQUENCY = 3;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int maxEntries;
+
+    private final long ttl;
+
+    private final Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Incremented every time cache is cleared.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Constructor.
+     * 
+     * @param maxEntries maximum amount of cached results
+     * @param ttl time to live of the cached result in milliseconds, 0 if
+     * results never expire
+     */
+    public ResultCache(int maxEntries, long ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Result cache size must be positive!");
+        }
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+
+        // Small caches are not split
+        int count = maxEntries < MAX_SEGMENTS * 4 ? 1 : MAX_SEGMENTS;
+        segments = new Segment[count];
+        for (int i = 0; i < count; ++i) {
+            segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Create the cache key for the method arguments.
+     * 
+     * @param args method arguments
+     * @return cache key
+     */
+    public static Object key(Object[] args) {
+        return new ArgsKey(args != null ? args.clone() : new Object[0]);
+    }
+
+    /**
+     * Lookup the result in the cache.
+     * 
+     * @param key cache key, see {@link #key(Object[])}
+     * @return cached result or {@link #MISSING} if result is not cached
+     */
+    public Object get(Object key) {
+        Object result = segmentFor(key).get(key);
+        if (result == MISSING) {
+            misses.incrementAndGet();
+            return MISSING;
+        }
+        hits.incrementAndGet();
+        return copy(result);
+    }
+
+    /**
+     * Put the result into the cache.
+     * 
+     * @param key cache key, see {@link #key(Object[])}
+     * @param result query result
+     */
+    public void put(Object key, Object result) {
+        put(key, result, generation.get());
+    }
+
+    /**
+     * Put the result into the cache, unless cache was cleared since the given
+     * generation. Used to put the result of the query that could be executed
+     * concurrently with the modification of the data.
+     * 
+     * @param key cache key, see {@link #key(Object[])}
+     * @param result query result
+     * @param gen generation of the cache taken before the query was executed,
+     * see {@link #getGeneration()}
+     */
+    public void put(Object key, Object result, long gen) {
+        long expires = ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE;
+        segmentFor(key).put(key, new Entry(copy(result), expires), gen);
+    }
+
+    /**
+     * @return Returns the generation of the cache, incremented every time cache
+     * is cleared.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Remove all cached results.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return Returns the amount of cached results.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Returns the amount of lookups that found the result.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Returns the amount of lookups that did not find the result.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Returns the amount of results evicted because cache was full.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("maxEntries", maxEntries).append("ttl", ttl)
+                .append("size", size()).append("hits", hits).append("misses", misses).append(
+                        "evictions", evictions).toString();
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & Integer.MAX_VALUE) % segments.length];
+    }
+
+    /**
+     * Copy the collection or array result.
+     * 
+     * @param result result
+     * @return copy of the result
+     */
+    static Object copy(Object result) {
+        if (result instanceof Collection<?>) {
+            return new ArrayList<Object>((Collection<?>) result);
+        } else if (result != null && result.getClass().isArray()) {
+            int length = Array.getLength(result);
+            Object copy = Array.newInstance(result.getClass().getComponentType(), length);
+            System.arraycopy(result, 0, copy, 0, length);
+            return copy;
+        }
+        return result;
+    }
+
+    /**
+     * Cached result.
+     */
+    private static final class Entry {
+        private final Object value;
+
+        private final long expires;
+
+        private int frequency;
+
+        private Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Segment of the cache, guarded by its own lock.
+     */
+    private final class Segment {
+        private final int maxSize;
+
+        private final Map<Object, Entry> entries = new LinkedHashMap<Object, Entry>();
+
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        private synchronized Object get(Object key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return MISSING;
+            }
+            if (entry.expires < System.currentTimeMillis()) {
+                entries.remove(key);
+                return MISSING;
+            }
+            if (entry.frequency < MAX_FREQUENCY) {
+                entry.frequency++;
+            }
+            return entry.value;
+        }
+
+        private synchronized void put(Object key, Entry entry, long gen) {
+            if (gen != generation.get()) {
+                // Result could be read before the data was modified
+                return;
+            }
+            entries.put(key, entry);
+            while (entries.size() > maxSize) {
+                evict();
+            }
+        }
+
+        /**
+         * Evict single entry, giving the entries that were hit another chance.
+         */
+        private void evict() {
+            long now = System.currentTimeMillis();
+            while (true) {
+                Map.Entry<Object, Entry> eldest = entries.entrySet().iterator().next();
+                Entry entry = eldest.getValue();
+                entries.remove(eldest.getKey());
+                if (entry.frequency == 0 || entry.expires < now) {
+                    evictions.incrementAndGet();
+                    return;
+                }
+                // Move to the end of the queue
+                entry.frequency--;
+                entries.put(eldest.getKey(), entry);
+            }
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Cache key, the method arguments compared by their contents.
+     */
+    private static final class ArgsKey {
+        private final Object[] args;
+
+        private final int hashCode;
+
+        private ArgsKey(Object[] args) {
+            this.args = args;
+            this.hashCode = Arrays.deepHashCode(args);
+        }
+
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ArgsKey)) {
+                return false;
+            }
+            ArgsKey other = (ArgsKey) obj;
+            return hashCode == other.hashCode && Arrays.deepEquals(args, other.args);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.internal.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.code.nanorm.exceptions.DataException;
+import com.google.code.nanorm.internal.util.ToStringBuilder;
+
+/**
+ * Coalesces the concurrent executions of the query with the same arguments
+ * into the single execution. The first thread executes the query, the rest
+ * of the threads arriving while it is in flight wait for its result.
+ * 
+ * The instances are thread-safe.
+ * 
+ * @author Ivan Dubrov
+ */
+public class SingleFlight {
+
+    private final boolean copy;
+
+    private final ConcurrentMap<Object, FutureTask<Object>> inFlight =
+            new ConcurrentHashMap<Object, FutureTask<Object>>();
+
+    private final AtomicLong executions = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Constructor.
+     * 
+     * @param copy whether collection and array results are copied for every
+     * waiting thread
+     */
+    public SingleFlight(boolean copy) {
+        this.copy = copy;
+    }
+
+    /**
+     * Execute the query, unless the query with the same key is already in
+     * flight, in which case wait for its result.
+     * 
+     * @param key query key, see {@link ResultCache#key(Object[])}
+     * @param query query to execute
+     * @return query result
+     */
+    public Object execute(Object key, Callable<Object> query) {
+        FutureTask<Object> task = new FutureTask<Object>(query);
+        FutureTask<Object> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            executions.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            return result(task);
+        }
+
+        coalesced.incrementAndGet();
+        Object result = result(existing);
+        return copy ? ResultCache.copy(result) : result;
+    }
+
+    /**
+     * @return Returns the amount of queries executed.
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * @return Returns the amount of queries that received the result of the
+     * query in flight.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("copy", copy).append("executions", executions)
+                .append("coalesced", coalesced).toString();
+    }
+
+    private Object result(FutureTask<Object> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DataException("Failed to execute the query!", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException("Interrupted while waiting for the query result!", e);
+        }
+    }
+}
@@ -21,11 +21,17 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,9 +39,14 @@ import org.slf4j.LoggerFactory;
 import com.google.code.nanorm.DataSink;
 import com.google.code.nanorm.SQLSource;
 import com.google.code.nanorm.TypeHandlerFactory;
+import com.google.code.nanorm.annotations.Batch;
+import com.google.code.nanorm.annotations.Cached;
 import com.google.code.nanorm.annotations.Call;
+import com.google.code.nanorm.annotations.Coalesced;
 import com.google.code.nanorm.annotations.Insert;
+import com.google.code.nanorm.annotations.Invalidates;
 import com.google.code.nanorm.annotations.Options;
+import com.google.code.nanorm.annotations.Pipelined;
 import com.google.code.nanorm.annotations.Property;
 import com.google.code.nanorm.annotations.ResultMap;
 import com.google.code.nanorm.annotations.ResultMapList;
@@ -49,10 +60,15 @@ import com.google.code.nanorm.exceptions.ConfigurationException;
 import com.google.code.nanorm.internal.DynamicFragment;
 import com.google.code.nanorm.internal.Fragment;
 import com.google.code.nanorm.internal.TextFragment;
+import com.google.code.nanorm.internal.TextFragmentCache;
+import com.google.code.nanorm.internal.cache.CacheRegions;
 import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
 import com.google.code.nanorm.internal.introspect.Setter;
 import com.google.code.nanorm.internal.introspect.TypeOracle;
+import com.google.code.nanorm.internal.mapping.result.DataSinkSource;
 import com.google.code.nanorm.internal.mapping.result.DefaultRowMapper;
+import com.google.code.nanorm.internal.mapping.result.ResultCollectorUtil;
+import com.google.code.nanorm.internal.mapping.result.ResultGetterSetter;
 import com.google.code.nanorm.internal.mapping.result.RowMapper;
 import com.google.code.nanorm.internal.mapping.result.ScalarRowMapper;
 import com.google.code.nanorm.internal.util.Messages;
@@ -87,10 +103,19 @@ public class InternalConfiguration {
 
     private final List<Runnable> postConfigureList;
 
+    /**
+     * Statements that are not initialized yet, in the configuration order.
+     */
+    private final List<StatementConfig> uninitialized;
+
+    private boolean lazy;
+
     private final TypeHandlerFactory typeHandlerFactory;
 
     private final IntrospectionFactory introspectionFactory;
 
+    private final TextFragmentCache fragmentCache;
+
     /**
      * Constructor.
      * 
@@ -103,10 +128,13 @@ public class InternalConfiguration {
         statementsConfig = new HashMap<StatementKey, StatementConfig>();
         mapped = new HashSet<Class<?>>();
         postConfigureList = new ArrayList<Runnable>();
+        uninitialized = new ArrayList<StatementConfig>();
 
         // TODO: Should be configurable
         this.typeHandlerFactory = typeHandlerFactory;
         this.introspectionFactory = introspectionFactory;
+        this.fragmentCache = new TextFragmentCache(introspectionFactory,
+                TextFragmentCache.DEFAULT_SIZE);
     }
 
     /**
@@ -150,6 +178,105 @@ public class InternalConfiguration {
      * @throws ConfigurationException configuration is invalid
      */
     public void configure(Class<?> mapper) throws ConfigurationException {
+        configure(new Class<?>[] {mapper }, 1);
+    }
+
+    /**
+     * Configure mappers. Mappers are registered sequentially, then the
+     * statements of all mappers are initialized (SQL fragments, select keys
+     * and row mappers are built) by given amount of threads. If configuration
+     * is lazy, statements are initialized on first use instead.
+     * 
+     * @param mappers mapper interfaces
+     * @param threads amount of threads initializing the statements
+     * @throws ConfigurationException configuration is invalid
+     */
+    public void configure(Class<?>[] mappers, int threads) throws ConfigurationException {
+        synchronized (this) {
+            for (Class<?> mapper : mappers) {
+                register(mapper);
+            }
+            if (lazy) {
+                return;
+            }
+        }
+        initializeAll(threads);
+    }
+
+    /**
+     * Initialize all statements that were not initialized yet, reporting the
+     * configuration errors. With lazy configuration, this is the only way to
+     * get the errors before the statements are used.
+     * 
+     * @throws ConfigurationException configuration is invalid
+     */
+    public void validateAll() throws ConfigurationException {
+        initializeAll(1);
+    }
+
+    /**
+     * Initialize the statements that were not initialized yet. If several
+     * statements fail, the error of the first one (in the configuration order)
+     * is thrown.
+     * 
+     * @param threads amount of threads initializing the statements
+     * @throws ConfigurationException configuration is invalid
+     */
+    private void initializeAll(int threads) throws ConfigurationException {
+        final List<StatementConfig> statements;
+        synchronized (this) {
+            statements = new ArrayList<StatementConfig>(uninitialized);
+        }
+
+        if (threads <= 1 || statements.size() <= 1) {
+            for (StatementConfig stConfig : statements) {
+                stConfig.initialize();
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> results = new ArrayList<Future<?>>(statements.size());
+                for (final StatementConfig stConfig : statements) {
+                    results.add(executor.submit(new Runnable() {
+                        public void run() {
+                            stConfig.initialize();
+                        }
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new ConfigurationException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConfigurationException("Interrupted while initializing statements!", e);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        synchronized (this) {
+            for (Iterator<StatementConfig> it = uninitialized.iterator(); it.hasNext();) {
+                if (it.next().isInitialized()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Register mapper and its super mappers, statements are not initialized.
+     * 
+     * @param mapper mapper interface
+     * @throws ConfigurationException configuration is invalid
+     */
+    private void register(Class<?> mapper) throws ConfigurationException {
         if (!introspectionFactory.isAbstractClassesSupported() && !mapper.isInterface()) {
             throw new ConfigurationException(Messages.classesNotSupported(mapper));
         }
@@ -158,14 +285,14 @@ public class InternalConfiguration {
             if (mapped.add(mapper)) {
                 // Configure super mappers first
                 for (Class<?> superMapper : mapper.getInterfaces()) {
-                    configure(superMapper);
+                    register(superMapper);
                 }
 
                 if (!mapper.isInterface()) {
                     final Class<?> superClass = mapper.getSuperclass();
                     // skip Object.class
                     if (superClass != Object.class)
-                        configure(superClass);
+                        register(superClass);
                 }
 
                 LOGGER.info("Configuring mapper {} {}", mapper.isInterface() ? "interface"
@@ -223,7 +350,8 @@ public class InternalConfiguration {
      * @param mapper mapper interface
      * @param method method to gather configuration from
      */
-    private void processMethod(Class<?> mapper, Method method) throws ConfigurationException {
+    private void processMethod(final Class<?> mapper, final Method method)
+            throws ConfigurationException {
         assert (method != null);
         assert (mapper != null);
 
@@ -276,56 +404,23 @@ public class InternalConfiguration {
         }
         stConfig.setKind(kind);
 
-        // TODO: Check we have exactly one of these!
-        if (sqlSource != SQLSource.class) {
-            Fragment builder = new DynamicFragment(sqlSource, introspectionFactory);
-            stConfig.setStatementBuilder(builder);
-        } else if (sql != null) {
-            // TODO: Batch case!
-            Fragment builder = new TextFragment(sql, method.getGenericParameterTypes(),
-                    introspectionFactory);
-            stConfig.setStatementBuilder(builder);
+        // Batch methods bind the statement to the elements of the first
+        // parameter, so the SQL is configured for the element type
+        Type[] fragmentTypes = method.getGenericParameterTypes();
+        Batch batch = method.getAnnotation(Batch.class);
+        if (batch != null) {
+            Validation.validateBatch(batch, kind, mapper, method);
+
+            fragmentTypes = fragmentTypes.clone();
+            fragmentTypes[0] = batchElementType(mapper, method);
+            stConfig.setBatchSize(batch.size());
         }
-        // TODO: Check sql is not empty!
 
         // Configure select key statement
-        SelectKey selectKey = method.getAnnotation(SelectKey.class);
+        final SelectKey selectKey = method.getAnnotation(SelectKey.class);
         if (selectKey != null) {
             Validation.validateSelectKey(selectKey, mapper, method);
-
-            StatementKey selectKeyKey = new StatementKey(mapper, method.getName() + ":key",
-                    method.getGenericParameterTypes());
-
-            StatementConfig selectKeySt = new StatementConfig(selectKeyKey);
-            if (selectKey.value().length() > 0) {
-                selectKeySt.setStatementBuilder(new TextFragment(selectKey.value(), method
-                        .getGenericParameterTypes(), introspectionFactory));
-            }
-            selectKeySt.setParameterTypes(method.getGenericParameterTypes());
-
-            // Key type is method return value
-            Type keyType = method.getGenericReturnType();
-
-            // If return type is void, the key type is deduced from the property
-            // type
-            // Validation already checked that in this case property is not
-            // empty
-            if (keyType == void.class) {
-                String prop = selectKey.property();
-                keyType = introspectionFactory.getParameterType(
-                        method.getGenericParameterTypes(), prop);
-            }
-            selectKeySt.setResultType(keyType);
-            selectKeySt.setRowMapper(new ScalarRowMapper(keyType, typeHandlerFactory));
-
-            if (selectKey.property().length() > 0) {
-                Setter keySetter = introspectionFactory.buildParameterSetter(method
-                        .getGenericParameterTypes(), selectKey.property());
-                stConfig.setKeySetter(keySetter);
-            }
-
             stConfig.setSelectKeyType(selectKey.type());
-            stConfig.setSelectKey(selectKeySt);
         }
 
         // For update we always use method return value, but for select we try
@@ -349,15 +444,66 @@ public class InternalConfiguration {
         }
         stConfig.setResultType(returnType);
 
-        // Create row mapper if return type is not void
-        if (returnType != void.class) {
-            // Create row mapper during post-configuration step, after the
-            // subselects are configured
+        // Cursor maps the rows on demand, one at a time
+        if (ResultCollectorUtil.isCursor(returnType)) {
+            Validation.validateCursor(kind, mapConfig, mapper, method);
+            stConfig.setCursor(true);
+        }
+
+        // Rows of pipelined query are mapped by the worker threads
+        final Pipelined pipelined = method.getAnnotation(Pipelined.class);
+        if (pipelined != null) {
+            Validation.validatePipelined(pipelined, kind, stConfig.isCursor(), mapper, method);
+            stConfig.setPipelined(pipelined);
+        }
+
+        // Results of cached query are shared by all sessions of the factory,
+        // they are removed from the cache when the tables query reads are
+        // modified
+        Cached cached = method.getAnnotation(Cached.class);
+        if (cached != null) {
+            Validation.validateCached(cached, stConfig, mapper, method);
+            stConfig.setCached(cached);
+
+            Set<String> tables = new HashSet<String>();
+            for (String table : cached.tables()) {
+                tables.add(table.toLowerCase());
+            }
+            stConfig.setCachedTables(Collections.unmodifiableSet(tables));
+        }
+
+        // Concurrent executions with the same arguments share the result
+        Coalesced coalesced = method.getAnnotation(Coalesced.class);
+        if (coalesced != null) {
+            Validation.validateCoalesced(coalesced, stConfig, mapper, method);
+            stConfig.setCoalesced(coalesced);
+        }
+
+        // Tables modified by the statement, either declared or taken from the
+        // static SQL
+        Invalidates invalidates = method.getAnnotation(Invalidates.class);
+        if (invalidates != null) {
+            Validation.validateInvalidates(kind, mapper, method);
+            Set<String> tables = new HashSet<String>();
+            for (String table : invalidates.value()) {
+                tables.add(table.toLowerCase());
+            }
+            stConfig.setInvalidatedTables(Collections.unmodifiableSet(tables));
+        } else if (kind != QueryKind.SELECT && sql != null
+                && CacheRegions.modifiedTable(sql) != null) {
+            stConfig.setInvalidatedTables(Collections.singleton(CacheRegions
+                    .modifiedTable(sql)));
+        }
+
+        // Row mapper is needed if return type is not void (batch methods return
+        // update counts, so they don't need it)
+        final boolean mapRows = returnType != void.class && !stConfig.isBatch();
+        if (mapRows && pipelined != null) {
+            // Validate during post-configuration step, after the subselects
+            // are configured
             postConfigureList.add(new Runnable() {
                 public void run() {
-                    // At this time, all subselect properties for this result
-                    // map should be post-configured already
-                    stConfig.setRowMapper(createRowMapper(stConfig.getResultType(), mapConfig));
+                    Validation.validatePipelinedMap(mapConfig, mapper, method);
                 }
             });
         }
@@ -367,6 +513,20 @@ public class InternalConfiguration {
         // Lookup the options for the statement
         stConfig.setOptions(lookupOptions(mapper, method));
 
+        // Statement builder, select key and row mapper require introspection,
+        // so they are built by the initializer once the mapper is registered
+        // (or on first use, if configuration is lazy)
+        final Class<? extends SQLSource> stSqlSource = sqlSource;
+        final String stSql = sql;
+        final Type[] stFragmentTypes = fragmentTypes;
+        stConfig.setInitializer(new Runnable() {
+            public void run() {
+                initializeStatement(mapper, method, stConfig, stSqlSource, stSql,
+                        stFragmentTypes, selectKey, mapRows ? mapConfig : null);
+            }
+        });
+        uninitialized.add(stConfig);
+
         // Put it two times: one time with parameter types, for regular
         // processing
         statementsConfig.put(key, stConfig);
@@ -378,6 +538,105 @@ public class InternalConfiguration {
         statementsConfig.put(key2, stConfig);
     }
 
+    /**
+     * Build the statement builder, select key statement and row mapper of the
+     * statement configured from the given method.
+     * 
+     * @param mapper mapper interface
+     * @param method method statement is configured from
+     * @param stConfig statement configuration
+     * @param sqlSource SQL source class
+     * @param sql SQL text or {@literal null}
+     * @param fragmentTypes types of the SQL parameters
+     * @param selectKey select key configuration or {@literal null}
+     * @param mapConfig result map configuration or {@literal null} if
+     * statement does not map the rows
+     */
+    private void initializeStatement(Class<?> mapper, Method method, StatementConfig stConfig,
+            Class<? extends SQLSource> sqlSource, String sql, Type[] fragmentTypes,
+            SelectKey selectKey, ResultMapConfig mapConfig) throws ConfigurationException {
+        // TODO: Check we have exactly one of these!
+        if (sqlSource != SQLSource.class) {
+            Fragment builder = new DynamicFragment(sqlSource, introspectionFactory,
+                    fragmentCache);
+            stConfig.setStatementBuilder(builder);
+        } else if (sql != null) {
+            TextFragment builder = new TextFragment(sql, fragmentTypes, introspectionFactory);
+            stConfig.setStatementBuilder(builder);
+            stConfig.setPlan(builder.compile(typeHandlerFactory));
+        }
+        // TODO: Check sql is not empty!
+
+        // Configure select key statement
+        if (selectKey != null) {
+            StatementKey selectKeyKey = new StatementKey(mapper, method.getName() + ":key",
+                    method.getGenericParameterTypes());
+
+            StatementConfig selectKeySt = new StatementConfig(selectKeyKey);
+            if (selectKey.value().length() > 0) {
+                TextFragment builder = new TextFragment(selectKey.value(), method
+                        .getGenericParameterTypes(), introspectionFactory);
+                selectKeySt.setStatementBuilder(builder);
+                selectKeySt.setPlan(builder.compile(typeHandlerFactory));
+            }
+            selectKeySt.setParameterTypes(method.getGenericParameterTypes());
+
+            // Key type is method return value
+            Type keyType = method.getGenericReturnType();
+
+            // If return type is void, the key type is deduced from the property
+            // type
+            // Validation already checked that in this case property is not
+            // empty
+            if (keyType == void.class) {
+                String prop = selectKey.property();
+                keyType = introspectionFactory.getParameterType(
+                        method.getGenericParameterTypes(), prop);
+            }
+            selectKeySt.setResultType(keyType);
+            selectKeySt.setRowMapper(new ScalarRowMapper(keyType, typeHandlerFactory));
+            selectKeySt.setResultSinkSource(createResultSinkSource(selectKeySt));
+
+            if (selectKey.property().length() > 0) {
+                Setter keySetter = introspectionFactory.buildParameterSetter(method
+                        .getGenericParameterTypes(), selectKey.property());
+                stConfig.setKeySetter(keySetter);
+            }
+
+            stConfig.setSelectKey(selectKeySt);
+        }
+
+        // At this time, all subselect properties for this result map should be
+        // post-configured already. Cursor rows are mapped to the cursor
+        // element type.
+        if (mapConfig != null) {
+            Type rowType = stConfig.getResultType();
+            if (stConfig.isCursor()) {
+                rowType = ResultCollectorUtil.resultClass(rowType);
+            }
+            stConfig.setRowMapper(createRowMapper(rowType, mapConfig));
+
+            // Results are collected into the request, unless they are passed
+            // to the data sink or returned by the cursor
+            if (!stConfig.isCursor()
+                    && stConfig.getCallbackIndex() == StatementConfig.RETURN_VALUE) {
+                stConfig.setResultSinkSource(createResultSinkSource(stConfig));
+            }
+        }
+    }
+
+    /**
+     * Create the data sink source that collects the statement results into
+     * the request.
+     * 
+     * @param stConfig statement configuration, with result type configured
+     * @return data sink source
+     */
+    private static DataSinkSource createResultSinkSource(StatementConfig stConfig) {
+        ResultGetterSetter rgs = new ResultGetterSetter(stConfig.getResultType());
+        return ResultCollectorUtil.createDataSinkSource(rgs, rgs, stConfig);
+    }
+
     /**
      * Lookup the query options for given query method.
      * @param mapper mapper class/interface
@@ -394,6 +653,23 @@ public class InternalConfiguration {
         return opts;
     }
 
+    /**
+     * Get the element type of the batch method first parameter (which is
+     * either array or collection).
+     * 
+     * @param mapper mapper
+     * @param method batch method
+     * @return element type
+     */
+    private Type batchElementType(Class<?> mapper, Method method) {
+        Type element = TypeOracle.resolveElementType(method.getGenericParameterTypes()[0]);
+        if (element == null) {
+            throw new ConfigurationException(Messages.invalidBatch(mapper, method,
+                    "element type of the first parameter could not be resolved"));
+        }
+        return element;
+    }
+
     // TODO: Move to separate helper class
     private int searchResultCallback(Method method) {
         // Try to find DataSink
@@ -552,6 +828,7 @@ public class InternalConfiguration {
         config.setMappings(mappings.toArray(new PropertyMappingConfig[mappings.size()]));
         config.setAuto(resultMap.auto());
         config.setGroupBy(resultMap.groupBy());
+        config.setOrdered(resultMap.ordered());
         return config;
     }
 
@@ -641,6 +918,27 @@ public class InternalConfiguration {
                 }
             });
         }
+
+        // We have batch subselect mapping, executed after the result set is
+        // processed
+        if (!"".equals(mapping.batchSubselect())) {
+            Class<?> subselectMapper = mapping.subselectMapper() != Object.class ? mapping
+                    .subselectMapper() : mapper;
+
+            StatementKey subselectKey = new StatementKey(subselectMapper, mapping
+                    .batchSubselect(), null);
+            propMapping.setBatchKey(mapping.batchKey());
+            propMapping.setBatchSize(mapping.batchSize());
+
+            final SubselectConfig subselectInfo = new SubselectConfig(subselectKey, propMapping,
+                    mapper, resultMap, true);
+
+            postConfigureList.add(new Runnable() {
+                public void run() {
+                    subselectPostConfigure(subselectInfo);
+                }
+            });
+        }
         return propMapping;
     }
 
@@ -663,7 +961,15 @@ public class InternalConfiguration {
         if (stConfig.getParameterTypes().length != 1) {
             throw new ConfigurationException(Messages.subselectParameterCount(subselectInfo));
         }
-        subselectInfo.getPropertyMapping().setSubselect(stConfig);
+        if (subselectInfo.isBatch()) {
+            // Batch subselect takes the keys of all rows
+            if (TypeOracle.resolveElementType(stConfig.getParameterTypes()[0]) == null) {
+                throw new ConfigurationException(Messages.batchSubselectParameter(subselectInfo));
+            }
+            subselectInfo.getPropertyMapping().setBatchSubselect(stConfig);
+        } else {
+            subselectInfo.getPropertyMapping().setSubselect(stConfig);
+        }
     }
 
     /**
@@ -699,6 +1005,22 @@ public class InternalConfiguration {
         return resultMapConfig;
     }
 
+    /** @return Returns if statements are initialized on first use. */
+    public synchronized boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Set if statements are initialized on first use rather than during the
+     * configuration. Errors of the lazy statements are reported either on
+     * first use or by {@link #validateAll()}.
+     * 
+     * @param lazy if statements are initialized on first use
+     */
+    public synchronized void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     /** @return Returns the typeHandlerFactory. */
     public TypeHandlerFactory getTypeHandlerFactory() {
         return typeHandlerFactory;
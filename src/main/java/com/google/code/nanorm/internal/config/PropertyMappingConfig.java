@@ -36,6 +36,12 @@ public final class PropertyMappingConfig {
 
     private StatementConfig subselect;
 
+    private StatementConfig batchSubselect;
+
+    private String batchKey;
+
+    private int batchSize;
+
     /** @return Returns the property. */
     public String getProperty() {
         return property;
@@ -86,6 +92,36 @@ public final class PropertyMappingConfig {
         this.subselect = subselect;
     }
 
+    /** @return Returns the batch subselect. */
+    public StatementConfig getBatchSubselect() {
+        return batchSubselect;
+    }
+
+    /** @param batchSubselect The batch subselect to set. */
+    public void setBatchSubselect(StatementConfig batchSubselect) {
+        this.batchSubselect = batchSubselect;
+    }
+
+    /** @return Returns the property of batch subselect results holding the key. */
+    public String getBatchKey() {
+        return batchKey;
+    }
+
+    /** @param batchKey The batch key property to set. */
+    public void setBatchKey(String batchKey) {
+        this.batchKey = batchKey;
+    }
+
+    /** @return Returns the maximum amount of keys per batch subselect query. */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /** @param batchSize The batch size to set. */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     /**
      * @see java.lang.Object#toString()
      */
@@ -93,6 +129,7 @@ public final class PropertyMappingConfig {
     public String toString() {
         return new ToStringBuilder(this).append("property", property).append("column", column)
                 .append("columnIndex", columnIndex).append("nestedMapConfig", nestedMapConfig)
-                .append("subselect", subselect).toString();
+                .append("subselect", subselect).append("batchSubselect", batchSubselect)
+                .toString();
     }
 }
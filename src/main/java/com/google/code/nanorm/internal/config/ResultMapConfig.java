@@ -39,6 +39,8 @@ public class ResultMapConfig {
 
     private String[] groupBy;
 
+    private boolean ordered;
+
     /**
      * Constructor.
      * 
@@ -115,6 +117,24 @@ public class ResultMapConfig {
         this.groupBy = groupBy;
     }
 
+    /**
+     * Get if rows are ordered by the properties to group results by.
+     * 
+     * @return if rows are ordered by the groupBy properties
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Set if rows are ordered by the properties to group results by.
+     * 
+     * @param ordered if rows are ordered by the groupBy properties
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
     /** @return Returns the id. */
     public String getId() {
         return id;
@@ -126,6 +146,6 @@ public class ResultMapConfig {
     @Override
     public String toString() {
         return new ToStringBuilder(this).append("id", id).append("auto", auto).append("groupBy",
-                groupBy).append("mappings", mappings).toString();
+                groupBy).append("ordered", ordered).append("mappings", mappings).toString();
     }
 }
@@ -18,14 +18,20 @@ package com.google.code.nanorm.internal.config;
 
 import java.lang.reflect.Type;
 import java.sql.ResultSet;
+import java.util.Set;
 
+import com.google.code.nanorm.annotations.Cached;
+import com.google.code.nanorm.annotations.Coalesced;
 import com.google.code.nanorm.annotations.FetchDirection;
 import com.google.code.nanorm.annotations.Options;
+import com.google.code.nanorm.annotations.Pipelined;
 import com.google.code.nanorm.annotations.ResultSetConcurrency;
 import com.google.code.nanorm.annotations.ResultSetType;
 import com.google.code.nanorm.annotations.SelectKeyType;
 import com.google.code.nanorm.internal.Fragment;
+import com.google.code.nanorm.internal.StatementPlan;
 import com.google.code.nanorm.internal.introspect.Setter;
+import com.google.code.nanorm.internal.mapping.result.DataSinkSource;
 import com.google.code.nanorm.internal.mapping.result.RowMapper;
 import com.google.code.nanorm.internal.util.ToStringBuilder;
 
@@ -43,6 +49,12 @@ public class StatementConfig {
      */
     public static final int RETURN_VALUE = -1;
 
+    /**
+     * Special value for batch size meaning the statement is not executed in
+     * batch.
+     */
+    public static final int NO_BATCH = -1;
+
     private final StatementKey id;
 
     private QueryKind kind;
@@ -65,6 +77,26 @@ public class StatementConfig {
 
     private Options options;
 
+    private int batchSize = NO_BATCH;
+
+    private StatementPlan plan;
+
+    private boolean cursor;
+
+    private Pipelined pipelined;
+
+    private Cached cached;
+
+    private Set<String> invalidatedTables;
+
+    private Set<String> cachedTables;
+
+    private Coalesced coalesced;
+
+    private DataSinkSource resultSinkSource;
+
+    private volatile Runnable initializer;
+
     /**
      * Constructor.
      * 
@@ -86,6 +118,7 @@ public class StatementConfig {
 
     /** @return Returns the statementBuilder. */
     public Fragment getStatementBuilder() {
+        initialize();
         return fragment;
     }
 
@@ -96,6 +129,7 @@ public class StatementConfig {
 
     /** @return Returns the rowMapper. */
     public RowMapper getRowMapper() {
+        initialize();
         return rowMapper;
     }
 
@@ -126,6 +160,7 @@ public class StatementConfig {
 
     /** @return the selectKey */
     public StatementConfig getSelectKey() {
+        initialize();
         return selectKey;
     }
 
@@ -146,6 +181,7 @@ public class StatementConfig {
 
     /** @return the keySetter */
     public Setter getKeySetter() {
+        initialize();
         return keySetter;
     }
 
@@ -199,6 +235,233 @@ public class StatementConfig {
         this.options = options;
     }
 
+    /**
+     * Get the maximum amount of statements sent to the database in single
+     * batch. 0 means unlimited batch.
+     * 
+     * @see #NO_BATCH
+     * @return batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the maximum amount of statements sent to the database in single
+     * batch.
+     * 
+     * @see #NO_BATCH
+     * @param batchSize batch size
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Check if statement is executed in batch, once for each element of the
+     * first parameter.
+     * 
+     * @return if statement is executed in batch
+     */
+    public boolean isBatch() {
+        return batchSize != NO_BATCH;
+    }
+
+    /**
+     * Get the precompiled execution plan. Only static statements have the
+     * plan, for other statements SQL is generated by the statement builder.
+     * 
+     * @return execution plan or <code>null</code>
+     */
+    public StatementPlan getPlan() {
+        initialize();
+        return plan;
+    }
+
+    /**
+     * Set the precompiled execution plan.
+     * 
+     * @param plan execution plan
+     */
+    public void setPlan(StatementPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Check if statement returns a cursor, which maps the rows on demand.
+     * 
+     * @return if statement returns a cursor
+     */
+    public boolean isCursor() {
+        return cursor;
+    }
+
+    /**
+     * Set if statement returns a cursor.
+     * 
+     * @param cursor if statement returns a cursor
+     */
+    public void setCursor(boolean cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Get the pipelined fetch configuration.
+     * 
+     * @return pipelined fetch configuration or <code>null</code> if rows are
+     * mapped by the calling thread
+     */
+    public Pipelined getPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Set the pipelined fetch configuration.
+     * 
+     * @param pipelined pipelined fetch configuration
+     */
+    public void setPipelined(Pipelined pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Get the caching configuration of the statement results. The cache
+     * itself is kept by the factory.
+     * 
+     * @return caching configuration or <code>null</code> if results are not
+     * cached
+     */
+    public Cached getCached() {
+        return cached;
+    }
+
+    /**
+     * Set the caching configuration of the statement results.
+     * 
+     * @param cached caching configuration
+     */
+    public void setCached(Cached cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * Get the tables modified by the statement.
+     * 
+     * @return names of the tables in lower case or <code>null</code> if
+     * statement does not invalidate the result caches
+     */
+    public Set<String> getInvalidatedTables() {
+        return invalidatedTables;
+    }
+
+    /**
+     * Set the tables modified by the statement.
+     * 
+     * @param invalidatedTables names of the tables in lower case
+     */
+    public void setInvalidatedTables(Set<String> invalidatedTables) {
+        this.invalidatedTables = invalidatedTables;
+    }
+
+    /**
+     * Get the tables the cached statement reads.
+     * 
+     * @return names of the tables in lower case or <code>null</code> if
+     * statement results are not cached
+     */
+    public Set<String> getCachedTables() {
+        return cachedTables;
+    }
+
+    /**
+     * Set the tables the cached statement reads.
+     * 
+     * @param cachedTables names of the tables in lower case
+     */
+    public void setCachedTables(Set<String> cachedTables) {
+        this.cachedTables = cachedTables;
+    }
+
+    /**
+     * Get the coalescing configuration of the concurrent executions with the
+     * same arguments. The single flight itself is kept by the factory.
+     * 
+     * @return coalescing configuration or <code>null</code> if executions are
+     * not coalesced
+     */
+    public Coalesced getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Set the coalescing configuration of the concurrent executions with the
+     * same arguments.
+     * 
+     * @param coalesced coalescing configuration
+     */
+    public void setCoalesced(Coalesced coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * Get the data sink source that collects the results into the request.
+     * Built by the statement initializer.
+     * 
+     * @return data sink source or <code>null</code> if statement results are
+     * not collected into the request
+     */
+    public DataSinkSource getResultSinkSource() {
+        initialize();
+        return resultSinkSource;
+    }
+
+    /**
+     * Set the data sink source that collects the results into the request.
+     * 
+     * @param resultSinkSource data sink source
+     */
+    public void setResultSinkSource(DataSinkSource resultSinkSource) {
+        this.resultSinkSource = resultSinkSource;
+    }
+
+    /**
+     * Set the initializer that builds the statement builder, plan, select key
+     * and row mapper. The initializer is run on first access to any of them,
+     * unless the statement is initialized explicitly.
+     * 
+     * @param initializer initializer
+     */
+    public void setInitializer(Runnable initializer) {
+        this.initializer = initializer;
+    }
+
+    /**
+     * Check if statement is initialized.
+     * 
+     * @return if statement is initialized
+     */
+    public boolean isInitialized() {
+        return initializer == null;
+    }
+
+    /**
+     * Initialize the statement, if not initialized yet. If initializer fails,
+     * it is run again on the next access.
+     */
+    public void initialize() {
+        if (initializer != null) {
+            runInitializer();
+        }
+    }
+
+    private synchronized void runInitializer() {
+        Runnable init = initializer;
+        if (init != null) {
+            init.run();
+            initializer = null;
+        }
+    }
+
     /**
      * Get the result set type.
      * @return result set type.
@@ -259,6 +522,7 @@ public class StatementConfig {
         return new ToStringBuilder(this).append("id", id).append("kind", kind).append(
                 "resultType", resultType).append("rowMapper", rowMapper).append("fragment",
                 fragment).append("parameterTypes", parameterTypes).append("selectKey", selectKey)
-                .append("selectKeyType", selectKeyType).append("options", options).toString();
+                .append("selectKeyType", selectKeyType).append("options", options).append(
+                        "batchSize", batchSize).toString();
     }
 }
@@ -32,6 +32,8 @@ public class SubselectConfig {
 
     private final ResultMap resultMap;
 
+    private final boolean batch;
+
     /**
      * Constructor.
      * @param subselectKey subselect statement key
@@ -41,10 +43,24 @@ public class SubselectConfig {
      */
     public SubselectConfig(StatementKey subselectKey, PropertyMappingConfig propertyMapping,
             Class<?> mapper, ResultMap resultMap) {
+        this(subselectKey, propertyMapping, mapper, resultMap, false);
+    }
+
+    /**
+     * Constructor.
+     * @param subselectKey subselect statement key
+     * @param propertyMapping property mapping that uses the subselect
+     * @param mapper mapper declaring the result map
+     * @param resultMap result map declaring the property mapping
+     * @param batch if subselect is batch subselect
+     */
+    public SubselectConfig(StatementKey subselectKey, PropertyMappingConfig propertyMapping,
+            Class<?> mapper, ResultMap resultMap, boolean batch) {
         this.subselectKey = subselectKey;
         this.propertyMapping = propertyMapping;
         this.mapper = mapper;
         this.resultMap = resultMap;
+        this.batch = batch;
     }
 
     /**
@@ -78,4 +94,12 @@ public class SubselectConfig {
     public ResultMap getResultMap() {
         return resultMap;
     }
+
+    /**
+     * Getter for batch flag.
+     * @return if subselect is batch subselect, executed once for all rows
+     */
+    public boolean isBatch() {
+        return batch;
+    }
 }
\ No newline at end of file
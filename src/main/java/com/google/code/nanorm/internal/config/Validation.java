@@ -18,14 +18,27 @@ package com.google.code.nanorm.internal.config;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
+import com.google.code.nanorm.annotations.Batch;
+import com.google.code.nanorm.annotations.Cached;
+import com.google.code.nanorm.annotations.Coalesced;
+import com.google.code.nanorm.annotations.Invalidates;
+import com.google.code.nanorm.annotations.Pipelined;
 import com.google.code.nanorm.annotations.Property;
 import com.google.code.nanorm.annotations.ResultMap;
 import com.google.code.nanorm.annotations.ResultMapRef;
 import com.google.code.nanorm.annotations.SelectKey;
 import com.google.code.nanorm.annotations.SelectKeyType;
 import com.google.code.nanorm.exceptions.ConfigurationException;
+import com.google.code.nanorm.internal.introspect.TypeOracle;
 import com.google.code.nanorm.internal.util.Messages;
 
 /**
@@ -35,9 +48,17 @@ import com.google.code.nanorm.internal.util.Messages;
  */
 public class Validation {
 
+    /**
+     * Result types that are immutable, so cached results could be shared.
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays
+            .<Class<?>> asList(String.class, Boolean.class, Character.class, Byte.class,
+                    Short.class, Integer.class, Long.class, Float.class, Double.class,
+                    BigInteger.class, BigDecimal.class, Locale.class));
+
     /**
      * Validate that every property mentioned in the groupBy is explicitly
-     * configured.
+     * configured and ordered result map has the groupBy list.
      * 
      * @param mapper mapper
      * @param method mapper method result map is applied to
@@ -55,6 +76,10 @@ public class Validation {
                         method, resultMap));
             }
         }
+        if (resultMap.ordered() && resultMap.groupBy().length == 0) {
+            throw new ConfigurationException(Messages.orderedWithoutGroupBy(mapper, method,
+                    resultMap));
+        }
     }
 
     /**
@@ -87,6 +112,240 @@ public class Validation {
         }
     }
 
+    /**
+     * Validate usage of {@link Batch} annotation.
+     * 
+     * @param batch {@link Batch} annotation
+     * @param kind query kind
+     * @param mapper mapper interface
+     * @param method mapper method
+     * @throws ConfigurationException configuration is invalid
+     */
+    static void validateBatch(Batch batch, QueryKind kind, Class<?> mapper, Method method)
+            throws ConfigurationException {
+        if (kind != QueryKind.INSERT && kind != QueryKind.UPDATE) {
+            throw new ConfigurationException(Messages.invalidBatch(mapper, method,
+                    "only @Insert and @Update methods could be executed in batch"));
+        }
+        if (batch.size() < 0) {
+            throw new ConfigurationException(Messages.invalidBatch(mapper, method,
+                    "batch size must not be negative"));
+        }
+        if (method.getAnnotation(SelectKey.class) != null) {
+            throw new ConfigurationException(Messages.invalidBatch(mapper, method,
+                    "@SelectKey is not supported for batch methods"));
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType != void.class && returnType != int[].class) {
+            throw new ConfigurationException(Messages.invalidBatch(mapper, method,
+                    "return type must be int[] or void"));
+        }
+        Class<?>[] params = method.getParameterTypes();
+        if (params.length == 0
+                || !(params[0].isArray() || Collection.class.isAssignableFrom(params[0]))) {
+            throw new ConfigurationException(Messages.invalidBatch(mapper, method,
+                    "first parameter must be an array or a collection"));
+        }
+    }
+
+    /**
+     * Validate method returning the cursor ({@link java.util.Iterator} or
+     * {@link Iterable}).
+     * 
+     * @param kind query kind
+     * @param resultMap result map configuration
+     * @param mapper mapper interface
+     * @param method mapper method
+     * @throws ConfigurationException configuration is invalid
+     */
+    static void validateCursor(QueryKind kind, ResultMapConfig resultMap, Class<?> mapper,
+            Method method) throws ConfigurationException {
+        if (kind != QueryKind.SELECT) {
+            throw new ConfigurationException(Messages.invalidCursor(mapper, method,
+                    "only @Select methods could return cursor"));
+        }
+        if (method.getAnnotation(Batch.class) != null) {
+            throw new ConfigurationException(Messages.invalidCursor(mapper, method,
+                    "batch methods could not return cursor"));
+        }
+        if (resultMap.getGroupBy() != null && resultMap.getGroupBy().length > 0
+                && !resultMap.isOrdered()) {
+            throw new ConfigurationException(Messages.invalidCursor(mapper, method,
+                    "groupBy is not supported for cursors, unless rows are ordered"));
+        }
+    }
+
+    /**
+     * Validate usage of {@link Pipelined} annotation.
+     * 
+     * @param pipelined {@link Pipelined} annotation
+     * @param kind query kind
+     * @param cursor if method returns the cursor
+     * @param mapper mapper interface
+     * @param method mapper method
+     * @throws ConfigurationException configuration is invalid
+     */
+    static void validatePipelined(Pipelined pipelined, QueryKind kind, boolean cursor,
+            Class<?> mapper, Method method) throws ConfigurationException {
+        if (kind != QueryKind.SELECT) {
+            throw new ConfigurationException(Messages.invalidPipelined(mapper, method,
+                    "only @Select methods could be pipelined"));
+        }
+        if (cursor) {
+            throw new ConfigurationException(Messages.invalidPipelined(mapper, method,
+                    "methods returning cursor could not be pipelined"));
+        }
+        if (pipelined.threads() < 0) {
+            throw new ConfigurationException(Messages.invalidPipelined(mapper, method,
+                    "amount of threads must not be negative"));
+        }
+        if (pipelined.bufferSize() <= 0) {
+            throw new ConfigurationException(Messages.invalidPipelined(mapper, method,
+                    "buffer size must be positive"));
+        }
+    }
+
+    /**
+     * Validate usage of {@link Cached} annotation.
+     * 
+     * @param cached {@link Cached} annotation
+     * @param stConfig statement configuration, with result type configured
+     * @param mapper mapper interface
+     * @param method mapper method
+     * @throws ConfigurationException configuration is invalid
+     */
+    static void validateCached(Cached cached, StatementConfig stConfig, Class<?> mapper,
+            Method method) throws ConfigurationException {
+        if (stConfig.getKind() != QueryKind.SELECT) {
+            throw new ConfigurationException(Messages.invalidCached(mapper, method,
+                    "only @Select methods could be cached"));
+        }
+        if (stConfig.isCursor()) {
+            throw new ConfigurationException(Messages.invalidCached(mapper, method,
+                    "methods returning cursor could not be cached"));
+        }
+        if (stConfig.getCallbackIndex() != StatementConfig.RETURN_VALUE) {
+            throw new ConfigurationException(Messages.invalidCached(mapper, method,
+                    "methods passing results to DataSink could not be cached"));
+        }
+        if (cached.maxEntries() <= 0) {
+            throw new ConfigurationException(Messages.invalidCached(mapper, method,
+                    "maximum amount of entries must be positive"));
+        }
+        if (cached.ttl() < 0) {
+            throw new ConfigurationException(Messages.invalidCached(mapper, method,
+                    "time to live must not be negative"));
+        }
+        if (!cached.readOnly() && !isImmutableResult(stConfig.getResultType())) {
+            throw new ConfigurationException(Messages.invalidCached(mapper, method,
+                    "results are shared by all callers, but result type "
+                            + stConfig.getResultType()
+                            + " is mutable; set readOnly if results are not modified"));
+        }
+        if (cached.tables().length == 0 && cached.ttl() == 0) {
+            throw new ConfigurationException(Messages.invalidCached(mapper, method,
+                    "results never expire and are never invalidated; "
+                            + "set the tables method reads or time to live"));
+        }
+    }
+
+    /**
+     * Check that result (or its elements, if result is an array or a
+     * collection) could not be modified by the caller. Arrays and collections
+     * are copied by the result cache.
+     * 
+     * @param resultType result type
+     * @return if result elements are immutable
+     */
+    private static boolean isImmutableResult(Type resultType) {
+        Type element = TypeOracle.resolveElementType(resultType);
+        Class<?> clazz = TypeOracle.resolveClass(element != null ? element : resultType);
+        return clazz.isPrimitive() || clazz.isEnum() || IMMUTABLE_TYPES.contains(clazz);
+    }
+
+    /**
+     * Validate usage of {@link Coalesced} annotation.
+     * 
+     * @param coalesced coalescing configuration
+     * @param stConfig statement configuration, with result type configured
+     * @param mapper mapper interface
+     * @param method mapper method
+     * @throws ConfigurationException configuration is invalid
+     */
+    static void validateCoalesced(Coalesced coalesced, StatementConfig stConfig,
+            Class<?> mapper, Method method) throws ConfigurationException {
+        if (stConfig.getKind() != QueryKind.SELECT) {
+            throw new ConfigurationException(Messages.invalidCoalesced(mapper, method,
+                    "only @Select methods could be coalesced"));
+        }
+        if (stConfig.isCursor()) {
+            throw new ConfigurationException(Messages.invalidCoalesced(mapper, method,
+                    "methods returning cursor could not be coalesced"));
+        }
+        if (stConfig.getCallbackIndex() != StatementConfig.RETURN_VALUE) {
+            throw new ConfigurationException(Messages.invalidCoalesced(mapper, method,
+                    "methods passing results to DataSink could not be coalesced"));
+        }
+        if (!coalesced.readOnly() && !isImmutableResult(stConfig.getResultType())) {
+            throw new ConfigurationException(Messages.invalidCoalesced(mapper, method,
+                    "results are shared by the waiting threads, but result type "
+                            + stConfig.getResultType()
+                            + " is mutable; set readOnly if results are not modified"));
+        }
+        if (!coalesced.readOnly() && !coalesced.copy()
+                && TypeOracle.resolveElementType(stConfig.getResultType()) != null) {
+            throw new ConfigurationException(Messages.invalidCoalesced(mapper, method,
+                    "collections and arrays are shared by the waiting threads if copy "
+                            + "is not set; set readOnly if results are not modified"));
+        }
+    }
+
+    /**
+     * Validate usage of {@link Invalidates} annotation.
+     * 
+     * @param kind query kind
+     * @param mapper mapper interface
+     * @param method mapper method
+     * @throws ConfigurationException configuration is invalid
+     */
+    static void validateInvalidates(QueryKind kind, Class<?> mapper, Method method)
+            throws ConfigurationException {
+        if (kind == QueryKind.SELECT) {
+            throw new ConfigurationException(Messages.invalidInvalidates(mapper, method,
+                    "only @Insert, @Update and @Call methods could modify tables"));
+        }
+    }
+
+    /**
+     * Validate result map of the pipelined method. Rows of pipelined query are
+     * mapped independently, so result map could not group rows or execute
+     * other queries.
+     * 
+     * @param resultMap result map configuration, with subselects configured
+     * @param mapper mapper interface
+     * @param method mapper method
+     * @throws ConfigurationException configuration is invalid
+     */
+    static void validatePipelinedMap(ResultMapConfig resultMap, Class<?> mapper, Method method)
+            throws ConfigurationException {
+        if (resultMap.getGroupBy() != null && resultMap.getGroupBy().length > 0) {
+            throw new ConfigurationException(Messages.invalidPipelined(mapper, method,
+                    "groupBy is not supported for pipelined methods"));
+        }
+        if (resultMap.getMappings() != null) {
+            for (PropertyMappingConfig mapping : resultMap.getMappings()) {
+                if (mapping.getNestedMapConfig() != null) {
+                    throw new ConfigurationException(Messages.invalidPipelined(mapper, method,
+                            "nested result maps are not supported for pipelined methods"));
+                }
+                if (mapping.getSubselect() != null || mapping.getBatchSubselect() != null) {
+                    throw new ConfigurationException(Messages.invalidPipelined(mapper, method,
+                            "subselects are not supported for pipelined methods"));
+                }
+            }
+        }
+    }
+
     /**
      * Validate property mapping.
      * 
@@ -119,7 +378,12 @@ public class Validation {
             }
         }
 
-        if (mapping.subselectMapper() != Object.class && "".equals(mapping.subselect())) {
+        if (mapping.batchSubselect().length() > 0) {
+            validateBatchSubselect(mapping, mapper, resultMap);
+        }
+
+        if (mapping.subselectMapper() != Object.class && "".equals(mapping.subselect())
+                && "".equals(mapping.batchSubselect())) {
             throw new ConfigurationException(Messages.subselectMapperWithoutSubselect(mapping,
                     mapper, resultMap));
         }
@@ -132,6 +396,38 @@ public class Validation {
 
     }
 
+    /**
+     * Validate batch subselect property mapping.
+     * 
+     * @param mapping property mapping annotation
+     * @param mapper mapper interface
+     * @param resultMap result map
+     * @throws ConfigurationException configuration is invalid
+     */
+    private static void validateBatchSubselect(Property mapping, Class<?> mapper,
+            ResultMap resultMap) throws ConfigurationException {
+        if (mapping.subselect().length() > 0) {
+            throw new ConfigurationException(Messages.invalidBatchSubselect(mapping, mapper,
+                    resultMap, "subselect and batch subselect are mutually exclusive"));
+        }
+        if (mapping.nestedMap().value().length() > 0) {
+            throw new ConfigurationException(Messages.invalidBatchSubselect(mapping, mapper,
+                    resultMap, "nested map and batch subselect are mutually exclusive"));
+        }
+        if (mapping.batchKey().length() == 0) {
+            throw new ConfigurationException(Messages.invalidBatchSubselect(mapping, mapper,
+                    resultMap, "batch key property must be specified"));
+        }
+        if (mapping.batchSize() <= 0) {
+            throw new ConfigurationException(Messages.invalidBatchSubselect(mapping, mapper,
+                    resultMap, "batch size must be positive"));
+        }
+        if (mapping.columnIndex() == 0 && mapping.column().length() == 0) {
+            throw new ConfigurationException(Messages.invalidBatchSubselect(mapping, mapper,
+                    resultMap, "column must be specified"));
+        }
+    }
+
     /**
      * Validate given mutually exclusive annotations are not used together (only
      * one could be not <code>null</code>).
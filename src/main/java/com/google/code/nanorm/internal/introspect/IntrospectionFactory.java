@@ -16,10 +16,14 @@
 
 package com.google.code.nanorm.internal.introspect;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.TypeHandler;
 import com.google.code.nanorm.internal.QueryDelegate;
 import com.google.code.nanorm.internal.config.InternalConfiguration;
+import com.google.code.nanorm.internal.mapping.result.BeanMapper;
 
 /**
  * Factory used for building getters/setters for nested properties and
@@ -107,4 +111,27 @@ public interface IntrospectionFactory {
      * @return mapper instance
      */
     <T> T createMapper(Class<T> interfaze, InternalConfiguration config, QueryDelegate delegate);
+
+    /**
+     * Build invoker for the dynamic SQL generator.
+     * 
+     * @param sqlSource SQL source class
+     * @param method generator method
+     * @return invoker
+     */
+    SQLSourceInvoker buildSQLSourceInvoker(Class<? extends SQLSource> sqlSource, Method method);
+
+    /**
+     * Build compiled mapper which creates the bean and maps given result set
+     * columns onto its simple properties.
+     * 
+     * @param beanClass bean class
+     * @param properties bean properties (simple property names)
+     * @param typeHandlers type handlers for the properties
+     * @param columns column indices for the properties
+     * @return bean mapper or <code>null</code> if compiled mappers are not
+     * supported for given bean
+     */
+    BeanMapper buildBeanMapper(Class<?> beanClass, String[] properties,
+            TypeHandler<?>[] typeHandlers, int[] columns);
 }
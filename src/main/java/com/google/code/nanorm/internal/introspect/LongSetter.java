@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal.introspect;
+
+/**
+ * Setter for <code>long</code> property, which sets the value without
+ * boxing.
+ * 
+ * @author Ivan Dubrov
+ */
+public interface LongSetter extends Setter {
+    /**
+     * Set value of the property.
+     * 
+     * @param instance instance
+     * @param value value to set
+     */
+    void setLong(Object instance, long value);
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.nanorm.internal.introspect;
+
+import com.google.code.nanorm.SQLSource;
+
+/**
+ * Invoker of the dynamic SQL generator. Creates {@link SQLSource} instances
+ * and invokes their generator method (see {@link SQLSource#GENERATOR_METHOD}).
+ * 
+ * @author Ivan Dubrov
+ */
+public interface SQLSourceInvoker {
+    /**
+     * Create new SQL source instance.
+     * 
+     * @return SQL source
+     */
+    SQLSource newInstance();
+
+    /**
+     * Invoke the generator method of the SQL source.
+     * 
+     * @param source SQL source, created by {@link #newInstance()}
+     * @param args query arguments
+     */
+    void generate(SQLSource source, Object[] args);
+}
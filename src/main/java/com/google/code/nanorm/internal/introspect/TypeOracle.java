@@ -140,6 +140,32 @@ public class TypeOracle {
         }
     }
 
+    /**
+     * Resolve element type of the array or {@link java.util.Collection} type.
+     * 
+     * @param type array or collection type
+     * @return element type or <code>null</code> if type is neither an array
+     * nor a collection, or element type could not be resolved
+     */
+    public static Type resolveElementType(Type type) {
+        Type element = null;
+        if (type instanceof GenericArrayType) {
+            element = ((GenericArrayType) type).getGenericComponentType();
+        } else if (type instanceof Class<?> && ((Class<?>) type).isArray()) {
+            element = ((Class<?>) type).getComponentType();
+        } else if ((type instanceof Class<?> || type instanceof ParameterizedType)
+                && java.util.Collection.class.isAssignableFrom(resolveClass(type))) {
+            Type collection = resolvePath(java.util.Collection.class, type);
+            if (collection instanceof ParameterizedType) {
+                element = ((ParameterizedType) collection).getActualTypeArguments()[0];
+            }
+        }
+        if (!(element instanceof Class<?> || element instanceof ParameterizedType)) {
+            return null;
+        }
+        return element;
+    }
+
     /**
      * Resolve type arguments of the method starting from given context type.
      * 
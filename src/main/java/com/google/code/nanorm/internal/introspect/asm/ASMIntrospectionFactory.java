@@ -16,17 +16,30 @@
 
 package com.google.code.nanorm.internal.introspect.asm;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Type;
 import java.lang.reflect.Modifier;
+import java.net.URL;
 import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivilegedAction;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.TypeHandler;
 import com.google.code.nanorm.exceptions.IntrospectionException;
 import com.google.code.nanorm.internal.QueryDelegate;
 import com.google.code.nanorm.internal.config.InternalConfiguration;
@@ -34,12 +47,22 @@ import com.google.code.nanorm.internal.config.StatementConfig;
 import com.google.code.nanorm.internal.introspect.AbstractIntrospectionFactory;
 import com.google.code.nanorm.internal.introspect.Getter;
 import com.google.code.nanorm.internal.introspect.IntrospectUtils;
+import com.google.code.nanorm.internal.introspect.SQLSourceInvoker;
 import com.google.code.nanorm.internal.introspect.Setter;
+import com.google.code.nanorm.internal.introspect.reflect.ReflectSQLSourceInvoker;
+import com.google.code.nanorm.internal.mapping.result.BeanMapper;
+import com.google.code.nanorm.internal.mapping.result.DefaultRowMapper;
+import com.google.code.nanorm.internal.mapping.result.RowMapper;
+import com.google.code.nanorm.internal.type.TypeHandlerFactoryImpl;
 
 /**
  * ASM based
  * {@link com.google.code.nanorm.internal.introspect.IntrospectionFactory}
  * implementation. Uses runtime code generation to create getters and setters.
+ * Mappers, accessors and bean mappers precompiled by the
+ * {@link com.google.code.nanorm.config.MapperCompiler} are loaded instead of
+ * being generated. Only the classes listed in the {@link #PRECOMPILED_INDEX}
+ * are looked up, so nothing is looked up unless the mappers were compiled.
  * 
  * TODO: Debugging.
  * 
@@ -48,10 +71,46 @@ import com.google.code.nanorm.internal.introspect.Setter;
  */
 public class ASMIntrospectionFactory extends AbstractIntrospectionFactory {
 
+    /**
+     * Resource listing the classes precompiled by the
+     * {@link com.google.code.nanorm.config.MapperCompiler}, one binary class
+     * name per line.
+     */
+    public static final String PRECOMPILED_INDEX = "META-INF/nanorm/precompiled";
+
+    private static final String GENERATED_PREFIX = "com/google/code/nanorm/generated/";
+
     private final ASMClassLoader classLoader;
 
     private final Map<AccessorKey, Object> accessors;
 
+    private final Map<BeanMapperKey, BeanMapper> beanMappers;
+
+    /**
+     * Constructors of the generated bean mapper classes, by signature. Class
+     * depends only on the bean class, properties and type handler classes, so
+     * it is shared by the mappers of different columns.
+     */
+    private final Map<String, Constructor<?>> beanMapperClasses;
+
+    /**
+     * Names of the precompiled classes listed in the index, by classloader.
+     * The index is read once for every classloader.
+     */
+    private final Map<ClassLoader, Set<String>> precompiledNames;
+
+    /**
+     * Code of the classes generated for the build time compilation, by
+     * internal name. Is {@literal null} unless the factory is precompiling.
+     */
+    private final Map<String, byte[]> precompiledCode;
+
+    /**
+     * Generated mapper classes, by mapper. Classes are defined by the
+     * classloader of this factory, so they are unloaded with the factory.
+     */
+    private final Map<Class<?>, MapperClass> mapperClasses;
+
     private final AtomicInteger counter = new AtomicInteger(0);
 
     private final Object lock = new Object();
@@ -63,12 +122,31 @@ public class ASMIntrospectionFactory extends AbstractIntrospectionFactory {
      * generated clasess
      */
     public ASMIntrospectionFactory(final ClassLoader parentLoader) {
+        this(parentLoader, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param parentLoader parent classloader for classloader which will load
+     * generated clasess
+     * @param precompiling if factory generates the classes for the build time
+     * compilation; such factory uses stable class names and keeps the code of
+     * the generated classes
+     */
+    private ASMIntrospectionFactory(final ClassLoader parentLoader, boolean precompiling) {
         classLoader = AccessController.doPrivileged(new PrivilegedAction<ASMClassLoader>() {
             public ASMClassLoader run() {
                 return new ASMClassLoader(parentLoader);
             }
         });
         accessors = new ConcurrentHashMap<AccessorKey, Object>();
+        beanMappers = new ConcurrentHashMap<BeanMapperKey, BeanMapper>();
+        beanMapperClasses = new ConcurrentHashMap<String, Constructor<?>>();
+        mapperClasses = new ConcurrentHashMap<Class<?>, MapperClass>();
+        precompiledNames = new WeakHashMap<ClassLoader, Set<String>>();
+        precompiledCode = precompiling ? Collections
+                .synchronizedMap(new TreeMap<String, byte[]>()) : null;
     }
     
     /**
@@ -100,13 +178,38 @@ public class ASMIntrospectionFactory extends AbstractIntrospectionFactory {
                 : new AccessorKey(types, path, isSetter);
         Object instance = accessors.get(key);
         if (instance == null) {
-            String name = "com/google/code/nanorm/generated/Accessor" + counter.incrementAndGet();
+            Type propertyType = types == null ? getPropertyType(beanClass, path)
+                    : getParameterType(types, path);
+
+            StringBuilder signature = new StringBuilder(isSetter ? "setter " : "getter ");
+            if (types == null) {
+                signature.append(beanClass.getName());
+            } else {
+                for (Type type : types) {
+                    signature.append(typeName(type)).append(',');
+                }
+            }
+            signature.append(' ').append(path).append(' ').append(typeName(propertyType));
 
-            AccessorBuilder builder = new AccessorBuilder(name, isSetter);
-            Type[] finalType = new Type[1];
+            Class<?> precompiled = findPrecompiled("Accessor", signature.toString());
+            String name = generatedName("Accessor", signature.toString());
+            byte[] code = null;
+            if (precompiled == null) {
+                // Setters of int, long and double properties also implement
+                // primitive setter interface
+                Class<?> primitive = null;
+                if (isSetter
+                        && (propertyType == int.class || propertyType == long.class
+                                || propertyType == double.class)) {
+                    primitive = (Class<?>) propertyType;
+                }
+                AccessorBuilder builder = new AccessorBuilder(name, isSetter, primitive,
+                        precompiledCode != null ? signature.toString() : null);
 
-            byte[] code = types == null ? IntrospectUtils.visitPath(path, beanClass, builder,
-                    finalType) : IntrospectUtils.visitPath(path, types, builder, finalType);
+                code = types == null ? IntrospectUtils.visitPath(path, beanClass, builder,
+                        new Type[1]) : IntrospectUtils.visitPath(path, types, builder,
+                        new Type[1]);
+            }
 
             // Re-check we didn't created other instance while we were
             // generating
@@ -114,10 +217,11 @@ public class ASMIntrospectionFactory extends AbstractIntrospectionFactory {
                 instance = accessors.get(key);
 
                 if (instance == null) {
-                    Class<?> clazz = defineClass(name.replace('/', '.'), code);
+                    Class<?> clazz = precompiled != null ? precompiled : defineGenerated(name,
+                            code);
                     try {
                         Constructor<?> ct = clazz.getConstructor(java.lang.reflect.Type.class);
-                        instance = ct.newInstance(finalType[0]);
+                        instance = ct.newInstance(propertyType);
                     } catch (Exception e) {
                         throw new IntrospectionException(
                                 "Failed to create getter/setter instance!", e);
@@ -155,39 +259,467 @@ public class ASMIntrospectionFactory extends AbstractIntrospectionFactory {
      */
     public <T> T createMapper(Class<T> mapper, InternalConfiguration config,
             QueryDelegate delegate) {
+        // Mapper class is generated once, instances are created from the
+        // cached constructor
+        MapperClass mapperClass = mapperClasses.get(mapper);
+        java.lang.reflect.Method[] methods = mapperClass != null ? mapperClass.methods
+                : MapperBuilder.abstractMethods(mapper);
 
-        // TODO: Cache!
-        List<MethodConfig> methods = new ArrayList<MethodConfig>();
-        List<StatementConfig> configs = new ArrayList<StatementConfig>();
-        
-        // Generate list of all abstract methods.
-        for (java.lang.reflect.Method m : mapper.getMethods()) {
-            if (Modifier.isAbstract(m.getModifiers())) {
-                StatementConfig stConfig = config.getStatementConfig(mapper, m);
-    
-                MethodConfig cfg = new MethodConfig(m, methods.size());
-                methods.add(cfg);
-                configs.add(stConfig);
-            }
+        StatementConfig[] configs = new StatementConfig[methods.length];
+        for (int i = 0; i < methods.length; ++i) {
+            configs[i] = config.getStatementConfig(mapper, methods[i]);
         }
 
-        String name = "com/google/code/nanorm/generated/Mapper" + counter.incrementAndGet();
-        byte[] code = MapperBuilder.buildMapper(name, mapper, methods
-                .toArray(new MethodConfig[methods.size()]));
+        if (mapperClass == null) {
+            mapperClass = buildMapperClass(mapper, methods);
+        }
 
-        Class<?> clazz = defineClass(name.replace('/', '.'), code);
         Object instance;
         try {
-            Constructor<?> ctor = clazz.getConstructor(QueryDelegate.class,
-                    StatementConfig[].class);
-            instance = ctor.newInstance(delegate, configs.toArray(new StatementConfig[configs
-                    .size()]));
+            instance = mapperClass.ctor.newInstance(delegate, configs);
         } catch (Exception e) {
             throw new IntrospectionException("Failed to create mapper instance!", e);
         }
         return mapper.cast(instance);
     }
 
+    /**
+     * Generate the mapper class. Class is generated once for every mapper,
+     * unless it was precompiled by the
+     * {@link com.google.code.nanorm.config.MapperCompiler}.
+     * 
+     * @param mapper mapper interface or abstract class
+     * @param methods abstract methods to implement
+     * @return generated mapper class
+     */
+    private MapperClass buildMapperClass(Class<?> mapper, java.lang.reflect.Method[] methods) {
+        Class<?> precompiled = findPrecompiled(mapper, methods);
+        if (precompiled != null) {
+            MapperClass mapperClass = new MapperClass(mapperConstructor(precompiled), methods);
+            mapperClasses.put(mapper, mapperClass);
+            return mapperClass;
+        }
+
+        MethodConfig[] configs = new MethodConfig[methods.length];
+        for (int i = 0; i < methods.length; ++i) {
+            configs[i] = new MethodConfig(methods[i], i);
+        }
+
+        String name = GENERATED_PREFIX + "Mapper" + counter.incrementAndGet();
+        byte[] code = MapperBuilder.buildMapper(name, mapper, configs);
+
+        // Re-check we didn't created other class while we were generating
+        synchronized (lock) {
+            MapperClass mapperClass = mapperClasses.get(mapper);
+            if (mapperClass == null) {
+                Class<?> clazz = defineClass(name.replace('/', '.'), code);
+                mapperClass = new MapperClass(mapperConstructor(clazz), methods);
+                mapperClasses.put(mapper, mapperClass);
+            }
+            return mapperClass;
+        }
+    }
+
+    /**
+     * Get the name of the mapper class precompiled at build time.
+     * 
+     * @param mapper mapper interface or abstract class
+     * @return internal name of the precompiled mapper class
+     */
+    public static String precompiledMapperName(Class<?> mapper) {
+        return (mapper.getName() + MapperBuilder.PRECOMPILED_SUFFIX).replace('.', '/');
+    }
+
+    /**
+     * Generate the mapper class to be precompiled at build time. The class
+     * carries the signature of the mapper methods, so it is ignored once the
+     * mapper is changed.
+     * 
+     * @param mapper mapper interface or abstract class
+     * @return bytecode of the mapper class
+     * @see com.google.code.nanorm.config.MapperCompiler
+     */
+    public static byte[] buildPrecompiledMapper(Class<?> mapper) {
+        java.lang.reflect.Method[] methods = MapperBuilder.abstractMethods(mapper);
+        MethodConfig[] configs = new MethodConfig[methods.length];
+        for (int i = 0; i < methods.length; ++i) {
+            configs[i] = new MethodConfig(methods[i], i);
+        }
+        return MapperBuilder.buildMapper(precompiledMapperName(mapper), mapper, configs,
+                MapperBuilder.signature(methods));
+    }
+
+    /**
+     * Generate the classes to be precompiled at build time for the mapper: the
+     * mapper class, the property accessors built while configuring the mapper
+     * statements and the bean mappers of the explicit result maps. Every class
+     * carries the signature of what it was generated for, so it is ignored
+     * once the mapper or the beans are changed.
+     * 
+     * @param mapper mapper interface or abstract class
+     * @return bytecode of the classes, by internal class name
+     * @throws com.google.code.nanorm.exceptions.ConfigurationException mapper
+     * configuration is invalid
+     * @see com.google.code.nanorm.config.MapperCompiler
+     */
+    public static Map<String, byte[]> buildPrecompiledClasses(Class<?> mapper) {
+        ASMIntrospectionFactory factory = new ASMIntrospectionFactory(mapper.getClassLoader(),
+                true);
+        InternalConfiguration config = new InternalConfiguration(new TypeHandlerFactoryImpl(),
+                factory);
+        config.configure(mapper);
+
+        // Bean mappers are otherwise built for the first result set
+        for (java.lang.reflect.Method method : MapperBuilder.abstractMethods(mapper)) {
+            RowMapper rowMapper = config.getStatementConfig(mapper, method).getRowMapper();
+            if (rowMapper instanceof DefaultRowMapper) {
+                ((DefaultRowMapper) rowMapper).buildBeanMapper();
+            }
+        }
+
+        Map<String, byte[]> classes = new TreeMap<String, byte[]>(factory.precompiledCode);
+        classes.put(precompiledMapperName(mapper), buildPrecompiledMapper(mapper));
+        return classes;
+    }
+
+    /**
+     * Read the index of the precompiled classes.
+     * 
+     * @param is index stream, closed after reading
+     * @param names set to add the class names to
+     * @throws IOException failed to read the index
+     */
+    public static void readIndex(InputStream is, Set<String> names) throws IOException {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() != 0) {
+                    names.add(line);
+                }
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Find the mapper class precompiled by the
+     * {@link com.google.code.nanorm.config.MapperCompiler}. The class is
+     * looked up by the classloader of the mapper.
+     * 
+     * @param mapper mapper interface or abstract class
+     * @param methods abstract methods to implement
+     * @return precompiled mapper class or {@literal null} if not found or
+     * precompiled for different methods
+     */
+    private Class<?> findPrecompiled(Class<?> mapper, java.lang.reflect.Method[] methods) {
+        Class<?> clazz = findPrecompiled(mapper.getClassLoader(),
+                precompiledMapperName(mapper), MapperBuilder.signature(methods));
+        return clazz != null && mapper.isAssignableFrom(clazz) ? clazz : null;
+    }
+
+    /**
+     * Find the accessor or bean mapper class precompiled by the
+     * {@link com.google.code.nanorm.config.MapperCompiler}. The class is
+     * looked up by the classloader of this factory.
+     * 
+     * @param kind kind of the class
+     * @param signature expected signature of the class
+     * @return precompiled class or {@literal null} if not found or precompiled
+     * with different signature
+     */
+    private Class<?> findPrecompiled(String kind, String signature) {
+        if (precompiledCode != null || precompiledNames(classLoader).isEmpty()) {
+            return null;
+        }
+        return findPrecompiled(classLoader, precompiledName(kind, signature), signature);
+    }
+
+    /**
+     * Find the class precompiled by the
+     * {@link com.google.code.nanorm.config.MapperCompiler}. Only the classes
+     * listed in the index of the classloader are loaded.
+     * 
+     * @param loader classloader to look up the class by
+     * @param name internal class name
+     * @param signature expected signature of the class
+     * @return precompiled class or {@literal null} if not found or precompiled
+     * with different signature
+     */
+    private Class<?> findPrecompiled(ClassLoader loader, String name, String signature) {
+        if (loader == null || precompiledCode != null) {
+            return null;
+        }
+        String className = name.replace('/', '.');
+        if (!precompiledNames(loader).contains(className)) {
+            return null;
+        }
+
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(className, true, loader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        // Mapper or bean was changed after the class was precompiled
+        try {
+            Object actual = clazz.getField(MapperBuilder.SIGNATURE_FIELD).get(null);
+            if (!signature.equals(actual)) {
+                return null;
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return clazz;
+    }
+
+    /**
+     * Get names of the precompiled classes listed in the index of the
+     * classloader. Index is read once, so the classes are not looked up unless
+     * the mappers were compiled.
+     * 
+     * @param loader classloader
+     * @return names of the precompiled classes
+     */
+    private Set<String> precompiledNames(ClassLoader loader) {
+        synchronized (precompiledNames) {
+            Set<String> names = precompiledNames.get(loader);
+            if (names == null) {
+                names = new HashSet<String>();
+                try {
+                    Enumeration<URL> urls = loader.getResources(PRECOMPILED_INDEX);
+                    while (urls.hasMoreElements()) {
+                        readIndex(urls.nextElement().openStream(), names);
+                    }
+                } catch (IOException e) {
+                    throw new IntrospectionException(
+                            "Failed to read the index of precompiled classes!", e);
+                }
+                precompiledNames.put(loader, names);
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Get the name for the generated class. Classes generated for the build
+     * time compilation are named after the digest of their signature, so the
+     * precompiled class could be found at runtime.
+     * 
+     * @param kind kind of the class
+     * @param signature signature of the class
+     * @return internal class name
+     */
+    private String generatedName(String kind, String signature) {
+        return precompiledCode != null ? precompiledName(kind, signature) : GENERATED_PREFIX
+                + kind + counter.incrementAndGet();
+    }
+
+    /**
+     * Get the name of the accessor or bean mapper class precompiled at build
+     * time.
+     * 
+     * @param kind kind of the class
+     * @param signature signature of the class
+     * @return internal class name
+     */
+    private static String precompiledName(String kind, String signature) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(
+                    signature.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(GENERATED_PREFIX).append("Precompiled")
+                    .append(kind).append('_');
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16));
+                name.append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IntrospectionException("Failed to generate class name!", e);
+        } catch (IOException e) {
+            throw new IntrospectionException("Failed to generate class name!", e);
+        }
+    }
+
+    /**
+     * Get the name of the type used in the signatures.
+     * 
+     * @param type type
+     * @return type name
+     */
+    private static String typeName(Type type) {
+        return type instanceof Class<?> ? ((Class<?>) type).getName() : String.valueOf(type);
+    }
+
+    private Constructor<?> mapperConstructor(Class<?> clazz) {
+        try {
+            return clazz.getConstructor(QueryDelegate.class, StatementConfig[].class);
+        } catch (Exception e) {
+            throw new IntrospectionException("Failed to create mapper instance!", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SQLSourceInvoker buildSQLSourceInvoker(Class<? extends SQLSource> sqlSource,
+            java.lang.reflect.Method method) {
+        // Generated invoker can only access public classes visible from our
+        // classloader, fallback to reflection otherwise
+        boolean accessible = isAccessible(sqlSource)
+                && !Modifier.isAbstract(sqlSource.getModifiers())
+                && hasPublicConstructor(sqlSource);
+        for (Class<?> param : method.getParameterTypes()) {
+            accessible &= isAccessible(param);
+        }
+        if (!accessible) {
+            return new ReflectSQLSourceInvoker(sqlSource, method);
+        }
+
+        String name = GENERATED_PREFIX + "Invoker" + counter.incrementAndGet();
+        byte[] code = SQLSourceInvokerBuilder.buildInvoker(name, sqlSource, method);
+
+        Class<?> clazz = defineClass(name.replace('/', '.'), code);
+        try {
+            return (SQLSourceInvoker) clazz.newInstance();
+        } catch (Exception e) {
+            throw new IntrospectionException("Failed to create SQL source invoker instance!", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public BeanMapper buildBeanMapper(Class<?> beanClass, String[] properties,
+            TypeHandler<?>[] typeHandlers, int[] columns) {
+        BeanMapperKey key = new BeanMapperKey(beanClass, properties, typeHandlers, columns);
+        BeanMapper instance = beanMappers.get(key);
+        if (instance == null) {
+            // Generated mapper can only access public classes visible from
+            // our classloader, mapper falls back to the property setters
+            // otherwise
+            if (!isAccessible(beanClass) || Modifier.isAbstract(beanClass.getModifiers())
+                    || !hasPublicConstructor(beanClass)) {
+                return null;
+            }
+            StringBuilder signature = new StringBuilder("mapper ").append(beanClass.getName());
+            for (int i = 0; i < properties.length; ++i) {
+                java.lang.reflect.Method setter = IntrospectUtils.findSetter(beanClass,
+                        properties[i]);
+                Class<?> type = setter.getParameterTypes()[0];
+                if (!isAccessible(type)) {
+                    return null;
+                }
+                signature.append(' ').append(properties[i]).append(':').append(type.getName())
+                        .append(':').append(typeHandlers[i].getClass().getName());
+            }
+
+            Constructor<?> ctor = beanMapperClass(beanClass, properties, typeHandlers,
+                    signature.toString());
+            try {
+                instance = (BeanMapper) ctor.newInstance(typeHandlers.clone(), columns.clone());
+            } catch (Exception e) {
+                throw new IntrospectionException("Failed to create bean mapper instance!", e);
+            }
+            beanMappers.put(key, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the constructor of the bean mapper class, generating the class or
+     * loading the precompiled one first time.
+     * 
+     * @param beanClass bean class
+     * @param properties bean properties (simple property names)
+     * @param typeHandlers type handlers for the properties
+     * @param signature signature of the bean mapper class
+     * @return constructor accepting the type handlers and the column indices
+     */
+    private Constructor<?> beanMapperClass(Class<?> beanClass, String[] properties,
+            TypeHandler<?>[] typeHandlers, String signature) {
+        Constructor<?> ctor = beanMapperClasses.get(signature);
+        if (ctor == null) {
+            Class<?> precompiled = findPrecompiled("BeanMapper", signature);
+            String name = generatedName("BeanMapper", signature);
+            byte[] code = null;
+            if (precompiled == null) {
+                code = BeanMapperBuilder.buildMapper(name, beanClass, properties, typeHandlers,
+                        precompiledCode != null ? signature : null);
+            }
+
+            // Re-check we didn't created other class while we were generating
+            synchronized (lock) {
+                ctor = beanMapperClasses.get(signature);
+                if (ctor == null) {
+                    Class<?> clazz = precompiled != null ? precompiled : defineGenerated(name,
+                            code);
+                    try {
+                        ctor = clazz.getConstructor(TypeHandler[].class, int[].class);
+                    } catch (Exception e) {
+                        throw new IntrospectionException(
+                                "Failed to create bean mapper instance!", e);
+                    }
+                    beanMapperClasses.put(signature, ctor);
+                }
+            }
+        }
+        return ctor;
+    }
+
+    private static boolean hasPublicConstructor(Class<?> clazz) {
+        try {
+            clazz.getConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check that class could be accessed from the generated code.
+     * 
+     * @param clazz class
+     * @return if class is accessible
+     */
+    private boolean isAccessible(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        if (clazz.isPrimitive()) {
+            return true;
+        }
+        for (Class<?> c = clazz; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        try {
+            return Class.forName(clazz.getName(), false, classLoader) == clazz;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Define generated class in the classloader, keeping its code if factory
+     * is precompiling.
+     * 
+     * @param name internal class name
+     * @param code class code
+     * @return defined class
+     */
+    private Class<?> defineGenerated(String name, byte[] code) {
+        Class<?> clazz = defineClass(name.replace('/', '.'), code);
+        if (precompiledCode != null) {
+            precompiledCode.put(name, code);
+        }
+        return clazz;
+    }
+
     /**
      * Define class in the classloader.
      * 
@@ -203,6 +735,25 @@ public class ASMIntrospectionFactory extends AbstractIntrospectionFactory {
         });
     }
 
+    /**
+     * Generated mapper class.
+     * 
+     * @author Ivan Dubrov
+     */
+    private static class MapperClass {
+        private final Constructor<?> ctor;
+
+        /**
+         * Abstract methods of the mapper, in the order of generated methods.
+         */
+        private final java.lang.reflect.Method[] methods;
+
+        private MapperClass(Constructor<?> ctor, java.lang.reflect.Method[] methods) {
+            this.ctor = ctor;
+            this.methods = methods;
+        }
+    }
+
     /**
      * Classloader used for accessors.
      * 
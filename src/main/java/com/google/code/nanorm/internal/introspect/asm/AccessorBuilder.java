@@ -35,7 +35,10 @@ import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.Method;
 
+import com.google.code.nanorm.internal.introspect.DoubleSetter;
+import com.google.code.nanorm.internal.introspect.IntSetter;
 import com.google.code.nanorm.internal.introspect.IntrospectUtils;
+import com.google.code.nanorm.internal.introspect.LongSetter;
 import com.google.code.nanorm.internal.introspect.PropertyVisitor;
 
 /**
@@ -70,6 +73,17 @@ public final class AccessorBuilder implements PropertyVisitor<byte[]> {
 
     private final boolean isSetter;
 
+    /**
+     * Type of the primitive setter value (see {@link IntSetter},
+     * {@link LongSetter} and {@link DoubleSetter}), null for regular setter.
+     */
+    private final Type primitiveType;
+
+    /**
+     * Primitive setter method.
+     */
+    private final Method primitiveMethod;
+
     /**
      * Constructor. Starts generating the Java class code.
      * 
@@ -77,6 +91,36 @@ public final class AccessorBuilder implements PropertyVisitor<byte[]> {
      * @param isSetter if we building accessor for setter.
      */
     public AccessorBuilder(String name, boolean isSetter) {
+        this(name, isSetter, null);
+    }
+
+    /**
+     * Constructor. Starts generating the Java class code.
+     * 
+     * @param name accessor class name
+     * @param isSetter if we building accessor for setter.
+     * @param primitive property type if setter should implement primitive
+     * setter interface (<code>int</code>, <code>long</code> or
+     * <code>double</code>), null otherwise
+     */
+    public AccessorBuilder(String name, boolean isSetter, Class<?> primitive) {
+        this(name, isSetter, primitive, null);
+    }
+
+    /**
+     * Constructor. Starts generating the Java class code.
+     * 
+     * @param name accessor class name
+     * @param isSetter if we building accessor for setter.
+     * @param primitive property type if setter should implement primitive
+     * setter interface (<code>int</code>, <code>long</code> or
+     * <code>double</code>), null otherwise
+     * @param signature signature of the accessor, stored in the
+     * {@link MapperBuilder#SIGNATURE_FIELD} field; {@literal null} if not
+     * stored
+     */
+    public AccessorBuilder(String name, boolean isSetter, Class<?> primitive,
+            String signature) {
         this.isSetter = isSetter;
 
         cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
@@ -84,14 +128,65 @@ public final class AccessorBuilder implements PropertyVisitor<byte[]> {
         Type owner = Type.getType('L' + name + ';');
         String iface = isSetter ? "com/google/code/nanorm/internal/introspect/Setter"
                 : "com/google/code/nanorm/internal/introspect/Getter";
+
+        Class<?> primitiveIface = null;
+        String methodName = null;
+        if (isSetter && primitive == int.class) {
+            primitiveIface = IntSetter.class;
+            methodName = "setInt";
+        } else if (isSetter && primitive == long.class) {
+            primitiveIface = LongSetter.class;
+            methodName = "setLong";
+        } else if (isSetter && primitive == double.class) {
+            primitiveIface = DoubleSetter.class;
+            methodName = "setDouble";
+        }
+        if (primitiveIface != null) {
+            iface = Type.getInternalName(primitiveIface);
+            primitiveType = Type.getType(primitive);
+            primitiveMethod = new Method(methodName, Type.VOID_TYPE, new Type[] {OBJECT_TYPE,
+                    primitiveType });
+        } else {
+            primitiveType = null;
+            primitiveMethod = null;
+        }
+
         cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object",
                 new String[] {iface });
 
         cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "type",
                 "Ljava/lang/reflect/Type;", null, null);
 
+        if (signature != null) {
+            cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+                    MapperBuilder.SIGNATURE_FIELD, Type.getDescriptor(String.class), null,
+                    signature);
+        }
+
         visitConstructor(owner);
         visitGetType(owner);
+        if (primitiveMethod != null) {
+            visitSetValueBridge(owner);
+        }
+    }
+
+    /**
+     * Generate {@link com.google.code.nanorm.internal.introspect.Setter#setValue(Object, Object)}
+     * method for primitive setter, which unboxes the value and delegates to
+     * the primitive setter method.
+     * 
+     * @param owner type representing the class being generated
+     */
+    private void visitSetValueBridge(Type owner) {
+        GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, SET_VALUE, null, null, cw);
+
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.loadArg(1);
+        mg.unbox(primitiveType);
+        mg.invokeVirtual(owner, primitiveMethod);
+        mg.returnValue();
+        mg.endMethod();
     }
 
     /**
@@ -137,7 +232,11 @@ public final class AccessorBuilder implements PropertyVisitor<byte[]> {
         this.fullPath = path;
         this.initialBeanClass = beanClass;
 
-        if (isSetter) {
+        if (isSetter && primitiveMethod != null) {
+            // void setInt(Object instance, int value), etc.
+            accessormg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, primitiveMethod, null, null,
+                    cw);
+        } else if (isSetter) {
             // void setValue(Object instance);
             accessormg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, SET_VALUE, null, null, cw);
         } else {
@@ -170,8 +269,7 @@ public final class AccessorBuilder implements PropertyVisitor<byte[]> {
 
             // Cast parameter to required type
             Type type = Type.getType(beanClass.getComponentType());
-            accessormg.loadArg(1);
-            accessormg.unbox(type);
+            loadValue(type);
 
             // Store to array
             accessormg.arrayStore(type);
@@ -211,8 +309,7 @@ public final class AccessorBuilder implements PropertyVisitor<byte[]> {
             Type type = Type.getType(setter.getParameterTypes()[0]);
 
             // Cast parameter to required type
-            accessormg.loadArg(1);
-            accessormg.unbox(type);
+            loadValue(type);
 
             Method method = new Method(setter.getName(), Type.VOID_TYPE, new Type[] {type });
             accessormg.invokeVirtual(Type.getType(beanClass), method);
@@ -235,6 +332,21 @@ public final class AccessorBuilder implements PropertyVisitor<byte[]> {
         return null;
     }
 
+    /**
+     * Load the value being set and convert it to the required type.
+     * 
+     * @param type required type
+     */
+    private void loadValue(Type type) {
+        accessormg.loadArg(1);
+        if (primitiveType == null) {
+            accessormg.unbox(type);
+        } else if (!primitiveType.equals(type)) {
+            accessormg.box(primitiveType);
+            accessormg.unbox(type);
+        }
+    }
+
     /**
      * Generate the code that performs null check
      * @param pos position in the property path (for better error messages)
@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.nanorm.internal.introspect.asm;
+
+import static com.google.code.nanorm.internal.introspect.asm.Constants.CTOR;
+import static com.google.code.nanorm.internal.introspect.asm.Constants.OBJECT_TYPE;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import com.google.code.nanorm.TypeHandler;
+import com.google.code.nanorm.internal.introspect.IntrospectUtils;
+import com.google.code.nanorm.internal.type.BooleanTypeHandler;
+import com.google.code.nanorm.internal.type.ByteArrayTypeHandler;
+import com.google.code.nanorm.internal.type.ByteTypeHandler;
+import com.google.code.nanorm.internal.type.DoubleTypeHandler;
+import com.google.code.nanorm.internal.type.FloatTypeHandler;
+import com.google.code.nanorm.internal.type.IntTypeHandler;
+import com.google.code.nanorm.internal.type.LongTypeHandler;
+import com.google.code.nanorm.internal.type.ShortTypeHandler;
+import com.google.code.nanorm.internal.type.SqlDateTypeHandler;
+import com.google.code.nanorm.internal.type.SqlTimeTypeHandler;
+import com.google.code.nanorm.internal.type.SqlTimestampTypeHandler;
+import com.google.code.nanorm.internal.type.StringTypeHandler;
+
+/**
+ * Code generator for
+ * {@link com.google.code.nanorm.internal.mapping.result.BeanMapper}
+ * implementations. Generated mapper creates the bean with its constructor and
+ * invokes the setters directly. Values of the columns handled by the built-in
+ * type handlers are read from the result set directly, other columns are read
+ * through the type handlers passed to the constructor. Column indices are
+ * passed to the constructor as well, so the same class serves all result sets
+ * the properties are mapped from. Roughly, the generated code looks like:
+ * 
+ * <code>
+ * <pre>
+ * public class BeanMapper1 implements BeanMapper {
+ *     private final TypeHandler[] handlers;
+ *     
+ *     private final int[] columns;
+ *     
+ *     public BeanMapper1(TypeHandler[] handlers, int[] columns) {
+ *         this.handlers = handlers;
+ *         this.columns = columns;
+ *     }
+ *     
+ *     public Object mapRow(ResultSet rs) throws SQLException {
+ *         Article bean = new Article();
+ *         bean.setId(rs.getInt(columns[0]));
+ *         bean.setSubject(rs.getString(columns[1]));
+ *         bean.setYear(rs.getInt(columns[2]));
+ *         Object value = handlers[3].getValue(rs, columns[3]);
+ *         bean.setLocale((Locale) value);
+ *         return bean;
+ *     }
+ * }
+ * </pre>
+ * </code>
+ * 
+ * @author Ivan Dubrov
+ */
+public final class BeanMapperBuilder {
+
+    private static final Type RESULT_SET_TYPE = Type.getType(java.sql.ResultSet.class);
+
+    private static final Type TYPE_HANDLER_TYPE = Type.getType(TypeHandler.class);
+
+    private static final Type TYPE_HANDLER_ARR_TYPE = Type.getType(TypeHandler[].class);
+
+    private static final Type INT_ARR_TYPE = Type.getType(int[].class);
+
+    private static final Method MAPPER_CTOR = Method
+            .getMethod("void <init>(com.google.code.nanorm.TypeHandler[], int[])");
+
+    private static final Method MAP_ROW = Method
+            .getMethod("java.lang.Object mapRow(java.sql.ResultSet)");
+
+    private static final Method GET_VALUE = Method
+            .getMethod("java.lang.Object getValue(java.sql.ResultSet, int)");
+
+    private static final Method WAS_NULL = Method.getMethod("boolean wasNull()");
+
+    /**
+     * Result set getters used for built-in type handlers.
+     */
+    private static final Map<Class<?>, Method> DIRECT_GETTERS = new HashMap<Class<?>, Method>();
+
+    static {
+        DIRECT_GETTERS.put(IntTypeHandler.class, Method.getMethod("int getInt(int)"));
+        DIRECT_GETTERS.put(LongTypeHandler.class, Method.getMethod("long getLong(int)"));
+        DIRECT_GETTERS.put(ShortTypeHandler.class, Method.getMethod("short getShort(int)"));
+        DIRECT_GETTERS.put(ByteTypeHandler.class, Method.getMethod("byte getByte(int)"));
+        DIRECT_GETTERS.put(FloatTypeHandler.class, Method.getMethod("float getFloat(int)"));
+        DIRECT_GETTERS.put(DoubleTypeHandler.class, Method.getMethod("double getDouble(int)"));
+        DIRECT_GETTERS.put(BooleanTypeHandler.class, Method
+                .getMethod("boolean getBoolean(int)"));
+        DIRECT_GETTERS.put(StringTypeHandler.class, Method
+                .getMethod("java.lang.String getString(int)"));
+        DIRECT_GETTERS.put(ByteArrayTypeHandler.class, Method.getMethod("byte[] getBytes(int)"));
+        DIRECT_GETTERS.put(SqlDateTypeHandler.class, Method
+                .getMethod("java.sql.Date getDate(int)"));
+        DIRECT_GETTERS.put(SqlTimeTypeHandler.class, Method
+                .getMethod("java.sql.Time getTime(int)"));
+        DIRECT_GETTERS.put(SqlTimestampTypeHandler.class, Method
+                .getMethod("java.sql.Timestamp getTimestamp(int)"));
+    }
+
+    private BeanMapperBuilder() {
+        // Nothing.
+    }
+
+    /**
+     * Build bean mapper. Generated class has the constructor accepting the
+     * type handlers and the column indices for the properties.
+     * 
+     * @param name class name
+     * @param beanClass bean class
+     * @param properties bean properties (simple property names)
+     * @param typeHandlers type handlers for the properties, only their classes
+     * affect the generated code
+     * @param signature signature of the mapper, stored in the
+     * {@link MapperBuilder#SIGNATURE_FIELD} field; {@literal null} if not
+     * stored
+     * @return bean mapper byte-code
+     */
+    public static byte[] buildMapper(String name, Class<?> beanClass, String[] properties,
+            TypeHandler<?>[] typeHandlers, String signature) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        Type owner = Type.getType('L' + name + ';');
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object",
+                new String[] {"com/google/code/nanorm/internal/mapping/result/BeanMapper" });
+
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "handlers", TYPE_HANDLER_ARR_TYPE
+                .getDescriptor(), null, null);
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "columns", INT_ARR_TYPE
+                .getDescriptor(), null, null);
+
+        if (signature != null) {
+            cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+                    MapperBuilder.SIGNATURE_FIELD, Type.getDescriptor(String.class), null,
+                    signature);
+        }
+
+        // Constructor
+        GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, MAPPER_CTOR, null, null,
+                cw);
+        mg.loadThis();
+        mg.invokeConstructor(OBJECT_TYPE, CTOR);
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.putField(owner, "handlers", TYPE_HANDLER_ARR_TYPE);
+        mg.loadThis();
+        mg.loadArg(1);
+        mg.putField(owner, "columns", INT_ARR_TYPE);
+        mg.returnValue();
+        mg.endMethod();
+
+        // Object mapRow(ResultSet rs)
+        Type beanType = Type.getType(beanClass);
+        mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, MAP_ROW, null,
+                new Type[] {Type.getType(java.sql.SQLException.class) }, cw);
+        mg.newInstance(beanType);
+        mg.dup();
+        mg.invokeConstructor(beanType, CTOR);
+
+        for (int i = 0; i < properties.length; ++i) {
+            java.lang.reflect.Method setter = IntrospectUtils.findSetter(beanClass,
+                    properties[i]);
+            Type type = Type.getType(setter.getParameterTypes()[0]);
+
+            mg.dup();
+            visitValue(owner, mg, i, type, typeHandlers[i]);
+            mg.invokeVirtual(beanType, Method.getMethod(setter));
+        }
+        mg.returnValue();
+        mg.endMethod();
+
+        cw.visitEnd();
+
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generate the code that reads the column value of required type on top
+     * of the stack. SQL <code>NULL</code> is converted to the default value
+     * for primitive types.
+     * 
+     * @param owner type representing the class being generated
+     * @param mg method generator
+     * @param index property index
+     * @param type required type
+     * @param typeHandler type handler
+     */
+    private static void visitValue(Type owner, GeneratorAdapter mg, int index, Type type,
+            TypeHandler<?> typeHandler) {
+        Method direct = DIRECT_GETTERS.get(typeHandler.getClass());
+        if (direct != null && isDirectCompatible(direct.getReturnType(), type)) {
+            Type valueType = direct.getReturnType();
+            mg.loadArg(0);
+            visitColumn(owner, mg, index);
+            mg.invokeInterface(RESULT_SET_TYPE, direct);
+
+            if (valueType.equals(type)) {
+                // Value of exactly the property type (for primitives, NULL is
+                // returned by the driver as default value)
+                return;
+            }
+            if (isPrimitive(type)) {
+                // Numeric conversion
+                mg.cast(valueType, type);
+                return;
+            }
+            if (isPrimitive(valueType)) {
+                // Box and check for NULL
+                mg.box(valueType);
+                Label notNull = new Label();
+                mg.loadArg(0);
+                mg.invokeInterface(RESULT_SET_TYPE, WAS_NULL);
+                mg.ifZCmp(GeneratorAdapter.EQ, notNull);
+                mg.pop();
+                mg.visitInsn(Opcodes.ACONST_NULL);
+                mg.mark(notNull);
+            }
+            mg.checkCast(type);
+            return;
+        }
+
+        // Read the value through the type handler
+        mg.loadThis();
+        mg.getField(owner, "handlers", TYPE_HANDLER_ARR_TYPE);
+        mg.push(index);
+        mg.arrayLoad(TYPE_HANDLER_TYPE);
+        mg.loadArg(0);
+        visitColumn(owner, mg, index);
+        mg.invokeInterface(TYPE_HANDLER_TYPE, GET_VALUE);
+
+        if (isPrimitive(type)) {
+            // Primitive property, NULL is mapped to default value
+            Label notNull = new Label();
+            Label end = new Label();
+            mg.dup();
+            mg.ifNonNull(notNull);
+            mg.pop();
+            pushDefault(mg, type);
+            mg.goTo(end);
+            mg.mark(notNull);
+            mg.unbox(type);
+            mg.mark(end);
+        } else {
+            mg.checkCast(type);
+        }
+    }
+
+    /**
+     * Generate the code that loads the column index of the property.
+     * 
+     * @param owner type representing the class being generated
+     * @param mg method generator
+     * @param index property index
+     */
+    private static void visitColumn(Type owner, GeneratorAdapter mg, int index) {
+        mg.loadThis();
+        mg.getField(owner, "columns", INT_ARR_TYPE);
+        mg.push(index);
+        mg.arrayLoad(Type.INT_TYPE);
+    }
+
+    /**
+     * Check if value returned by the result set getter could be assigned to
+     * the property of given type without going through the type handler.
+     * 
+     * @param valueType type of the value returned by the result set getter
+     * @param type property type
+     * @return if result set getter could be used directly
+     */
+    private static boolean isDirectCompatible(Type valueType, Type type) {
+        if (valueType.equals(type) || !isPrimitive(type)) {
+            return true;
+        }
+        // Numeric primitive conversions only
+        return isPrimitive(valueType) && valueType.getSort() != Type.BOOLEAN
+                && type.getSort() != Type.BOOLEAN && type.getSort() != Type.CHAR;
+    }
+
+    /**
+     * Check if type is primitive.
+     * 
+     * @param type type
+     * @return if type is primitive
+     */
+    private static boolean isPrimitive(Type type) {
+        return type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY;
+    }
+
+    /**
+     * Push default value of primitive type.
+     * 
+     * @param mg method generator
+     * @param type primitive type
+     */
+    private static void pushDefault(GeneratorAdapter mg, Type type) {
+        switch (type.getSort()) {
+        case Type.LONG:
+            mg.push(0L);
+            break;
+        case Type.FLOAT:
+            mg.push(0.0f);
+            break;
+        case Type.DOUBLE:
+            mg.push(0.0);
+            break;
+        default:
+            // int, short, byte, char, boolean
+            mg.push(0);
+            break;
+        }
+    }
+}
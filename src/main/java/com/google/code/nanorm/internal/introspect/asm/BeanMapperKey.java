@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal.introspect.asm;
+
+import java.util.Arrays;
+
+import com.google.code.nanorm.TypeHandler;
+
+/**
+ * Key for generated bean mapper, used for locating the generated mappers in the
+ * cache.
+ * 
+ * @author Ivan Dubrov
+ */
+public class BeanMapperKey {
+    private final Class<?> beanClass;
+
+    private final String[] properties;
+
+    private final TypeHandler<?>[] typeHandlers;
+
+    private final int[] columns;
+
+    /**
+     * Constructor.
+     * 
+     * @param beanClass bean class
+     * @param properties bean properties
+     * @param typeHandlers type handlers for the properties
+     * @param columns column indices for the properties
+     */
+    public BeanMapperKey(Class<?> beanClass, String[] properties,
+            TypeHandler<?>[] typeHandlers, int[] columns) {
+        this.beanClass = beanClass;
+        this.properties = properties.clone();
+        this.typeHandlers = typeHandlers.clone();
+        this.columns = columns.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + beanClass.hashCode();
+        result = prime * result + Arrays.hashCode(properties);
+        result = prime * result + Arrays.hashCode(typeHandlers);
+        result = prime * result + Arrays.hashCode(columns);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        BeanMapperKey other = (BeanMapperKey) obj;
+        return beanClass.equals(other.beanClass) && Arrays.equals(properties, other.properties)
+                && Arrays.equals(typeHandlers, other.typeHandlers)
+                && Arrays.equals(columns, other.columns);
+    }
+}
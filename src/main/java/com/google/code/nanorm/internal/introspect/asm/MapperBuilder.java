@@ -26,6 +26,11 @@ import static com.google.code.nanorm.internal.introspect.asm.Constants.STATEMENT
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassVisitor;
@@ -65,6 +70,74 @@ import com.google.code.nanorm.internal.config.StatementConfig;
  */
 public class MapperBuilder {
 
+    /**
+     * Suffix of the precompiled mapper class name, appended to the mapper
+     * class name.
+     */
+    public static final String PRECOMPILED_SUFFIX = "$$NanormMapper";
+
+    /**
+     * Name of the static field of the precompiled mapper that contains the
+     * signature of the implemented methods.
+     */
+    public static final String SIGNATURE_FIELD = "NANORM_SIGNATURE";
+
+    /**
+     * Order of the mapper methods, by name and descriptor.
+     */
+    private static final Comparator<java.lang.reflect.Method> METHOD_ORDER =
+            new Comparator<java.lang.reflect.Method>() {
+                public int compare(java.lang.reflect.Method m1, java.lang.reflect.Method m2) {
+                    int res = methodKey(m1).compareTo(methodKey(m2));
+                    if (res == 0) {
+                        res = m1.getDeclaringClass().getName().compareTo(
+                                m2.getDeclaringClass().getName());
+                    }
+                    return res;
+                }
+            };
+
+    /**
+     * Get all abstract methods of the mapper, in the order of the statement
+     * configurations passed to the mapper constructor. The order does not
+     * depend on the JVM, so precompiled mappers could rely on it.
+     * 
+     * @param mapper mapper interface or abstract class
+     * @return abstract methods
+     */
+    public static java.lang.reflect.Method[] abstractMethods(Class<?> mapper) {
+        List<java.lang.reflect.Method> methods = new ArrayList<java.lang.reflect.Method>();
+        for (java.lang.reflect.Method m : mapper.getMethods()) {
+            if (Modifier.isAbstract(m.getModifiers())) {
+                methods.add(m);
+            }
+        }
+        Collections.sort(methods, METHOD_ORDER);
+        return methods.toArray(new java.lang.reflect.Method[methods.size()]);
+    }
+
+    /**
+     * Get signature of the mapper methods, used to check the precompiled
+     * mapper implements the same methods in the same order.
+     * 
+     * @param methods mapper methods
+     * @return signature
+     */
+    public static String signature(java.lang.reflect.Method[] methods) {
+        StringBuilder sb = new StringBuilder();
+        for (java.lang.reflect.Method m : methods) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(methodKey(m));
+        }
+        return sb.toString();
+    }
+
+    private static String methodKey(java.lang.reflect.Method m) {
+        return m.getName() + Type.getMethodDescriptor(m);
+    }
+
     /**
      * Build mapper.
      * 
@@ -74,6 +147,21 @@ public class MapperBuilder {
      * @return mapper byte-code
      */
     public static byte[] buildMapper(String name, Class<?> mapper, MethodConfig[] configs) {
+        return buildMapper(name, mapper, configs, null);
+    }
+
+    /**
+     * Build mapper.
+     * 
+     * @param name class name
+     * @param mapper mapper interface or base class
+     * @param configs method configurations
+     * @param signature signature of the methods, stored in the
+     * {@link #SIGNATURE_FIELD} field; {@literal null} if not stored
+     * @return mapper byte-code
+     */
+    public static byte[] buildMapper(String name, Class<?> mapper, MethodConfig[] configs,
+            String signature) {
         ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
 
         Type owner = Type.getType('L' + name + ';');
@@ -95,6 +183,11 @@ public class MapperBuilder {
         cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "configs",
                 STATEMENT_CONFIGS_ARR_TYPE.getDescriptor(), null, null);
 
+        if (signature != null) {
+            cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+                    SIGNATURE_FIELD, Type.getDescriptor(String.class), null, signature);
+        }
+
         if (mapper.isInterface()) {
             visitConstructor(cw, owner, OBJECT_TYPE);
         } else {
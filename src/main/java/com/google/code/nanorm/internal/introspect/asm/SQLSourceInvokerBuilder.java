@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.nanorm.internal.introspect.asm;
+
+import static com.google.code.nanorm.internal.introspect.asm.Constants.CTOR;
+import static com.google.code.nanorm.internal.introspect.asm.Constants.OBJECT_TYPE;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import com.google.code.nanorm.SQLSource;
+
+/**
+ * Code generator for
+ * {@link com.google.code.nanorm.internal.introspect.SQLSourceInvoker}
+ * implementations. Generated invoker creates the SQL source and calls the
+ * generator method directly. Roughly, the generated code looks like:
+ * 
+ * <code>
+ * <pre>
+ * public class Invoker1 implements SQLSourceInvoker {
+ *     public SQLSource newInstance() {
+ *         return new MySQLSource();
+ *     }
+ *     
+ *     public void generate(SQLSource source, Object[] args) {
+ *         ((MySQLSource) source).sql((String) args[0], ((Integer) args[1]).intValue());
+ *     }
+ * }
+ * </pre>
+ * </code>
+ * 
+ * @author Ivan Dubrov
+ */
+public final class SQLSourceInvokerBuilder {
+
+    private static final Method NEW_INSTANCE = Method
+            .getMethod("com.google.code.nanorm.SQLSource newInstance()");
+
+    private static final Method GENERATE = Method
+            .getMethod("void generate(com.google.code.nanorm.SQLSource, java.lang.Object[])");
+
+    private SQLSourceInvokerBuilder() {
+        // Nothing.
+    }
+
+    /**
+     * Build SQL source invoker.
+     * 
+     * @param name class name
+     * @param sqlSource SQL source class
+     * @param method generator method
+     * @return invoker byte-code
+     */
+    public static byte[] buildInvoker(String name, Class<? extends SQLSource> sqlSource,
+            java.lang.reflect.Method method) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object",
+                new String[] {"com/google/code/nanorm/internal/introspect/SQLSourceInvoker" });
+
+        GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, CTOR, null, null, cw);
+        mg.loadThis();
+        mg.invokeConstructor(OBJECT_TYPE, CTOR);
+        mg.returnValue();
+        mg.endMethod();
+
+        Type sourceType = Type.getType(sqlSource);
+
+        // newInstance
+        mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, NEW_INSTANCE, null, null, cw);
+        mg.newInstance(sourceType);
+        mg.dup();
+        mg.invokeConstructor(sourceType, CTOR);
+        mg.returnValue();
+        mg.endMethod();
+
+        // generate
+        mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, GENERATE, null, null, cw);
+        mg.loadArg(0);
+        mg.checkCast(sourceType);
+
+        Class<?>[] params = method.getParameterTypes();
+        for (int i = 0; i < params.length; ++i) {
+            mg.loadArg(1);
+            mg.push(i);
+            mg.arrayLoad(OBJECT_TYPE);
+            mg.unbox(Type.getType(params[i]));
+        }
+        mg.invokeVirtual(sourceType, Method.getMethod(method));
+
+        Type returnType = Type.getType(method.getReturnType());
+        if (returnType.getSize() == 2) {
+            mg.pop2();
+        } else if (returnType.getSize() == 1) {
+            mg.pop();
+        }
+        mg.returnValue();
+        mg.endMethod();
+
+        cw.visitEnd();
+
+        return cw.toByteArray();
+    }
+}
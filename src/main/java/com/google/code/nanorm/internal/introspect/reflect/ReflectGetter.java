@@ -39,6 +39,12 @@ public class ReflectGetter implements Getter {
 
     private final ReflectIntrospectionFactory factory;
 
+    /**
+     * Compiled property path or {@literal null} if path is followed using the
+     * runtime types of the properties.
+     */
+    private final ReflectPath compiled;
+
     /**
      * Constructor.
      * 
@@ -53,12 +59,16 @@ public class ReflectGetter implements Getter {
         this.beanClass = beanClass;
         this.types = types;
         this.path = path;
+        this.compiled = ReflectPath.compile(factory, beanClass, types, path, false);
     }
 
     /**
      * {@inheritDoc}
      */
     public Object getValue(final Object instance) {
+        if (compiled != null) {
+            return compiled.getValue(instance);
+        }
         PropertyVisitor<Object> visitor = new ReflectPropertyVisitor(factory, instance);
         if (types != null) {
             return IntrospectUtils.visitPath(path, types, visitor, null);
@@ -18,19 +18,26 @@ package com.google.code.nanorm.internal.introspect.reflect;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.TypeHandler;
 import com.google.code.nanorm.internal.QueryDelegate;
 import com.google.code.nanorm.internal.config.InternalConfiguration;
 import com.google.code.nanorm.internal.config.StatementConfig;
 import com.google.code.nanorm.internal.introspect.AbstractIntrospectionFactory;
 import com.google.code.nanorm.internal.introspect.Getter;
 import com.google.code.nanorm.internal.introspect.IntrospectUtils;
+import com.google.code.nanorm.internal.introspect.SQLSourceInvoker;
 import com.google.code.nanorm.internal.introspect.Setter;
 import com.google.code.nanorm.internal.introspect.asm.AccessorKey;
+import com.google.code.nanorm.internal.mapping.result.BeanMapper;
 
 /**
  * 
@@ -39,11 +46,12 @@ import com.google.code.nanorm.internal.introspect.asm.AccessorKey;
  */
 public class ReflectIntrospectionFactory extends AbstractIntrospectionFactory {
 
-    // private final Map<AccessorKey, Method> getters = new
-    // ConcurrentHashMap<AccessorKey, Method>();
+    private final Map<AccessorKey, Method> getters = new ConcurrentHashMap<AccessorKey, Method>();
 
     private final Map<AccessorKey, Method> setters = new ConcurrentHashMap<AccessorKey, Method>();
 
+    private final AtomicLong accessorLookups = new AtomicLong();
+
     /**
      * {@inheritDoc}
      */
@@ -81,23 +89,33 @@ public class ReflectIntrospectionFactory extends AbstractIntrospectionFactory {
         return new ReflectSetter(this, null, types, path);
     }
 
-    // FIXME: Temporarily not used
-    // /**
-    // * Lookup getter method for given bean property.
-    // *
-    // * @param clazz bean class
-    // * @param property bean property
-    // * @return getter method
-    // */
-    // Method lookupGetter(Class<?> clazz, String property) {
-    // AccessorKey key = new AccessorKey(clazz, property);
-    // Method getter = getters.get(key);
-    // if (getter == null) {
-    // getter = IntrospectUtils.findGetter(clazz, property);
-    // getters.put(key, getter);
-    // }
-    // return getter;
-    // }
+    /**
+     * Get the amount of accessor method lookups. Compiled property paths look
+     * up the accessor only when applied to the class other than the last one.
+     * 
+     * @return accessor lookups
+     */
+    public long getAccessorLookups() {
+        return accessorLookups.get();
+    }
+
+    /**
+     * Lookup getter method for given bean property.
+     * 
+     * @param clazz bean class
+     * @param property bean property
+     * @return getter method
+     */
+    Method lookupGetter(Class<?> clazz, String property) {
+        accessorLookups.incrementAndGet();
+        AccessorKey key = new AccessorKey(clazz, property, false);
+        Method getter = getters.get(key);
+        if (getter == null) {
+            getter = IntrospectUtils.findGetter(clazz, property);
+            getters.put(key, getter);
+        }
+        return getter;
+    }
 
     /**
      * Lookup setter method for given bean property.
@@ -107,6 +125,7 @@ public class ReflectIntrospectionFactory extends AbstractIntrospectionFactory {
      * @return setter method
      */
     Method lookupSetter(Class<?> clazz, String property) {
+        accessorLookups.incrementAndGet();
         AccessorKey key = new AccessorKey(clazz, property, true);
         Method setter = setters.get(key);
         if (setter == null) {
@@ -131,6 +150,25 @@ public class ReflectIntrospectionFactory extends AbstractIntrospectionFactory {
                         delegate)));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public SQLSourceInvoker buildSQLSourceInvoker(Class<? extends SQLSource> sqlSource,
+            Method method) {
+        return new ReflectSQLSourceInvoker(sqlSource, method);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Reflection-based factory does not compile bean mappers, the results are
+     * mapped property by property.
+     */
+    public BeanMapper buildBeanMapper(Class<?> beanClass, String[] properties,
+            TypeHandler<?>[] typeHandlers, int[] columns) {
+        return null;
+    }
+
     /**
      * Invocation handler for mapper interface implementation.
      * 
@@ -144,6 +182,12 @@ public class ReflectIntrospectionFactory extends AbstractIntrospectionFactory {
 
         private final Class<?> mapper;
 
+        /**
+         * Statement configurations of the abstract methods, resolved once. Map
+         * is never modified after construction, so it is read without locking.
+         */
+        private final Map<Method, StatementConfig> configs;
+
         /**
          * Constructor.
          * 
@@ -156,6 +200,12 @@ public class ReflectIntrospectionFactory extends AbstractIntrospectionFactory {
             this.mapper = mapper;
             this.config = config;
             this.delegate = delegate;
+            this.configs = new HashMap<Method, StatementConfig>();
+            for (Method method : mapper.getMethods()) {
+                if (Modifier.isAbstract(method.getModifiers())) {
+                    configs.put(method, config.getStatementConfig(mapper, method));
+                }
+            }
         }
 
         /**
@@ -163,7 +213,11 @@ public class ReflectIntrospectionFactory extends AbstractIntrospectionFactory {
          * java.lang.reflect.Method, java.lang.Object[])
          */
         public Object invoke(Object proxy, Method method, Object[] args) {
-            StatementConfig stConfig = config.getStatementConfig(mapper, method);
+            StatementConfig stConfig = configs.get(method);
+            if (stConfig == null) {
+                // Not a mapper method, fails with the proper message
+                stConfig = config.getStatementConfig(mapper, method);
+            }
             return delegate.query(stConfig, args);
         }
     }
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal.introspect.reflect;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.code.nanorm.exceptions.IntrospectionException;
+import com.google.code.nanorm.internal.introspect.IntrospectUtils;
+import com.google.code.nanorm.internal.introspect.PropertyVisitor;
+
+/**
+ * Property path compiled into the chain of steps, so the path is not parsed
+ * and the accessor methods are not searched for every access. Every property
+ * step remembers the accessor method for the last class it was applied to;
+ * accessors of other classes are taken from the factory.
+ * 
+ * @author Ivan Dubrov
+ */
+final class ReflectPath {
+
+    private final String path;
+
+    private final Step[] steps;
+
+    private ReflectPath(String path, Step[] steps) {
+        this.path = path;
+        this.steps = steps;
+    }
+
+    /**
+     * Compile the property path using the declared types of the properties.
+     * 
+     * @param factory factory
+     * @param beanClass bean class (for regular path)
+     * @param types parameter types (for parameter path)
+     * @param path property path
+     * @param isSetter if path is used for setting the value
+     * @return compiled path or {@literal null} if path could be followed only
+     * using the runtime types of the properties
+     */
+    static ReflectPath compile(final ReflectIntrospectionFactory factory, Class<?> beanClass,
+            Type[] types, String path, final boolean isSetter) {
+        final List<Step> steps = new ArrayList<Step>();
+        PropertyVisitor<Void> visitor = new PropertyVisitor<Void>() {
+            public void visitBegin(Class<?> clazz, String p) {
+                // Nothing.
+            }
+
+            public Class<?> visitIndex(int pos, int index, boolean hasNext, Class<?> clazz) {
+                steps.add(new Step(factory, pos, null, index, null, !hasNext && isSetter));
+                return null;
+            }
+
+            public Class<?> visitProperty(int pos, String property, Method getter,
+                    boolean hasNext, Class<?> clazz) {
+                steps.add(new Step(factory, pos, property, -1, getter, !hasNext && isSetter));
+                return null;
+            }
+
+            public Void visitEnd() {
+                return null;
+            }
+        };
+
+        try {
+            if (types != null) {
+                IntrospectUtils.visitPath(path, types, visitor, null);
+            } else {
+                IntrospectUtils.visitPath(path, beanClass, visitor, null);
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return new ReflectPath(path, steps.toArray(new Step[steps.size()]));
+    }
+
+    /**
+     * Get the property value.
+     * 
+     * @param instance instance
+     * @return property value
+     */
+    Object getValue(Object instance) {
+        Object current = instance;
+        for (Step step : steps) {
+            current = step.apply(current, null, path);
+        }
+        return current;
+    }
+
+    /**
+     * Set the property value.
+     * 
+     * @param instance instance
+     * @param value value to set
+     */
+    void setValue(Object instance, Object value) {
+        Object current = instance;
+        for (Step step : steps) {
+            current = step.apply(current, value, path);
+        }
+    }
+
+    /**
+     * Property path step, either property access or indexing.
+     */
+    private static final class Step {
+
+        private final ReflectIntrospectionFactory factory;
+
+        private final int pos;
+
+        private final String property;
+
+        private final int index;
+
+        /**
+         * Getter of the declared type, used for <code>null</code> instances.
+         */
+        private final Method getter;
+
+        private final boolean isSetter;
+
+        /**
+         * Accessor method for the class the step was applied to last time.
+         */
+        private volatile Accessor last;
+
+        private Step(ReflectIntrospectionFactory factory, int pos, String property, int index,
+                Method getter, boolean isSetter) {
+            this.factory = factory;
+            this.pos = pos;
+            this.property = property;
+            this.index = index;
+            this.getter = getter;
+            this.isSetter = isSetter;
+        }
+
+        /**
+         * Apply the step to the instance.
+         * 
+         * @param instance instance
+         * @param value value to set, for the setter step
+         * @param path full property path, for error reporting
+         * @return value of the step, <code>null</code> for the setter step
+         */
+        private Object apply(Object instance, Object value, String path) {
+            if (property == null) {
+                if (isSetter) {
+                    Array.set(instance, index, value);
+                    return null;
+                }
+                return Array.get(instance, index);
+            }
+
+            if (isSetter) {
+                Method setter = accessor(instance.getClass());
+                try {
+                    setter.invoke(instance, value);
+                } catch (Exception e) {
+                    throw new IntrospectionException("Failed to set property "
+                            + path.substring(0, pos) + " of property path " + path, e);
+                }
+                return null;
+            }
+
+            Method method = instance != null ? accessor(instance.getClass()) : getter;
+            try {
+                return method.invoke(instance);
+            } catch (Exception e) {
+                throw new IntrospectionException("Failed to get property "
+                        + path.substring(0, pos) + " of property path " + path, e);
+            }
+        }
+
+        private Method accessor(Class<?> clazz) {
+            Accessor accessor = last;
+            if (accessor == null || accessor.clazz != clazz) {
+                Method method = isSetter ? factory.lookupSetter(clazz, property) : factory
+                        .lookupGetter(clazz, property);
+                accessor = new Accessor(clazz, method);
+                last = accessor;
+            }
+            return accessor.method;
+        }
+    }
+
+    /**
+     * Accessor method of the class.
+     */
+    private static final class Accessor {
+        private final Class<?> clazz;
+
+        private final Method method;
+
+        private Accessor(Class<?> clazz, Method method) {
+            this.clazz = clazz;
+            this.method = method;
+        }
+    }
+}
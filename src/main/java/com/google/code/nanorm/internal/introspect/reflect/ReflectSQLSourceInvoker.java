@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.nanorm.internal.introspect.reflect;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.exceptions.DynamicSQLException;
+import com.google.code.nanorm.internal.introspect.SQLSourceInvoker;
+import com.google.code.nanorm.internal.util.ToStringBuilder;
+
+/**
+ * Reflection-based {@link SQLSourceInvoker}. The generator method is resolved
+ * once, when invoker is created.
+ * 
+ * @author Ivan Dubrov
+ */
+public class ReflectSQLSourceInvoker implements SQLSourceInvoker {
+
+    private final Class<? extends SQLSource> sqlSource;
+
+    private final Method method;
+
+    /**
+     * Constructor.
+     * 
+     * @param sqlSource SQL source class
+     * @param method generator method
+     */
+    public ReflectSQLSourceInvoker(Class<? extends SQLSource> sqlSource, Method method) {
+        this.sqlSource = sqlSource;
+        this.method = method;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SQLSource newInstance() {
+        try {
+            return sqlSource.newInstance();
+        } catch (InstantiationException e) {
+            throw new DynamicSQLException("Failed to create SQL source", e);
+        } catch (IllegalAccessException e) {
+            throw new DynamicSQLException("Failed to create SQL source", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void generate(SQLSource source, Object[] args) {
+        try {
+            method.invoke(source, args);
+        } catch (InvocationTargetException e) {
+            throw new DynamicSQLException("Failed to invoke generator method", e.getCause());
+        } catch (Exception e) {
+            throw new DynamicSQLException("Failed to invoke generator method", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("method", method).toString();
+    }
+}
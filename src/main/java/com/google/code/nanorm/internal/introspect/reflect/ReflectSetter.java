@@ -39,6 +39,12 @@ public class ReflectSetter implements Setter {
 
     private final ReflectIntrospectionFactory factory;
 
+    /**
+     * Compiled property path or {@literal null} if path is followed using the
+     * runtime types of the properties.
+     */
+    private final ReflectPath compiled;
+
     /**
      * Constructor.
      * 
@@ -53,12 +59,17 @@ public class ReflectSetter implements Setter {
         this.beanClass = beanClass;
         this.types = types;
         this.path = path;
+        this.compiled = ReflectPath.compile(factory, beanClass, types, path, true);
     }
 
     /**
      * {@inheritDoc}
      */
     public void setValue(Object instance, Object value) {
+        if (compiled != null) {
+            compiled.setValue(instance, value);
+            return;
+        }
         PropertyVisitor<Object> visitor = new ReflectPropertyVisitor(factory, instance, value);
         if (types != null) {
             IntrospectUtils.visitPath(path, types, visitor, null);
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.internal.mapping.result;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.internal.QueryDelegate;
+import com.google.code.nanorm.internal.config.PropertyMappingConfig;
+import com.google.code.nanorm.internal.config.StatementConfig;
+import com.google.code.nanorm.internal.introspect.Getter;
+
+/**
+ * Batch subselect of the property. Column values of the rows are collected
+ * while the result set is processed, then the subselect is executed for the
+ * chunks of the collected values and results are matched to the rows by the
+ * key property.
+ * 
+ * @author Ivan Dubrov
+ */
+public class BatchSubselect {
+
+    private final PropertyMappingConfig config;
+
+    private final Getter keyGetter;
+
+    private final DataSinkSource sinkSource;
+
+    /**
+     * Component type of the subselect parameter or <code>null</code> if
+     * parameter is a collection.
+     */
+    private final Class<?> componentType;
+
+    /**
+     * Constructor.
+     * 
+     * @param config property mapping configuration
+     * @param keyGetter getter for the key property of the subselect results
+     * @param sinkSource data sink source for the property
+     */
+    public BatchSubselect(PropertyMappingConfig config, Getter keyGetter,
+            DataSinkSource sinkSource) {
+        this.config = config;
+        this.keyGetter = keyGetter;
+        this.sinkSource = sinkSource;
+
+        StatementConfig stConfig = config.getBatchSubselect();
+        Class<?> param = stConfig.getParameterTypes()[0] instanceof Class<?> ? (Class<?>) stConfig
+                .getParameterTypes()[0] : null;
+        this.componentType = param != null && param.isArray() ? param.getComponentType() : null;
+    }
+
+    /**
+     * @return property mapping configuration
+     */
+    public PropertyMappingConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Execute the subselect for the collected rows and set the property of
+     * every row to the results matched by the key.
+     * 
+     * @param queryDelegate query delegate used for executing the subselect
+     * @param targets objects the rows were mapped to
+     * @param values column values of the rows
+     */
+    public void load(QueryDelegate queryDelegate, List<Object> targets, List<Object> values) {
+        Set<Object> keys = new LinkedHashSet<Object>();
+        for (Object value : values) {
+            if (value != null) {
+                keys.add(value);
+            }
+        }
+
+        // Query the results in chunks and group them by the key
+        Map<Object, List<Object>> results = new HashMap<Object, List<Object>>();
+        List<Object> chunk = new ArrayList<Object>();
+        for (Object key : keys) {
+            chunk.add(key);
+            if (chunk.size() == config.getBatchSize()) {
+                query(queryDelegate, chunk, results);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            query(queryDelegate, chunk, results);
+        }
+
+        for (int i = 0; i < targets.size(); ++i) {
+            DataSink<Object> sink = sinkSource.forInstance(targets.get(i));
+            List<Object> list = values.get(i) != null ? results.get(values.get(i)) : null;
+            if (list != null) {
+                for (Object obj : list) {
+                    sink.pushData(obj);
+                }
+            }
+            sink.commitData();
+        }
+    }
+
+    private void query(QueryDelegate queryDelegate, List<Object> chunk,
+            Map<Object, List<Object>> results) {
+        Object arg;
+        if (componentType != null) {
+            arg = Array.newInstance(componentType, chunk.size());
+            for (int i = 0; i < chunk.size(); ++i) {
+                Array.set(arg, i, chunk.get(i));
+            }
+        } else {
+            arg = new ArrayList<Object>(chunk);
+        }
+
+        Object result = queryDelegate.query(config.getBatchSubselect(), new Object[] {arg });
+        if (result instanceof Collection<?>) {
+            for (Object obj : (Collection<?>) result) {
+                group(obj, results);
+            }
+        } else if (result != null && result.getClass().isArray()) {
+            for (int i = 0; i < Array.getLength(result); ++i) {
+                group(Array.get(result, i), results);
+            }
+        } else if (result != null) {
+            group(result, results);
+        }
+    }
+
+    private void group(Object obj, Map<Object, List<Object>> results) {
+        Object key = keyGetter.getValue(obj);
+        List<Object> list = results.get(key);
+        if (list == null) {
+            list = new ArrayList<Object>();
+            results.put(key, list);
+        }
+        list.add(obj);
+    }
+}
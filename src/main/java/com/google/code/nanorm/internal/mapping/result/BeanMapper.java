@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.nanorm.internal.mapping.result;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Compiled mapper of the result set row onto the new bean instance. Created
+ * by the {@link com.google.code.nanorm.internal.introspect.IntrospectionFactory}
+ * for given bean class, properties and result set columns.
+ * 
+ * @author Ivan Dubrov
+ */
+public interface BeanMapper {
+    /**
+     * Create new bean instance and map the current row of the result set onto
+     * it.
+     * 
+     * @param rs result set
+     * @return bean instance
+     * @throws SQLException SQL exception from result set
+     */
+    Object mapRow(ResultSet rs) throws SQLException;
+}
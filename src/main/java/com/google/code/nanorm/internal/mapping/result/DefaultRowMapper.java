@@ -23,16 +23,18 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.IntValueHandler;
+import com.google.code.nanorm.LongValueHandler;
 import com.google.code.nanorm.TypeHandler;
 import com.google.code.nanorm.TypeHandlerFactory;
 import com.google.code.nanorm.exceptions.GenericException;
@@ -40,10 +42,12 @@ import com.google.code.nanorm.internal.Key;
 import com.google.code.nanorm.internal.Request;
 import com.google.code.nanorm.internal.config.PropertyMappingConfig;
 import com.google.code.nanorm.internal.config.ResultMapConfig;
+import com.google.code.nanorm.internal.config.StatementConfig;
 import com.google.code.nanorm.internal.introspect.Getter;
 import com.google.code.nanorm.internal.introspect.IntrospectUtils;
 import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
 import com.google.code.nanorm.internal.introspect.Setter;
+import com.google.code.nanorm.internal.introspect.TypeOracle;
 
 /**
  * Implementation of the {@link RowMapper} that uses collection of property
@@ -64,10 +68,25 @@ public class DefaultRowMapper implements RowMapper {
 
     private final TypeHandlerFactory typeHandlerFactory;
 
-    private DynamicConfig dynamicConfig;
+    /**
+     * If rows are ordered by the groupBy properties, so only the current group
+     * is kept.
+     */
+    private final boolean ordered;
+
+    /**
+     * Dynamic configurations for automapping, keyed by the list of result set
+     * column labels.
+     */
+    private final ConcurrentMap<List<String>, DynamicConfig> autoConfigs;
 
     private final DynamicConfig finDynamicConfig;
 
+    /**
+     * Result set layout resolved for the last seen result set shape.
+     */
+    private volatile ColumnLayout columnLayout;
+
     /**
      * Constructor.
      * 
@@ -78,7 +97,25 @@ public class DefaultRowMapper implements RowMapper {
      */
     public DefaultRowMapper(Type resultType, ResultMapConfig config,
             IntrospectionFactory introspectionFactory, TypeHandlerFactory typeHandlerFactory) {
+        this(resultType, config, introspectionFactory, typeHandlerFactory, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param resultType result type (could be generic collection)
+     * @param config configuration
+     * @param introspectionFactory introspection factory
+     * @param typeHandlerFactory type handler factory
+     * @param nested if mapper is used for the nested map (ordered groupBy is
+     * ignored for nested maps)
+     */
+    private DefaultRowMapper(Type resultType, ResultMapConfig config,
+            IntrospectionFactory introspectionFactory, TypeHandlerFactory typeHandlerFactory,
+            boolean nested) {
         this.config = config;
+        this.ordered = !nested && config.isOrdered() && config.getGroupBy() != null
+                && config.getGroupBy().length > 0;
         this.introspectionFactory = introspectionFactory;
         this.typeHandlerFactory = typeHandlerFactory;
         this.elementClass = ResultCollectorUtil.resultClass(resultType);
@@ -86,8 +123,10 @@ public class DefaultRowMapper implements RowMapper {
         if (!config.isAuto()) {
             List<PropertyMappingConfig> list = Arrays.asList(config.getMappings());
             finDynamicConfig = generatePropertyMappers(list);
+            autoConfigs = null;
         } else {
             finDynamicConfig = null;
+            autoConfigs = new ConcurrentHashMap<List<String>, DynamicConfig>();
         }
     }
 
@@ -96,45 +135,97 @@ public class DefaultRowMapper implements RowMapper {
      */
     public void processResultSet(Request request, ResultSet rs, DataSink<Object> callback)
             throws SQLException {
-        DynamicConfig dc;
-        if (config.isAuto()) {
-            synchronized (this) {
-                if (dynamicConfig == null) {
-                    List<PropertyMappingConfig> configs = generateAutoConfig(rs.getMetaData());
-                    dynamicConfig = generatePropertyMappers(configs);
-                }
-                dc = dynamicConfig;
-            }
-        } else {
-            // No need to synchronize -- we initialized it in the constructor
-            dc = finDynamicConfig;
-        }
+        ColumnLayout layout = layout(request, rs);
+        DynamicConfig dc = layout.dc;
+        int[] columns = layout.indices;
 
         Object result;
-        Key key = generateRowKey(dc, rs);
+        String[] groupBy = config.getGroupBy();
         // We have a groupBy
-        if (key != null) {
-            result = null;
+        if (groupBy != null && groupBy.length > 0) {
+            OrderedGroup group = null;
+            GroupIndex index = null;
+            if (ordered) {
+                group = (OrderedGroup) request.getGroups().get(this);
+            } else {
+                index = request.getKey2Objects().get(this);
+                if (index == null) {
+                    index = new GroupIndex();
+                    request.getKey2Objects().put(this, index);
+                }
+            }
 
-            // Look in the request map for objects under this key
-            Map<Key, Object> map = request.getKey2Objects().get(this);
-            if (map != null) {
-                result = map.get(key);
+            // Single integral key is read without boxing, several values are
+            // read into the array reused for every row
+            boolean integral = false;
+            long longKey = 0;
+            Object key = null;
+            Object[] tuple = null;
+            int keyColumn = columns[dc.mappers.length];
+            if (dc.integralKey && keyColumn != 0) {
+                longKey = dc.valueGetters[0].getLong(rs, keyColumn);
+                integral = !rs.wasNull();
+            } else if (dc.valueGetters.length == 1) {
+                key = dc.valueGetters[0].getValue(rs, keyColumn);
+            } else {
+                if (index != null) {
+                    tuple = index.tuple(dc.valueGetters.length);
+                } else if (group != null) {
+                    tuple = group.tuple;
+                } else {
+                    tuple = new Object[dc.valueGetters.length];
+                }
+                for (int i = 0; i < tuple.length; ++i) {
+                    tuple[i] = dc.valueGetters[i].getValue(rs, columns[dc.mappers.length + i]);
+                }
             }
-            // No result -- create new
-            if (result == null) {
-                result = createResult(request, dc.mappers, rs);
-                callback.pushData(result);
-
-                if (map == null) {
-                    map = new HashMap<Key, Object>();
-                    request.getKey2Objects().put(this, map);
+
+            if (ordered) {
+                // Rows are ordered, so compare with the current group only
+                if (group != null && group.matches(integral, longKey, key, tuple)) {
+                    result = group.result;
+                } else {
+                    if (group != null) {
+                        // Key has changed, previous group is completed
+                        finishGroup(request, group);
+                    } else {
+                        group = new OrderedGroup();
+                        group.tuple = tuple;
+                        request.getGroups().put(this, group);
+                    }
+                    result = createResult(request, dc.mappers, rs, layout);
+                    group.integral = integral;
+                    group.longKey = longKey;
+                    group.key = tuple != null ? new Key(tuple.clone()) : key;
+                    group.result = result;
+                    group.callback = callback;
+                }
+            } else {
+                // Look in the request index for objects under this key
+                if (integral) {
+                    result = index.get(longKey);
+                } else if (tuple != null) {
+                    result = index.getTuple(tuple);
+                } else {
+                    result = index.get(key);
+                }
+                // No result -- create new
+                if (result == null) {
+                    result = createResult(request, dc.mappers, rs, layout);
+                    callback.pushData(result);
+
+                    if (integral) {
+                        index.put(longKey, result);
+                    } else if (tuple != null) {
+                        index.putTuple(tuple, result);
+                    } else {
+                        index.put(key, result);
+                    }
                 }
-                map.put(key, result);
             }
         } else {
             // We don't have a groupBy, create new result object
-            result = createResult(request, dc.mappers, rs);
+            result = createResult(request, dc.mappers, rs, layout);
             callback.pushData(result);
         }
 
@@ -144,41 +235,268 @@ public class DefaultRowMapper implements RowMapper {
         }
     }
 
-    private Object createResult(Request request, PropertyMapper[] mappers, ResultSet rs)
-            throws SQLException {
+    /**
+     * {@inheritDoc}
+     */
+    public void finishResultSet(Request request, DataSink<Object> callback) {
+        if (ordered) {
+            OrderedGroup group = (OrderedGroup) request.getGroups().remove(this);
+            if (group != null) {
+                finishGroup(request, group);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public RowSnapshot captureRow(Request request, ResultSet rs) throws SQLException {
+        ColumnLayout layout = layout(request, rs);
+        PropertyMapper[] mappers = layout.dc.mappers;
+        Object[] values = new Object[mappers.length];
+        for (int i = 0; i < mappers.length; ++i) {
+            values[i] = mappers[i].getValue(rs, layout.indices[i]);
+        }
+        return new RowSnapshot(layout, values);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object mapSnapshot(RowSnapshot snapshot) {
+        PropertyMapper[] mappers = ((ColumnLayout) snapshot.getLayout()).dc.mappers;
+        Object[] values = snapshot.getValues();
+        Object result = newResult();
+        for (int i = 0; i < mappers.length; ++i) {
+            mappers[i].setValue(result, values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Resolve configuration and column indices once per result set.
+     * 
+     * @param request request variables
+     * @param rs result set
+     * @return result set layout
+     * @throws SQLException propagated from result set operations
+     */
+    private ColumnLayout layout(Request request, ResultSet rs) throws SQLException {
+        ColumnLayout layout = (ColumnLayout) request.getResultLayout(this);
+        if (layout == null) {
+            layout = resolveLayout(rs.getMetaData());
+            request.putResultLayout(this, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Push the object of the completed group. Nested maps are committed first,
+     * so the object is complete when pushed. Objects mapped for the group are
+     * not referenced from the request anymore.
+     * 
+     * @param request request variables
+     * @param group completed group
+     */
+    private void finishGroup(Request request, OrderedGroup group) {
+        request.commitCallbacks();
+        request.getKey2Objects().clear();
+        group.callback.pushData(group.result);
+    }
+
+    private Object createResult(Request request, PropertyMapper[] mappers, ResultSet rs,
+            ColumnLayout layout) throws SQLException {
+        int[] columns = layout.indices;
         Object result;
+        if (layout.beanMapper != null) {
+            // Compiled mapper creates the bean and maps the leading simple
+            // properties, the rest is mapped through the property mappers
+            result = layout.beanMapper.mapRow(rs);
+            for (int i : layout.remaining) {
+                mappers[i].mapResult(request, result, rs, columns[i]);
+            }
+            return result;
+        }
+
+        result = newResult();
+
+        // TODO: We, probably, can bulk set those...
+        for (int i = 0; i < mappers.length; ++i) {
+            mappers[i].mapResult(request, result, rs, columns[i]);
+        }
+        return result;
+    }
+
+    private Object newResult() {
         try {
-            result = elementClass.newInstance();
+            return elementClass.newInstance();
         } catch (Exception e) {
             throw new GenericException("Failed to create result instance of class "
                     + elementClass, e);
         }
+    }
 
-        // TODO: We, probably, can bulk set those...
-        for (PropertyMapper mapper : mappers) {
-            mapper.mapResult(request, result, rs);
+    /**
+     * Resolve the dynamic configuration for the result set, resolve columns of
+     * the property mappers and key generators to the indices and build the
+     * compiled bean mapper for the resolved columns. The layout for the last
+     * result set shape (list of column labels) is cached, so only the labels
+     * are compared when the same query is executed again.
+     * 
+     * @param meta result set metainformation
+     * @return result set layout
+     * @throws SQLException propagated from result set operations
+     */
+    private ColumnLayout resolveLayout(ResultSetMetaData meta) throws SQLException {
+        int count = meta.getColumnCount();
+        ColumnLayout layout = columnLayout;
+        if (layout != null && matches(layout.labels, meta, count)) {
+            return layout;
+        }
+
+        String[] labels = new String[count];
+        for (int i = 0; i < labels.length; ++i) {
+            labels[i] = meta.getColumnLabel(i + 1);
+        }
+
+        DynamicConfig dc;
+        if (config.isAuto()) {
+            // Automapping depends on the columns returned, so configuration
+            // is generated for every result set shape
+            List<String> signature = Arrays.asList(labels);
+            dc = autoConfigs.get(signature);
+            if (dc == null) {
+                dc = generatePropertyMappers(generateAutoConfig(meta));
+                DynamicConfig prev = autoConfigs.putIfAbsent(signature, dc);
+                if (prev != null) {
+                    dc = prev;
+                }
+            }
+        } else {
+            dc = finDynamicConfig;
+        }
+
+        int[] indices = new int[dc.mappers.length + dc.valueGetters.length];
+        for (int i = 0; i < dc.mappers.length; ++i) {
+            indices[i] = resolveColumn(dc.mappers[i].getConfig(), labels);
+        }
+        for (int i = 0; i < dc.valueGetters.length; ++i) {
+            indices[dc.mappers.length + i] = resolveColumn(dc.valueGetters[i].config, labels);
+        }
+
+        List<Integer> remaining = new ArrayList<Integer>();
+        BeanMapper beanMapper = buildBeanMapper(dc, indices, remaining);
+
+        layout = beanMapper != null ? new ColumnLayout(dc, labels, indices, beanMapper,
+                toArray(remaining)) : new ColumnLayout(dc, labels, indices, null, null);
+        columnLayout = layout;
+        return layout;
+    }
+
+    /**
+     * Build the compiled bean mapper of the explicit result map in advance, as
+     * if all mapped columns are returned in the order they are mapped. Used by
+     * the {@link com.google.code.nanorm.config.MapperCompiler} to generate the
+     * bean mapper class at build time. The class does not depend on the column
+     * indices, so it is used for the actual result sets as well.
+     */
+    public void buildBeanMapper() {
+        if (finDynamicConfig != null) {
+            int[] indices = new int[finDynamicConfig.mappers.length];
+            for (int i = 0; i < indices.length; ++i) {
+                indices[i] = i + 1;
+            }
+            buildBeanMapper(finDynamicConfig, indices, new ArrayList<Integer>());
         }
-        return result;
     }
 
     /**
-     * Generate a key that identifies current result row.
+     * Split the property mappers into the leading simple ones, which are
+     * compiled into the bean mapper, and the rest, starting from the first
+     * subselect, nested property or column not found in the result set.
+     * Properties are set in the order they are declared in.
      * 
      * @param dc dynamic configuration
-     * @param rs result set
-     * @return key that identifies current result row.
-     * @throws SQLException propagated from result set operations
+     * @param indices column indices of the property mappers, 0 if column is
+     * not found
+     * @param remaining list to add the indices of the property mappers not
+     * handled by the bean mapper to
+     * @return bean mapper or {@literal null} if properties cannot be mapped by
+     * the compiled bean mapper
      */
-    private Key generateRowKey(DynamicConfig dc, ResultSet rs) throws SQLException {
-        String[] groupBy = config.getGroupBy();
-        if (groupBy != null && groupBy.length > 0) {
-            Object[] key = new Object[dc.valueGetters.length];
-            for (int i = 0; i < dc.valueGetters.length; ++i) {
-                key[i] = dc.valueGetters[i].getValue(rs);
+    private BeanMapper buildBeanMapper(DynamicConfig dc, int[] indices,
+            List<Integer> remaining) {
+        List<String> properties = new ArrayList<String>();
+        List<TypeHandler<?>> typeHandlers = new ArrayList<TypeHandler<?>>();
+        List<Integer> columns = new ArrayList<Integer>();
+        for (int i = 0; i < dc.mappers.length; ++i) {
+            PropertyMappingConfig mappingConfig = dc.mappers[i].getConfig();
+            String property = mappingConfig.getProperty();
+            if (remaining.isEmpty() && indices[i] != 0 && mappingConfig.getSubselect() == null
+                    && mappingConfig.getBatchSubselect() == null && property != null
+                    && property.indexOf('.') == -1 && property.indexOf('[') == -1) {
+                properties.add(property);
+                typeHandlers.add(dc.mappers[i].getTypeHandler());
+                columns.add(indices[i]);
+            } else {
+                remaining.add(i);
+            }
+        }
+
+        BeanMapper beanMapper = null;
+        if (!properties.isEmpty()) {
+            beanMapper = introspectionFactory.buildBeanMapper(elementClass, properties
+                    .toArray(new String[properties.size()]), typeHandlers
+                    .toArray(new TypeHandler<?>[typeHandlers.size()]), toArray(columns));
+            if (beanMapper != null && LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Compiled mapper of " + elementClass + " maps properties "
+                        + properties + " from columns " + columns);
+            }
+        }
+        return beanMapper;
+    }
+
+    private static boolean matches(String[] labels, ResultSetMetaData meta, int count)
+            throws SQLException {
+        if (labels.length != count) {
+            return false;
+        }
+        for (int i = 0; i < count; ++i) {
+            String label = meta.getColumnLabel(i + 1);
+            if (labels[i] != null ? !labels[i].equals(label) : label != null) {
+                return false;
             }
-            return new Key(key);
         }
-        return null;
+        return true;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Resolve the column of the property mapping to the index. Column names
+     * are matched case-insensitively, the first matching column is used.
+     * 
+     * @param mappingConfig property mapping configuration
+     * @param labels column labels
+     * @return column index or 0 if column is not found
+     */
+    private int resolveColumn(PropertyMappingConfig mappingConfig, String[] labels) {
+        if (mappingConfig.getColumnIndex() != 0) {
+            return mappingConfig.getColumnIndex();
+        }
+        for (int i = 0; i < labels.length; ++i) {
+            if (mappingConfig.getColumn().equalsIgnoreCase(labels[i])) {
+                return i + 1;
+            }
+        }
+        // Leave it to the driver
+        return 0;
     }
 
     /**
@@ -270,12 +588,28 @@ public class DefaultRowMapper implements RowMapper {
 
                 TypeHandler<?> typeHandler = typeHandlerFactory.getTypeHandler(parameterTypes[0]);
                 mappers.add(new PropertyMapper(mappingConfig, setter, typeHandler));
+            } else if (mappingConfig.getBatchSubselect() != null) {
+                // Column values are passed as an array or collection
+                StatementConfig stConfig = mappingConfig.getBatchSubselect();
+                TypeHandler<?> typeHandler = typeHandlerFactory.getTypeHandler(TypeOracle
+                        .resolveElementType(stConfig.getParameterTypes()[0]));
+
+                Class<?> childClass = ResultCollectorUtil.resultClass(stConfig.getResultType());
+                Getter keyGetter = introspectionFactory.buildGetter(childClass, mappingConfig
+                        .getBatchKey());
+                Getter getter = introspectionFactory.buildGetter(elementClass, mappingConfig
+                        .getProperty());
+                DataSinkSource sinkSource = ResultCollectorUtil.createDataSinkSource(getter,
+                        setter, mappingConfig);
+
+                BatchSubselect batch = new BatchSubselect(mappingConfig, keyGetter, sinkSource);
+                mappers.add(new PropertyMapper(mappingConfig, setter, typeHandler, batch));
             } else if (mappingConfig.getNestedMapConfig() != null) {
                 Getter getter = introspectionFactory.buildGetter(elementClass, mappingConfig
                         .getProperty());
 
                 RowMapper nestedMap = new DefaultRowMapper(propertyType, mappingConfig
-                        .getNestedMapConfig(), introspectionFactory, typeHandlerFactory);
+                        .getNestedMapConfig(), introspectionFactory, typeHandlerFactory, true);
                 nestedMappers.add(new NestedMapPropertyMapper(getter, setter, nestedMap,
                         mappingConfig));
             } else {
@@ -290,6 +624,7 @@ public class DefaultRowMapper implements RowMapper {
         dc.nestedMappers = nestedMappers
                 .toArray(new NestedMapPropertyMapper[nestedMappers.size()]);
         dc.valueGetters = keyGenerators.toArray(new ValueGetter[keyGenerators.size()]);
+        dc.integralKey = dc.valueGetters.length == 1 && dc.valueGetters[0].isIntegral();
         return dc;
     }
 
@@ -315,11 +650,81 @@ public class DefaultRowMapper implements RowMapper {
 
         public NestedMapPropertyMapper[] nestedMappers;
 
+        /**
+         * If rows are grouped by the single integral property.
+         */
+        public boolean integralKey;
+
         DynamicConfig() {
             // Nothing...
         }
     }
 
+    /**
+     * Group of the ordered rows the mapper is currently collecting rows for.
+     * 
+     * @author Ivan Dubrov
+     */
+    private static class OrderedGroup {
+        private boolean integral;
+
+        private long longKey;
+
+        private Object key;
+
+        /**
+         * Values of the composite key of the current row, reused for every
+         * row.
+         */
+        private Object[] tuple;
+
+        private Object result;
+
+        private DataSink<Object> callback;
+
+        OrderedGroup() {
+            // Nothing...
+        }
+
+        private boolean matches(boolean otherIntegral, long otherLongKey, Object otherKey,
+                Object[] otherTuple) {
+            if (integral || otherIntegral) {
+                return integral == otherIntegral && longKey == otherLongKey;
+            }
+            if (otherTuple != null) {
+                return key instanceof Key && ((Key) key).matches(otherTuple);
+            }
+            return key != null ? key.equals(otherKey) : otherKey == null;
+        }
+    }
+
+    /**
+     * Column indices and compiled bean mapper resolved for the result set
+     * shape.
+     * 
+     * @author Ivan Dubrov
+     */
+    private static class ColumnLayout {
+        private final DynamicConfig dc;
+
+        private final String[] labels;
+
+        private final int[] indices;
+
+        private final BeanMapper beanMapper;
+
+        private final int[] remaining;
+
+        ColumnLayout(DynamicConfig dc, String[] labels, int[] indices, BeanMapper beanMapper,
+                int[] remaining) {
+            this.dc = dc;
+            this.labels = labels;
+            this.indices = indices;
+            this.beanMapper = beanMapper;
+            this.remaining = remaining;
+        }
+    }
+
     /**
      * Helper class for retrieving the data from result set for generating a row
      * key (used for grouping several result rows into one).
@@ -337,11 +742,23 @@ public class DefaultRowMapper implements RowMapper {
             this.config = config;
         }
 
-        public Object getValue(ResultSet rs) throws SQLException {
-            if (config.getColumnIndex() != 0) {
-                return typeHandler.getValue(rs, config.getColumnIndex());
+        public Object getValue(ResultSet rs, int column) throws SQLException {
+            if (column != 0) {
+                return typeHandler.getValue(rs, column);
             }
             return typeHandler.getValue(rs, config.getColumn());
         }
+
+        public boolean isIntegral() {
+            return typeHandler instanceof IntValueHandler
+                    || typeHandler instanceof LongValueHandler;
+        }
+
+        public long getLong(ResultSet rs, int column) throws SQLException {
+            if (typeHandler instanceof IntValueHandler) {
+                return ((IntValueHandler) typeHandler).getInt(rs, column);
+            }
+            return ((LongValueHandler) typeHandler).getLong(rs, column);
+        }
     }
 }
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.internal.mapping.result;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.code.nanorm.internal.Key;
+
+/**
+ * Index of the result objects by the groupBy key, used for grouping several
+ * rows of {@link java.sql.ResultSet} into single object. Integral keys are
+ * stored in the open-addressing table without boxing, other keys (single
+ * values, {@link Key} for several values and <code>null</code>) are stored in
+ * the hash map. Several values are looked up without creating the
+ * {@link Key}, it is created only when the object is stored.
+ * 
+ * @author Ivan Dubrov
+ */
+public final class GroupIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+
+    private Object[] values;
+
+    private int size;
+
+    private Map<Object, Object> objects;
+
+    /**
+     * Values of the composite key of the current row, reused for every row.
+     */
+    private Object[] tuple;
+
+    private Probe probe;
+
+    /**
+     * Get object for the integral key.
+     * 
+     * @param key key
+     * @return object or <code>null</code> if no object is stored under the key
+     */
+    public Object get(long key) {
+        if (values == null) {
+            return null;
+        }
+        int mask = values.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            Object value = values[i];
+            if (value == null || keys[i] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Store the object under the integral key.
+     * 
+     * @param key key
+     * @param value object, not <code>null</code>
+     */
+    public void put(long key, Object value) {
+        if (values == null) {
+            keys = new long[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+        } else if ((size + 1) * 2 > values.length) {
+            // Keep the table at most half full
+            resize(values.length * 2);
+        }
+        if (insert(keys, values, key, value)) {
+            size++;
+        }
+    }
+
+    /**
+     * Get object for the key.
+     * 
+     * @param key key, could be <code>null</code>
+     * @return object or <code>null</code> if no object is stored under the key
+     */
+    public Object get(Object key) {
+        return objects != null ? objects.get(key) : null;
+    }
+
+    /**
+     * Store the object under the key.
+     * 
+     * @param key key, could be <code>null</code>
+     * @param value object, not <code>null</code>
+     */
+    public void put(Object key, Object value) {
+        if (objects == null) {
+            objects = new HashMap<Object, Object>();
+        }
+        objects.put(key, value);
+    }
+
+    /**
+     * Get the array for the values of the composite key of the current row.
+     * The same array is returned on every call.
+     * 
+     * @param length amount of values
+     * @return array for the values
+     */
+    public Object[] tuple(int length) {
+        if (tuple == null || tuple.length != length) {
+            tuple = new Object[length];
+        }
+        return tuple;
+    }
+
+    /**
+     * Get object for the composite key with given values.
+     * 
+     * @param values values of the key, could contain <code>null</code>
+     * @return object or <code>null</code> if no object is stored under the key
+     */
+    public Object getTuple(Object[] values) {
+        if (objects == null) {
+            return null;
+        }
+        if (probe == null) {
+            probe = new Probe();
+        }
+        probe.values = values;
+        probe.hashCode = Key.hashCode(values);
+        Object result = objects.get(probe);
+        probe.values = null;
+        return result;
+    }
+
+    /**
+     * Store the object under the composite key with given values. The values
+     * are copied, so the array could be reused.
+     * 
+     * @param values values of the key, could contain <code>null</code>
+     * @param value object, not <code>null</code>
+     */
+    public void putTuple(Object[] values, Object value) {
+        put(new Key(values.clone()), value);
+    }
+
+    /** @return Returns the count of objects in the index. */
+    public int size() {
+        return size + (objects != null ? objects.size() : 0);
+    }
+
+    private void resize(int capacity) {
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] != null) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private static boolean insert(long[] keys, Object[] values, long key, Object value) {
+        int mask = values.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            if (values[i] == null) {
+                keys[i] = key;
+                values[i] = value;
+                return true;
+            }
+            if (keys[i] == key) {
+                values[i] = value;
+                return false;
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        // Spread the sequential identifiers over the table
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Lookup key equal to the {@link Key} with the same values. Never stored
+     * in the map.
+     */
+    private static final class Probe {
+        private Object[] values;
+
+        private int hashCode;
+
+        Probe() {
+            // Nothing...
+        }
+
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).matches(values);
+        }
+    }
+}
@@ -23,9 +23,15 @@ import java.sql.SQLException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.code.nanorm.DoubleValueHandler;
+import com.google.code.nanorm.IntValueHandler;
+import com.google.code.nanorm.LongValueHandler;
 import com.google.code.nanorm.TypeHandler;
 import com.google.code.nanorm.internal.Request;
 import com.google.code.nanorm.internal.config.PropertyMappingConfig;
+import com.google.code.nanorm.internal.introspect.DoubleSetter;
+import com.google.code.nanorm.internal.introspect.IntSetter;
+import com.google.code.nanorm.internal.introspect.LongSetter;
 import com.google.code.nanorm.internal.introspect.Setter;
 
 /**
@@ -43,6 +49,13 @@ public class PropertyMapper {
 
     private final TypeHandler<?> typeHandler;
 
+    private final BatchSubselect batchSubselect;
+
+    /**
+     * Primitive type the value is mapped as, without boxing, or null.
+     */
+    private final Class<?> primitive;
+
     /**
      * Constructor.
      * 
@@ -51,9 +64,56 @@ public class PropertyMapper {
      * @param typeHandler type handler for property
      */
     public PropertyMapper(PropertyMappingConfig config, Setter setter, TypeHandler<?> typeHandler) {
+        this(config, setter, typeHandler, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param config property mapping configuration
+     * @param setter property setter
+     * @param typeHandler type handler for property
+     * @param batchSubselect batch subselect of the property or
+     * <code>null</code>
+     */
+    public PropertyMapper(PropertyMappingConfig config, Setter setter,
+            TypeHandler<?> typeHandler, BatchSubselect batchSubselect) {
         this.config = config;
         this.setter = setter;
         this.typeHandler = typeHandler;
+        this.batchSubselect = batchSubselect;
+
+        // Values of primitive properties could be mapped without boxing if
+        // both type handler and setter support that
+        Class<?> prim = null;
+        if (config.getSubselect() == null && batchSubselect == null) {
+            Type type = setter.getType();
+            if (type == int.class && typeHandler instanceof IntValueHandler
+                    && setter instanceof IntSetter) {
+                prim = int.class;
+            } else if (type == long.class && typeHandler instanceof LongValueHandler
+                    && setter instanceof LongSetter) {
+                prim = long.class;
+            } else if (type == double.class && typeHandler instanceof DoubleValueHandler
+                    && setter instanceof DoubleSetter) {
+                prim = double.class;
+            }
+        }
+        this.primitive = prim;
+    }
+
+    /**
+     * @return property mapping configuration
+     */
+    public PropertyMappingConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return type handler for property
+     */
+    public TypeHandler<?> getTypeHandler() {
+        return typeHandler;
     }
 
     /**
@@ -62,20 +122,54 @@ public class PropertyMapper {
      * @param request {@link Request} instance. Used for executing subqueries.
      * @param result result object instance
      * @param rs result set
+     * @param column resolved column index or 0 if column should be looked up
+     * by name
      * @throws SQLException SQL exception from result set
      */
-    public final void mapResult(Request request, Object result, ResultSet rs) throws SQLException {
-        Object value;
+    public final void mapResult(Request request, Object result, ResultSet rs, int column)
+            throws SQLException {
+        if (primitive != null && column != 0) {
+            mapPrimitive(result, rs, column);
+            return;
+        }
 
-        if (config.getColumnIndex() != 0) {
-            value = typeHandler.getValue(rs, config.getColumnIndex());
-        } else {
-            value = typeHandler.getValue(rs, config.getColumn());
+        Object value = getValue(rs, column);
+        if (batchSubselect != null) {
+            // Property is set once the result set is processed
+            request.deferSubselect(batchSubselect, result, value);
+            return;
         }
         if (config.getSubselect() != null) {
-            value = request.getQueryDelegate()
-                    .query(config.getSubselect(), new Object[] {value });
+            value = request.querySubselect(config.getSubselect(), value);
         }
+        setValue(result, value);
+    }
+
+    /**
+     * Read the value of the mapped column with the type handler.
+     * 
+     * @param rs result set
+     * @param column resolved column index or 0 if column should be looked up
+     * by name
+     * @return column value
+     * @throws SQLException SQL exception from result set
+     */
+    final Object getValue(ResultSet rs, int column) throws SQLException {
+        if (column != 0) {
+            return typeHandler.getValue(rs, column);
+        }
+        return typeHandler.getValue(rs, config.getColumn());
+    }
+
+    /**
+     * Set the property to the value read by {@link #getValue(ResultSet, int)}
+     * (or to the result of the subselect). <code>null</code> is set as the
+     * default value for the primitive properties.
+     * 
+     * @param result result object instance
+     * @param value property value
+     */
+    final void setValue(Object result, Object value) {
         // TODO: Log property being mapped
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Mapped property {} to value {}", config.getProperty(), value);
@@ -106,4 +200,35 @@ public class PropertyMapper {
         }
         setter.setValue(result, value);
     }
+
+    /**
+     * Map the primitive value without boxing. SQL <code>NULL</code> is mapped
+     * to <code>0</code>.
+     * 
+     * @param result result object instance
+     * @param rs result set
+     * @param column column index
+     * @throws SQLException SQL exception from result set
+     */
+    private void mapPrimitive(Object result, ResultSet rs, int column) throws SQLException {
+        if (primitive == int.class) {
+            int value = ((IntValueHandler) typeHandler).getInt(rs, column);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Mapped property {} to value {}", config.getProperty(), value);
+            }
+            ((IntSetter) setter).setInt(result, value);
+        } else if (primitive == long.class) {
+            long value = ((LongValueHandler) typeHandler).getLong(rs, column);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Mapped property {} to value {}", config.getProperty(), value);
+            }
+            ((LongSetter) setter).setLong(result, value);
+        } else {
+            double value = ((DoubleValueHandler) typeHandler).getDouble(rs, column);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Mapped property {} to value {}", config.getProperty(), value);
+            }
+            ((DoubleSetter) setter).setDouble(result, value);
+        }
+    }
 }
@@ -20,6 +20,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import com.google.code.nanorm.exceptions.IntrospectionException;
@@ -39,6 +40,7 @@ import com.google.code.nanorm.internal.introspect.Setter;
  * <li>{@link Collection}</li>
  * <li>{@link List}</li>
  * <li>{@link ArrayList}</li>
+ * <li>{@link Iterator} and {@link Iterable} (cursor)</li>
  * <li>regular bean</li>
  * </ul>
  * 
@@ -82,7 +84,7 @@ public class ResultCollectorUtil {
      */
     public static Class<?> resultClass(Type resultType) {
         Class<?> resultClass = null;
-        if (isGenericCollection(resultType)) {
+        if (isGenericCollection(resultType) || isCursor(resultType)) {
             ParameterizedType pt = (ParameterizedType) resultType;
             Type beanType = pt.getActualTypeArguments()[0];
             if (beanType instanceof Class<?>) {
@@ -103,6 +105,21 @@ public class ResultCollectorUtil {
         return resultClass;
     }
 
+    /**
+     * Check if result type is a cursor (results are mapped on demand while
+     * iterating).
+     * 
+     * @param type result type
+     * @return if result type is {@link Iterator} or {@link Iterable}
+     */
+    public static boolean isCursor(Type type) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) type;
+            return pt.getRawType() == Iterator.class || pt.getRawType() == Iterable.class;
+        }
+        return false;
+    }
+
     private static boolean isGenericCollection(Type type) {
         if (type instanceof ParameterizedType) {
             ParameterizedType pt = (ParameterizedType) type;
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.internal.mapping.result;
+
+import java.lang.reflect.Type;
+
+import com.google.code.nanorm.internal.Request;
+import com.google.code.nanorm.internal.introspect.Getter;
+import com.google.code.nanorm.internal.introspect.Setter;
+
+/**
+ * Getter and setter of the {@link Request} result.
+ * 
+ * @author Ivan Dubrov
+ */
+public class ResultGetterSetter implements Getter, Setter {
+
+    private final Type type;
+
+    /**
+     * Constructor.
+     * 
+     * @param type result map result type.
+     */
+    public ResultGetterSetter(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getValue(Object instance) {
+        Request request = (Request) instance;
+        return request.getResult();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setValue(Object instance, Object value) {
+        Request request = (Request) instance;
+        request.setResult(value);
+    }
+}
@@ -42,4 +42,35 @@ public interface RowMapper {
      */
     void processResultSet(Request request, ResultSet rs, DataSink<Object> callback)
             throws SQLException;
+
+    /**
+     * Finish processing the result set. Called after the last row is
+     * processed, pushes the objects the mapper is still collecting rows for.
+     * 
+     * @param request request variables
+     * @param callback callback used for pushing the result object
+     */
+    void finishResultSet(Request request, DataSink<Object> callback);
+
+    /**
+     * Capture the values of the current result set row, so the row could be
+     * mapped by {@link #mapSnapshot(RowSnapshot)} after the result set is
+     * advanced. Only supported by the mappers without groupBy, nested maps
+     * and subselects.
+     * 
+     * @param request request variables
+     * @param rs result set
+     * @return snapshot of the row
+     * @throws SQLException any exception from the result set
+     */
+    RowSnapshot captureRow(Request request, ResultSet rs) throws SQLException;
+
+    /**
+     * Map the row captured by {@link #captureRow(Request, ResultSet)} into the
+     * result object. Could be invoked from any thread.
+     * 
+     * @param snapshot snapshot of the row
+     * @return result object
+     */
+    Object mapSnapshot(RowSnapshot snapshot);
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal.mapping.result;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+
+/**
+ * Snapshot of the single {@link ResultSet} row, captured by the
+ * {@link RowMapper#captureRow}. Holds the values of the mapped columns, read
+ * by the type handlers of the row mapper when snapshot is taken, so the row
+ * could be mapped by {@link RowMapper#mapSnapshot} in other thread while the
+ * original result set is advanced.
+ * 
+ * @author Ivan Dubrov
+ */
+public final class RowSnapshot {
+
+    private final Object layout;
+
+    private final Object[] values;
+
+    /**
+     * Constructor.
+     * 
+     * @param layout result set layout resolved by the row mapper
+     * @param values values of the mapped columns
+     */
+    RowSnapshot(Object layout, Object[] values) {
+        this.layout = layout;
+        this.values = values;
+    }
+
+    /**
+     * @return Returns the result set layout resolved by the row mapper.
+     */
+    Object getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return Returns the values of the mapped columns.
+     */
+    Object[] getValues() {
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "RowSnapshot" + Arrays.toString(values);
+    }
+}
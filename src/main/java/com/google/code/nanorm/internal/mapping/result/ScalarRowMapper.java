@@ -53,4 +53,25 @@ public class ScalarRowMapper implements RowMapper {
         // TODO: Check we have only one column?
         callback.pushData(typeHandler.getValue(rs, 1));
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void finishResultSet(Request request, DataSink<Object> callback) {
+        // Nothing, every row is pushed immediately
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public RowSnapshot captureRow(Request request, ResultSet rs) throws SQLException {
+        return new RowSnapshot(null, new Object[] {typeHandler.getValue(rs, 1) });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object mapSnapshot(RowSnapshot snapshot) {
+        return snapshot.getValues()[0];
+    }
 }
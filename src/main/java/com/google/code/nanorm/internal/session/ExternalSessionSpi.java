@@ -78,6 +78,15 @@ public class ExternalSessionSpi implements SessionSpi {
         return true;
     }
 
+    /**
+     * Always returns false, since we return new connection for every request.
+     * 
+     * @return always false
+     */
+    public boolean isSingleConnection() {
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      */
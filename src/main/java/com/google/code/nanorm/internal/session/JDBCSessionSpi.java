@@ -103,6 +103,15 @@ public class JDBCSessionSpi implements SessionSpi {
         return isAllowMultiple;
     }
 
+    /**
+     * Always returns true, since we use single connection for all requests.
+     * 
+     * @return always true
+     */
+    public boolean isSingleConnection() {
+        return true;
+    }
+
     /**
      * This method does nothing. We use single connection for all requests.
      * @param conn not used
@@ -119,6 +119,15 @@ public class JTASessionSpi implements SessionSpi {
         return true;
     }
 
+    /**
+     * Always returns false, since we return new connection for every request.
+     * 
+     * @return always false
+     */
+    public boolean isSingleConnection() {
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -68,4 +68,14 @@ public interface SessionSpi {
      */
     boolean isAllowMultipleQueries();
 
+    /**
+     * Does this session implementation use single connection for all queries
+     * until the session is finished.
+     * 
+     * If this is true, the statements prepared on the session connection could
+     * be cached and reused between the queries of the same session.
+     * @return if all queries of this session are executed on the same
+     * connection
+     */
+    boolean isSingleConnection();
 }
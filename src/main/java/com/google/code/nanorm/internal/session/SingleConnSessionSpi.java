@@ -91,6 +91,15 @@ public class SingleConnSessionSpi implements SessionSpi {
         return isAllowMultiple;
     }
 
+    /**
+     * Always returns true, since we use single connection for all requests.
+     * 
+     * @return always true
+     */
+    public boolean isSingleConnection() {
+        return true;
+    }
+
     /**
      * This method does nothing. We use single connection for all requests.
      * @param conn not used
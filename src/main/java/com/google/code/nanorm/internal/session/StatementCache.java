@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.internal.session;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.nanorm.internal.util.ToStringBuilder;
+
+/**
+ * Cache of the prepared statements bound to the single session connection.
+ * 
+ * Statements are checked out of the cache for the time of the query execution
+ * (see {@link #acquire(Key)}) and returned back when query is finished (see
+ * {@link #release(Key, PreparedStatement)}). That way nested queries with the
+ * same SQL (for example, subselects) never share the statement with the
+ * enclosing query while its result set is still open.
+ * 
+ * Least recently used statements are closed when cache size exceeds the
+ * configured maximum.
+ * 
+ * The instances are not thread-safe, as well as sessions they are bound to.
+ * 
+ * @author Ivan Dubrov
+ */
+public class StatementCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementCache.class);
+
+    private final int maxSize;
+
+    private final Map<Key, PreparedStatement> statements;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxSize maximum amount of statements to keep open
+     */
+    public StatementCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Statement cache size must be positive!");
+        }
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    closeStatement(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Check out the statement from the cache.
+     * 
+     * @param key statement key
+     * @return prepared statement or {@literal null} if no statement is cached
+     * for given key
+     */
+    public PreparedStatement acquire(Key key) {
+        PreparedStatement st = statements.remove(key);
+        if (st != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return st;
+    }
+
+    /**
+     * Return the statement into the cache. The parameters of the statement are
+     * cleared. If statement cannot be reused, it is closed.
+     * 
+     * @param key statement key
+     * @param st prepared statement
+     */
+    public void release(Key key, PreparedStatement st) {
+        try {
+            st.clearParameters();
+        } catch (SQLException e) {
+            LOGGER.debug("Failed to clear statement parameters, statement is not cached.", e);
+            closeStatement(st);
+            return;
+        }
+        PreparedStatement prev = statements.put(key, st);
+        if (prev != null && prev != st) {
+            // Same statement was prepared by the nested query, keep the latest
+            closeStatement(prev);
+        }
+    }
+
+    /**
+     * Close all cached statements.
+     */
+    public void close() {
+        for (Iterator<PreparedStatement> it = statements.values().iterator(); it.hasNext();) {
+            closeStatement(it.next());
+            it.remove();
+        }
+    }
+
+    /** @return amount of queries that reused cached statement */
+    public long getHits() {
+        return hits;
+    }
+
+    /** @return amount of queries that prepared new statement */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** @return amount of statements currently cached */
+    public int size() {
+        return statements.size();
+    }
+
+    private static void closeStatement(PreparedStatement st) {
+        try {
+            st.close();
+        } catch (SQLException e) {
+            LOGGER.error("Failed to close cached statement", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("maxSize", maxSize).append("size",
+                statements.size()).append("hits", hits).append("misses", misses).toString();
+    }
+
+    /**
+     * Key of the cached statement. Statements are identified by the final SQL
+     * text and every option that is passed to the JDBC when statement is
+     * prepared.
+     */
+    public static final class Key {
+        private final String sql;
+
+        private final boolean call;
+
+        private final boolean generatedKeys;
+
+        private final int resultSetType;
+
+        private final int resultSetConcurrency;
+
+        /**
+         * Constructor.
+         * 
+         * @param sql final SQL text
+         * @param call if statement is prepared as {@link java.sql.CallableStatement}
+         * @param generatedKeys if statement returns generated keys
+         * @param resultSetType result set type
+         * @param resultSetConcurrency result set concurrency
+         */
+        public Key(String sql, boolean call, boolean generatedKeys, int resultSetType,
+                int resultSetConcurrency) {
+            this.sql = sql;
+            this.call = call;
+            this.generatedKeys = generatedKeys;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = sql.hashCode();
+            result = prime * result + (call ? 1231 : 1237);
+            result = prime * result + (generatedKeys ? 1231 : 1237);
+            result = prime * result + resultSetType;
+            result = prime * result + resultSetConcurrency;
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || obj.getClass() != Key.class) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return call == other.call && generatedKeys == other.generatedKeys
+                    && resultSetType == other.resultSetType
+                    && resultSetConcurrency == other.resultSetConcurrency
+                    && sql.equals(other.sql);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this).append("sql", sql).append("call", call).append(
+                    "generatedKeys", generatedKeys).toString();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 
+import com.google.code.nanorm.IntValueHandler;
 import com.google.code.nanorm.TypeHandler;
 
 /**
@@ -30,7 +31,7 @@ import com.google.code.nanorm.TypeHandler;
  * @author Ivan Dubrov
  * @version 1.0 31.05.2008
  */
-public class IntTypeHandler implements TypeHandler<Integer> {
+public class IntTypeHandler implements TypeHandler<Integer>, IntValueHandler {
 
     /**
      * {@inheritDoc}
@@ -67,6 +68,13 @@ public class IntTypeHandler implements TypeHandler<Integer> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public int getInt(ResultSet rs, int column) throws SQLException {
+        return rs.getInt(column);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -22,6 +22,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 
+import com.google.code.nanorm.LongValueHandler;
 import com.google.code.nanorm.TypeHandler;
 
 /**
@@ -30,7 +31,7 @@ import com.google.code.nanorm.TypeHandler;
  * @author Ivan Dubrov
  * @version 1.0 31.05.2008
  */
-public class LongTypeHandler implements TypeHandler<Long> {
+public class LongTypeHandler implements TypeHandler<Long>, LongValueHandler {
 
     /**
      * {@inheritDoc}
@@ -67,6 +68,13 @@ public class LongTypeHandler implements TypeHandler<Long> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long getLong(ResultSet rs, int column) throws SQLException {
+        return rs.getLong(column);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -152,6 +152,39 @@ public class Messages {
                         .getProperty(), cfg.getResultMap().id(), cfg.getMapper().getName());
     }
 
+    /**
+     * Generate error message for case when batch subselect query statement
+     * parameter is not an array or a collection.
+     * 
+     * @param cfg subselect config
+     * @return message
+     */
+    public static String batchSubselectParameter(SubselectConfig cfg) {
+        StatementKey key = cfg.getSubselectKey();
+        return MessageFormat.format("Batch subselect query method ''{0}'' in mapper ''{1}'' "
+                + "parameter is not an array or a collection, used in property ''{2}'' in "
+                + "result map ''{3}'' of mapper ''{4}''.", key.getName(), key.getMapper()
+                .getName(), cfg.getPropertyMapping().getProperty(), cfg.getResultMap().id(), cfg
+                .getMapper().getName());
+    }
+
+    /**
+     * Generate error message for case when batch subselect is configured
+     * incorrectly.
+     * 
+     * @param mapping mapping annotation
+     * @param mapper mapper interface
+     * @param resultMap result map
+     * @param reason what is wrong with the property
+     * @return message
+     */
+    public static String invalidBatchSubselect(Property mapping, Class<?> mapper,
+            ResultMap resultMap, String reason) {
+        return MessageFormat.format("Invalid batch subselect ''{0}'' for property ''{1}'' in "
+                + "result map ''{2}'' of mapper ''{3}'': {4}.", mapping.batchSubselect(),
+                mapping.value(), resultMap.id(), mapper.getName(), reason);
+    }
+
     /**
      * Generate error message for case when both column and columnIndex are
      * specified.
@@ -276,6 +309,21 @@ public class Messages {
                 resultMap.id(), location(mapper, method));
     }
 
+    /**
+     * Generate error message for case when result map is marked as ordered,
+     * but has no groupBy list.
+     * 
+     * @param mapper mapper interface
+     * @param method method result map applied to
+     * @param resultMap result map
+     * @return message
+     */
+    public static String orderedWithoutGroupBy(Class<?> mapper, Method method,
+            ResultMap resultMap) {
+        return MessageFormat.format("Result map ''{0}'' of {1} is marked as ''ordered'', "
+                + "but has no ''groupBy'' list.", resultMap.id(), location(mapper, method));
+    }
+
     /**
      * Generate error message for case when mapper method result type is
      * primitive, but no values were got during the query.
@@ -394,6 +442,90 @@ public class Messages {
                 .getName());
     }
 
+    /**
+     * Generate error message for case when batch method is configured
+     * incorrectly.
+     * 
+     * @param mapper mapper
+     * @param method batch query method
+     * @param reason what is wrong with the method
+     * @return message
+     */
+    public static String invalidBatch(Class<?> mapper, Method method, String reason) {
+        return MessageFormat.format("Invalid @Batch configuration of {0}: {1}.", location(
+                mapper, method), reason);
+    }
+
+    /**
+     * Generate error message for case when method returning the cursor is
+     * configured incorrectly.
+     * 
+     * @param mapper mapper
+     * @param method query method
+     * @param reason what is wrong with the method
+     * @return message
+     */
+    public static String invalidCursor(Class<?> mapper, Method method, String reason) {
+        return MessageFormat.format("Invalid cursor configuration of {0}: {1}.", location(
+                mapper, method), reason);
+    }
+
+    /**
+     * Generate error message for case when pipelined method is configured
+     * incorrectly.
+     * 
+     * @param mapper mapper
+     * @param method query method
+     * @param reason what is wrong with the method
+     * @return message
+     */
+    public static String invalidPipelined(Class<?> mapper, Method method, String reason) {
+        return MessageFormat.format("Invalid @Pipelined configuration of {0}: {1}.", location(
+                mapper, method), reason);
+    }
+
+    /**
+     * Generate error message for case when cached method is configured
+     * incorrectly.
+     * 
+     * @param mapper mapper
+     * @param method query method
+     * @param reason what is wrong with the method
+     * @return message
+     */
+    public static String invalidCached(Class<?> mapper, Method method, String reason) {
+        return MessageFormat.format("Invalid @Cached configuration of {0}: {1}.", location(
+                mapper, method), reason);
+    }
+
+    /**
+     * Generate error message for case when coalesced method is configured
+     * incorrectly.
+     * 
+     * @param mapper mapper
+     * @param method query method
+     * @param reason what is wrong with the method
+     * @return message
+     */
+    public static String invalidCoalesced(Class<?> mapper, Method method, String reason) {
+        return MessageFormat.format("Invalid @Coalesced configuration of {0}: {1}.", location(
+                mapper, method), reason);
+    }
+
+    /**
+     * Generate error message for case when tables modified by the method are
+     * configured incorrectly.
+     * 
+     * @param mapper mapper
+     * @param method query method
+     * @param reason what is wrong with the method
+     * @return message
+     */
+    public static String invalidInvalidates(Class<?> mapper, Method method, String reason) {
+        return MessageFormat.format("Invalid @Invalidates configuration of {0}: {1}.",
+                location(mapper, method), reason);
+    }
+
     private static Class<?> mapper(Class<?> override, Class<?> mapper) {
         return override != Object.class ? override : mapper;
     }
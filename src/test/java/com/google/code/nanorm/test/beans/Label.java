@@ -26,6 +26,8 @@ public class Label {
 
     private String label;
 
+    private int articleId;
+
     /**
      * @return the id
      */
@@ -53,4 +55,18 @@ public class Label {
     public void setLabel(String label) {
         this.label = label;
     }
+
+    /**
+     * @return the articleId
+     */
+    public int getArticleId() {
+        return articleId;
+    }
+
+    /**
+     * @param articleId the articleId to set
+     */
+    public void setArticleId(int articleId) {
+        this.articleId = articleId;
+    }
 }
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.cache;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.config.LocalInvalidationBus;
+import com.google.code.nanorm.internal.cache.CacheRegions;
+import com.google.code.nanorm.internal.cache.ResultCache;
+
+/**
+ * Test the invalidation of the result caches by the modified tables.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestCacheRegions {
+
+    /**
+     * TEST: Find the tables modified by the SQL statements.
+     * 
+     * EXPECT: Table is found for single-table insert, update and delete.
+     */
+    @Test
+    public void testModifiedTable() {
+        Assert.assertEquals("articles", CacheRegions
+                .modifiedTable("INSERT INTO Articles(id) VALUES (${1})"));
+        Assert.assertEquals("articles", CacheRegions
+                .modifiedTable(" update articles SET year = 2009"));
+        Assert.assertEquals("public.articles", CacheRegions
+                .modifiedTable("DELETE FROM \"public.articles\" WHERE id = ${1}"));
+        Assert.assertNull(CacheRegions.modifiedTable("{call myConcat(${1}, ${2})}"));
+        Assert.assertNull(CacheRegions.modifiedTable("SELECT id FROM articles"));
+    }
+
+    /**
+     * TEST: Register caches reading different tables, publish modification of
+     * one of the tables to the bus.
+     * 
+     * EXPECT: Only the caches reading the modified table are cleared.
+     */
+    @Test
+    public void testInvalidate() {
+        ResultCache articles = new ResultCache(10, 0);
+        ResultCache joined = new ResultCache(10, 0);
+        ResultCache categories = new ResultCache(10, 0);
+
+        CacheRegions regions = new CacheRegions();
+        regions.register(articles, new String[] {"Articles" });
+        regions.register(joined, new String[] {"articles", "categories" });
+        regions.register(categories, new String[] {"categories" });
+
+        LocalInvalidationBus bus = new LocalInvalidationBus();
+        bus.subscribe(regions);
+
+        articles.put(ResultCache.key(new Object[] {1 }), "article");
+        joined.put(ResultCache.key(new Object[] {1 }), "joined");
+        categories.put(ResultCache.key(new Object[] {1 }), "category");
+
+        bus.publish(Collections.singleton("articles"));
+        Assert.assertEquals(0, articles.size());
+        Assert.assertEquals(0, joined.size());
+        Assert.assertEquals(1, categories.size());
+    }
+
+    /**
+     * TEST: Put the result read before the cache was cleared.
+     * 
+     * EXPECT: Result is not cached.
+     */
+    @Test
+    public void testStaleResult() {
+        ResultCache cache = new ResultCache(10, 0);
+        long generation = cache.getGeneration();
+        cache.clear();
+        cache.put(ResultCache.key(new Object[] {1 }), "stale", generation);
+        Assert.assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Cached;
+import com.google.code.nanorm.annotations.Scalar;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Update;
+import com.google.code.nanorm.config.ExternalSessionConfig;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test the cached methods of the factories built from the same configuration.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestCachedFactories {
+
+    public interface Mapper {
+        @Scalar
+        @Select("SELECT subject FROM articles WHERE id = ${1}")
+        @Cached(tables = "articles")
+        String getSubject(int id);
+
+        @Update("UPDATE articles SET subject = ${2} WHERE id = ${1}")
+        void updateSubject(int id, String subject);
+    }
+
+    private final StubDatabase database = new StubDatabase(new String[] {"subject" },
+            new Object[][] { {"World Domination" } });
+
+    private final NanormConfiguration config = new NanormConfiguration();
+
+    {
+        config.setSessionConfig(new ExternalSessionConfig(database.dataSource()));
+        config.setAutoSessionEnabled(true);
+    }
+
+    private int countSelects() {
+        int count = 0;
+        for (String sql : database.getStatements()) {
+            count += sql.startsWith("SELECT") ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * TEST: Select the subject through two factories built from the same
+     * configuration, twice.
+     * 
+     * EXPECT: Every factory executes the query once, the second call is taken
+     * from the cache of the factory.
+     */
+    @Test
+    public void testSeparateCaches() {
+        Mapper mapper1 = config.buildFactory().createMapper(Mapper.class);
+        Mapper mapper2 = config.buildFactory().createMapper(Mapper.class);
+
+        Assert.assertEquals("World Domination", mapper1.getSubject(1));
+        Assert.assertEquals("World Domination", mapper2.getSubject(1));
+        Assert.assertEquals(2, countSelects());
+
+        Assert.assertEquals("World Domination", mapper1.getSubject(1));
+        Assert.assertEquals("World Domination", mapper2.getSubject(1));
+        Assert.assertEquals(2, countSelects());
+    }
+
+    /**
+     * TEST: Select the subject through two factories, update it through the
+     * first one and select it again.
+     * 
+     * EXPECT: Only the cache of the first factory is invalidated, since the
+     * factories do not share the invalidation bus.
+     */
+    @Test
+    public void testSeparateInvalidation() {
+        Mapper mapper1 = config.buildFactory().createMapper(Mapper.class);
+        Mapper mapper2 = config.buildFactory().createMapper(Mapper.class);
+
+        mapper1.getSubject(1);
+        mapper2.getSubject(1);
+        mapper1.updateSubject(1, "World Domination");
+        Assert.assertEquals(2, countSelects());
+
+        mapper1.getSubject(1);
+        mapper2.getSubject(1);
+        Assert.assertEquals(3, countSelects());
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.cache;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Cached;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Scalar;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Update;
+import com.google.code.nanorm.internal.FactoryImpl;
+import com.google.code.nanorm.internal.cache.ResultCache;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.MapperTestBase;
+
+/**
+ * Test the cached mapper methods.
+ * 
+ * @author Ivan Dubrov
+ */
+@SuppressWarnings("all")
+public class TestCachedMapper extends MapperTestBase {
+
+    public interface Mapper {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles WHERE id = ${1}")
+        @Cached(tables = "articles", readOnly = true)
+        Article getArticleById(int id);
+
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles WHERE year >= ${1} ORDER BY id")
+        @Cached(maxEntries = 10, tables = "articles", readOnly = true)
+        List<Article> listArticles(int year);
+
+        @Scalar
+        @Select("SELECT subject FROM articles WHERE id = ${1}")
+        @Cached(tables = "articles")
+        String getSubject(int id);
+
+        @Update("UPDATE articles SET subject = ${2} WHERE id = ${1}")
+        void updateSubject(int id, String subject);
+    }
+
+    private ResultCache resultCache(String method) throws Exception {
+        FactoryImpl factoryImpl = (FactoryImpl) factory;
+        return factoryImpl.getResultCache(factoryImpl.getInternalConfiguration()
+                .getStatementConfig(Mapper.class, Mapper.class.getMethod(method, int.class)));
+    }
+
+    /**
+     * TEST: Select the same article several times.
+     * 
+     * EXPECT: Query is executed once, the rest of the results are taken from
+     * the cache.
+     */
+    @Test
+    public void testCachedBean() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        ResultCache cache = resultCache("getArticleById");
+        cache.clear();
+
+        Article article = mapper.getArticleById(1);
+        Assert.assertEquals("World Domination", article.getSubject());
+        Assert.assertSame(article, mapper.getArticleById(1));
+        Assert.assertEquals("Saving the Earth", mapper.getArticleById(2).getSubject());
+        Assert.assertNull(mapper.getArticleById(3));
+        Assert.assertNull(mapper.getArticleById(3));
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(2, cache.getHits());
+    }
+
+    /**
+     * TEST: Select the list of articles twice, modify the first list.
+     * 
+     * EXPECT: Second list is taken from the cache and is not modified.
+     */
+    @Test
+    public void testCachedList() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        ResultCache cache = resultCache("listArticles");
+        cache.clear();
+
+        List<Article> articles = mapper.listArticles(2007);
+        Assert.assertEquals(2, articles.size());
+        articles.clear();
+
+        articles = mapper.listArticles(2007);
+        Assert.assertEquals(2, articles.size());
+        Assert.assertEquals(1, articles.get(0).getId());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    /**
+     * TEST: Select the subject, update it and select it again, rollback,
+     * update it again and commit.
+     * 
+     * EXPECT: Session that modified the table reads its own modification,
+     * bypassing the cache. Cached subject is invalidated when update is rolled
+     * back or committed.
+     */
+    @Test
+    public void testInvalidation() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        ResultCache cache = resultCache("getSubject");
+        cache.clear();
+
+        Assert.assertEquals("World Domination", mapper.getSubject(1));
+        mapper.updateSubject(1, "Changed");
+        Assert.assertEquals("Changed", mapper.getSubject(1));
+        Assert.assertEquals(1, cache.size());
+
+        transaction.rollback();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals("World Domination", mapper.getSubject(1));
+
+        // Update to the same value, so other tests are not affected
+        mapper.updateSubject(1, "World Domination");
+        transaction.commit();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals("World Domination", mapper.getSubject(1));
+    }
+
+    /**
+     * TEST: Update the subject, select the subject of other article (not
+     * cached yet), rollback.
+     * 
+     * EXPECT: Subject selected after the update is not put into the cache.
+     */
+    @Test
+    public void testRollbackAfterMiss() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        ResultCache cache = resultCache("getSubject");
+        cache.clear();
+
+        mapper.updateSubject(2, "Changed");
+        Assert.assertEquals("Changed", mapper.getSubject(2));
+        Assert.assertEquals(0, cache.size());
+
+        transaction.rollback();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals("Saving the Earth", mapper.getSubject(2));
+        Assert.assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.NanormFactory;
+import com.google.code.nanorm.Session;
+import com.google.code.nanorm.annotations.Coalesced;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.ExternalSessionConfig;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.internal.FactoryImpl;
+import com.google.code.nanorm.internal.cache.SingleFlight;
+import com.google.code.nanorm.internal.config.StatementConfig;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test the coalesced queries executed with and without the session.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestCoalescedSession {
+
+    public interface Mapper {
+        @ResultMap(mappings = {@Property("id"), @Property("subject") })
+        @Select("SELECT id, subject FROM articles WHERE id = ${1}")
+        @Coalesced(readOnly = true)
+        Article getArticle(int id);
+    }
+
+    private final StubDatabase database = new StubDatabase(new String[] {"id", "subject" },
+            new Object[][] { {1, "World Domination" } });
+
+    private NanormFactory factory;
+
+    private Mapper mapper;
+
+    private SingleFlight singleFlight;
+
+    private void build() throws Exception {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setSessionConfig(new ExternalSessionConfig(database.dataSource()));
+        config.setAutoSessionEnabled(true);
+        factory = config.buildFactory();
+        mapper = factory.createMapper(Mapper.class);
+        singleFlight = ((FactoryImpl) factory).getSingleFlight(factory
+                .getInternalConfiguration().getStatementConfig(Mapper.class,
+                        Mapper.class.getMethod("getArticle", int.class)));
+    }
+
+    /**
+     * TEST: Invoke the coalesced query without the session.
+     * 
+     * EXPECT: Query is executed through the single flight.
+     */
+    @Test
+    public void testAutoSession() throws Exception {
+        build();
+        Assert.assertEquals("World Domination", mapper.getArticle(1).getSubject());
+        Assert.assertEquals(1, singleFlight.getExecutions());
+    }
+
+    /**
+     * TEST: Invoke the coalesced query in the session.
+     * 
+     * EXPECT: Query is executed in the session, bypassing the single flight.
+     */
+    @Test
+    public void testSession() throws Exception {
+        build();
+        Session session = factory.openSession(database.connection());
+        try {
+            Assert.assertEquals("World Domination", mapper.getArticle(1).getSubject());
+            Assert.assertEquals(0, singleFlight.getExecutions());
+        } finally {
+            session.end();
+        }
+        Assert.assertEquals(1, database.getStatements().size());
+    }
+
+    /**
+     * TEST: Build two factories from the same configuration.
+     * 
+     * EXPECT: Every factory coalesces the queries through its own single
+     * flight.
+     */
+    @Test
+    public void testSeparateFactories() throws Exception {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setSessionConfig(new ExternalSessionConfig(database.dataSource()));
+        config.setAutoSessionEnabled(true);
+        config.configure(Mapper.class);
+        FactoryImpl factory1 = (FactoryImpl) config.buildFactory();
+        FactoryImpl factory2 = (FactoryImpl) config.buildFactory();
+        StatementConfig stConfig = factory1.getInternalConfiguration().getStatementConfig(
+                Mapper.class, Mapper.class.getMethod("getArticle", int.class));
+        Assert.assertNotNull(factory1.getSingleFlight(stConfig));
+        Assert.assertNotSame(factory1.getSingleFlight(stConfig), factory2
+                .getSingleFlight(stConfig));
+    }
+}
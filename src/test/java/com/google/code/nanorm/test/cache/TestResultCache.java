@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.internal.cache.ResultCache;
+
+/**
+ * Test the query result cache.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestResultCache {
+
+    private static Object key(Object... args) {
+        return ResultCache.key(args);
+    }
+
+    /**
+     * TEST: Put results for several keys, including array arguments and null
+     * result, and look them up.
+     * 
+     * EXPECT: Results are found by the argument values, statistics is counted.
+     */
+    @Test
+    public void testLookup() {
+        ResultCache cache = new ResultCache(10, 0);
+        cache.put(key(1, "a"), "first");
+        cache.put(key(new int[] {1, 2 }), "second");
+        cache.put(key(2, "a"), null);
+
+        Assert.assertEquals("first", cache.get(key(1, "a")));
+        Assert.assertEquals("second", cache.get(key(new int[] {1, 2 })));
+        Assert.assertNull(cache.get(key(2, "a")));
+        Assert.assertSame(ResultCache.MISSING, cache.get(key(1, "b")));
+
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(3, cache.size());
+    }
+
+    /**
+     * TEST: Put the list result, modify it and the list returned from the
+     * cache.
+     * 
+     * EXPECT: Cached list is not modified.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCopy() {
+        ResultCache cache = new ResultCache(10, 0);
+        List<String> list = new ArrayList<String>();
+        list.add("a");
+        cache.put(key(1), list);
+        list.add("b");
+
+        List<String> cached = (List<String>) cache.get(key(1));
+        Assert.assertEquals(1, cached.size());
+        cached.add("c");
+
+        Assert.assertEquals(1, ((List<String>) cache.get(key(1))).size());
+
+        int[] array = new int[] {1 };
+        cache.put(key(2), array);
+        array[0] = 2;
+        Assert.assertEquals(1, ((int[]) cache.get(key(2)))[0]);
+    }
+
+    /**
+     * TEST: Fill the cache, look up one of the results and put more results.
+     * 
+     * EXPECT: Result that was looked up survives the eviction.
+     */
+    @Test
+    public void testEviction() {
+        ResultCache cache = new ResultCache(3, 0);
+        cache.put(key(1), "1");
+        cache.put(key(2), "2");
+        cache.put(key(3), "3");
+        Assert.assertEquals("1", cache.get(key(1)));
+
+        cache.put(key(4), "4");
+        cache.put(key(5), "5");
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(2, cache.getEvictions());
+        Assert.assertEquals("1", cache.get(key(1)));
+        Assert.assertSame(ResultCache.MISSING, cache.get(key(2)));
+        Assert.assertSame(ResultCache.MISSING, cache.get(key(3)));
+    }
+
+    /**
+     * TEST: Put the result with short time to live and look it up after it
+     * expires.
+     * 
+     * EXPECT: Result is not found.
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        ResultCache cache = new ResultCache(10, 10);
+        cache.put(key(1), "1");
+        Thread.sleep(50);
+        Assert.assertSame(ResultCache.MISSING, cache.get(key(1)));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * TEST: Look up and put the results from several threads concurrently.
+     * 
+     * EXPECT: Cache size never exceeds the maximum, all lookups are counted.
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        final ResultCache cache = new ResultCache(100, 0);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; ++j) {
+                        Object key = key(j % 300);
+                        if (cache.get(key) == ResultCache.MISSING) {
+                            cache.put(key, j);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(cache.size() <= 100);
+        Assert.assertEquals(40000, cache.getHits() + cache.getMisses());
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.internal.cache.ResultCache;
+import com.google.code.nanorm.internal.cache.SingleFlight;
+
+/**
+ * Test coalescing of the concurrent queries.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestSingleFlight {
+
+    private static final int THREADS = 4;
+
+    /**
+     * Run the query from several threads at once, the query is blocked until
+     * all other threads wait for it.
+     * 
+     * @param singleFlight single flight
+     * @param query query result
+     * @return results received by the threads
+     */
+    private List<Object> runConcurrently(final SingleFlight singleFlight, final Object query)
+            throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Object> callable = new Callable<Object>() {
+            public Object call() throws Exception {
+                release.await();
+                if (query instanceof RuntimeException) {
+                    throw (RuntimeException) query;
+                }
+                return query;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < THREADS; ++i) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        try {
+                            return singleFlight.execute(ResultCache.key(new Object[] {1 }),
+                                    callable);
+                        } catch (RuntimeException e) {
+                            return e;
+                        }
+                    }
+                }));
+            }
+
+            // Wait until all threads but one wait for the result
+            while (singleFlight.getCoalesced() < THREADS - 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            List<Object> results = new ArrayList<Object>();
+            for (Future<Object> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * TEST: Execute the query returning list from several threads at once.
+     * 
+     * EXPECT: Query is executed once, every thread receives its own copy of
+     * the list.
+     */
+    @Test
+    public void testCopy() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(true);
+        List<String> list = new ArrayList<String>();
+        list.add("a");
+
+        List<Object> results = runConcurrently(singleFlight, list);
+        Assert.assertEquals(1, singleFlight.getExecutions());
+        Assert.assertEquals(THREADS - 1, singleFlight.getCoalesced());
+
+        int same = 0;
+        for (Object result : results) {
+            Assert.assertEquals(list, result);
+            if (result == list) {
+                same++;
+            }
+        }
+        Assert.assertEquals(1, same);
+    }
+
+    /**
+     * TEST: Execute the query returning list from several threads at once,
+     * results are shared.
+     * 
+     * EXPECT: Query is executed once, every thread receives the same list.
+     */
+    @Test
+    public void testShare() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(false);
+        List<String> list = new ArrayList<String>();
+
+        List<Object> results = runConcurrently(singleFlight, list);
+        Assert.assertEquals(1, singleFlight.getExecutions());
+        for (Object result : results) {
+            Assert.assertSame(list, result);
+        }
+    }
+
+    /**
+     * TEST: Execute the failing query from several threads at once.
+     * 
+     * EXPECT: Every thread receives the exception, next query is executed
+     * again.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(true);
+        IllegalStateException failure = new IllegalStateException();
+
+        List<Object> results = runConcurrently(singleFlight, failure);
+        for (Object result : results) {
+            Assert.assertSame(failure, result);
+        }
+
+        Assert.assertEquals("b", singleFlight.execute(ResultCache.key(new Object[] {1 }),
+                new Callable<Object>() {
+                    public Object call() {
+                        return "b";
+                    }
+                }));
+        Assert.assertEquals(2, singleFlight.getExecutions());
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.common;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Measures the memory allocated by the current thread. Used by the tests
+ * comparing the allocations of the optimized and the regular code paths.
+ * 
+ * @author Ivan Dubrov
+ */
+public final class Allocations {
+
+    private static final ThreadMXBean BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final Method ALLOCATED;
+
+    static {
+        Method method = null;
+        try {
+            Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+            if (clazz.isInstance(BEAN)) {
+                method = clazz.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (Exception e) {
+            // Not supported by the JVM
+        }
+        ALLOCATED = method;
+    }
+
+    private Allocations() {
+        // Nothing.
+    }
+
+    /**
+     * @return Returns if allocated memory could be measured by the JVM.
+     */
+    public static boolean isSupported() {
+        return ALLOCATED != null;
+    }
+
+    /**
+     * Measure the memory allocated by the task, per iteration. Task is run
+     * once for warm up before the measurement.
+     * 
+     * @param iterations amount of iterations
+     * @param task task to run
+     * @return bytes allocated per iteration
+     * @throws Exception task failed
+     */
+    public static long perIteration(int iterations, Runnable task) throws Exception {
+        for (int i = 0; i < iterations; ++i) {
+            task.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long start = (Long) ALLOCATED.invoke(BEAN, threadId);
+        for (int i = 0; i < iterations; ++i) {
+            task.run();
+        }
+        return ((Long) ALLOCATED.invoke(BEAN, threadId) - start) / iterations;
+    }
+}
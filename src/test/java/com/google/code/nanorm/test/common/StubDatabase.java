@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.common;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * JDBC driver stub for the tests that do not need the database. Every select
+ * returns the same rows, the executed statements and their parameters are
+ * recorded.
+ * 
+ * The result set supports the getters of the common types, reading the
+ * values by column index or case-insensitive column label. Values are
+ * returned as they are given, except for the numbers, which are converted to
+ * the requested numeric type (<code>null</code> is returned as 0). Result set
+ * and result set metadata method invocations are counted, the getters
+ * reading by column label are counted as <code>name(String)</code>, for
+ * example <code>getInt(String)</code>.
+ * 
+ * @author Ivan Dubrov
+ */
+public class StubDatabase {
+
+    private final String[] columns;
+
+    private final Object[][] rows;
+
+    private final List<String> statements = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    private final List<Map<Integer, Object>> parameters = Collections
+            .synchronizedList(new ArrayList<Map<Integer, Object>>());
+
+    private final Map<String, Integer> calls = new HashMap<String, Integer>();
+
+    /**
+     * Constructor.
+     * 
+     * @param columns column labels
+     * @param rows rows returned by every select
+     */
+    public StubDatabase(String[] columns, Object[][] rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * @return Returns the SQL of the prepared statements, in the order they
+     * were prepared.
+     */
+    public List<String> getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return Returns the parameters of the executed statements by parameter
+     * index, in the order statements were executed.
+     */
+    public List<Map<Integer, Object>> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Get the amount of invocations of the result set (or result set metadata)
+     * method.
+     * 
+     * @param name method name, followed by <code>(String)</code> for the
+     * getters reading by column label
+     * @return amount of invocations
+     */
+    public synchronized int getCalls(String name) {
+        Integer count = calls.get(name);
+        return count != null ? count : 0;
+    }
+
+    private synchronized void called(String name) {
+        calls.put(name, getCalls(name) + 1);
+    }
+
+    /**
+     * @return Returns the data source providing the stub connections.
+     */
+    public DataSource dataSource() {
+        return stub(DataSource.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getConnection")) {
+                    return connection();
+                } else if (method.getName().equals("getLogWriter")) {
+                    return new PrintWriter(System.out);
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @return Returns the new stub connection.
+     */
+    public Connection connection() {
+        return stub(Connection.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("prepareStatement") || name.equals("prepareCall")) {
+                    statements.add((String) args[0]);
+                    return statement();
+                } else if (name.equals("getAutoCommit")) {
+                    return true;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private PreparedStatement statement() {
+        final Map<Integer, Object> params = new HashMap<Integer, Object>();
+        return stub(PreparedStatement.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2
+                        && args[0] instanceof Integer) {
+                    params.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    return null;
+                } else if (name.equals("executeQuery")) {
+                    parameters.add(new HashMap<Integer, Object>(params));
+                    return resultSet();
+                } else if (name.equals("executeUpdate")) {
+                    parameters.add(new HashMap<Integer, Object>(params));
+                    return 1;
+                } else if (name.equals("execute")) {
+                    parameters.add(new HashMap<Integer, Object>(params));
+                    return false;
+                } else if (name.equals("clearParameters")) {
+                    params.clear();
+                    return null;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private ResultSet resultSet() {
+        final ResultSetMetaData meta = stub(ResultSetMetaData.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                called(name);
+                if (name.equals("getColumnCount")) {
+                    return columns.length;
+                } else if (name.equals("getColumnLabel") || name.equals("getColumnName")) {
+                    return columns[(Integer) args[0] - 1];
+                }
+                return defaultValue(method);
+            }
+        });
+        return stub(ResultSet.class, new InvocationHandler() {
+            private int row = -1;
+
+            private boolean wasNull;
+
+            public Object invoke(Object proxy, Method method, Object[] args)
+                    throws SQLException {
+                String name = method.getName();
+                called(args != null && args.length > 0 && args[0] instanceof String ? name
+                        + "(String)" : name);
+                if (name.equals("next")) {
+                    return ++row < rows.length;
+                } else if (name.equals("getMetaData")) {
+                    return meta;
+                } else if (name.equals("wasNull")) {
+                    return wasNull;
+                } else if (name.equals("findColumn")) {
+                    return column(args[0]) + 1;
+                } else if (name.startsWith("get") && args != null && args.length == 1) {
+                    Object value = rows[row][column(args[0])];
+                    wasNull = value == null;
+                    return convert(value, method.getReturnType());
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private int column(Object column) throws SQLException {
+        if (column instanceof Integer) {
+            return (Integer) column - 1;
+        }
+        for (int i = 0; i < columns.length; ++i) {
+            if (columns[i].equalsIgnoreCase((String) column)) {
+                return i;
+            }
+        }
+        throw new SQLException("Column " + column + " not found");
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+        if (value instanceof Number || value == null) {
+            Number number = (Number) value;
+            if (type == int.class) {
+                return number != null ? number.intValue() : 0;
+            } else if (type == long.class) {
+                return number != null ? number.longValue() : 0L;
+            } else if (type == double.class) {
+                return number != null ? number.doubleValue() : 0.0;
+            } else if (type == float.class) {
+                return number != null ? number.floatValue() : 0.0f;
+            } else if (type == short.class) {
+                return number != null ? number.shortValue() : (short) 0;
+            } else if (type == byte.class) {
+                return number != null ? number.byteValue() : (byte) 0;
+            } else if (type == boolean.class) {
+                return number != null && number.intValue() != 0;
+            }
+        }
+        if (type == boolean.class) {
+            return value != null && (Boolean) value;
+        }
+        if (type == String.class && value != null) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == String.class && method.getName().equals("toString")) {
+            return "stub";
+        }
+        return null;
+    }
+
+    private static <T> T stub(Class<T> clazz, final InvocationHandler handler) {
+        return clazz.cast(Proxy.newProxyInstance(StubDatabase.class.getClassLoader(),
+                new Class<?>[] {clazz }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        if (method.getName().equals("equals") && args.length == 1) {
+                            return proxy == args[0];
+                        } else if (method.getName().equals("hashCode") && args == null) {
+                            return System.identityHashCode(proxy);
+                        }
+                        return handler.invoke(proxy, method, args);
+                    }
+                }));
+    }
+}
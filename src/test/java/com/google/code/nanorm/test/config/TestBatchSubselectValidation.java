@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.config;
+
+import static com.google.code.nanorm.test.common.Utils.assertContains;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.exceptions.ConfigurationException;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.beans.Label;
+
+/**
+ * Test batch subselect validation.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestBatchSubselectValidation {
+
+    private interface Mapper1 {
+        @Select("SELECT id FROM articles")
+        @ResultMap(id = "testmap", mappings = {@Property(value = "labels", column = "id",
+                batchSubselect = "selectLabels") })
+        List<Article> selectSome();
+
+        @Select("SELECT id, label FROM labels")
+        List<Label> selectLabels(int[] ids);
+    }
+
+    /**
+     * Test batch key must be specified.
+     */
+    @Test
+    public void testBatchSubselectValidation1() {
+        try {
+            new NanormConfiguration().configure(Mapper1.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "Mapper1", "labels", "testmap", "selectLabels", "batch key");
+        }
+    }
+
+    private interface Mapper2 {
+        @Select("SELECT id FROM articles")
+        @ResultMap(id = "testmap", mappings = {@Property(value = "labels", column = "id",
+                subselect = "selectLabels", batchSubselect = "selectLabels",
+                batchKey = "articleId") })
+        List<Article> selectSome();
+
+        @Select("SELECT id, label FROM labels")
+        List<Label> selectLabels(int[] ids);
+    }
+
+    /**
+     * Test subselect and batch subselect could not be used together.
+     */
+    @Test
+    public void testBatchSubselectValidation2() {
+        try {
+            new NanormConfiguration().configure(Mapper2.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "Mapper2", "labels", "testmap", "mutually exclusive");
+        }
+    }
+
+    private interface Mapper3 {
+        @Select("SELECT id FROM articles")
+        @ResultMap(id = "testmap", mappings = {@Property(value = "labels", column = "id",
+                batchSubselect = "selectLabels", batchKey = "articleId") })
+        List<Article> selectSome();
+
+        @Select("SELECT id, label FROM labels WHERE article_id = ${1}")
+        List<Label> selectLabels(int id);
+    }
+
+    /**
+     * Test batch subselect parameter must be an array or a collection.
+     */
+    @Test
+    public void testBatchSubselectValidation3() {
+        try {
+            new NanormConfiguration().configure(Mapper3.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "Mapper3", "labels", "testmap", "selectLabels",
+                    "array or a collection");
+        }
+    }
+
+    private interface Mapper4 {
+        @Select("SELECT id FROM articles")
+        @ResultMap(id = "testmap", mappings = {@Property(value = "labels", column = "id",
+                batchSubselect = "selectLabels", batchKey = "articleId", batchSize = 0) })
+        List<Article> selectSome();
+
+        @Select("SELECT id, label FROM labels")
+        List<Label> selectLabels(int[] ids);
+    }
+
+    /**
+     * Test batch size must be positive.
+     */
+    @Test
+    public void testBatchSubselectValidation4() {
+        try {
+            new NanormConfiguration().configure(Mapper4.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "Mapper4", "labels", "batch size");
+        }
+    }
+
+    private interface Mapper5 {
+        @Select("SELECT id FROM articles")
+        @ResultMap(id = "testmap", mappings = {@Property(value = "labels", column = "id",
+                batchSubselect = "selectLabels", batchKey = "articleId") })
+        List<Article> selectSome();
+
+        @Select("SELECT id, article_id, label FROM labels")
+        List<Label> selectLabels(int[] ids);
+    }
+
+    /**
+     * Test valid batch subselect is configured.
+     */
+    @Test
+    public void testBatchSubselectValidation5() {
+        new NanormConfiguration().configure(Mapper5.class);
+    }
+}
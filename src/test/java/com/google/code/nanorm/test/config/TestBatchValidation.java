@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.config;
+
+import static com.google.code.nanorm.test.common.Utils.assertContains;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Batch;
+import com.google.code.nanorm.annotations.Insert;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.SelectKey;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.exceptions.ConfigurationException;
+import com.google.code.nanorm.test.beans.Article;
+
+/**
+ * Test validation for batch methods.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestBatchValidation {
+    private interface Mapper1 {
+        @Select("SELECT id FROM articles WHERE id = ${1}")
+        @Batch
+        int[] selectSome(int[] ids);
+    }
+
+    /**
+     * Test only insert and update methods could be batch methods.
+     */
+    @Test
+    public void testBatchValidation1() {
+        try {
+            new NanormConfiguration().configure(Mapper1.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome");
+            assertContains(e, "Mapper1");
+            assertContains(e, "@Insert");
+        }
+    }
+
+    private interface Mapper2 {
+        @Insert("INSERT INTO articles(id) VALUES (${1.id})")
+        @Batch
+        int insertSome(List<Article> articles);
+    }
+
+    /**
+     * Test batch method return type is int[] or void.
+     */
+    @Test
+    public void testBatchValidation2() {
+        try {
+            new NanormConfiguration().configure(Mapper2.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "insertSome");
+            assertContains(e, "Mapper2");
+            assertContains(e, "int[]");
+        }
+    }
+
+    private interface Mapper3 {
+        @Insert("INSERT INTO articles(id) VALUES (${1.id})")
+        @Batch
+        void insertSome(Article article);
+    }
+
+    /**
+     * Test batch method first parameter is array or collection.
+     */
+    @Test
+    public void testBatchValidation3() {
+        try {
+            new NanormConfiguration().configure(Mapper3.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "insertSome");
+            assertContains(e, "Mapper3");
+            assertContains(e, "first parameter");
+        }
+    }
+
+    private interface Mapper4 {
+        @Insert("INSERT INTO articles(id) VALUES (${1.id})")
+        @SelectKey
+        @Batch
+        void insertSome(List<Article> articles);
+    }
+
+    /**
+     * Test batch method has no generated key.
+     */
+    @Test
+    public void testBatchValidation4() {
+        try {
+            new NanormConfiguration().configure(Mapper4.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "insertSome");
+            assertContains(e, "Mapper4");
+            assertContains(e, "@SelectKey");
+        }
+    }
+
+    private interface Mapper5 {
+        @Insert("INSERT INTO articles(id) VALUES (${1})")
+        @Batch
+        void insertSome(List articles);
+    }
+
+    /**
+     * Test batch collection element type must be known.
+     */
+    @Test
+    public void testBatchValidation5() {
+        try {
+            new NanormConfiguration().configure(Mapper5.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "insertSome");
+            assertContains(e, "Mapper5");
+            assertContains(e, "element type");
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.config;
+
+import static com.google.code.nanorm.test.common.Utils.assertContains;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.annotations.Cached;
+import com.google.code.nanorm.annotations.Coalesced;
+import com.google.code.nanorm.annotations.Invalidates;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Scalar;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Update;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.exceptions.ConfigurationException;
+import com.google.code.nanorm.test.beans.Article;
+
+/**
+ * Test validation for cached methods.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestCachedValidation {
+    private interface Mapper1 {
+        @Update("UPDATE articles SET year = 2009")
+        @Cached
+        int updateSome();
+    }
+
+    /**
+     * Test only select methods could be cached.
+     */
+    @Test
+    public void testCachedValidation1() {
+        try {
+            new NanormConfiguration().configure(Mapper1.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "updateSome", "Mapper1", "@Select");
+        }
+    }
+
+    private interface Mapper2 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles")
+        @Cached
+        Iterator<Article> selectSome();
+    }
+
+    /**
+     * Test methods returning cursor could not be cached.
+     */
+    @Test
+    public void testCachedValidation2() {
+        try {
+            new NanormConfiguration().configure(Mapper2.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome", "Mapper2", "cursor");
+        }
+    }
+
+    private interface Mapper3 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles")
+        @Cached
+        void selectSome(DataSink<Article> sink);
+    }
+
+    /**
+     * Test methods passing results to data sink could not be cached.
+     */
+    @Test
+    public void testCachedValidation3() {
+        try {
+            new NanormConfiguration().configure(Mapper3.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome", "Mapper3", "DataSink");
+        }
+    }
+
+    private interface Mapper4 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles WHERE id = ${1}")
+        @Cached(maxEntries = 0)
+        Article selectSome(int id);
+    }
+
+    /**
+     * Test maximum amount of entries must be positive.
+     */
+    @Test
+    public void testCachedValidation4() {
+        try {
+            new NanormConfiguration().configure(Mapper4.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome", "Mapper4", "entries");
+        }
+    }
+
+    private interface Mapper5 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles WHERE id = ${1}")
+        @Invalidates("articles")
+        Article selectSome(int id);
+    }
+
+    /**
+     * Test select methods could not invalidate the tables.
+     */
+    @Test
+    public void testCachedValidation5() {
+        try {
+            new NanormConfiguration().configure(Mapper5.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome", "Mapper5", "@Invalidates");
+        }
+    }
+
+    private interface Mapper6 {
+        @Update("UPDATE articles SET year = 2009")
+        @Coalesced
+        int updateSome();
+    }
+
+    /**
+     * Test only select methods could be coalesced.
+     */
+    @Test
+    public void testCoalescedValidation1() {
+        try {
+            new NanormConfiguration().configure(Mapper6.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "updateSome", "Mapper6", "@Coalesced");
+        }
+    }
+
+    private interface Mapper7 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles WHERE year = ${1}")
+        @Cached
+        List<Article> selectSome(int year);
+    }
+
+    /**
+     * Test methods returning beans must be marked as read-only.
+     */
+    @Test
+    public void testCachedValidation6() {
+        try {
+            new NanormConfiguration().configure(Mapper7.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome", "Mapper7", "readOnly");
+        }
+    }
+
+    private interface Mapper8 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles WHERE year = ${1}")
+        @Cached(tables = "articles", readOnly = true)
+        List<Article> selectSome(int year);
+
+        @Scalar
+        @Select("SELECT subject FROM articles WHERE id = ${1}")
+        @Cached(tables = "articles")
+        String getSubject(int id);
+
+        @Scalar
+        @Select("SELECT COUNT(*) FROM articles WHERE year = ${1}")
+        @Cached(ttl = 60000)
+        int countArticles(int year);
+    }
+
+    /**
+     * Test read-only methods returning beans and methods returning immutable
+     * values could be cached, if results are invalidated or expire.
+     */
+    @Test
+    public void testCachedValidation7() {
+        new NanormConfiguration().configure(Mapper8.class);
+    }
+
+    private interface Mapper9 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles WHERE id = ${1}")
+        @Coalesced(copy = false)
+        Article selectSome(int id);
+    }
+
+    /**
+     * Test coalesced methods returning beans must be marked as read-only.
+     */
+    @Test
+    public void testCoalescedValidation2() {
+        try {
+            new NanormConfiguration().configure(Mapper9.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome", "Mapper9", "readOnly");
+        }
+    }
+
+    private interface Mapper10 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject FROM articles WHERE year = ${1}")
+        @Coalesced(readOnly = true)
+        List<Article> selectSome(int year);
+
+        @Scalar
+        @Select("SELECT subject FROM articles WHERE id = ${1}")
+        @Coalesced
+        String getSubject(int id);
+    }
+
+    /**
+     * Test read-only methods returning beans and methods returning immutable
+     * values could be coalesced.
+     */
+    @Test
+    public void testCoalescedValidation3() {
+        new NanormConfiguration().configure(Mapper10.class);
+    }
+
+    private interface Mapper11 {
+        @Scalar
+        @Select("SELECT subject FROM articles WHERE id = ${1}")
+        @Cached
+        String getSubject(int id);
+    }
+
+    /**
+     * Test methods without the tables must set the time to live.
+     */
+    @Test
+    public void testCachedValidation8() {
+        try {
+            new NanormConfiguration().configure(Mapper11.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "getSubject", "Mapper11", "tables");
+        }
+    }
+
+    private interface Mapper12 {
+        @ResultMap(auto = true)
+        @Select("SELECT id FROM articles WHERE year = ${1}")
+        @Coalesced(copy = false)
+        int[] selectIds(int year);
+    }
+
+    /**
+     * Test coalesced methods sharing the arrays must be marked as read-only.
+     */
+    @Test
+    public void testCoalescedValidation4() {
+        try {
+            new NanormConfiguration().configure(Mapper12.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectIds", "Mapper12", "readOnly");
+        }
+    }
+}
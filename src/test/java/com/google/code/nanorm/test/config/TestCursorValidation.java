@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.config;
+
+import static com.google.code.nanorm.test.common.Utils.assertContains;
+
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Insert;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.exceptions.ConfigurationException;
+import com.google.code.nanorm.test.beans.Article;
+
+/**
+ * Test validation for methods returning the cursor.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestCursorValidation {
+    private interface Mapper1 {
+        @Insert("INSERT INTO articles(id) VALUES (${1})")
+        Iterator<Integer> insertSome(int id);
+    }
+
+    /**
+     * Test only select methods could return cursor.
+     */
+    @Test
+    public void testCursorValidation1() {
+        try {
+            new NanormConfiguration().configure(Mapper1.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "insertSome");
+            assertContains(e, "Mapper1");
+            assertContains(e, "@Select");
+        }
+    }
+
+    private interface Mapper2 {
+        @ResultMap(groupBy = "id", auto = true, mappings = @Property(value = "id", column = "id"))
+        @Select("SELECT id, subject FROM articles")
+        Iterator<Article> selectSome();
+    }
+
+    /**
+     * Test groupBy is not supported for cursors.
+     */
+    @Test
+    public void testCursorValidation2() {
+        try {
+            new NanormConfiguration().configure(Mapper2.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome");
+            assertContains(e, "Mapper2");
+            assertContains(e, "groupBy is not supported");
+        }
+    }
+
+    private interface Mapper3 {
+        @ResultMap(groupBy = "id", ordered = true, auto = true, mappings = @Property(value = "id", column = "id"))
+        @Select("SELECT id, subject FROM articles ORDER BY id")
+        Iterator<Article> selectSome();
+    }
+
+    /**
+     * Test groupBy is supported for cursors if rows are ordered.
+     */
+    @Test
+    public void testCursorValidation3() throws Exception {
+        new NanormConfiguration().configure(Mapper3.class);
+    }
+}
@@ -75,4 +75,23 @@ public class TestGroupByValidation {
             assertContains(e, "selectSome", "groupBy", "prop3", "not", "configured", "samplemap");
         }
     }
+
+    private interface Mapper3 {
+        @Select("SELECT 1")
+        @ResultMap(id = "samplemap", ordered = true, mappings = {@Property(value = "prop1") })
+        int selectSome(int id);
+    }
+
+    /**
+     * Test that ordered result map has groupBy list.
+     */
+    @Test
+    public void testOrderedWithoutGroupBy() {
+        try {
+            new NanormConfiguration().configure(Mapper3.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome", "ordered", "groupBy", "samplemap");
+        }
+    }
 }
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.config;
+
+import static com.google.code.nanorm.test.common.Utils.assertContains;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.NanormFactory;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Update;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.exceptions.ConfigurationException;
+import com.google.code.nanorm.internal.config.StatementConfig;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.beans.Publication;
+
+/**
+ * Test lazy and parallel configuration.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestLazyConfiguration {
+
+    private interface Mapper1 {
+        @Select("SELECT id, subject FROM articles WHERE id = ${1}")
+        Article selectArticle(int id);
+
+        @Update("UPDATE articles SET subject = ${2} WHERE id = ${1}")
+        void updateSubject(int id, String subject);
+    }
+
+    private interface Mapper2 {
+        @Select("SELECT 1")
+        @ResultMap(id = "testmap", mappings = {@Property(value = "article") })
+        Publication selectSome(int id);
+    }
+
+    private interface Mapper3 {
+        @Select("SELECT 1")
+        @ResultMap(id = "testmap", mappings = {@Property(value = "dummy", columnIndex = 23, column = "testcolumn") })
+        int selectSome(int id);
+    }
+
+    private interface Mapper4 {
+        @Select("SELECT subject FROM articles WHERE id = ${1}")
+        String selectSubject(int id);
+
+        @Select("SELECT year FROM articles WHERE id = ${1}")
+        int selectYear(int id);
+    }
+
+    private StatementConfig statement(NanormFactory factory, Class<?> mapper, String name,
+            Class<?>... parameterTypes) throws Exception {
+        return factory.getInternalConfiguration().getStatementConfig(mapper,
+                mapper.getMethod(name, parameterTypes));
+    }
+
+    /**
+     * TEST: Configure mapper with lazy configuration.
+     * 
+     * EXPECT: Statements are initialized on first use.
+     */
+    @Test
+    public void testLazy() throws Exception {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setLazyConfiguration(true);
+        config.configure(Mapper1.class);
+        NanormFactory factory = config.buildFactory();
+
+        StatementConfig select = statement(factory, Mapper1.class, "selectArticle", int.class);
+        StatementConfig update = statement(factory, Mapper1.class, "updateSubject", int.class,
+                String.class);
+        Assert.assertFalse(select.isInitialized());
+        Assert.assertFalse(update.isInitialized());
+
+        Assert.assertNotNull(select.getRowMapper());
+        Assert.assertTrue(select.isInitialized());
+        Assert.assertFalse(update.isInitialized());
+
+        config.validateAll();
+        Assert.assertTrue(update.isInitialized());
+        Assert.assertNotNull(update.getPlan());
+    }
+
+    /**
+     * TEST: Configure invalid mapper with lazy configuration, validate the
+     * configuration twice.
+     * 
+     * EXPECT: Error is reported by the validation every time.
+     */
+    @Test
+    public void testLazyValidateAll() {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setLazyConfiguration(true);
+        config.configure(Mapper1.class, Mapper2.class);
+
+        for (int i = 0; i < 2; ++i) {
+            try {
+                config.validateAll();
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                assertContains(e, "type", "handler", "Article");
+            }
+        }
+    }
+
+    /**
+     * TEST: Configure mapper with invalid annotations with lazy configuration.
+     * 
+     * EXPECT: Error is reported by configure.
+     */
+    @Test
+    public void testLazyAnnotations() {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setLazyConfiguration(true);
+        try {
+            config.configure(Mapper3.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "23", "testcolumn", "testmap", "Mapper3");
+        }
+    }
+
+    /**
+     * TEST: Configure several mappers by several threads.
+     * 
+     * EXPECT: All statements are initialized by configure.
+     */
+    @Test
+    public void testParallel() throws Exception {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setConfigurationThreads(4);
+        config.configure(Mapper1.class, Mapper4.class);
+        NanormFactory factory = config.buildFactory();
+
+        Assert.assertTrue(statement(factory, Mapper1.class, "selectArticle", int.class)
+                .isInitialized());
+        Assert.assertTrue(statement(factory, Mapper1.class, "updateSubject", int.class,
+                String.class).isInitialized());
+        Assert.assertTrue(statement(factory, Mapper4.class, "selectSubject", int.class)
+                .isInitialized());
+        Assert.assertTrue(statement(factory, Mapper4.class, "selectYear", int.class)
+                .isInitialized());
+    }
+
+    /**
+     * TEST: Configure invalid mapper by several threads.
+     * 
+     * EXPECT: Error is reported by configure.
+     */
+    @Test
+    public void testParallelError() {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setConfigurationThreads(4);
+        try {
+            config.configure(Mapper1.class, Mapper2.class);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            assertContains(e, "type", "handler", "Article");
+        }
+    }
+}
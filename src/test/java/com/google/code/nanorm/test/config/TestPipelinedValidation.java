@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.config;
+
+import static com.google.code.nanorm.test.common.Utils.assertContains;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Pipelined;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.ResultMapRef;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Update;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.exceptions.ConfigurationException;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.beans.Publication;
+
+/**
+ * Test validation for pipelined methods.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestPipelinedValidation {
+    private interface Mapper1 {
+        @Update("UPDATE articles SET year = 2009")
+        @Pipelined
+        int updateSome();
+    }
+
+    /**
+     * Test only select methods could be pipelined.
+     */
+    @Test
+    public void testPipelinedValidation1() {
+        try {
+            new NanormConfiguration().configure(Mapper1.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "updateSome");
+            assertContains(e, "Mapper1");
+            assertContains(e, "@Select");
+        }
+    }
+
+    private interface Mapper2 {
+        @ResultMap(groupBy = "id", mappings = @Property(value = "id", column = "id"))
+        @Pipelined
+        @Select("SELECT id FROM articles")
+        List<Article> selectSome();
+    }
+
+    /**
+     * Test groupBy is not supported for pipelined methods.
+     */
+    @Test
+    public void testPipelinedValidation2() {
+        try {
+            new NanormConfiguration().configure(Mapper2.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome");
+            assertContains(e, "Mapper2");
+            assertContains(e, "groupBy");
+        }
+    }
+
+    @ResultMap(id = "article", auto = true)
+    private interface Mapper3 {
+        @ResultMap(mappings = {@Property(value = "article", nestedMap = @ResultMapRef("article")) })
+        @Pipelined
+        @Select("SELECT id, subject FROM articles")
+        List<Publication> selectSome();
+    }
+
+    /**
+     * Test nested maps are not supported for pipelined methods.
+     */
+    @Test
+    public void testPipelinedValidation3() {
+        try {
+            new NanormConfiguration().configure(Mapper3.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome");
+            assertContains(e, "Mapper3");
+            assertContains(e, "nested");
+        }
+    }
+
+    private interface Mapper4 {
+        @Pipelined(bufferSize = 0)
+        @Select("SELECT id FROM articles")
+        int[] selectSome();
+    }
+
+    /**
+     * Test buffer size must be positive.
+     */
+    @Test
+    public void testPipelinedValidation4() {
+        try {
+            new NanormConfiguration().configure(Mapper4.class);
+            Assert.fail();
+        } catch (ConfigurationException e) {
+            assertContains(e, "selectSome");
+            assertContains(e, "Mapper4");
+            assertContains(e, "buffer size");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.introspect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.internal.introspect.Getter;
+import com.google.code.nanorm.internal.introspect.Setter;
+import com.google.code.nanorm.internal.introspect.reflect.ReflectIntrospectionFactory;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.beans.Label;
+import com.google.code.nanorm.test.beans.Publication;
+
+/**
+ * Test the accessor methods cached by the nested and indexed property
+ * accessors built by the reflection factory.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestAccessorCache {
+
+    private static final int ITERATIONS = 1000;
+
+    private static final String PATH = "article.labels[3].label";
+
+    private final ReflectIntrospectionFactory factory = new ReflectIntrospectionFactory();
+
+    private final Getter getter = factory.buildGetter(Publication.class, PATH);
+
+    private final Setter setter = factory.buildSetter(Publication.class, PATH);
+
+    private static Publication createPublication(Article article) {
+        Label[] labels = new Label[5];
+        labels[3] = new Label();
+        article.setLabels(labels);
+        Publication publication = new Publication();
+        publication.setArticle(article);
+        return publication;
+    }
+
+    private void access(Publication publication) {
+        for (int i = 0; i < ITERATIONS; ++i) {
+            setter.setValue(publication, "label" + (i % 2));
+            Assert.assertEquals("label" + (i % 2), getter.getValue(publication));
+        }
+    }
+
+    /**
+     * TEST: Get and set the indexed property many times.
+     * 
+     * EXPECT: Property is accessed, accessor methods are looked up only by the
+     * first access.
+     */
+    @Test
+    public void testCached() {
+        Publication publication = createPublication(new Article());
+        access(publication);
+
+        long lookups = factory.getAccessorLookups();
+        Assert.assertTrue(lookups > 0);
+        access(publication);
+        Assert.assertEquals(lookups, factory.getAccessorLookups());
+    }
+
+    /**
+     * TEST: Get and set the indexed property of the article subclass after
+     * accessing the property of the article.
+     * 
+     * EXPECT: Accessor methods of the subclass are looked up by the first
+     * access only.
+     */
+    @Test
+    public void testRuntimeClass() {
+        access(createPublication(new Article()));
+
+        long lookups = factory.getAccessorLookups();
+        Publication publication = createPublication(new Article() {
+            // Subclass
+        });
+        setter.setValue(publication, "label");
+        Assert.assertEquals("label", getter.getValue(publication));
+
+        long subclassLookups = factory.getAccessorLookups();
+        Assert.assertTrue(subclassLookups > lookups);
+        access(publication);
+        Assert.assertEquals(subclassLookups, factory.getAccessorLookups());
+    }
+}
@@ -16,13 +16,41 @@
 
 package com.google.code.nanorm.test.introspect;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.code.nanorm.NanormFactory;
+import com.google.code.nanorm.TypeHandler;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.MapperCompiler;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.internal.QueryDelegate;
+import com.google.code.nanorm.internal.config.InternalConfiguration;
+import com.google.code.nanorm.internal.config.StatementConfig;
 import com.google.code.nanorm.internal.introspect.Getter;
 import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
 import com.google.code.nanorm.internal.introspect.Setter;
 import com.google.code.nanorm.internal.introspect.asm.ASMIntrospectionFactory;
+import com.google.code.nanorm.internal.introspect.asm.MapperBuilder;
+import com.google.code.nanorm.internal.mapping.result.BeanMapper;
+import com.google.code.nanorm.internal.type.IntTypeHandler;
+import com.google.code.nanorm.internal.type.StringTypeHandler;
+import com.google.code.nanorm.internal.type.TypeHandlerFactoryImpl;
+import com.google.code.nanorm.test.beans.Article;
 import com.google.code.nanorm.test.beans.Publication;
 
 /**
@@ -77,4 +105,206 @@ public class TestIntrospectionASM extends TestIntrospectionBase {
                     + "instance (full path is article.subject).", e.getMessage());
         }
     }
+
+    /**
+     * Test compiled bean mapper.
+     * 
+     * @throws SQLException propagated from result set
+     */
+    @Test
+    public void testBeanMapper() throws SQLException {
+        final Object[] row = new Object[] {1, "World Domination", null };
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ResultSet.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        Object value = row[(Integer) args[0] - 1];
+                        if (method.getName().equals("getInt")) {
+                            return value == null ? 0 : value;
+                        }
+                        return value;
+                    }
+                });
+
+        TypeHandler<?>[] typeHandlers = new TypeHandler<?>[] {new IntTypeHandler(),
+                new StringTypeHandler(), new IntTypeHandler() };
+        BeanMapper mapper = factory.buildBeanMapper(Article.class, new String[] {"id",
+                "subject", "year" }, typeHandlers, new int[] {1, 2, 3 });
+        Article article = (Article) mapper.mapRow(rs);
+        Assert.assertEquals(1, article.getId());
+        Assert.assertEquals("World Domination", article.getSubject());
+        Assert.assertEquals(0, article.getYear());
+
+        // Mapper is cached
+        Assert.assertSame(mapper, factory.buildBeanMapper(Article.class, new String[] {"id",
+                "subject", "year" }, typeHandlers, new int[] {1, 2, 3 }));
+    }
+
+    /**
+     * TEST: Create two mappers for the same interface, with different query
+     * delegates. Create mapper using the factory twice.
+     * 
+     * EXPECT: Mapper class is generated once, every mapper uses its own
+     * delegate. Factory returns the same mapper instance.
+     */
+    @Test
+    public void testMapperClassCached() {
+        InternalConfiguration config = new InternalConfiguration(new TypeHandlerFactoryImpl(),
+                factory);
+        config.configure(TestMapperContention.Mapper.class);
+
+        TestMapperContention.Mapper mapper1 = factory.createMapper(
+                TestMapperContention.Mapper.class, config, new QueryDelegate() {
+                    public Object query(StatementConfig stConfig, Object[] args) {
+                        return "first";
+                    }
+                });
+        TestMapperContention.Mapper mapper2 = factory.createMapper(
+                TestMapperContention.Mapper.class, config, new QueryDelegate() {
+                    public Object query(StatementConfig stConfig, Object[] args) {
+                        return "second";
+                    }
+                });
+        Assert.assertSame(mapper1.getClass(), mapper2.getClass());
+        Assert.assertEquals("first", mapper1.select(1));
+        Assert.assertEquals("second", mapper2.select(1));
+
+        NanormFactory nanormFactory = new NanormConfiguration().buildFactory();
+        Assert.assertSame(nanormFactory.createMapper(TestMapperContention.Mapper.class),
+                nanormFactory.createMapper(TestMapperContention.Mapper.class));
+    }
+
+    /**
+     * Mapper compiled by the {@link MapperCompiler}.
+     */
+    public interface PrecompiledMapper {
+        @Select("SELECT subject FROM articles WHERE id = ${1}")
+        String selectSubject(int id);
+
+        @Select("SELECT year FROM articles WHERE id = ${1}")
+        int selectYear(int id);
+
+        @ResultMap(mappings = {@Property("subject"), @Property("year") })
+        @Select("SELECT subject, year FROM articles WHERE id = ${1}")
+        Article selectArticle(int id);
+    }
+
+    /**
+     * TEST: Compile the mapper into the directory the mapper is loaded from,
+     * create the mapper, the setters and the bean mapper of its result map.
+     * 
+     * EXPECT: Precompiled mapper class is used, every method is dispatched to
+     * its statement. Precompiled setters and bean mapper class are used, bean
+     * mapper reads the columns it is created for.
+     * 
+     * @throws Exception any error
+     */
+    @Test
+    public void testPrecompiledMapper() throws Exception {
+        File dir = new File(PrecompiledMapper.class.getProtectionDomain().getCodeSource()
+                .getLocation().toURI());
+        List<File> files = MapperCompiler.compile(PrecompiledMapper.class, dir);
+        try {
+            InternalConfiguration config = new InternalConfiguration(
+                    new TypeHandlerFactoryImpl(), factory);
+            config.configure(PrecompiledMapper.class);
+
+            PrecompiledMapper mapper = factory.createMapper(PrecompiledMapper.class, config,
+                    new QueryDelegate() {
+                        public Object query(StatementConfig stConfig, Object[] args) {
+                            return stConfig.getId().getName().equals("selectYear") ? 2009
+                                    : "subject";
+                        }
+                    });
+            Assert.assertEquals(PrecompiledMapper.class.getName()
+                    + MapperBuilder.PRECOMPILED_SUFFIX, mapper.getClass().getName());
+            Assert.assertEquals("subject", mapper.selectSubject(1));
+            Assert.assertEquals(2009, mapper.selectYear(1));
+
+            String prefix = "com.google.code.nanorm.generated.Precompiled";
+            Assert.assertTrue(factory.buildSetter(Article.class, "subject").getClass()
+                    .getName().startsWith(prefix + "Accessor_"));
+
+            final Object[] row = new Object[] {2008, "World Domination" };
+            ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {ResultSet.class }, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            return row[(Integer) args[0] - 1];
+                        }
+                    });
+            BeanMapper beanMapper = factory.buildBeanMapper(Article.class, new String[] {
+                    "subject", "year" }, new TypeHandler<?>[] {new StringTypeHandler(),
+                    new IntTypeHandler() }, new int[] {2, 1 });
+            Assert.assertTrue(beanMapper.getClass().getName().startsWith(
+                    prefix + "BeanMapper_"));
+            Article article = (Article) beanMapper.mapRow(rs);
+            Assert.assertEquals("World Domination", article.getSubject());
+            Assert.assertEquals(2008, article.getYear());
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+            new File(dir, ASMIntrospectionFactory.PRECOMPILED_INDEX).delete();
+        }
+    }
+
+    /**
+     * TEST: Build accessors and bean mappers with no index of the precompiled
+     * classes.
+     * 
+     * EXPECT: Index is looked up once, precompiled classes are never loaded.
+     */
+    @Test
+    public void testNoPrecompiledIndex() {
+        final List<String> loaded = new ArrayList<String>();
+        final List<String> resources = new ArrayList<String>();
+        ClassLoader cl = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve)
+                    throws ClassNotFoundException {
+                loaded.add(name);
+                return super.loadClass(name, resolve);
+            }
+
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                resources.add(name);
+                return super.getResources(name);
+            }
+        };
+
+        IntrospectionFactory asm = new ASMIntrospectionFactory(cl);
+        asm.buildGetter(Article.class, "subject");
+        asm.buildSetter(Article.class, "subject");
+        asm.buildSetter(Publication.class, "article.year");
+        asm.buildBeanMapper(Article.class, new String[] {"id" },
+                new TypeHandler<?>[] {new IntTypeHandler() }, new int[] {1 });
+
+        int count = 0;
+        for (String name : resources) {
+            if (name.equals(ASMIntrospectionFactory.PRECOMPILED_INDEX)) {
+                ++count;
+            }
+        }
+        Assert.assertEquals(1, count);
+        for (String name : loaded) {
+            Assert.assertFalse(name, name.contains("Precompiled"));
+        }
+    }
+
+    /**
+     * TEST: Run the mapper compiler without the mapper classes.
+     * 
+     * EXPECT: Usage is reported with an exception rather than exiting the JVM.
+     * 
+     * @throws Exception any error
+     */
+    @Test
+    public void testCompilerUsage() throws Exception {
+        try {
+            MapperCompiler.main(new String[] {"target" });
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("Usage"));
+        }
+    }
 }
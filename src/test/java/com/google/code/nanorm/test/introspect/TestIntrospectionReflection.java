@@ -16,8 +16,16 @@
 
 package com.google.code.nanorm.test.introspect;
 
+import java.lang.reflect.Type;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.internal.introspect.Getter;
 import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
+import com.google.code.nanorm.internal.introspect.Setter;
 import com.google.code.nanorm.internal.introspect.reflect.ReflectIntrospectionFactory;
+import com.google.code.nanorm.test.beans.Publication;
 
 /**
  * 
@@ -32,4 +40,25 @@ public class TestIntrospectionReflection extends TestIntrospectionBase {
     protected IntrospectionFactory provideIntrospectionFactory() {
         return new ReflectIntrospectionFactory();
     }
+
+    /**
+     * TEST: Get and set the property of the parameter declared as
+     * {@link Object}.
+     * 
+     * EXPECT: Property path is followed using the runtime type of the
+     * parameter.
+     */
+    @Test
+    public void testRuntimeTypePath() {
+        Publication publication = new Publication();
+        publication.setYear(2008);
+        Type[] types = new Type[] {Object.class };
+
+        Getter getter = factory.buildParameterGetter(types, "1.year");
+        Assert.assertEquals(2008, getter.getValue(new Object[] {publication }));
+
+        Setter setter = factory.buildParameterSetter(types, "1.year");
+        setter.setValue(new Object[] {publication }, 2009);
+        Assert.assertEquals(2009, publication.getYear());
+    }
 }
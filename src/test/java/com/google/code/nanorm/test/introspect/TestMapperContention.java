@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.introspect;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.internal.QueryDelegate;
+import com.google.code.nanorm.internal.config.InternalConfiguration;
+import com.google.code.nanorm.internal.config.StatementConfig;
+import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
+import com.google.code.nanorm.internal.introspect.asm.ASMIntrospectionFactory;
+import com.google.code.nanorm.internal.introspect.reflect.ReflectIntrospectionFactory;
+import com.google.code.nanorm.internal.type.TypeHandlerFactoryImpl;
+
+/**
+ * Test the mapper invocation by several threads. Queries are not executed,
+ * the query delegate returns the statement name, so only the dispatch to the
+ * statement configuration is tested. Statement configurations are resolved
+ * when the mapper is created, invocations must not look them up in the
+ * configuration (which is synchronized).
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestMapperContention {
+
+    private static final int THREADS = 8;
+
+    private static final int ITERATIONS = 20000;
+
+    public interface Mapper {
+        @Select("SELECT subject FROM articles WHERE id = ${1}")
+        String select(int id);
+
+        @Select("SELECT subject FROM articles WHERE subject = ${1}")
+        String select(String subject);
+    }
+
+    /**
+     * TEST: Invoke overloaded methods of the mapper built by the reflection
+     * factory from several threads at once.
+     * 
+     * EXPECT: Every invocation is dispatched to the statement of the method,
+     * configuration is not consulted.
+     */
+    @Test
+    public void testReflectionMapper() throws Exception {
+        run(new ReflectIntrospectionFactory());
+    }
+
+    /**
+     * TEST: Invoke overloaded methods of the mapper built by the ASM factory
+     * from several threads at once.
+     * 
+     * EXPECT: Every invocation is dispatched to the statement of the method,
+     * configuration is not consulted.
+     */
+    @Test
+    public void testASMMapper() throws Exception {
+        run(new ASMIntrospectionFactory(getClass().getClassLoader()));
+    }
+
+    private void run(IntrospectionFactory introspectionFactory) throws Exception {
+        final AtomicInteger lookups = new AtomicInteger();
+        InternalConfiguration config = new InternalConfiguration(new TypeHandlerFactoryImpl(),
+                introspectionFactory) {
+            @Override
+            public StatementConfig getStatementConfig(Class<?> mapper, Method method) {
+                lookups.incrementAndGet();
+                return super.getStatementConfig(mapper, method);
+            }
+        };
+        config.configure(Mapper.class);
+
+        final Mapper mapper = introspectionFactory.createMapper(Mapper.class, config,
+                new QueryDelegate() {
+                    public Object query(StatementConfig stConfig, Object[] args) {
+                        return stConfig.getParameterTypes()[0] == int.class ? "id" : "subject";
+                    }
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            lookups.set(0);
+            for (int i = 0; i < THREADS; ++i) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        boolean valid = true;
+                        for (int j = 0; j < ITERATIONS; ++j) {
+                            valid &= "id".equals(mapper.select(j));
+                            valid &= "subject".equals(mapper.select("a"));
+                        }
+                        return valid;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+            Assert.assertEquals(0, lookups.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
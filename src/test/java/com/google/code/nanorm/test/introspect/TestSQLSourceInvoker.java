@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.introspect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.internal.introspect.SQLSourceInvoker;
+import com.google.code.nanorm.internal.introspect.asm.ASMIntrospectionFactory;
+import com.google.code.nanorm.internal.introspect.reflect.ReflectIntrospectionFactory;
+import com.google.code.nanorm.internal.introspect.reflect.ReflectSQLSourceInvoker;
+import com.google.code.nanorm.internal.mapping.parameter.ParameterMapper;
+
+/**
+ * Test the invokers of the SQL source generator methods, generated by ASM and
+ * reflection-based.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestSQLSourceInvoker {
+
+    /**
+     * Parameter type not accessible from the generated invoker.
+     */
+    static class Hidden {
+        @Override
+        public String toString() {
+            return "hidden";
+        }
+    }
+
+    /**
+     * SQL source with primitive, object and array parameters.
+     */
+    public static class PublicSource extends SQLSource {
+        public void sql(int id, long version, boolean active, String subject, int[] ids) {
+            append("UPDATE articles SET subject = ${1} WHERE id = ${2} AND version = ${3}",
+                    subject, id, version);
+            if (active) {
+                append(" AND active = 1");
+            }
+            append(" AND " + ids.length + " > 0");
+        }
+    }
+
+    /**
+     * SQL source with parameter not accessible from the generated invoker.
+     */
+    public static class HiddenParamSource extends SQLSource {
+        public void sql(Hidden hidden) {
+            append("SELECT '" + hidden + "' FROM articles");
+        }
+    }
+
+    private static final Object[] ARGS = {5, 7L, true, "subject", new int[] {1, 2 } };
+
+    private static String generate(SQLSourceInvoker invoker, Object[] args) {
+        SQLSource source = invoker.newInstance();
+        source.setReflFactory(new ReflectIntrospectionFactory());
+        invoker.generate(source, args);
+
+        StringBuilder builder = new StringBuilder();
+        List<ParameterMapper> parameters = new ArrayList<ParameterMapper>();
+        source.generate(builder, parameters);
+        return builder + " " + parameters.size();
+    }
+
+    private static SQLSourceInvoker asmInvoker(Class<? extends SQLSource> source,
+            Class<?>... types) throws Exception {
+        return new ASMIntrospectionFactory(TestSQLSourceInvoker.class.getClassLoader())
+                .buildSQLSourceInvoker(source, source.getMethod(SQLSource.GENERATOR_METHOD,
+                        types));
+    }
+
+    private static SQLSourceInvoker reflectInvoker(Class<? extends SQLSource> source,
+            Class<?>... types) throws Exception {
+        return new ReflectIntrospectionFactory().buildSQLSourceInvoker(source, source
+                .getMethod(SQLSource.GENERATOR_METHOD, types));
+    }
+
+    /**
+     * TEST: Build the invokers of the public SQL source with public
+     * parameters.
+     * 
+     * EXPECT: ASM factory generates the invoker, which generates the same SQL
+     * and parameters as the reflection-based invoker.
+     */
+    @Test
+    public void testGenerated() throws Exception {
+        Class<?>[] types = {int.class, long.class, boolean.class, String.class, int[].class };
+        SQLSourceInvoker asm = asmInvoker(PublicSource.class, types);
+        SQLSourceInvoker reflect = reflectInvoker(PublicSource.class, types);
+        Assert.assertFalse(asm instanceof ReflectSQLSourceInvoker);
+        Assert.assertTrue(reflect instanceof ReflectSQLSourceInvoker);
+
+        String sql = generate(reflect, ARGS);
+        Assert.assertEquals("UPDATE articles SET subject = ? WHERE id = ? AND version = ?"
+                + " AND active = 1 AND 2 > 0 3", sql);
+        Assert.assertEquals(sql, generate(asm, ARGS));
+
+        Object[] args = {6, 8L, false, null, new int[0] };
+        Assert.assertEquals(generate(reflect, args), generate(asm, args));
+    }
+
+    /**
+     * TEST: Build the invoker of the SQL source with parameter not accessible
+     * from the generated code.
+     * 
+     * EXPECT: ASM factory falls back to the reflection-based invoker, which
+     * generates the SQL.
+     */
+    @Test
+    public void testFallback() throws Exception {
+        SQLSourceInvoker invoker = asmInvoker(HiddenParamSource.class, Hidden.class);
+        Assert.assertTrue(invoker instanceof ReflectSQLSourceInvoker);
+        Assert.assertEquals("SELECT 'hidden' FROM articles 0", generate(invoker,
+                new Object[] {new Hidden() }));
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.resultmap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.ParamBlock;
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.ResultMapRef;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Source;
+import com.google.code.nanorm.config.ExternalSessionConfig;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.beans.Comment;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test the batch subselects of the rows passed to the data sink or returned by
+ * the cursor. The JDBC driver is replaced by the stub, which returns the same
+ * rows for the articles and for their comments.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestBatchSubselectSink {
+
+    @ResultMap(id = "article", mappings = {@Property("id"), @Property("subject"),
+            @Property(value = "comments", column = "id", batchSubselect = "listComments",
+                    batchKey = "id", batchSize = 2) })
+    public interface Mapper {
+        public static class CommentsSource extends SQLSource {
+            public void sql(Integer[] ids) {
+                append("SELECT id, subject FROM comments WHERE id IN (");
+                join(new ParamBlock<Integer>() {
+                    public void generate(Integer id) {
+                        append("${value}", id);
+                    }
+                }, ids).with(", ");
+                append(")");
+            }
+        }
+
+        @ResultMap(mappings = {@Property("id"), @Property(value = "comment", column = "subject") })
+        @Source(CommentsSource.class)
+        List<Comment> listComments(Integer[] ids);
+
+        @ResultMapRef("article")
+        @Select("SELECT id, subject FROM articles ORDER BY id")
+        void listArticles(DataSink<Article> sink);
+
+        @ResultMapRef("article")
+        @Select("SELECT id, subject FROM articles ORDER BY id")
+        Iterator<Article> iterateArticles();
+    }
+
+    private final StubDatabase database = new StubDatabase(new String[] {"id", "subject" },
+            new Object[][] { {1, "First" }, {2, "Second" }, {3, "Third" } });
+
+    private Mapper createMapper() {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setSessionConfig(new ExternalSessionConfig(database.dataSource()));
+        config.setAutoSessionEnabled(true);
+        return config.buildFactory().createMapper(Mapper.class);
+    }
+
+    private static void checkComments(Article article) {
+        // Stub returns every comment for every batch, so the article might get
+        // the same comment once for every batch
+        Assert.assertNotNull(article.getComments());
+        Assert.assertFalse(article.getComments().isEmpty());
+        for (Comment comment : article.getComments()) {
+            Assert.assertEquals(article.getId(), comment.getId());
+            Assert.assertEquals(article.getSubject(), comment.getComment());
+        }
+    }
+
+    private int countComments() {
+        int count = 0;
+        for (String sql : database.getStatements()) {
+            count += sql.contains("FROM comments") ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * TEST: Select the articles with batch subselect into the data sink.
+     * 
+     * EXPECT: Every article is pushed with the comments set, comments are
+     * selected in batches of two values.
+     */
+    @Test
+    public void testDataSink() {
+        final List<Article> articles = new ArrayList<Article>();
+        createMapper().listArticles(new DataSink<Article>() {
+            public void pushData(Article article) {
+                checkComments(article);
+                articles.add(article);
+            }
+
+            public void commitData() {
+                Assert.assertEquals(3, articles.size());
+            }
+        });
+        Assert.assertEquals(3, articles.size());
+        Assert.assertEquals(1, articles.get(0).getId());
+        Assert.assertEquals(2, articles.get(1).getId());
+        Assert.assertEquals(3, articles.get(2).getId());
+        Assert.assertEquals(2, countComments());
+    }
+
+    /**
+     * TEST: Iterate the articles with batch subselect.
+     * 
+     * EXPECT: Every article is returned with the comments set, comments are
+     * selected once for every batch of two rows rather than for every row.
+     */
+    @Test
+    public void testCursor() {
+        Iterator<Article> articles = createMapper().iterateArticles();
+        for (int id = 1; id <= 3; ++id) {
+            Assert.assertTrue(articles.hasNext());
+            Article article = articles.next();
+            Assert.assertEquals(id, article.getId());
+            checkComments(article);
+        }
+        Assert.assertFalse(articles.hasNext());
+        Assert.assertEquals(2, countComments());
+    }
+}
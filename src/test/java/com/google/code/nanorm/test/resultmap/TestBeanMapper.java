@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.resultmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.TypeHandler;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.ExternalSessionConfig;
+import com.google.code.nanorm.config.LocalInvalidationBus;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.internal.FactoryImpl;
+import com.google.code.nanorm.internal.config.InternalConfiguration;
+import com.google.code.nanorm.internal.introspect.asm.ASMIntrospectionFactory;
+import com.google.code.nanorm.internal.mapping.result.BeanMapper;
+import com.google.code.nanorm.internal.type.TypeHandlerFactoryImpl;
+import com.google.code.nanorm.test.beans.CoreTypesBean;
+import com.google.code.nanorm.test.common.Allocations;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test mapping the rows through the compiled bean mappers. The JDBC driver is
+ * replaced by the stub.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestBeanMapper {
+
+    public interface Mapper {
+        @ResultMap(mappings = {@Property(value = "first", columnIndex = 1),
+                @Property(value = "nested.value", columnIndex = 2),
+                @Property(value = "last", columnIndex = 3) })
+        @Select("SELECT first, nested, last FROM ordered")
+        OrderedBean getOrdered();
+
+        @ResultMap(mappings = {@Property(value = "primShort", columnIndex = 1),
+                @Property(value = "primFloat", columnIndex = 2),
+                @Property(value = "wrapShort", columnIndex = 1),
+                @Property(value = "wrapFloat", columnIndex = 2) })
+        @Select("SELECT short, float FROM core")
+        CoreTypesBean getCore();
+    }
+
+    /**
+     * Bean recording the order its properties are set in.
+     */
+    public static class OrderedBean {
+        private final List<String> setters = new ArrayList<String>();
+
+        private final Nested nested = new Nested(setters);
+
+        private int first;
+
+        private int last;
+
+        /**
+         * @return Returns the names of the properties, in the order they were
+         * set.
+         */
+        public List<String> getSetters() {
+            return setters;
+        }
+
+        /**
+         * @return Returns the first.
+         */
+        public int getFirst() {
+            return first;
+        }
+
+        /**
+         * @param first The first to set.
+         */
+        public void setFirst(int first) {
+            this.first = first;
+            setters.add("first");
+        }
+
+        /**
+         * @return Returns the nested.
+         */
+        public Nested getNested() {
+            return nested;
+        }
+
+        /**
+         * @return Returns the last.
+         */
+        public int getLast() {
+            return last;
+        }
+
+        /**
+         * @param last The last to set.
+         */
+        public void setLast(int last) {
+            this.last = last;
+            setters.add("last");
+        }
+    }
+
+    /**
+     * Nested bean recording its property being set into the parent list.
+     */
+    public static class Nested {
+        private final List<String> setters;
+
+        private int value;
+
+        Nested(List<String> setters) {
+            this.setters = setters;
+        }
+
+        /**
+         * @return Returns the value.
+         */
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * @param value The value to set.
+         */
+        public void setValue(int value) {
+            this.value = value;
+            setters.add("nested.value");
+        }
+    }
+
+    /**
+     * Introspection factory which does not compile the bean mappers.
+     */
+    private static class InterpretedFactory extends ASMIntrospectionFactory {
+        InterpretedFactory() {
+            super(TestBeanMapper.class.getClassLoader());
+        }
+
+        @Override
+        public BeanMapper buildBeanMapper(Class<?> beanClass, String[] properties,
+                TypeHandler<?>[] typeHandlers, int[] columns) {
+            return null;
+        }
+    }
+
+    private Mapper createMapper(StubDatabase database) {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setSessionConfig(new ExternalSessionConfig(database.dataSource()));
+        config.setAutoSessionEnabled(true);
+        return config.buildFactory().createMapper(Mapper.class);
+    }
+
+    private Mapper createInterpretedMapper(StubDatabase database) {
+        InternalConfiguration config = new InternalConfiguration(new TypeHandlerFactoryImpl(),
+                new InterpretedFactory());
+        return new FactoryImpl(config, new ExternalSessionConfig(database.dataSource()), true,
+                0, 0, false, new LocalInvalidationBus(), null).createMapper(Mapper.class);
+    }
+
+    /**
+     * TEST: Map the row with the simple properties declared before and after
+     * the nested property.
+     * 
+     * EXPECT: Properties are set in the order they are declared in, both with
+     * the compiled bean mapper and without it.
+     */
+    @Test
+    public void testOrder() {
+        StubDatabase database = new StubDatabase(new String[] {"first", "nested", "last" },
+                new Object[][] {{1, 2, 3 } });
+        List<String> expected = Arrays.asList("first", "nested.value", "last");
+        Assert.assertEquals(expected, createMapper(database).getOrdered().getSetters());
+        Assert.assertEquals(expected, createInterpretedMapper(database).getOrdered()
+                .getSetters());
+    }
+
+    /**
+     * TEST: Map the row with the short and float properties using the
+     * compiled bean mapper and using the property mappers.
+     * 
+     * EXPECT: Both map the same values, compiled bean mapper allocates less
+     * memory per row.
+     */
+    @Test
+    public void testAllocation() throws Exception {
+        StubDatabase database = new StubDatabase(new String[] {"short", "float" },
+                new Object[][] {{(short) 1000, 2.5f } });
+        final Mapper compiled = createMapper(database);
+        final Mapper interpreted = createInterpretedMapper(database);
+
+        CoreTypesBean bean = compiled.getCore();
+        Assert.assertEquals(1000, bean.getPrimShort());
+        Assert.assertEquals(2.5f, bean.getPrimFloat(), 0.0f);
+        Assert.assertEquals(Short.valueOf((short) 1000), bean.getWrapShort());
+        Assert.assertEquals(Float.valueOf(2.5f), bean.getWrapFloat());
+        bean = interpreted.getCore();
+        Assert.assertEquals(1000, bean.getPrimShort());
+        Assert.assertEquals(2.5f, bean.getPrimFloat(), 0.0f);
+        Assert.assertEquals(Short.valueOf((short) 1000), bean.getWrapShort());
+        Assert.assertEquals(Float.valueOf(2.5f), bean.getWrapFloat());
+
+        if (!Allocations.isSupported()) {
+            return;
+        }
+        Runnable compiledQuery = new Runnable() {
+            public void run() {
+                compiled.getCore();
+            }
+        };
+        Runnable interpretedQuery = new Runnable() {
+            public void run() {
+                interpreted.getCore();
+            }
+        };
+
+        // Both paths share most of the code, so warm up both before measuring
+        Allocations.perIteration(10000, compiledQuery);
+        Allocations.perIteration(10000, interpretedQuery);
+        long compiledBytes = Allocations.perIteration(10000, compiledQuery);
+        long interpretedBytes = Allocations.perIteration(10000, interpretedQuery);
+        Assert.assertTrue("Compiled mapper allocates " + compiledBytes
+                + " bytes, property mappers allocate " + interpretedBytes + " bytes",
+                compiledBytes < interpretedBytes);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.resultmap;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.NanormFactory;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.ExternalSessionConfig;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.exceptions.DataException;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test the resolution of the result map columns to the column indices. The
+ * JDBC driver is replaced by the stub, which counts the result set
+ * invocations.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestColumnLayout {
+
+    public interface Mapper {
+        @ResultMap(mappings = {@Property("id"), @Property("subject"),
+                @Property(value = "year", columnIndex = 4) })
+        @Select("SELECT id, subject, body, year FROM articles")
+        List<Article> listArticles();
+
+        @ResultMap(mappings = {@Property("id"), @Property(value = "subject", column = "title") })
+        @Select("SELECT id, subject FROM articles")
+        List<Article> listMissing();
+    }
+
+    private final StubDatabase database = new StubDatabase(new String[] {"ID", "Subject",
+            "BODY", "published" }, new Object[][] { {1, "World Domination", "Body", 2008 },
+            {2, "Saving the Earth", "Body", 2009 } });
+
+    private Mapper createMapper() {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setSessionConfig(new ExternalSessionConfig(database.dataSource()));
+        config.setAutoSessionEnabled(true);
+        NanormFactory factory = config.buildFactory();
+        return factory.createMapper(Mapper.class);
+    }
+
+    /**
+     * TEST: Map the result set with column labels in different case and the
+     * mapping referring the column by index.
+     * 
+     * EXPECT: Properties are mapped, columns are matched case-insensitively.
+     */
+    @Test
+    public void testMapping() {
+        List<Article> articles = createMapper().listArticles();
+        Assert.assertEquals(2, articles.size());
+        Assert.assertEquals(1, articles.get(0).getId());
+        Assert.assertEquals("World Domination", articles.get(0).getSubject());
+        Assert.assertEquals(2008, articles.get(0).getYear());
+        Assert.assertEquals(2, articles.get(1).getId());
+        Assert.assertEquals("Saving the Earth", articles.get(1).getSubject());
+        Assert.assertEquals(2009, articles.get(1).getYear());
+    }
+
+    /**
+     * TEST: Run the query several times, count the result set invocations of
+     * the last run.
+     * 
+     * EXPECT: Metadata is requested once and the column labels are read once
+     * per result set, the values are read by index only.
+     */
+    @Test
+    public void testReads() {
+        Mapper mapper = createMapper();
+        mapper.listArticles();
+        mapper.listArticles();
+
+        int metadata = database.getCalls("getMetaData");
+        int labels = database.getCalls("getColumnLabel");
+        mapper.listArticles();
+        Assert.assertEquals(1, database.getCalls("getMetaData") - metadata);
+        Assert.assertEquals(4, database.getCalls("getColumnLabel") - labels);
+        Assert.assertEquals(0, database.getCalls("getInt(String)"));
+        Assert.assertEquals(0, database.getCalls("getString(String)"));
+    }
+
+    /**
+     * TEST: Map the result set with the mapping referring the column missing
+     * in the result set.
+     * 
+     * EXPECT: Missing column is looked up by name, the driver error is
+     * reported.
+     */
+    @Test
+    public void testMissingColumn() {
+        try {
+            createMapper().listMissing();
+            Assert.fail();
+        } catch (DataException e) {
+            Assert.assertEquals("Column title not found", e.getCause().getMessage());
+        }
+        Assert.assertEquals(1, database.getCalls("getString(String)"));
+        Assert.assertEquals(0, database.getCalls("getInt(String)"));
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.resultmap;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Options;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.beans.Publication;
+import com.google.code.nanorm.test.common.MapperTestBase;
+
+/**
+ * Test mapper methods returning the cursor.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestCursor extends MapperTestBase {
+    public interface Mapper {
+        @ResultMap(auto = true)
+        @Options(fetchSize = 1)
+        @Select("SELECT id, subject, year FROM articles ORDER BY id ASC")
+        Iterator<Article> iterateArticles();
+
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject, year FROM articles ORDER BY id ASC")
+        Iterable<Article> listArticles();
+
+        @ResultMap(mappings = {@Property(value = "article.subject", column = "subject") })
+        @Select("SELECT id, subject, year FROM articles ORDER BY id ASC")
+        Iterator<Publication> iteratePublications();
+
+        @Select("SELECT subject FROM articles ORDER BY id ASC")
+        Iterator<String> iterateSubjects();
+
+        @Select("SELECT id FROM articles WHERE id = ${1}")
+        int selectId(int id);
+    }
+
+    /**
+     * Test iterating the cursor.
+     */
+    @Test
+    public void testIterator() {
+        Mapper mapper = factory.createMapper(Mapper.class);
+
+        Iterator<Article> it = mapper.iterateArticles();
+        Assert.assertTrue(it.hasNext());
+        Assert.assertTrue(it.hasNext());
+        Article article = it.next();
+        Assert.assertEquals(1, article.getId());
+        Assert.assertEquals("World Domination", article.getSubject());
+        Assert.assertEquals(2007, article.getYear());
+
+        article = it.next();
+        Assert.assertEquals(2, article.getId());
+        Assert.assertEquals("Saving the Earth", article.getSubject());
+        Assert.assertEquals(2008, article.getYear());
+
+        Assert.assertFalse(it.hasNext());
+        try {
+            it.next();
+            Assert.fail();
+        } catch (NoSuchElementException e) {
+            // Cursor is exhausted
+        }
+
+        // Connection is released, other queries work as usual
+        Assert.assertEquals(1, mapper.selectId(1));
+    }
+
+    /**
+     * Test iterable cursor could be iterated once.
+     */
+    @Test
+    public void testIterable() {
+        Mapper mapper = factory.createMapper(Mapper.class);
+
+        Iterable<Article> articles = mapper.listArticles();
+        int count = 0;
+        for (Article article : articles) {
+            count++;
+            Assert.assertEquals(count, article.getId());
+        }
+        Assert.assertEquals(2, count);
+
+        try {
+            articles.iterator();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // Cursor is iterated once only
+        }
+    }
+
+    /**
+     * Test closing the cursor before it is exhausted.
+     * 
+     * @throws Exception any error
+     */
+    @Test
+    public void testClose() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+
+        Iterator<Article> it = mapper.iterateArticles();
+        Assert.assertEquals(1, it.next().getId());
+
+        ((Closeable) it).close();
+        Assert.assertFalse(it.hasNext());
+
+        // Could be closed several times
+        ((Closeable) it).close();
+    }
+
+    /**
+     * Test cursor of beans with nested properties and cursor of scalars.
+     */
+    @Test
+    public void testMapping() {
+        Mapper mapper = factory.createMapper(Mapper.class);
+
+        Iterator<Publication> it = mapper.iteratePublications();
+        Publication pub = it.next();
+        Assert.assertEquals(0, pub.getId());
+        Assert.assertEquals("World Domination", pub.getArticle().getSubject());
+        Assert.assertEquals("Saving the Earth", it.next().getArticle().getSubject());
+        Assert.assertFalse(it.hasNext());
+
+        Iterator<String> subjects = mapper.iterateSubjects();
+        Assert.assertEquals("World Domination", subjects.next());
+        Assert.assertEquals("Saving the Earth", subjects.next());
+        Assert.assertFalse(subjects.hasNext());
+    }
+}
@@ -117,6 +117,17 @@ public class TestDynamicSQL extends MapperTestBase {
                 append(" ORDER BY id ASC");
             }
         }
+
+        @Source(SelectColumnsSource.class)
+        @ResultMapRef("article")
+        List<Article> listColumns(boolean full);
+
+        public static class SelectColumnsSource extends SQLSource {
+            public void sql(final boolean full) {
+                append(full ? "SELECT id, subject, year" : "SELECT id, subject");
+                append(" FROM articles ORDER BY id ASC");
+            }
+        }
     }
 
     /**
@@ -239,4 +250,26 @@ public class TestDynamicSQL extends MapperTestBase {
         List<Article> articles = mapper.listByIds(new Integer[0]);
         Assert.assertEquals(2, articles.size());
     }
-}
+
+    /**
+     * Test automatic mapping of result sets with different columns returned by
+     * the same statement.
+     */
+    @Test
+    public void testListColumns() throws Exception {
+        PublicationMapper mapper = factory.createMapper(PublicationMapper.class);
+
+        Article ar = mapper.listColumns(false).get(0);
+        Assert.assertEquals(1, ar.getId());
+        Assert.assertEquals("World Domination", ar.getSubject());
+        Assert.assertEquals(0, ar.getYear());
+
+        ar = mapper.listColumns(true).get(0);
+        Assert.assertEquals(1, ar.getId());
+        Assert.assertEquals("World Domination", ar.getSubject());
+        Assert.assertEquals(2007, ar.getYear());
+
+        ar = mapper.listColumns(false).get(0);
+        Assert.assertEquals(0, ar.getYear());
+    }
+}
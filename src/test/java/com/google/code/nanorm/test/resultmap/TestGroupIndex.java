@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.resultmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.internal.Key;
+import com.google.code.nanorm.internal.mapping.result.GroupIndex;
+
+/**
+ * Test the index of the grouped result objects.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestGroupIndex {
+
+    /**
+     * TEST: Put objects under many integral keys, forcing the table to grow,
+     * and look them up.
+     * 
+     * EXPECT: Every object is found under its key, missing keys are not found.
+     */
+    @Test
+    public void testIntegralKeys() {
+        GroupIndex index = new GroupIndex();
+        for (long i = -1000; i < 1000; ++i) {
+            index.put(i * 16, "value" + i);
+        }
+        Assert.assertEquals(2000, index.size());
+        for (long i = -1000; i < 1000; ++i) {
+            Assert.assertEquals("value" + i, index.get(i * 16));
+        }
+        Assert.assertNull(index.get(1));
+        Assert.assertNull(index.get(16000));
+
+        // Replacing the object does not change the size
+        index.put(0, "zero");
+        Assert.assertEquals("zero", index.get(0));
+        Assert.assertEquals(2000, index.size());
+    }
+
+    /**
+     * TEST: Put objects under single value, several values and null keys.
+     * 
+     * EXPECT: Objects are found by the key values, integral keys are kept
+     * separately.
+     */
+    @Test
+    public void testObjectKeys() {
+        GroupIndex index = new GroupIndex();
+        Assert.assertNull(index.get("a"));
+
+        index.put("a", "first");
+        index.put(new Key(new Object[] {1, null }), "second");
+        index.put(null, "third");
+        index.put(1, "fourth");
+
+        Assert.assertEquals("first", index.get("a"));
+        Assert.assertEquals("second", index.get(new Key(new Object[] {1, null })));
+        Assert.assertNull(index.get(new Key(new Object[] {null, 1 })));
+        Assert.assertEquals("third", index.get(null));
+        Assert.assertEquals("fourth", index.get(1));
+        Assert.assertEquals(4, index.size());
+    }
+
+    /**
+     * TEST: Put objects under several values through the reused array, look
+     * them up through the array and through the key.
+     * 
+     * EXPECT: Values are copied when object is stored, so reusing the array
+     * does not change the stored keys. Objects are found either way.
+     */
+    @Test
+    public void testTupleKeys() {
+        GroupIndex index = new GroupIndex();
+        Object[] tuple = index.tuple(2);
+        Assert.assertSame(tuple, index.tuple(2));
+
+        tuple[0] = 1;
+        tuple[1] = null;
+        Assert.assertNull(index.getTuple(tuple));
+        index.putTuple(tuple, "first");
+
+        tuple[0] = 1;
+        tuple[1] = "a";
+        index.putTuple(tuple, "second");
+
+        tuple[1] = null;
+        Assert.assertEquals("first", index.getTuple(tuple));
+        tuple[0] = null;
+        tuple[1] = 1;
+        Assert.assertNull(index.getTuple(tuple));
+
+        Assert.assertEquals("second", index.get(new Key(new Object[] {1, "a" })));
+        Assert.assertEquals("first", index.getTuple(new Object[] {1, null }));
+        Assert.assertEquals(2, index.size());
+    }
+}
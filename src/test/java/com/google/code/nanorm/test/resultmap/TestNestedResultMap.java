@@ -18,6 +18,7 @@ package com.google.code.nanorm.test.resultmap;
 
 import static com.google.code.nanorm.test.common.Utils.assertContains;
 
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Assert;
@@ -129,6 +130,35 @@ public class TestNestedResultMap extends MapperTestBase {
                 + "INNER JOIN labels l ON l.article_id = a.id "
                 + "INNER JOIN comments c ON c.article_id = a.id " + "ORDER BY a.id, l.id, c.id")
         List<Article> listArticles2();
+
+        // Test 1-N mapping with rows ordered by the groupBy properties
+        @ResultMap(groupBy = "id", ordered = true, mappings = {@Property(value = "id"),
+                @Property(value = "title"), @Property(value = "year"),
+                @Property(value = "articles", nestedMap = @ResultMapRef("article2")) })
+        @Select("SELECT c.id, c.title, c.year, a.id as article_id, a.subject, a.body "
+                + "FROM categories c INNER JOIN articles a ON a.year >= c.year "
+                + "ORDER BY c.id, a.id")
+        List<Category> listCategoriesOrdered();
+
+        // Same as above, but returning the cursor
+        @ResultMap(groupBy = "id", ordered = true, mappings = {@Property(value = "id"),
+                @Property(value = "title"), @Property(value = "year"),
+                @Property(value = "articles", nestedMap = @ResultMapRef("article2")) })
+        @Select("SELECT c.id, c.title, c.year, a.id as article_id, a.subject, a.body "
+                + "FROM categories c INNER JOIN articles a ON a.year >= c.year "
+                + "ORDER BY c.id, a.id")
+        Iterator<Category> iterateCategoriesOrdered();
+
+        // Test two 1-N mapping with rows ordered by the groupBy properties
+        @ResultMap(groupBy = "id", ordered = true, mappings = {@Property(value = "id"),
+                @Property(value = "subject"), @Property(value = "body"),
+                @Property(value = "labels", nestedMap = @ResultMapRef("label")),
+                @Property(value = "comments", nestedMap = @ResultMapRef("comment3")) })
+        @Select("SELECT a.id, a.subject, a.body, l.id as label_id, l.label, "
+                + "c.id as comment_id, c.comment, c.year " + "FROM articles a "
+                + "INNER JOIN labels l ON l.article_id = a.id "
+                + "INNER JOIN comments c ON c.article_id = a.id " + "ORDER BY a.id, l.id, c.id")
+        Iterator<Article> iterateArticlesOrdered();
     }
 
     /**
@@ -298,4 +328,71 @@ public class TestNestedResultMap extends MapperTestBase {
         Assert.assertEquals("Always wanted to world-dominate!", articles.get(0).getComments()
                 .get(1).getComment());
     }
+
+    /**
+     * Test 1-N mapping with rows ordered by the groupBy properties. Every
+     * category is completed before the next one is started.
+     */
+    @Test
+    public void testNestedOrdered() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        List<Category> cats = mapper.listCategoriesOrdered();
+        Assert.assertEquals(2, cats.size());
+
+        Assert.assertEquals(1, cats.get(0).getId());
+        Assert.assertEquals(2, cats.get(0).getArticles().size());
+        Assert.assertEquals(1, cats.get(0).getArticles().get(0).getId());
+        Assert.assertEquals(2, cats.get(0).getArticles().get(1).getId());
+
+        Assert.assertEquals(2, cats.get(1).getId());
+        Assert.assertEquals(2004, cats.get(1).getYear());
+        Assert.assertEquals(2, cats.get(1).getArticles().size());
+        Assert.assertEquals(1, cats.get(1).getArticles().get(0).getId());
+        Assert.assertEquals("Saving the Earth", cats.get(1).getArticles().get(1).getSubject());
+    }
+
+    /**
+     * Test cursor over rows ordered by the groupBy properties. Every category
+     * is returned with all its articles.
+     */
+    @Test
+    public void testNestedOrderedCursor() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        Iterator<Category> it = mapper.iterateCategoriesOrdered();
+
+        Category cat = it.next();
+        Assert.assertEquals(1, cat.getId());
+        Assert.assertEquals(2, cat.getArticles().size());
+        Assert.assertEquals(1, cat.getArticles().get(0).getId());
+        Assert.assertEquals(2, cat.getArticles().get(1).getId());
+
+        cat = it.next();
+        Assert.assertEquals(2, cat.getId());
+        Assert.assertEquals(2, cat.getArticles().size());
+        Assert.assertEquals(1, cat.getArticles().get(0).getId());
+        Assert.assertEquals(2, cat.getArticles().get(1).getId());
+
+        Assert.assertFalse(it.hasNext());
+    }
+
+    /**
+     * Test cursor over rows ordered by the groupBy properties with two nested
+     * maps, one collection type is list and other is array.
+     */
+    @Test
+    public void testNestedOrderedCursorArrayList() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        Iterator<Article> it = mapper.iterateArticlesOrdered();
+
+        Article article = it.next();
+        Assert.assertEquals(1, article.getId());
+        Assert.assertEquals(2, article.getLabels().length);
+        Assert.assertEquals(1231, article.getLabels()[0].getId());
+        Assert.assertEquals(1232, article.getLabels()[1].getId());
+        Assert.assertEquals(2, article.getComments().size());
+        Assert.assertEquals(101, article.getComments().get(0).getId());
+        Assert.assertEquals(102, article.getComments().get(1).getId());
+
+        Assert.assertFalse(it.hasNext());
+    }
 }
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.resultmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.annotations.Pipelined;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.ResultMapRef;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.beans.CoreTypesBean;
+import com.google.code.nanorm.test.beans.Publication;
+import com.google.code.nanorm.test.common.MapperTestBase;
+
+/**
+ * Test pipelined fetching and mapping of the rows.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestPipelined extends MapperTestBase {
+    public interface Mapper {
+        @ResultMap(auto = true)
+        @Pipelined(threads = 2, bufferSize = 1)
+        @Select("SELECT id, subject, year FROM articles ORDER BY id ASC")
+        List<Article> listArticles();
+
+        @ResultMap(mappings = {@Property(value = "article.subject", column = "subject") })
+        @Pipelined(ordered = false)
+        @Select("SELECT id, subject, year FROM articles ORDER BY id ASC")
+        void listPublications(DataSink<Publication> sink);
+
+        @Pipelined
+        @Select("SELECT subject FROM articles ORDER BY id ASC")
+        String[] listSubjects();
+    }
+
+    @ResultMap(id = "core", mappings = {@Property("id"), @Property("primByte"),
+            @Property("wrapByte"), @Property("primShort"), @Property("wrapShort"),
+            @Property("primInt"), @Property("wrapInt"), @Property("primLong"),
+            @Property("wrapLong"), @Property("primBoolean"), @Property("wrapBoolean"),
+            @Property("primChar"), @Property("wrapChar"), @Property("primFloat"),
+            @Property("wrapFloat"), @Property("primDouble"), @Property("wrapDouble"),
+            @Property("string"), @Property("date"), @Property("sqlDate"),
+            @Property("sqlTime"), @Property("sqlTimestamp"), @Property("bytearr"),
+            @Property("locale") })
+    public interface CoreMapper {
+        @ResultMapRef("core")
+        @Select("SELECT id, primByte, wrapByte, primShort, wrapShort, "
+                + "primInt, wrapInt, primLong, wrapLong, "
+                + "primBoolean, wrapBoolean, primChar, wrapChar, "
+                + "primFloat, wrapFloat, primDouble, wrapDouble, "
+                + "string, date, sqldate, sqltime, sqltimestamp, bytearr, locale "
+                + "FROM core WHERE id IN (1, 2) ORDER BY id")
+        List<CoreTypesBean> listCore();
+
+        @ResultMapRef("core")
+        @Pipelined(threads = 2, bufferSize = 1)
+        @Select("SELECT id, primByte, wrapByte, primShort, wrapShort, "
+                + "primInt, wrapInt, primLong, wrapLong, "
+                + "primBoolean, wrapBoolean, primChar, wrapChar, "
+                + "primFloat, wrapFloat, primDouble, wrapDouble, "
+                + "string, date, sqldate, sqltime, sqltimestamp, bytearr, locale "
+                + "FROM core WHERE id IN (1, 2) ORDER BY id")
+        List<CoreTypesBean> listCorePipelined();
+    }
+
+    /**
+     * Test pipelined mapping preserves the order.
+     */
+    @Test
+    public void testOrdered() {
+        Mapper mapper = factory.createMapper(Mapper.class);
+
+        List<Article> articles = mapper.listArticles();
+        Assert.assertEquals(2, articles.size());
+
+        Article ar = articles.get(0);
+        Assert.assertEquals(1, ar.getId());
+        Assert.assertEquals("World Domination", ar.getSubject());
+        Assert.assertEquals(2007, ar.getYear());
+
+        ar = articles.get(1);
+        Assert.assertEquals(2, ar.getId());
+        Assert.assertEquals("Saving the Earth", ar.getSubject());
+        Assert.assertEquals(2008, ar.getYear());
+
+        String[] subjects = mapper.listSubjects();
+        Assert.assertEquals(2, subjects.length);
+        Assert.assertEquals("World Domination", subjects[0]);
+        Assert.assertEquals("Saving the Earth", subjects[1]);
+    }
+
+    /**
+     * Test unordered pipelined mapping into the data sink.
+     */
+    @Test
+    public void testUnordered() {
+        Mapper mapper = factory.createMapper(Mapper.class);
+
+        final List<Publication> pubs = new ArrayList<Publication>();
+        mapper.listPublications(new DataSink<Publication>() {
+            public void pushData(Publication obj) {
+                pubs.add(obj);
+            }
+
+            public void commitData() {
+                // Nothing.
+            }
+        });
+        Assert.assertEquals(2, pubs.size());
+
+        Collections.sort(pubs, new Comparator<Publication>() {
+            public int compare(Publication o1, Publication o2) {
+                return o1.getYear() - o2.getYear();
+            }
+        });
+        Assert.assertEquals("World Domination", pubs.get(0).getArticle().getSubject());
+        Assert.assertEquals(2007, pubs.get(0).getYear());
+        Assert.assertEquals("Saving the Earth", pubs.get(1).getArticle().getSubject());
+        Assert.assertEquals(2008, pubs.get(1).getYear());
+    }
+
+    /**
+     * TEST: Select the values of all core types (and the row of NULLs) with
+     * pipelined and regular query.
+     * 
+     * EXPECT: Values captured by the fetching thread are converted the same
+     * way as the values mapped directly from the result set.
+     */
+    @Test
+    public void testCoreTypes() {
+        CoreMapper mapper = factory.createMapper(CoreMapper.class);
+
+        List<CoreTypesBean> expected = mapper.listCore();
+        Assert.assertEquals(2, expected.size());
+        Assert.assertEquals(824756237, expected.get(0).getPrimInt());
+        Assert.assertEquals(0, expected.get(1).getPrimInt());
+        Assert.assertNull(expected.get(1).getWrapInt());
+
+        Assert.assertEquals(expected, mapper.listCorePipelined());
+    }
+}
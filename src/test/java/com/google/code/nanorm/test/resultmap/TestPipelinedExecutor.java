@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.resultmap;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.NanormFactory;
+import com.google.code.nanorm.Session;
+import com.google.code.nanorm.annotations.Pipelined;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test the executor running the workers of the pipelined queries.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestPipelinedExecutor {
+
+    private static final int ROWS = 100;
+
+    public interface Mapper {
+        @ResultMap(mappings = {@Property("id"), @Property("subject"), @Property("year") })
+        @Pipelined(threads = 2, bufferSize = 8)
+        @Select("SELECT id, subject, year FROM articles")
+        List<Article> listArticles();
+    }
+
+    private final StubDatabase database;
+
+    /**
+     * Constructor.
+     */
+    public TestPipelinedExecutor() {
+        Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; ++i) {
+            rows[i] = new Object[] {i, "Article " + i, i % 3 == 0 ? null : 2000 + i };
+        }
+        database = new StubDatabase(new String[] {"ID", "SUBJECT", "YEAR" }, rows);
+    }
+
+    private List<Article> listArticles(NanormFactory factory) {
+        Session session = factory.openSession(database.connection());
+        try {
+            return factory.createMapper(Mapper.class).listArticles();
+        } finally {
+            session.end();
+        }
+    }
+
+    private void assertArticles(List<Article> articles) {
+        Assert.assertEquals(ROWS, articles.size());
+        for (int i = 0; i < ROWS; ++i) {
+            Article article = articles.get(i);
+            Assert.assertEquals(i, article.getId());
+            Assert.assertEquals("Article " + i, article.getSubject());
+            Assert.assertEquals(i % 3 == 0 ? 0 : 2000 + i, article.getYear());
+        }
+    }
+
+    /**
+     * TEST: Execute the pipelined query several times with the executor
+     * provided by the configuration.
+     * 
+     * EXPECT: Rows are mapped in order by the workers of the provided
+     * executor.
+     */
+    @Test
+    public void testProvidedExecutor() {
+        final AtomicInteger workers = new AtomicInteger();
+        NanormConfiguration config = new NanormConfiguration();
+        config.setPipelineExecutor(new Executor() {
+            public void execute(Runnable command) {
+                workers.incrementAndGet();
+                new Thread(command).start();
+            }
+        });
+        NanormFactory factory = config.buildFactory();
+
+        for (int i = 0; i < 5; ++i) {
+            assertArticles(listArticles(factory));
+        }
+        Assert.assertTrue(workers.get() > 0);
+    }
+
+    /**
+     * TEST: Execute the pipelined query several times with the executor owned
+     * by the factory, then close the factory.
+     * 
+     * EXPECT: Queries share the worker threads, pipelined query fails once
+     * the factory is closed.
+     */
+    @Test
+    public void testOwnExecutor() {
+        NanormFactory factory = new NanormConfiguration().buildFactory();
+        for (int i = 0; i < 5; ++i) {
+            assertArticles(listArticles(factory));
+        }
+        factory.close();
+        try {
+            listArticles(factory);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
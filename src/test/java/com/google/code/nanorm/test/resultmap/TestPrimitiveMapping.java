@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.resultmap;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.TypeHandler;
+import com.google.code.nanorm.internal.config.PropertyMappingConfig;
+import com.google.code.nanorm.internal.introspect.IntrospectionFactory;
+import com.google.code.nanorm.internal.introspect.asm.ASMIntrospectionFactory;
+import com.google.code.nanorm.internal.mapping.result.PropertyMapper;
+import com.google.code.nanorm.internal.type.DoubleTypeHandler;
+import com.google.code.nanorm.internal.type.IntTypeHandler;
+import com.google.code.nanorm.internal.type.LongTypeHandler;
+import com.google.code.nanorm.test.beans.CoreTypesBean;
+import com.google.code.nanorm.test.common.Allocations;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test mapping the <code>int</code>, <code>long</code> and
+ * <code>double</code> columns onto the primitive properties without boxing.
+ * The JDBC driver is replaced by the stub.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestPrimitiveMapping {
+
+    private final IntrospectionFactory factory = new ASMIntrospectionFactory(getClass()
+            .getClassLoader());
+
+    private final StubDatabase database = new StubDatabase(new String[] {"prim_int",
+            "prim_long", "prim_double" }, new Object[][] { {300, 3000000000L, 2.5 },
+            {null, null, null } });
+
+    private PropertyMapper[] createMappers(boolean boxed) {
+        return new PropertyMapper[] {
+                createMapper("primInt", 1, boxed ? new BoxedTypeHandler<Integer>(
+                        new IntTypeHandler()) : new IntTypeHandler()),
+                createMapper("primLong", 2, boxed ? new BoxedTypeHandler<Long>(
+                        new LongTypeHandler()) : new LongTypeHandler()),
+                createMapper("primDouble", 3, boxed ? new BoxedTypeHandler<Double>(
+                        new DoubleTypeHandler()) : new DoubleTypeHandler()) };
+    }
+
+    private PropertyMapper createMapper(String property, int columnIndex,
+            TypeHandler<?> typeHandler) {
+        PropertyMappingConfig config = new PropertyMappingConfig();
+        config.setProperty(property);
+        config.setColumnIndex(columnIndex);
+        return new PropertyMapper(config, factory.buildSetter(CoreTypesBean.class, property),
+                typeHandler);
+    }
+
+    private ResultSet resultSet(int row) throws SQLException {
+        ResultSet rs = database.connection().prepareStatement("SELECT").executeQuery();
+        for (int i = 0; i <= row; ++i) {
+            rs.next();
+        }
+        return rs;
+    }
+
+    private static void map(PropertyMapper[] mappers, Object result, ResultSet rs)
+            throws SQLException {
+        for (int i = 0; i < mappers.length; ++i) {
+            mappers[i].mapResult(null, result, rs, i + 1);
+        }
+    }
+
+    /**
+     * TEST: Map the row with the built-in type handlers.
+     * 
+     * EXPECT: Properties are mapped, NULL checks are not performed.
+     */
+    @Test
+    public void testPrimitive() throws Exception {
+        CoreTypesBean bean = new CoreTypesBean();
+        map(createMappers(false), bean, resultSet(0));
+
+        Assert.assertEquals(300, bean.getPrimInt());
+        Assert.assertEquals(3000000000L, bean.getPrimLong());
+        Assert.assertEquals(2.5, bean.getPrimDouble(), 0.0);
+        Assert.assertEquals(0, database.getCalls("wasNull"));
+    }
+
+    /**
+     * TEST: Map the row of NULLs with the built-in type handlers.
+     * 
+     * EXPECT: Properties are set to zero.
+     */
+    @Test
+    public void testNull() throws Exception {
+        CoreTypesBean bean = new CoreTypesBean();
+        bean.setPrimInt(1);
+        bean.setPrimLong(1);
+        bean.setPrimDouble(1.0);
+        map(createMappers(false), bean, resultSet(1));
+
+        Assert.assertEquals(0, bean.getPrimInt());
+        Assert.assertEquals(0L, bean.getPrimLong());
+        Assert.assertEquals(0.0, bean.getPrimDouble(), 0.0);
+        Assert.assertEquals(0, database.getCalls("wasNull"));
+    }
+
+    /**
+     * TEST: Map the rows with the type handlers not supporting primitive
+     * values.
+     * 
+     * EXPECT: Properties are mapped through boxed values, NULLs are set to
+     * zero.
+     */
+    @Test
+    public void testBoxed() throws Exception {
+        PropertyMapper[] mappers = createMappers(true);
+        CoreTypesBean bean = new CoreTypesBean();
+        map(mappers, bean, resultSet(0));
+        Assert.assertEquals(300, bean.getPrimInt());
+        Assert.assertEquals(3000000000L, bean.getPrimLong());
+        Assert.assertEquals(2.5, bean.getPrimDouble(), 0.0);
+        Assert.assertEquals(3, database.getCalls("wasNull"));
+
+        map(mappers, bean, resultSet(1));
+        Assert.assertEquals(0, bean.getPrimInt());
+        Assert.assertEquals(0L, bean.getPrimLong());
+        Assert.assertEquals(0.0, bean.getPrimDouble(), 0.0);
+    }
+
+    /**
+     * TEST: Map the row many times with the built-in type handlers and with
+     * the type handlers not supporting primitive values.
+     * 
+     * EXPECT: Mapping without boxing allocates less memory per row.
+     */
+    @Test
+    public void testAllocation() throws Exception {
+        if (!Allocations.isSupported()) {
+            return;
+        }
+        long primitive = Allocations.perIteration(10000, mapping(createMappers(false)));
+        long boxed = Allocations.perIteration(10000, mapping(createMappers(true)));
+        Assert.assertTrue("Primitive mapping allocates " + primitive
+                + " bytes, boxed mapping allocates " + boxed + " bytes", primitive < boxed);
+    }
+
+    private Runnable mapping(final PropertyMapper[] mappers) throws SQLException {
+        final CoreTypesBean bean = new CoreTypesBean();
+        final ResultSet rs = resultSet(0);
+        return new Runnable() {
+            public void run() {
+                try {
+                    map(mappers, bean, rs);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Type handler delegating to the built-in one, without the primitive value
+     * support.
+     * 
+     * @param <T> value type
+     */
+    private static class BoxedTypeHandler<T> implements TypeHandler<T> {
+        private final TypeHandler<T> delegate;
+
+        BoxedTypeHandler(TypeHandler<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        public T getValue(ResultSet rs, int column) throws SQLException {
+            return delegate.getValue(rs, column);
+        }
+
+        public T getValue(ResultSet rs, String column) throws SQLException {
+            return delegate.getValue(rs, column);
+        }
+
+        public T getValue(CallableStatement cs, int index) throws SQLException {
+            return delegate.getValue(cs, index);
+        }
+
+        public void setParameter(PreparedStatement st, int column, Object value)
+                throws SQLException {
+            delegate.setParameter(st, column, value);
+        }
+
+        public int getSqlType() {
+            return delegate.getSqlType();
+        }
+    }
+}
@@ -21,9 +21,12 @@ import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.code.nanorm.ParamBlock;
+import com.google.code.nanorm.SQLSource;
 import com.google.code.nanorm.annotations.Property;
 import com.google.code.nanorm.annotations.ResultMap;
 import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Source;
 import com.google.code.nanorm.test.beans.Article;
 import com.google.code.nanorm.test.beans.Category;
 import com.google.code.nanorm.test.beans.Label;
@@ -74,6 +77,60 @@ public class TestSubselectResultMap extends MapperTestBase {
                 @Property(value = "labels", column = "id", subselect = "getLabelsByArticleId") })
         @Select("SELECT id, subject, body, year FROM articles WHERE id = ${1}")
         Article getArticleById4(int id);
+
+        @ResultMap(auto = true)
+        @Source(ArticlesByIdsSource.class)
+        List<Article> getArticlesByIds(List<Integer> ids);
+
+        public static class ArticlesByIdsSource extends SQLSource {
+            public void sql(List<Integer> ids) {
+                append("SELECT id, subject, body FROM articles WHERE id IN (");
+                join(new ParamBlock<Integer>() {
+                    public void generate(Integer id) {
+                        append("${value}", id);
+                    }
+                }, ids).with(", ");
+                append(")");
+            }
+        }
+
+        @ResultMap(mappings = {@Property(value = "articleId", column = "article_id") }, auto = true)
+        @Source(LabelsByArticleIdsSource.class)
+        List<Label> getLabelsByArticleIds(Integer[] ids);
+
+        public static class LabelsByArticleIdsSource extends SQLSource {
+            public void sql(Integer[] ids) {
+                append("SELECT id, article_id, label FROM labels WHERE article_id IN (");
+                join(new ParamBlock<Integer>() {
+                    public void generate(Integer id) {
+                        append("${value}", id);
+                    }
+                }, ids).with(", ");
+                append(") ORDER BY id");
+            }
+        }
+
+        // Test 1-1 mapping with batch subselect
+        @ResultMap(mappings = {@Property(value = "id"), @Property(value = "title"),
+                @Property(value = "year"),
+                @Property(value = "article", column = "article_id",
+                        batchSubselect = "getArticlesByIds", batchKey = "id") })
+        @Select("SELECT id, title, year, article_id FROM publications WHERE id = ${1}")
+        Publication getPublicationById2(int id);
+
+        // Test 1-N mapping with batch subselect, the property type is Array
+        @ResultMap(mappings = {@Property(value = "id"), @Property(value = "subject"),
+                @Property(value = "labels", column = "id",
+                        batchSubselect = "getLabelsByArticleIds", batchKey = "articleId") })
+        @Select("SELECT id, subject FROM articles ORDER BY id")
+        List<Article> listArticles();
+
+        // Test batch subselect split into several queries
+        @ResultMap(mappings = {@Property(value = "id"), @Property(value = "subject"),
+                @Property(value = "labels", column = "id", batchSize = 1,
+                        batchSubselect = "getLabelsByArticleIds", batchKey = "articleId") })
+        @Select("SELECT id, subject FROM articles ORDER BY id")
+        List<Article> listArticles2();
     }
 
     @Test
@@ -118,4 +175,42 @@ public class TestSubselectResultMap extends MapperTestBase {
         Assert.assertEquals(1232, ar.getLabels()[1].getId());
         Assert.assertEquals("Dominate", ar.getLabels()[1].getLabel());
     }
+
+    @Test
+    public void testBatchSubselectOneToOne() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        Publication pub = mapper.getPublicationById2(543);
+        Assert.assertEquals(543, pub.getId());
+        Assert.assertEquals("Best Way to World Dominate!", pub.getTitle());
+        Assert.assertEquals(1, pub.getArticle().getId());
+        Assert.assertEquals("World Domination", pub.getArticle().getSubject());
+    }
+
+    @Test
+    public void testBatchSubselectOneToMany() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        checkArticleLabels(mapper.listArticles());
+    }
+
+    @Test
+    public void testBatchSubselectChunks() throws Exception {
+        Mapper mapper = factory.createMapper(Mapper.class);
+        checkArticleLabels(mapper.listArticles2());
+    }
+
+    private void checkArticleLabels(List<Article> articles) {
+        Assert.assertEquals(2, articles.size());
+
+        Article ar = articles.get(0);
+        Assert.assertEquals(1, ar.getId());
+        Assert.assertEquals(2, ar.getLabels().length);
+        Assert.assertEquals(1231, ar.getLabels()[0].getId());
+        Assert.assertEquals("World", ar.getLabels()[0].getLabel());
+        Assert.assertEquals(1232, ar.getLabels()[1].getId());
+        Assert.assertEquals("Dominate", ar.getLabels()[1].getLabel());
+
+        ar = articles.get(1);
+        Assert.assertEquals(2, ar.getId());
+        Assert.assertEquals(0, ar.getLabels().length);
+    }
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.session;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.google.code.nanorm.NanormFactory;
+import com.google.code.nanorm.Session;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.Allocations;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test the memory allocated by the simple select-by-id query. The JDBC driver
+ * is replaced by the stub; the allocations of the stub are measured by
+ * invoking the same JDBC methods directly and are subtracted, so only the
+ * allocations of the query execution and mapping are counted.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestQueryAllocation {
+
+    /**
+     * Allocation budget of the select-by-id query with the session opened,
+     * in bytes, documented by
+     * {@link com.google.code.nanorm.internal.FactoryImpl#query}.
+     */
+    private static final long BUDGET = 512;
+
+    private static final String SQL = "SELECT id, subject FROM articles WHERE id = ?";
+
+    public interface Mapper {
+        @ResultMap(mappings = {@Property("id"), @Property("subject") })
+        @Select("SELECT id, subject FROM articles WHERE id = ${1}")
+        Article getArticleById(int id);
+    }
+
+    /**
+     * TEST: Invoke the select-by-id query many times against the JDBC stub.
+     * 
+     * EXPECT: Memory allocated per query is within the budget.
+     */
+    @Test
+    public void testSelectById() throws Exception {
+        Assume.assumeTrue(Allocations.isSupported());
+
+        StubDatabase database = new StubDatabase(new String[] {"id", "subject" },
+                new Object[][] { {1, "World Domination" } });
+        final Connection conn = database.connection();
+        NanormFactory factory = new NanormConfiguration().buildFactory();
+        final Mapper mapper = factory.createMapper(Mapper.class);
+        Session session = factory.openSession(conn);
+        try {
+            Assert.assertEquals("World Domination", mapper.getArticleById(1).getSubject());
+            Assert.assertEquals(SQL, database.getStatements().get(0));
+
+            long perJdbc = Allocations.perIteration(10000, new Runnable() {
+                public void run() {
+                    jdbcQuery(conn);
+                }
+            });
+            long perQuery = Allocations.perIteration(10000, new Runnable() {
+                public void run() {
+                    mapper.getArticleById(1);
+                }
+            });
+            Assert.assertTrue("Query allocates " + (perQuery - perJdbc)
+                    + " bytes besides the JDBC stub", perQuery - perJdbc <= BUDGET);
+        } finally {
+            session.end();
+        }
+    }
+
+    /**
+     * Invoke the JDBC methods the select-by-id query invokes.
+     * 
+     * @param conn connection
+     */
+    private static void jdbcQuery(Connection conn) {
+        try {
+            PreparedStatement st = conn.prepareStatement(SQL);
+            st.setInt(1, 1);
+            ResultSet rs = st.executeQuery();
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); ++i) {
+                meta.getColumnLabel(i);
+            }
+            while (rs.next()) {
+                rs.getInt(1);
+                rs.getString(2);
+            }
+            rs.close();
+            st.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.session;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.NanormFactory;
+import com.google.code.nanorm.Session;
+import com.google.code.nanorm.annotations.Call;
+import com.google.code.nanorm.annotations.Insert;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Scalar;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.SelectKey;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.internal.FactoryImpl;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.MapperTestBase;
+
+/**
+ * Test the per-session prepared statements cache.
+ * 
+ * @author Ivan Dubrov
+ */
+@SuppressWarnings("all")
+public class TestStatementCache extends MapperTestBase {
+
+    public interface Mapper1 {
+        @ResultMap(auto = true)
+        @Select("SELECT id, subject, year FROM articles WHERE ID = ${1}")
+        Article getArticleById(int id);
+
+        @Scalar
+        @Select("SELECT subject FROM articles WHERE ID = ${1}")
+        String getSubject(int id);
+
+        @Call("{call myConcat(${1}, ${2})}")
+        String concat(String a, String b);
+
+        @Insert("INSERT INTO articles(id, subject, year) VALUES (next value for ids, ${1.subject}, ${1.year})")
+        @SelectKey(property = "1.id")
+        void insertArticle(Article article);
+    }
+
+    private FactoryImpl createFactory(int cacheSize) {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setStatementCacheSize(cacheSize);
+        return (FactoryImpl) config.buildFactory();
+    }
+
+    /**
+     * TEST: Invoke select, call and insert with JDBC-generated keys several
+     * times in a single session with statement cache enabled.
+     * 
+     * EXPECT: Results are correct, statements are prepared only once per SQL.
+     */
+    @Test
+    public void testStatementCache() throws Exception {
+        FactoryImpl factory = createFactory(10);
+        Mapper1 mapper = factory.createMapper(Mapper1.class);
+
+        Session session = factory.openSession(conn);
+        try {
+            for (int i = 0; i < 3; ++i) {
+                Assert.assertEquals("World Domination", mapper.getArticleById(1).getSubject());
+                Assert.assertEquals("Saving the Earth", mapper.getArticleById(2).getSubject());
+                Assert.assertEquals("Hello, World!", mapper.concat("Hello", ", World!"));
+
+                Article article = new Article();
+                article.setSubject("Cached " + i);
+                article.setYear(2009);
+                mapper.insertArticle(article);
+                Assert.assertEquals("Cached " + i, mapper.getSubject(article.getId()));
+            }
+        } finally {
+            session.end();
+        }
+
+        // Four distinct SQL statements, each prepared only once
+        Assert.assertEquals(4, factory.getStatementCacheMisses());
+        Assert.assertEquals(11, factory.getStatementCacheHits());
+    }
+
+    /**
+     * TEST: Invoke four different queries in a session with statement cache of
+     * size 1.
+     * 
+     * EXPECT: Least recently used statements are evicted, every query prepares
+     * new statement.
+     */
+    @Test
+    public void testStatementCacheEviction() throws Exception {
+        FactoryImpl factory = createFactory(1);
+        Mapper1 mapper = factory.createMapper(Mapper1.class);
+
+        Session session = factory.openSession(conn);
+        try {
+            for (int i = 0; i < 2; ++i) {
+                Assert.assertEquals("World Domination", mapper.getSubject(1));
+                Assert.assertEquals("Hello, World!", mapper.concat("Hello", ", World!"));
+            }
+            Assert.assertEquals("Hello, World!", mapper.concat("Hello", ", World!"));
+        } finally {
+            session.end();
+        }
+
+        Assert.assertEquals(4, factory.getStatementCacheMisses());
+        Assert.assertEquals(1, factory.getStatementCacheHits());
+    }
+
+    /**
+     * TEST: Invoke the query with statement cache disabled.
+     * 
+     * EXPECT: No statistics is collected.
+     */
+    @Test
+    public void testNoStatementCache() throws Exception {
+        FactoryImpl factory = createFactory(0);
+        Mapper1 mapper = factory.createMapper(Mapper1.class);
+
+        Session session = factory.openSession(conn);
+        try {
+            Assert.assertEquals("World Domination", mapper.getSubject(1));
+        } finally {
+            session.end();
+        }
+        Assert.assertEquals(0, factory.getStatementCacheMisses());
+        Assert.assertEquals(0, factory.getStatementCacheHits());
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.session;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.nanorm.NanormFactory;
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.Session;
+import com.google.code.nanorm.TypeHandler;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Source;
+import com.google.code.nanorm.annotations.Update;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.internal.StatementPlan;
+import com.google.code.nanorm.internal.config.StatementConfig;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.Allocations;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test execution of the static statements using the precompiled plans.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestStatementPlan {
+
+    /**
+     * Value type with no type handler registered by default.
+     */
+    public static class Code {
+        private final String value;
+
+        /**
+         * Constructor.
+         * 
+         * @param value code value
+         */
+        public Code(String value) {
+            this.value = value;
+        }
+    }
+
+    public interface Mapper {
+        @ResultMap(mappings = {@Property("id"), @Property("subject") })
+        @Select("SELECT id, subject FROM articles WHERE id = ${1} AND subject = ${2}")
+        Article select(int id, String subject);
+
+        @Update("UPDATE articles SET subject = ${1.subject}, body = ${1.body} "
+                + "WHERE id = ${1.id}")
+        int update(Article article);
+
+        @Update("UPDATE articles SET subject = ${2} WHERE code = ${1}")
+        int updateByCode(Code code, String subject);
+
+        @ResultMap(mappings = {@Property("id"), @Property("subject") })
+        @Source(SelectSource.class)
+        Article selectDynamic(int id);
+
+        public static class SelectSource extends SQLSource {
+            public void sql(int id) {
+                append("SELECT id, subject FROM articles WHERE id = ${value}", id);
+            }
+        }
+    }
+
+    private final StubDatabase database = new StubDatabase(new String[] {"id", "subject" },
+            new Object[][] {{1, "World Domination" } });
+
+    private NanormConfiguration config;
+
+    private NanormFactory factory;
+
+    private Mapper mapper;
+
+    private Session session;
+
+    /**
+     * Build the factory and open the session on the stub connection.
+     */
+    @Before
+    public void setUp() {
+        config = new NanormConfiguration();
+        factory = config.buildFactory();
+        mapper = factory.createMapper(Mapper.class);
+        session = factory.openSession(database.connection());
+    }
+
+    /**
+     * End the session.
+     */
+    @After
+    public void tearDown() {
+        session.end();
+    }
+
+    private StatementConfig statementConfig(String name, Class<?>... types) throws Exception {
+        return factory.getInternalConfiguration().getStatementConfig(Mapper.class,
+                Mapper.class.getMethod(name, types));
+    }
+
+    private static Map<Integer, Object> params(Object... values) {
+        Map<Integer, Object> params = new HashMap<Integer, Object>();
+        for (int i = 0; i < values.length; ++i) {
+            params.put(i + 1, values[i]);
+        }
+        return params;
+    }
+
+    /**
+     * TEST: Configure static and dynamic statements.
+     * 
+     * EXPECT: Static statement is compiled into the plan with the SQL
+     * placeholders, dynamic statement has no plan.
+     */
+    @Test
+    public void testCompiled() throws Exception {
+        StatementPlan plan = statementConfig("select", int.class, String.class).getPlan();
+        Assert.assertNotNull(plan);
+        Assert.assertEquals("SELECT id, subject FROM articles WHERE id = ? AND subject = ?", plan
+                .getSql());
+        Assert.assertFalse(plan.hasOutParameters());
+
+        Assert.assertNull(statementConfig("selectDynamic", int.class).getPlan());
+    }
+
+    /**
+     * TEST: Execute the static statements with parameters and with the
+     * properties of the parameter.
+     * 
+     * EXPECT: Parameters are bound in order of the placeholders, null is
+     * bound as NULL.
+     */
+    @Test
+    public void testParameters() {
+        Assert.assertEquals("World Domination", mapper.select(1, "World Domination")
+                .getSubject());
+
+        Article article = new Article();
+        article.setId(2);
+        article.setSubject("Saving the Earth");
+        Assert.assertEquals(1, mapper.update(article));
+
+        Assert.assertEquals(Arrays.asList("SELECT id, subject FROM articles "
+                + "WHERE id = ? AND subject = ?",
+                "UPDATE articles SET subject = ?, body = ? WHERE id = ?"), database
+                .getStatements());
+        Assert.assertEquals(params(1, "World Domination"), database.getParameters().get(0));
+        Assert.assertEquals(params("Saving the Earth", null, 2), database.getParameters()
+                .get(1));
+    }
+
+    /**
+     * TEST: Register the type handler after the mappers are configured.
+     * 
+     * EXPECT: Statement with the parameter type known at configuration uses
+     * the handler resolved at configuration. Statement with the parameter type
+     * that had no handler is not compiled and uses the handler registered
+     * later.
+     */
+    @Test
+    public void testTypeHandlers() throws Exception {
+        Assert.assertNull(statementConfig("updateByCode", Code.class, String.class).getPlan());
+
+        config.registerTypeHandler(String.class, new CodeTypeHandler());
+        config.registerTypeHandler(Code.class, new CodeTypeHandler());
+
+        mapper.select(1, "World Domination");
+        mapper.updateByCode(new Code("A1"), "Saving the Earth");
+        Assert.assertEquals(params(1, "World Domination"), database.getParameters().get(0));
+        Assert.assertEquals(params("code:Saving the Earth", "code:A1"), database
+                .getParameters().get(1));
+    }
+
+    /**
+     * TEST: Execute the static statement using the plan and using the regular
+     * binding of the statement fragment.
+     * 
+     * EXPECT: Plan allocates less memory per query.
+     */
+    @Test
+    public void testAllocation() throws Exception {
+        if (!Allocations.isSupported()) {
+            return;
+        }
+        Runnable query = new Runnable() {
+            public void run() {
+                mapper.select(1, "World Domination");
+            }
+        };
+        long planned = Allocations.perIteration(10000, query);
+
+        StatementConfig stConfig = statementConfig("select", int.class, String.class);
+        StatementPlan plan = stConfig.getPlan();
+        stConfig.setPlan(null);
+        try {
+            long bound = Allocations.perIteration(10000, query);
+            Assert.assertTrue("Plan allocates " + planned + " bytes, binding allocates "
+                    + bound + " bytes", planned < bound);
+        } finally {
+            stConfig.setPlan(plan);
+        }
+    }
+
+    /**
+     * Type handler that binds the parameters as the prefixed strings.
+     */
+    private static class CodeTypeHandler implements TypeHandler<Object> {
+        public Object getValue(ResultSet rs, int column) throws SQLException {
+            return rs.getString(column);
+        }
+
+        public Object getValue(ResultSet rs, String column) throws SQLException {
+            return rs.getString(column);
+        }
+
+        public Object getValue(CallableStatement cs, int index) throws SQLException {
+            return cs.getString(index);
+        }
+
+        public void setParameter(PreparedStatement st, int column, Object value)
+                throws SQLException {
+            st.setString(column, "code:"
+                    + (value instanceof Code ? ((Code) value).value : value));
+        }
+
+        public int getSqlType() {
+            return Types.VARCHAR;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.session;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.Session;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.Scalar;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Update;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.internal.FactoryImpl;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.MapperTestBase;
+
+/**
+ * Test the memo of the subselect results.
+ * 
+ * @author Ivan Dubrov
+ */
+@SuppressWarnings("all")
+public class TestSubselectMemo extends MapperTestBase {
+
+    public interface Mapper1 {
+        @Scalar
+        @Select("SELECT title FROM categories WHERE id = ${1}")
+        String getCategoryTitle(int id);
+
+        // Category title is mapped into the body, both articles are in the
+        // same category
+        @ResultMap(mappings = {@Property(value = "id"), @Property(value = "subject"),
+                @Property(value = "body", column = "category_id", subselect = "getCategoryTitle") })
+        @Select("SELECT id, subject, category_id FROM articles WHERE id IN (1, 2) ORDER BY id")
+        List<Article> listArticles();
+
+        @Update("UPDATE categories SET title = ${2} WHERE id = ${1}")
+        void updateCategoryTitle(int id, String title);
+    }
+
+    private FactoryImpl createFactory(int memoSize, boolean sessionScoped) {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setSubselectMemoSize(memoSize);
+        config.setSubselectMemoSessionScoped(sessionScoped);
+        return (FactoryImpl) config.buildFactory();
+    }
+
+    private void checkArticles(List<Article> articles, String title) {
+        Assert.assertEquals(2, articles.size());
+        Assert.assertEquals(1, articles.get(0).getId());
+        Assert.assertEquals(title, articles.get(0).getBody());
+        Assert.assertEquals(2, articles.get(1).getId());
+        Assert.assertEquals(title, articles.get(1).getBody());
+    }
+
+    /**
+     * TEST: Select two rows referring to the same category with the memo
+     * enabled, twice.
+     * 
+     * EXPECT: Subselect is executed once per query.
+     */
+    @Test
+    public void testSubselectMemo() throws Exception {
+        FactoryImpl factory = createFactory(10, false);
+        Mapper1 mapper = factory.createMapper(Mapper1.class);
+
+        Session session = factory.openSession(conn);
+        try {
+            checkArticles(mapper.listArticles(), "World");
+            checkArticles(mapper.listArticles(), "World");
+        } finally {
+            session.end();
+        }
+        Assert.assertEquals(2, factory.getSubselectMemoMisses());
+        Assert.assertEquals(2, factory.getSubselectMemoHits());
+    }
+
+    /**
+     * TEST: Select two rows referring to the same category with the
+     * session-scoped memo enabled, update the category and select again.
+     * 
+     * EXPECT: Subselect is executed once until the update, updated title is
+     * selected after the update.
+     */
+    @Test
+    public void testSessionSubselectMemo() throws Exception {
+        FactoryImpl factory = createFactory(10, true);
+        Mapper1 mapper = factory.createMapper(Mapper1.class);
+
+        Session session = factory.openSession(conn);
+        try {
+            checkArticles(mapper.listArticles(), "World");
+            checkArticles(mapper.listArticles(), "World");
+
+            mapper.updateCategoryTitle(1, "Planet");
+            checkArticles(mapper.listArticles(), "Planet");
+        } finally {
+            session.rollback();
+            session.end();
+        }
+        Assert.assertEquals(2, factory.getSubselectMemoMisses());
+        Assert.assertEquals(4, factory.getSubselectMemoHits());
+    }
+
+    /**
+     * TEST: Select the rows with the memo disabled.
+     * 
+     * EXPECT: No statistics is collected.
+     */
+    @Test
+    public void testNoSubselectMemo() throws Exception {
+        FactoryImpl factory = createFactory(0, false);
+        Mapper1 mapper = factory.createMapper(Mapper1.class);
+
+        Session session = factory.openSession(conn);
+        try {
+            checkArticles(mapper.listArticles(), "World");
+        } finally {
+            session.end();
+        }
+        Assert.assertEquals(0, factory.getSubselectMemoMisses());
+        Assert.assertEquals(0, factory.getSubselectMemoHits());
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.code.nanorm.test.session;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.DataSink;
+import com.google.code.nanorm.annotations.Property;
+import com.google.code.nanorm.annotations.ResultMap;
+import com.google.code.nanorm.annotations.ResultMapRef;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.config.ExternalSessionConfig;
+import com.google.code.nanorm.config.NanormConfiguration;
+import com.google.code.nanorm.internal.FactoryImpl;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.beans.Comment;
+import com.google.code.nanorm.test.common.StubDatabase;
+
+/**
+ * Test the scope of the subselect memo when the queries are executed from the
+ * data sink receiving the results. The JDBC driver is replaced by the stub.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestSubselectMemoScope {
+
+    @ResultMap(id = "article", mappings = {@Property(value = "id"),
+            @Property(value = "subject"),
+            @Property(value = "comments", column = "category_id", subselect = "listComments") })
+    public interface Mapper {
+        // Both articles refer to the same key
+        @ResultMap(mappings = {@Property(value = "id"),
+                @Property(value = "comment", column = "subject") })
+        @Select("SELECT id, subject FROM comments WHERE category_id = ${1}")
+        List<Comment> listComments(int categoryId);
+
+        @ResultMapRef("article")
+        @Select("SELECT id, subject, category_id FROM articles ORDER BY id")
+        List<Article> listArticles();
+
+        @ResultMapRef("article")
+        @Select("SELECT id, subject, category_id FROM articles ORDER BY id")
+        void listArticles(DataSink<Article> sink);
+    }
+
+    private final StubDatabase database = new StubDatabase(new String[] {"id", "subject",
+            "category_id" }, new Object[][] { {1, "World Domination", 1 },
+            {2, "Saving the Earth", 1 } });
+
+    /**
+     * TEST: Select two rows referring to the same subselect key with the memo
+     * enabled, execute the same query from the data sink when the first row
+     * is pushed.
+     * 
+     * EXPECT: Query executed from the data sink gets its own memo, subselect
+     * is executed once by each of the queries.
+     */
+    @Test
+    public void testDataSink() {
+        NanormConfiguration config = new NanormConfiguration();
+        config.setSessionConfig(new ExternalSessionConfig(database.dataSource()));
+        config.setAutoSessionEnabled(true);
+        config.setSubselectMemoSize(10);
+        FactoryImpl factory = (FactoryImpl) config.buildFactory();
+        final Mapper mapper = factory.createMapper(Mapper.class);
+
+        mapper.listArticles(new DataSink<Article>() {
+            private boolean first = true;
+
+            public void pushData(Article article) {
+                if (first) {
+                    first = false;
+                    Assert.assertEquals(2, mapper.listArticles().size());
+                }
+            }
+
+            public void commitData() {
+                // Nothing.
+            }
+        });
+        Assert.assertEquals(2, factory.getSubselectMemoMisses());
+        Assert.assertEquals(2, factory.getSubselectMemoHits());
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.ParamBlock;
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.internal.SQLShapeCache;
+import com.google.code.nanorm.internal.TextFragmentCache;
+import com.google.code.nanorm.internal.introspect.reflect.ReflectIntrospectionFactory;
+import com.google.code.nanorm.internal.mapping.parameter.ParameterMapper;
+
+/**
+ * Test the cache of the dynamic SQL by shape.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestSQLShapeCache {
+
+    private final TextFragmentCache fragmentCache = new TextFragmentCache(
+            new ReflectIntrospectionFactory(), TextFragmentCache.DEFAULT_SIZE);
+
+    /**
+     * SQL source with the optional clause and the join.
+     */
+    private static class ArticlesSource extends SQLSource {
+        public void sql(String subject, Integer... ids) {
+            append("SELECT id, subject FROM articles WHERE 1 = 1");
+            appendNotNull(" AND subject = ${1}", subject);
+            join(new ParamBlock<Integer>() {
+                public void generate(Integer id) {
+                    append("${1}", id);
+                }
+            }, ids).open(" AND id IN (").with(", ").close(")");
+        }
+    }
+
+    private List<String> collect(String subject, Integer... ids) {
+        ArticlesSource source = new ArticlesSource();
+        source.setFragmentCache(fragmentCache);
+        source.sql(subject, ids);
+
+        List<String> pieces = new ArrayList<String>();
+        List<ParameterMapper> parameters = new ArrayList<ParameterMapper>();
+        source.collect(pieces, parameters);
+
+        // Generated SQL is the concatenation of the pieces
+        StringBuilder builder = new StringBuilder();
+        List<ParameterMapper> generated = new ArrayList<ParameterMapper>();
+        source.generate(builder, generated);
+        StringBuilder concat = new StringBuilder();
+        for (String piece : pieces) {
+            concat.append(piece);
+        }
+        Assert.assertEquals(builder.toString(), concat.toString());
+        Assert.assertEquals(parameters.size(), generated.size());
+        return pieces;
+    }
+
+    /**
+     * TEST: Generate the SQL for the same shape with different parameter
+     * values.
+     * 
+     * EXPECT: The same SQL instance is returned.
+     */
+    @Test
+    public void testSameShape() {
+        SQLShapeCache cache = new SQLShapeCache(16);
+        String sql = cache.toSQL(collect("World", 1, 2));
+        Assert.assertEquals("SELECT id, subject FROM articles WHERE 1 = 1 AND subject = ?"
+                + " AND id IN (?, ?)", sql);
+        Assert.assertSame(sql, cache.toSQL(collect("Earth", 3, 4)));
+
+        // Equal pieces, but different instances
+        Assert.assertSame(sql, cache.toSQL(Arrays.asList(new String(
+                "SELECT id, subject FROM articles WHERE 1 = 1"), new String(" AND subject = ?"),
+                " AND id IN (", "?", ", ", "?", ")")));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * TEST: Generate the SQL for different shapes.
+     * 
+     * EXPECT: Every shape gets its own SQL.
+     */
+    @Test
+    public void testDifferentShapes() {
+        SQLShapeCache cache = new SQLShapeCache(16);
+        String sql1 = cache.toSQL(collect("World", 1, 2));
+        String sql2 = cache.toSQL(collect(null, 1, 2));
+        String sql3 = cache.toSQL(collect("World", 1));
+        String sql4 = cache.toSQL(collect("World"));
+
+        Assert.assertEquals("SELECT id, subject FROM articles WHERE 1 = 1 AND id IN (?, ?)",
+                sql2);
+        Assert.assertEquals("SELECT id, subject FROM articles WHERE 1 = 1 AND subject = ?"
+                + " AND id IN (?)", sql3);
+        Assert.assertEquals("SELECT id, subject FROM articles WHERE 1 = 1 AND subject = ?",
+                sql4);
+        Assert.assertFalse(sql1.equals(sql2) || sql1.equals(sql3) || sql1.equals(sql4));
+        Assert.assertEquals(4, cache.size());
+
+        // Pieces differ, but concatenate to the same SQL
+        String sql5 = cache.toSQL(Arrays
+                .asList("SELECT id, subject FROM articles WHERE 1 = 1 AND subject = ?"));
+        Assert.assertEquals(sql4, sql5);
+        Assert.assertEquals(5, cache.size());
+    }
+
+    /**
+     * TEST: Generate the SQL for more shapes than the cache could hold.
+     * 
+     * EXPECT: Cache stops growing once it is full, the SQL of the shapes not
+     * cached is concatenated every time.
+     */
+    @Test
+    public void testFull() {
+        SQLShapeCache cache = new SQLShapeCache(1);
+        cache.toSQL(collect("World", 1, 2));
+
+        String sql = cache.toSQL(collect(null, 1, 2));
+        Assert.assertEquals("SELECT id, subject FROM articles WHERE 1 = 1 AND id IN (?, ?)",
+                sql);
+        Assert.assertNotSame(sql, cache.toSQL(collect(null, 1, 2)));
+        Assert.assertEquals(1, cache.size());
+    }
+}
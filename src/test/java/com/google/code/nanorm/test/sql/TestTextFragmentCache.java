@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.SQLSource;
+import com.google.code.nanorm.internal.BoundFragment;
+import com.google.code.nanorm.internal.TextFragmentCache;
+import com.google.code.nanorm.internal.introspect.reflect.ReflectIntrospectionFactory;
+import com.google.code.nanorm.internal.mapping.parameter.ParameterMapper;
+
+/**
+ * Test the cache of the text fragments used by the dynamic SQL.
+ * 
+ * @author Ivan Dubrov
+ */
+public class TestTextFragmentCache {
+
+    /**
+     * SQL source appending the numbered conditions.
+     */
+    private static class ConditionsSource extends SQLSource {
+        public void sql(int count) {
+            append("SELECT id FROM articles WHERE 1 = 1");
+            for (int i = 0; i < count; ++i) {
+                append(" AND c" + i + " = ${1}", i);
+            }
+        }
+    }
+
+    /**
+     * Get the SQL piece of the bound fragment. The piece is the SQL parsed by
+     * the text fragment, so the same instance means the same fragment.
+     * 
+     * @param fragment bound fragment
+     * @return SQL piece
+     */
+    private static String piece(BoundFragment fragment) {
+        List<String> pieces = new ArrayList<String>();
+        fragment.collect(pieces, new ArrayList<ParameterMapper>());
+        Assert.assertEquals(1, pieces.size());
+        return pieces.get(0);
+    }
+
+    /**
+     * TEST: Bind the same template to the parameters of the same and different
+     * classes.
+     * 
+     * EXPECT: Fragment is reused for the same parameter classes, parsed again
+     * for different ones.
+     */
+    @Test
+    public void testHit() {
+        TextFragmentCache cache = new TextFragmentCache(new ReflectIntrospectionFactory(), 16);
+
+        String sql = "SELECT id FROM articles WHERE id = ${1}";
+        String first = piece(cache.bindParameters(sql, new Object[] {1 }));
+        Assert.assertEquals("SELECT id FROM articles WHERE id = ?", first);
+        Assert.assertSame(first, piece(cache.bindParameters(sql, new Object[] {2 })));
+        Assert.assertEquals(1, cache.size());
+
+        Assert.assertNotSame(first, piece(cache.bindParameters(sql, new Object[] {"1" })));
+        Assert.assertNotSame(first, piece(cache.bindParameters(sql, new Object[] {null })));
+        Assert.assertEquals(3, cache.size());
+    }
+
+    /**
+     * TEST: Bind more templates than the cache could hold.
+     * 
+     * EXPECT: Cache stops growing once it is full, templates not cached are
+     * parsed on every binding.
+     */
+    @Test
+    public void testFull() {
+        TextFragmentCache cache = new TextFragmentCache(new ReflectIntrospectionFactory(), 2);
+        cache.bindParameters("a = ${1}", new Object[] {1 });
+        cache.bindParameters("b = ${1}", new Object[] {1 });
+
+        String first = piece(cache.bindParameters("c = ${1}", new Object[] {1 }));
+        Assert.assertEquals("c = ?", first);
+        Assert.assertNotSame(first, piece(cache.bindParameters("c = ${1}", new Object[] {1 })));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    /**
+     * TEST: Generate the dynamic SQL with more distinct templates than the
+     * default cache size.
+     * 
+     * EXPECT: SQL source caches at most default amount of fragments, the SQL
+     * is generated for all the templates.
+     */
+    @Test
+    public void testSourceLimit() {
+        TextFragmentCache cache = new TextFragmentCache(new ReflectIntrospectionFactory(),
+                TextFragmentCache.DEFAULT_SIZE);
+        int count = TextFragmentCache.DEFAULT_SIZE + 100;
+
+        ConditionsSource source = new ConditionsSource();
+        source.setFragmentCache(cache);
+        source.sql(count);
+        Assert.assertEquals(TextFragmentCache.DEFAULT_SIZE, cache.size());
+
+        StringBuilder builder = new StringBuilder();
+        List<ParameterMapper> parameters = new ArrayList<ParameterMapper>();
+        source.generate(builder, parameters);
+        Assert.assertEquals(count, parameters.size());
+        Assert.assertTrue(builder.toString().endsWith(" AND c" + (count - 1) + " = ?"));
+    }
+}
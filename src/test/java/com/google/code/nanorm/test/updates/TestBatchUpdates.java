@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2008, 2009 Ivan S. Dubrov
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.code.nanorm.test.updates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.code.nanorm.annotations.Batch;
+import com.google.code.nanorm.annotations.Insert;
+import com.google.code.nanorm.annotations.Select;
+import com.google.code.nanorm.annotations.Update;
+import com.google.code.nanorm.test.beans.Article;
+import com.google.code.nanorm.test.common.MapperTestBase;
+
+/**
+ * Test batch updates.
+ * 
+ * @author Ivan Dubrov
+ */
+@SuppressWarnings("all")
+public class TestBatchUpdates extends MapperTestBase {
+    public interface Mapper1 {
+        @Select("SELECT id, subject, year FROM articles WHERE ID = ${1}")
+        Article getArticleById(int id);
+
+        @Insert("INSERT INTO articles(id, subject, year) VALUES (${1.id}, ${1.subject}, ${1.year})")
+        @Batch
+        int[] insertArticles(List<Article> articles);
+
+        @Insert("INSERT INTO articles(id, subject, year) VALUES (${1.id}, ${1.subject}, ${1.year})")
+        @Batch(size = 2)
+        void insertArticles2(Article[] articles);
+
+        @Update("UPDATE articles SET year = ${2} WHERE id = ${1}")
+        @Batch(size = 2)
+        int[] updateYear(int[] ids, int year);
+    }
+
+    private static Article article(int id, String subject, int year) {
+        Article article = new Article();
+        article.setId(id);
+        article.setSubject(subject);
+        article.setYear(year);
+        return article;
+    }
+
+    /**
+     * TEST: Insert the list of articles in single batch.
+     * 
+     * EXPECT: All articles are inserted, update count is returned for every
+     * article.
+     */
+    @Test
+    public void testBatchInsertList() throws Exception {
+        Mapper1 mapper = factory.createMapper(Mapper1.class);
+
+        List<Article> articles = new ArrayList<Article>();
+        articles.add(article(2001, "Kalina", 2008));
+        articles.add(article(2002, "Malina", 2009));
+        articles.add(article(2003, "Smorodina", 2007));
+
+        int[] counts = mapper.insertArticles(articles);
+        Assert.assertEquals(3, counts.length);
+        for (int count : counts) {
+            Assert.assertEquals(1, count);
+        }
+
+        for (Article article : articles) {
+            Article loaded = mapper.getArticleById(article.getId());
+            Assert.assertEquals(article.getSubject(), loaded.getSubject());
+            Assert.assertEquals(article.getYear(), loaded.getYear());
+        }
+    }
+
+    /**
+     * TEST: Insert the array of articles in batches of size 2, then update the
+     * years of inserted articles by their ids.
+     * 
+     * EXPECT: All articles are inserted and updated, empty batch does nothing.
+     */
+    @Test
+    public void testBatchArray() throws Exception {
+        Mapper1 mapper = factory.createMapper(Mapper1.class);
+
+        Article[] articles = new Article[] {article(2011, "Kalina", 2008),
+                article(2012, "Malina", 2009), article(2013, "Smorodina", 2007) };
+        mapper.insertArticles2(articles);
+
+        int[] counts = mapper.updateYear(new int[] {2011, 2012, 2013, 2014 }, 2010);
+        Assert.assertArrayEquals(new int[] {1, 1, 1, 0 }, counts);
+
+        for (Article article : articles) {
+            Article loaded = mapper.getArticleById(article.getId());
+            Assert.assertEquals(article.getSubject(), loaded.getSubject());
+            Assert.assertEquals(2010, loaded.getYear());
+        }
+
+        Assert.assertEquals(0, mapper.updateYear(new int[0], 2010).length);
+    }
+}